@@ -0,0 +1,79 @@
+package com.oashield.openapi.generators.modsecurity3;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.openapitools.codegen.CodegenModel;
+import org.openapitools.codegen.CodegenParameter;
+import org.openapitools.codegen.CodegenProperty;
+
+import io.swagger.v3.oas.models.OpenAPI;
+import io.swagger.v3.oas.models.Operation;
+import io.swagger.v3.oas.models.PathItem;
+import io.swagger.v3.oas.models.media.Schema;
+import io.swagger.v3.oas.models.parameters.Parameter;
+import io.swagger.v3.parser.OpenAPIV3Parser;
+import io.swagger.v3.parser.core.models.ParseOptions;
+
+/**
+ * A synthetic spec turned into the codegen objects the generator works on: its
+ * parameters, its models and the flattened leaves of its body models, built by a
+ * generator set up as for a run.
+ */
+final class BenchmarkFixture {
+
+    static final String JSON_PREFIX = "json.";
+
+    final Modsecurity3Generator generator = new Modsecurity3Generator();
+    final OpenAPI openAPI;
+    final List<CodegenParameter> parameters = new ArrayList<CodegenParameter>();
+    final List<CodegenModel> models = new ArrayList<CodegenModel>();
+    final Map<String, CodegenModel> modelLookup = new HashMap<String, CodegenModel>();
+    final List<CodegenModel> bodyModels = new ArrayList<CodegenModel>();
+    final List<CodegenProperty> bodyLeaves = new ArrayList<CodegenProperty>();
+
+    BenchmarkFixture(SyntheticSpec spec) {
+        ParseOptions options = new ParseOptions();
+        options.setResolve(true);
+        openAPI = new OpenAPIV3Parser().readContents(spec.toJson(), null, options).getOpenAPI();
+        generator.processOpts();
+        generator.setOpenAPI(openAPI);
+
+        for (Map.Entry<String, Schema> schema : openAPI.getComponents().getSchemas().entrySet()) {
+            CodegenModel model = generator.fromModel(schema.getKey(), schema.getValue());
+            models.add(model);
+            modelLookup.put(model.name, model);
+            modelLookup.put(model.classname, model);
+        }
+        for (PathItem pathItem : openAPI.getPaths().values()) {
+            for (Operation operation : pathItem.readOperations()) {
+                if (operation.getParameters() != null) {
+                    for (Parameter parameter : operation.getParameters()) {
+                        parameters.add(generator.fromParameter(parameter, new HashSet<String>()));
+                    }
+                }
+                if (operation.getRequestBody() != null) {
+                    String ref = operation.getRequestBody().getContent().get("application/json").getSchema().get$ref();
+                    bodyModels.add(modelLookup.get(ref.substring(ref.lastIndexOf('/') + 1)));
+                }
+            }
+        }
+        for (CodegenModel body : bodyModels) {
+            bodyLeaves.addAll(flatten(body));
+        }
+    }
+
+    /**
+     * The flattened leaves of a body model, as the generator flattens a model body.
+     */
+    List<CodegenProperty> flatten(CodegenModel body) {
+        List<CodegenProperty> leaves = new ArrayList<CodegenProperty>();
+        for (CodegenProperty property : body.vars) {
+            leaves.addAll(generator.flattenModel(property, JSON_PREFIX, 1, modelLookup));
+        }
+        return leaves;
+    }
+}
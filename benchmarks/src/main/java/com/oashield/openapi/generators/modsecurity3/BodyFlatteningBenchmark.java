@@ -0,0 +1,81 @@
+package com.oashield.openapi.generators.modsecurity3;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openapitools.codegen.CodegenModel;
+import org.openapitools.codegen.CodegenProperty;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Per-field body rules: flattening one body model into its leaves
+ * (flattenModel over the model's properties), and decorating one flattened leaf
+ * with its rule targets, patterns and rule ids (decorateBodyProperty). Both
+ * cycle through every body of the synthetic spec.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BodyFlatteningBenchmark {
+
+    @Param({"100"})
+    public int operations;
+
+    @Param({"8", "32"})
+    public int modelWidth;
+
+    @Param({"3"})
+    public int depth;
+
+    @Param({"0.2"})
+    public double composition;
+
+    @Param({"1"})
+    public long seed;
+
+    private BenchmarkFixture fixture;
+    private CodegenModel[] bodies;
+    private CodegenProperty[] leaves;
+    private int nextBody;
+    private int nextLeaf;
+
+    @Setup
+    public void setUp() {
+        fixture = new BenchmarkFixture(new SyntheticSpec().operations(operations).modelWidth(modelWidth)
+                .depth(depth).composition(composition).seed(seed));
+        bodies = fixture.bodyModels.toArray(new CodegenModel[0]);
+        leaves = fixture.bodyLeaves.toArray(new CodegenProperty[0]);
+    }
+
+    @Benchmark
+    public List<CodegenProperty> flattenModel() {
+        CodegenModel body = bodies[nextBody];
+        nextBody = (nextBody + 1) % bodies.length;
+        return fixture.flatten(body);
+    }
+
+    @Benchmark
+    public Set<String> decorateBodyProperty() {
+        // decoration writes to the leaf, so every call gets a fresh copy as in a run
+        CodegenProperty leaf = leaves[nextLeaf].clone();
+        nextLeaf = (nextLeaf + 1) % leaves.length;
+        Set<String> argsAllowlist = new LinkedHashSet<String>();
+        fixture.generator.decorateBodyProperty(leaf, argsAllowlist, new RuleIdSequence(4210001L));
+        return argsAllowlist;
+    }
+}
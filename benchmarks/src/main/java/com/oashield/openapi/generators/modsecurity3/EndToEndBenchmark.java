@@ -0,0 +1,88 @@
+package com.oashield.openapi.generators.modsecurity3;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openapitools.codegen.DefaultGenerator;
+import org.openapitools.codegen.config.CodegenConfigurator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * A whole generator run over a synthetic spec file, from parsing to the written
+ * rule files, as a deploy pipeline runs it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class EndToEndBenchmark {
+
+    @Param({"100", "1000"})
+    public int operations;
+
+    @Param({"4"})
+    public int parameters;
+
+    @Param({"8"})
+    public int modelWidth;
+
+    @Param({"3"})
+    public int depth;
+
+    @Param({"0.2"})
+    public double composition;
+
+    @Param({"1"})
+    public long seed;
+
+    private Path workDir;
+    private Path spec;
+
+    @Setup
+    public void setUp() throws IOException {
+        workDir = Files.createTempDirectory("oashield-bench");
+        spec = new SyntheticSpec().operations(operations).parameters(parameters).modelWidth(modelWidth)
+                .depth(depth).composition(composition).seed(seed).write(workDir.resolve("spec.json"));
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        delete(workDir.toFile());
+    }
+
+    @Benchmark
+    public List<File> generate() {
+        return new DefaultGenerator().opts(new CodegenConfigurator()
+                .setGeneratorName("modsecurity3")
+                .setInputSpec(spec.toString())
+                .setOutputDir(workDir.resolve("out").toString())
+                .toClientOptInput()).generate();
+    }
+
+    private static void delete(File file) throws IOException {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        Files.deleteIfExists(file.toPath());
+    }
+}
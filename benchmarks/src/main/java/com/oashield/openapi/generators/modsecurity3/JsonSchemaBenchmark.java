@@ -0,0 +1,68 @@
+package com.oashield.openapi.generators.modsecurity3;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openapitools.codegen.CodegenModel;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import io.swagger.v3.oas.models.media.Schema;
+
+/**
+ * schema.json definition of one model, enriched from its raw spec schema as in a
+ * run, cycling through every model of the synthetic spec.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JsonSchemaBenchmark {
+
+    @Param({"100"})
+    public int operations;
+
+    @Param({"8", "32"})
+    public int modelWidth;
+
+    @Param({"0.2"})
+    public double composition;
+
+    @Param({"1"})
+    public long seed;
+
+    private final JsonSchemaGenerator jsonSchemaGenerator = new JsonSchemaGenerator();
+    private CodegenModel[] models;
+    private Schema<?>[] rawSchemas;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        BenchmarkFixture fixture = new BenchmarkFixture(new SyntheticSpec().operations(operations)
+                .modelWidth(modelWidth).composition(composition).seed(seed));
+        models = fixture.models.toArray(new CodegenModel[0]);
+        rawSchemas = new Schema<?>[models.length];
+        for (int i = 0; i < models.length; i++) {
+            rawSchemas[i] = fixture.openAPI.getComponents().getSchemas().get(models[i].name);
+        }
+    }
+
+    @Benchmark
+    public ObjectNode generateModelSchema() {
+        int model = next;
+        next = (next + 1) % models.length;
+        return jsonSchemaGenerator.generateModelSchema(models[model], rawSchemas[model]);
+    }
+}
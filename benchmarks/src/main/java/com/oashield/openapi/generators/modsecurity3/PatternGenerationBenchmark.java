@@ -0,0 +1,56 @@
+package com.oashield.openapi.generators.modsecurity3;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openapitools.codegen.CodegenParameter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Pattern generation for one parameter, cycling through every query, header and
+ * path parameter of the synthetic spec.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PatternGenerationBenchmark {
+
+    @Param({"200"})
+    public int operations;
+
+    @Param({"4"})
+    public int parameters;
+
+    @Param({"1"})
+    public long seed;
+
+    private final PatternGenerationService service = new PatternGenerationService();
+    private CodegenParameter[] params;
+    private int next;
+
+    @Setup
+    public void setUp() {
+        BenchmarkFixture fixture = new BenchmarkFixture(
+                new SyntheticSpec().operations(operations).parameters(parameters).seed(seed));
+        params = fixture.parameters.toArray(new CodegenParameter[0]);
+    }
+
+    @Benchmark
+    public String getParamPattern() {
+        CodegenParameter param = params[next];
+        next = (next + 1) % params.length;
+        return service.getParamPattern(param);
+    }
+}
@@ -0,0 +1,287 @@
+package com.oashield.openapi.generators.modsecurity3;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * Seeded generator of synthetic OpenAPI 3.0 specs for the benchmarks. The same
+ * settings and seed always give the same document, so timings of different
+ * releases are taken on the same input.
+ *
+ * Operations come in resources of five (list, create, get, replace, delete),
+ * twenty operations to a tag. Every operation draws {@link #parameters} query or
+ * header parameters of mixed types and constraints. Create and replace take a
+ * JSON body of the resource's model: {@link #modelWidth} properties, nested
+ * {@link #depth} levels deep through an object and an array-of-objects
+ * property. A {@link #composition} share of the models are an allOf of a shared
+ * audit model, and the same share carry a oneOf property.
+ *
+ * Run it directly to write a spec for profiling:
+ * {@code java -cp benchmarks.jar com.oashield.openapi.generators.modsecurity3.SyntheticSpec out.json operations=2000}
+ */
+public class SyntheticSpec {
+
+    private static final int OPERATIONS_PER_RESOURCE = 5;
+    private static final int OPERATIONS_PER_TAG = 20;
+    private static final String SCHEMA_REF = "#/components/schemas/";
+
+    private int operations = 100;
+    private int parameters = 4;
+    private int modelWidth = 8;
+    private int depth = 3;
+    private double composition = 0.2;
+    private long seed = 1;
+
+    /** Number of operations. */
+    public SyntheticSpec operations(int operations) {
+        this.operations = operations;
+        return this;
+    }
+
+    /** Query and header parameters per operation, besides path and body. */
+    public SyntheticSpec parameters(int parameters) {
+        this.parameters = parameters;
+        return this;
+    }
+
+    /** Properties per model. */
+    public SyntheticSpec modelWidth(int modelWidth) {
+        this.modelWidth = modelWidth;
+        return this;
+    }
+
+    /** Levels of nested models below a body model. */
+    public SyntheticSpec depth(int depth) {
+        this.depth = depth;
+        return this;
+    }
+
+    /** Share of the models (0 to 1) that use allOf and oneOf. */
+    public SyntheticSpec composition(double composition) {
+        this.composition = composition;
+        return this;
+    }
+
+    public SyntheticSpec seed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    /**
+     * Name of the body model of a resource.
+     */
+    public static String modelName(int resource) {
+        return "Resource" + resource;
+    }
+
+    /**
+     * The spec document.
+     */
+    public ObjectNode document() {
+        ObjectMapper mapper = new ObjectMapper();
+        Random random = new Random(seed);
+        ObjectNode spec = mapper.createObjectNode();
+        spec.put("openapi", "3.0.3");
+        spec.putObject("info").put("title", "synthetic").put("version", "1.0.0");
+        spec.putArray("servers").addObject().put("url", "/api");
+        ObjectNode paths = spec.putObject("paths");
+        ObjectNode schemas = spec.putObject("components").putObject("schemas");
+        ObjectNode audit = schemas.putObject("Audit").put("type", "object");
+        audit.putArray("required").add("createdAt");
+        ObjectNode auditProperties = audit.putObject("properties");
+        auditProperties.putObject("createdAt").put("type", "string").put("format", "date-time");
+        auditProperties.putObject("revision").put("type", "integer").put("minimum", 0);
+
+        int resources = (operations + OPERATIONS_PER_RESOURCE - 1) / OPERATIONS_PER_RESOURCE;
+        for (int resource = 0; resource < resources; resource++) {
+            model(schemas, modelName(resource), 0, random);
+            String tag = "group" + resource * OPERATIONS_PER_RESOURCE / OPERATIONS_PER_TAG;
+            ObjectNode collection = paths.putObject("/resource" + resource);
+            ObjectNode item = paths.putObject("/resource" + resource + "/{id}");
+            int first = resource * OPERATIONS_PER_RESOURCE;
+            for (int op = first; op < Math.min(operations, first + OPERATIONS_PER_RESOURCE); op++) {
+                String[] kinds = {"list", "create", "get", "replace", "delete"};
+                String kind = kinds[op - first];
+                boolean onItem = !"list".equals(kind) && !"create".equals(kind);
+                String method = "list".equals(kind) || "get".equals(kind) ? "get"
+                        : "create".equals(kind) ? "post" : "replace".equals(kind) ? "put" : "delete";
+                ObjectNode operation = (onItem ? item : collection).putObject(method);
+                operation.putArray("tags").add(tag);
+                operation.put("operationId", kind + "Resource" + resource);
+                ArrayNode params = operation.putArray("parameters");
+                if (onItem) {
+                    ObjectNode id = params.addObject().put("name", "id").put("in", "path").put("required", true);
+                    id.putObject("schema").put("type", "integer").put("format", "int64").put("minimum", 1);
+                }
+                for (int p = 0; p < parameters; p++) {
+                    parameter(params.addObject(), "p" + p, random);
+                }
+                if ("create".equals(kind) || "replace".equals(kind)) {
+                    ObjectNode body = operation.putObject("requestBody").put("required", true);
+                    body.putObject("content").putObject("application/json").putObject("schema")
+                            .put("$ref", SCHEMA_REF + modelName(resource));
+                }
+                operation.putObject("responses").putObject("200").put("description", "ok");
+            }
+        }
+        return spec;
+    }
+
+    /**
+     * The spec document as JSON text.
+     */
+    public String toJson() {
+        try {
+            return new ObjectMapper().writerWithDefaultPrettyPrinter().writeValueAsString(document());
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Write the spec as JSON to file.
+     */
+    public Path write(Path file) throws IOException {
+        Files.write(file, toJson().getBytes("UTF-8"));
+        return file;
+    }
+
+    private void parameter(ObjectNode param, String name, Random random) {
+        boolean header = random.nextInt(4) == 0;
+        param.put("name", header ? "X-" + name : name).put("in", header ? "header" : "query")
+                .put("required", random.nextInt(3) == 0);
+        ObjectNode schema = param.putObject("schema");
+        switch (random.nextInt(header ? 4 : 6)) {
+            case 0:
+                schema.put("type", "string").put("maxLength", 8 + random.nextInt(120));
+                if (random.nextBoolean()) {
+                    schema.put("pattern", "^[a-z0-9-]+$");
+                }
+                break;
+            case 1:
+                schema.put("type", "string").put("format", random.nextBoolean() ? "uuid" : "date-time");
+                break;
+            case 2:
+                schema.put("type", "integer").put("minimum", 0).put("maximum", 1 + random.nextInt(10000));
+                break;
+            case 3:
+                ArrayNode values = schema.put("type", "string").putArray("enum");
+                for (int v = 2 + random.nextInt(5); v > 0; v--) {
+                    values.add("value" + v);
+                }
+                break;
+            case 4:
+                schema.put("type", "array").put("maxItems", 10).putObject("items").put("type", "string")
+                        .put("maxLength", 32);
+                break;
+            default:
+                schema.put("type", random.nextBoolean() ? "boolean" : "number");
+                break;
+        }
+    }
+
+    private void model(ObjectNode schemas, String name, int level, Random random) {
+        ObjectNode model = schemas.putObject(name);
+        ObjectNode own = model;
+        if (level == 0 && random.nextDouble() < composition) {
+            model.putArray("allOf").addObject().put("$ref", SCHEMA_REF + "Audit");
+            own = ((ArrayNode) model.get("allOf")).addObject();
+        }
+        own.put("type", "object");
+        ArrayNode required = own.putArray("required");
+        ObjectNode properties = own.putObject("properties");
+        int nested = level < depth ? 2 : 0;
+        for (int p = 0; p < modelWidth - nested; p++) {
+            String field = "field" + p;
+            if (random.nextInt(3) == 0) {
+                required.add(field);
+            }
+            ObjectNode property = properties.putObject(field);
+            switch (random.nextInt(5)) {
+                case 0:
+                    property.put("type", "string").put("maxLength", 16 + random.nextInt(240));
+                    break;
+                case 1:
+                    property.put("type", "string").put("pattern", "^[A-Z]{2}[0-9]{4,8}$");
+                    break;
+                case 2:
+                    property.put("type", "integer").put("minimum", 0).put("maximum", 100000);
+                    break;
+                case 3:
+                    property.put("type", "array").put("maxItems", 20).putObject("items").put("type", "string")
+                            .put("maxLength", 40);
+                    break;
+                default:
+                    property.put("type", "boolean");
+                    break;
+            }
+        }
+        if (nested > 0) {
+            String child = name + "Child";
+            model(schemas, child, level + 1, random);
+            properties.putObject("child").put("$ref", SCHEMA_REF + child);
+            properties.putObject("children").put("type", "array").put("maxItems", 50)
+                    .putObject("items").put("$ref", SCHEMA_REF + child);
+        }
+        if (random.nextDouble() < composition) {
+            ArrayNode variants = properties.putObject("variant").putArray("oneOf");
+            for (String suffix : new String[] {"A", "B"}) {
+                ObjectNode variant = schemas.putObject(name + "Variant" + suffix).put("type", "object");
+                variant.putArray("required").add("kind" + suffix);
+                variant.putObject("properties").putObject("kind" + suffix).put("type", "string").put("maxLength", 12);
+                variants.addObject().put("$ref", SCHEMA_REF + name + "Variant" + suffix);
+            }
+        }
+        if (required.size() == 0) {
+            own.remove("required");
+        }
+    }
+
+    /**
+     * Writes a spec: the output file, then any of operations, parameters,
+     * modelWidth, depth, composition and seed as name=value.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            throw new IllegalArgumentException("usage: SyntheticSpec <out.json> [name=value ...]");
+        }
+        SyntheticSpec spec = new SyntheticSpec();
+        for (int i = 1; i < args.length; i++) {
+            String[] setting = args[i].split("=", 2);
+            if (setting.length != 2) {
+                throw new IllegalArgumentException("Expected name=value, got '" + args[i] + "'");
+            }
+            switch (setting[0]) {
+                case "operations":
+                    spec.operations(Integer.parseInt(setting[1]));
+                    break;
+                case "parameters":
+                    spec.parameters(Integer.parseInt(setting[1]));
+                    break;
+                case "modelWidth":
+                    spec.modelWidth(Integer.parseInt(setting[1]));
+                    break;
+                case "depth":
+                    spec.depth(Integer.parseInt(setting[1]));
+                    break;
+                case "composition":
+                    spec.composition(Double.parseDouble(setting[1]));
+                    break;
+                case "seed":
+                    spec.seed(Long.parseLong(setting[1]));
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown setting '" + setting[0] + "'");
+            }
+        }
+        spec.write(Paths.get(args[0]));
+    }
+}
@@ -0,0 +1,317 @@
+package com.oashield.openapi.generators.modsecurity3;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToLongFunction;
+
+/**
+ * Prefix trie over the regex fragments of an operation's ARGS_NAMES allowlist.
+ *
+ * Allowlist entries are mostly escaped literal names sharing long prefixes
+ * (json\.category\.id, json\.category\.name, ...). Instead of a flat alternation
+ * the trie emits a factored regex (json\.category\.(?:id|name)) that matches
+ * exactly the same names, so the engine compares each shared prefix once per
+ * argument name instead of once per entry.
+ *
+ * Fragments are split into tokens: a literal character, or an atom (escape class,
+ * bracket class, group, dot) together with its quantifier. Only the literal
+ * tokens are shared structurally; everything else is compared verbatim.
+ */
+public class ArgsNameTrie {
+
+    /**
+     * One rule's share of a split allowlist: argument names starting with
+     * {@link #selector} are checked against {@link #allowlist}. A region with a
+     * null allowlist is a complete name admitted by the selector alone.
+     */
+    public static final class Region {
+        public final String selector;
+        public final String allowlist;
+
+        Region(String selector, String allowlist) {
+            this.selector = selector;
+            this.allowlist = allowlist;
+        }
+    }
+
+    private static final class Node {
+        final Map<String, Node> children = new LinkedHashMap<String, Node>();
+        boolean terminal;
+    }
+
+    private final Node root = new Node();
+
+    /**
+     * @param fragments allowlist entries, each a regex matching whole argument names
+     */
+    public ArgsNameTrie(Collection<String> fragments) {
+        for (String fragment : fragments) {
+            Node node = root;
+            for (String token : tokenize(fragment)) {
+                node = node.children.computeIfAbsent(token, t -> new Node());
+            }
+            node.terminal = true;
+        }
+    }
+
+    /**
+     * The factored alternation, to be wrapped as {@code ^(?:...)$}.
+     */
+    public String toRegex() {
+        return alternatives(root);
+    }
+
+    /**
+     * Split the allowlist into regions whose factored regex stays within budget.
+     * Regions are cut only below literal characters, so their selectors are
+     * disjoint: a name is valid iff it starts with some region's selector and
+     * matches that region's allowlist. A subtree that cannot be cut further is
+     * kept whole even when it alone exceeds the budget.
+     *
+     * @param cost   cost of an anchored allowlist regex
+     * @param budget the largest cost of one region
+     * @return the regions, in trie order; a single region when no split is needed
+     */
+    public List<Region> split(ToLongFunction<String> cost, long budget) {
+        List<Region> regions = new ArrayList<Region>();
+        String whole = toRegex();
+        if (cost.applyAsLong(anchored(whole)) <= budget || !splittable(root)) {
+            regions.add(new Region("", whole));
+            return regions;
+        }
+        split(root, "", cost, budget, regions);
+        return regions;
+    }
+
+    private static void split(Node node, String prefix, ToLongFunction<String> cost, long budget,
+                              List<Region> regions) {
+        if (node.terminal) {
+            regions.add(new Region(prefix + "$", null));
+        }
+        List<String> group = new ArrayList<String>();
+        StringBuilder groupRegex = new StringBuilder();
+        for (Map.Entry<String, Node> child : node.children.entrySet()) {
+            String token = child.getKey();
+            String childRegex = token + subtree(child.getValue());
+            if (cost.applyAsLong(anchored(prefix + childRegex)) > budget) {
+                flush(prefix, group, groupRegex, regions);
+                if (splittable(child.getValue())) {
+                    split(child.getValue(), prefix + token, cost, budget, regions);
+                } else {
+                    regions.add(new Region(prefix + token, prefix + childRegex));
+                }
+                continue;
+            }
+            if (!group.isEmpty()
+                    && cost.applyAsLong(anchored(prefix + "(?:" + groupRegex + "|" + childRegex + ")")) > budget) {
+                flush(prefix, group, groupRegex, regions);
+            }
+            if (!group.isEmpty()) {
+                groupRegex.append('|');
+            }
+            group.add(token);
+            groupRegex.append(childRegex);
+        }
+        flush(prefix, group, groupRegex, regions);
+    }
+
+    private static void flush(String prefix, List<String> group, StringBuilder groupRegex, List<Region> regions) {
+        if (group.isEmpty()) {
+            return;
+        }
+        if (group.size() == 1) {
+            regions.add(new Region(prefix + group.get(0), prefix + groupRegex));
+        } else {
+            regions.add(new Region(prefix + "(?:" + String.join("|", group) + ")",
+                prefix + "(?:" + groupRegex + ")"));
+        }
+        group.clear();
+        groupRegex.setLength(0);
+    }
+
+    // Children can be told apart by their first character only when every one of
+    // them starts with a literal token.
+    private static boolean splittable(Node node) {
+        if (node.children.isEmpty()) {
+            return false;
+        }
+        for (String token : node.children.keySet()) {
+            if (!isLiteral(token)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String anchored(String regex) {
+        return "^(?:" + regex + ")$";
+    }
+
+    private static String alternatives(Node node) {
+        if (isCharClass(node)) {
+            StringBuilder chars = new StringBuilder("[");
+            for (String token : node.children.keySet()) {
+                chars.append(classLiteral(token));
+            }
+            return chars.append(']').toString();
+        }
+        List<String> alternatives = new ArrayList<String>();
+        for (Map.Entry<String, Node> child : node.children.entrySet()) {
+            alternatives.add(child.getKey() + subtree(child.getValue()));
+        }
+        return String.join("|", alternatives);
+    }
+
+    // Several single-character leaves collapse into one bracket class.
+    private static boolean isCharClass(Node node) {
+        if (node.children.size() < 2) {
+            return false;
+        }
+        for (Map.Entry<String, Node> child : node.children.entrySet()) {
+            if (!isLiteral(child.getKey()) || !child.getValue().children.isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String subtree(Node node) {
+        if (node.children.isEmpty()) {
+            return "";
+        }
+        String alternatives = alternatives(node);
+        boolean atom = isCharClass(node) || node.children.size() == 1 && isAtom(alternatives);
+        if (node.terminal) {
+            return (atom ? alternatives : "(?:" + alternatives + ")") + "?";
+        }
+        return node.children.size() > 1 && !atom ? "(?:" + alternatives + ")" : alternatives;
+    }
+
+    // A single token that a trailing quantifier applies to as a whole.
+    private static boolean isAtom(String regex) {
+        List<String> tokens = tokenize(regex);
+        return tokens.size() == 1 && !hasQuantifier(tokens.get(0));
+    }
+
+    private static boolean hasQuantifier(String token) {
+        return !isLiteral(token) && "?*+}".indexOf(token.charAt(token.length() - 1)) >= 0;
+    }
+
+    private static boolean isLiteral(String token) {
+        return token.length() == 1 && ".^$|()[]{}*+?\\".indexOf(token.charAt(0)) < 0
+            || token.length() == 2 && token.charAt(0) == '\\' && !Character.isLetterOrDigit(token.charAt(1));
+    }
+
+    private static String classLiteral(String token) {
+        char c = token.charAt(token.length() - 1);
+        return Character.isLetterOrDigit(c) || c == '_' ? String.valueOf(c) : "\\" + c;
+    }
+
+    /**
+     * Split a regex fragment into tokens. Literal characters come out in the
+     * escaping {@link Modsecurity3Generator#escapeRegexLiteral} uses, so equal
+     * characters share trie nodes however they were written. A fragment with a
+     * top-level alternation is one token.
+     */
+    static List<String> tokenize(String fragment) {
+        List<String> tokens = new ArrayList<String>();
+        int i = 0;
+        int n = fragment.length();
+        while (i < n) {
+            char c = fragment.charAt(i);
+            int end;
+            if (c == '|') {
+                tokens.clear();
+                tokens.add("(?:" + fragment + ")");
+                return tokens;
+            } else if (c == '\\') {
+                end = Math.min(i + 2, n);
+            } else if (c == '[') {
+                end = classEnd(fragment, i);
+            } else if (c == '(') {
+                end = groupEnd(fragment, i);
+            } else {
+                end = i + 1;
+            }
+            int quantified = quantifierEnd(fragment, end);
+            String atom = fragment.substring(i, end);
+            if (quantified == end && atom.length() <= 2 && isLiteralAtom(atom)) {
+                tokens.add(Modsecurity3Generator.escapeRegexLiteral(atom.substring(atom.length() - 1)));
+            } else {
+                tokens.add(fragment.substring(i, quantified));
+            }
+            i = quantified;
+        }
+        return tokens;
+    }
+
+    private static boolean isLiteralAtom(String atom) {
+        if (atom.length() == 2) {
+            return atom.charAt(0) == '\\' && !Character.isLetterOrDigit(atom.charAt(1));
+        }
+        return ".^$".indexOf(atom.charAt(0)) < 0;
+    }
+
+    private static int classEnd(String s, int start) {
+        int i = start + 1;
+        if (i < s.length() && s.charAt(i) == '^') {
+            i++;
+        }
+        if (i < s.length() && s.charAt(i) == ']') {
+            i++;
+        }
+        while (i < s.length() && s.charAt(i) != ']') {
+            i += s.charAt(i) == '\\' ? 2 : 1;
+        }
+        return Math.min(i + 1, s.length());
+    }
+
+    private static int groupEnd(String s, int start) {
+        int depth = 0;
+        int i = start;
+        while (i < s.length()) {
+            char c = s.charAt(i);
+            if (c == '\\') {
+                i += 2;
+                continue;
+            }
+            if (c == '[') {
+                i = classEnd(s, i);
+                continue;
+            }
+            if (c == '(') {
+                depth++;
+            } else if (c == ')' && --depth == 0) {
+                return i + 1;
+            }
+            i++;
+        }
+        return s.length();
+    }
+
+    private static int quantifierEnd(String s, int i) {
+        if (i >= s.length()) {
+            return i;
+        }
+        int end;
+        char c = s.charAt(i);
+        if (c == '*' || c == '+' || c == '?') {
+            end = i + 1;
+        } else if (c == '{') {
+            int close = s.indexOf('}', i);
+            if (close < 0 || !s.substring(i + 1, close).matches("\\d+(,\\d*)?")) {
+                return i;
+            }
+            end = close + 1;
+        } else {
+            return i;
+        }
+        if (end < s.length() && (s.charAt(end) == '?' || s.charAt(end) == '+')) {
+            end++;
+        }
+        return end;
+    }
+}
@@ -0,0 +1,259 @@
+package com.oashield.openapi.generators.modsecurity3;
+
+import io.swagger.v3.oas.models.media.Schema;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.UnaryOperator;
+
+/**
+ * Upper bound on the size in bytes of a request body that can pass the
+ * generated checks, derived from the body schema.
+ *
+ * A bound exists only when every value in the schema is bounded: strings need a
+ * maxLength (or an enum, const or fixed-length format), arrays a maxItems, and
+ * objects a closed property set. Objects with properties and without
+ * additionalProperties count as closed because the generated ARGS_NAMES
+ * allowlist rejects undeclared names; free-form objects (no properties and no
+ * additionalProperties: false), maps, patternProperties and recursive schemas
+ * leave the body unbounded.
+ *
+ * The bound is deliberately loose. Every character of a string or name is
+ * counted at its longest escaped form (a JSON surrogate pair escape, or four
+ * percent-encoded UTF-8 bytes), numbers at the longest form the generated value
+ * rules admit, and each JSON value gets {@link #JSON_WHITESPACE} bytes of room
+ * for pretty-printing.
+ */
+public class BodySizeBound {
+
+    /** Whitespace allowed around each JSON value and member. */
+    static final long JSON_WHITESPACE = 64;
+
+    // longest admitted serializations: -9223372036854775808, the 15.15 decimal
+    // pattern of the number rules, false, null
+    private static final long INTEGER_BYTES = 20;
+    private static final long NUMBER_BYTES = 32;
+    private static final long BOOLEAN_BYTES = 5;
+    private static final long NULL_BYTES = 4;
+    // one character as a JSON surrogate pair escape (two six-byte escapes), or as four
+    // percent-encoded UTF-8 bytes (%F0%9F%98%80)
+    private static final long JSON_CHAR_BYTES = 12;
+    private static final long FORM_CHAR_BYTES = 12;
+
+    private final UnaryOperator<Schema<?>> resolver;
+    private final Set<Schema<?>> visiting = Collections.newSetFromMap(new IdentityHashMap<Schema<?>, Boolean>());
+
+    /**
+     * @param resolver resolves a $ref schema to its target, returns other schemas unchanged
+     */
+    public BodySizeBound(UnaryOperator<Schema<?>> resolver) {
+        this.resolver = resolver;
+    }
+
+    /**
+     * Largest JSON document valid against the schema, or -1 when it is unbounded.
+     */
+    public long json(Schema<?> schema) {
+        long value = value(schema);
+        return value < 0 ? -1 : add(value, JSON_WHITESPACE);
+    }
+
+    /**
+     * Largest application/x-www-form-urlencoded body whose fields are the
+     * properties of the schema, or -1 when it is unbounded.
+     */
+    public long urlencoded(Schema<?> schema) {
+        Schema<?> object = resolver.apply(schema);
+        if (object == null || object.getProperties() == null || isOpen(object)) {
+            return -1;
+        }
+        long total = 0;
+        for (String name : object.getProperties().keySet()) {
+            Schema<?> value = resolver.apply(object.getProperties().get(name));
+            long repeat = 1;
+            if (value != null && isType(value, "array")) {
+                if (value.getMaxItems() == null) {
+                    return -1;
+                }
+                repeat = value.getMaxItems();
+                value = resolver.apply(value.getItems());
+            }
+            long field = scalar(value, FORM_CHAR_BYTES, 0);
+            if (field < 0) {
+                return -1;
+            }
+            // name=value&
+            total = add(total, multiply(repeat, name.length() * FORM_CHAR_BYTES + field + 2));
+        }
+        return total;
+    }
+
+    private long value(Schema<?> raw) {
+        Schema<?> schema = resolver.apply(raw);
+        if (schema == null || !visiting.add(schema)) {
+            return -1;
+        }
+        try {
+            return jsonValue(schema);
+        } finally {
+            visiting.remove(schema);
+        }
+    }
+
+    private long jsonValue(Schema<?> schema) {
+        long size;
+        if (schema.getAllOf() != null && !schema.getAllOf().isEmpty()) {
+            // members are objects merged into one: their members add up
+            size = 2;
+            for (Schema<?> member : schema.getAllOf()) {
+                long bound = value(member);
+                if (bound < 0) {
+                    return -1;
+                }
+                size = add(size, bound);
+            }
+        } else if (union(schema) != null) {
+            size = 0;
+            for (Schema<?> member : union(schema)) {
+                long bound = value(member);
+                if (bound < 0) {
+                    return -1;
+                }
+                size = Math.max(size, bound);
+            }
+        } else if (isType(schema, "array")) {
+            if (schema.getMaxItems() == null) {
+                return -1;
+            }
+            long item = value(schema.getItems());
+            if (item < 0) {
+                return -1;
+            }
+            size = add(2, multiply(schema.getMaxItems(), item + 1 + JSON_WHITESPACE));
+        } else if (schema.getProperties() != null || isType(schema, "object")) {
+            if (isOpen(schema)) {
+                return -1;
+            }
+            size = 2;
+            if (schema.getProperties() != null) {
+                for (String name : schema.getProperties().keySet()) {
+                    long value = value(schema.getProperties().get(name));
+                    if (value < 0) {
+                        return -1;
+                    }
+                    // "name": value,
+                    long quotedName = 2 + name.length() * JSON_CHAR_BYTES;
+                    size = add(size, quotedName + 1 + value + 1 + JSON_WHITESPACE);
+                }
+            }
+        } else {
+            size = scalar(schema, JSON_CHAR_BYTES, 2);
+            if (size < 0) {
+                return -1;
+            }
+        }
+        if (Boolean.TRUE.equals(schema.getNullable())
+                || schema.getTypes() != null && schema.getTypes().contains("null")) {
+            size = Math.max(size, NULL_BYTES);
+        }
+        return size;
+    }
+
+    // A string, number, integer or boolean value; quotes are the bytes a string
+    // adds around its characters.
+    private static long scalar(Schema<?> schema, long charBytes, long quotes) {
+        if (schema == null) {
+            return -1;
+        }
+        long longest = longestLiteral(schema);
+        if (longest >= 0) {
+            return quotes + longest * charBytes;
+        }
+        if (isType(schema, "integer")) {
+            return INTEGER_BYTES;
+        }
+        if (isType(schema, "number")) {
+            return NUMBER_BYTES;
+        }
+        if (isType(schema, "boolean")) {
+            return BOOLEAN_BYTES;
+        }
+        if (isType(schema, "string")) {
+            Integer maxLength = schema.getMaxLength();
+            if (maxLength == null) {
+                maxLength = fixedFormatLength(schema.getFormat());
+            }
+            return maxLength != null ? quotes + maxLength * charBytes : -1;
+        }
+        return -1;
+    }
+
+    // enum and const admit a closed set of literals
+    private static long longestLiteral(Schema<?> schema) {
+        List<?> values = schema.getEnum();
+        if (schema.getConst() != null) {
+            values = Collections.singletonList(schema.getConst());
+        }
+        if (values == null || values.isEmpty()) {
+            return -1;
+        }
+        long longest = 0;
+        for (Object value : values) {
+            longest = Math.max(longest, String.valueOf(value).length());
+        }
+        return longest;
+    }
+
+    private static Integer fixedFormatLength(String format) {
+        if ("uuid".equals(format)) {
+            return 36;
+        }
+        if ("date".equals(format)) {
+            return 10;
+        }
+        return null;
+    }
+
+    private static List<Schema<?>> union(Schema<?> schema) {
+        if (schema.getOneOf() != null && !schema.getOneOf().isEmpty()) {
+            return members(schema.getOneOf());
+        }
+        if (schema.getAnyOf() != null && !schema.getAnyOf().isEmpty()) {
+            return members(schema.getAnyOf());
+        }
+        return null;
+    }
+
+    private static List<Schema<?>> members(List<?> list) {
+        List<Schema<?>> members = new ArrayList<Schema<?>>(list.size());
+        for (Object member : list) {
+            members.add((Schema<?>) member);
+        }
+        return members;
+    }
+
+    private static boolean isOpen(Schema<?> schema) {
+        Object additional = schema.getAdditionalProperties();
+        boolean freeForm = (schema.getProperties() == null || schema.getProperties().isEmpty())
+            && !Boolean.FALSE.equals(additional);
+        return freeForm || additional instanceof Schema || Boolean.TRUE.equals(additional)
+            || schema.getPatternProperties() != null && !schema.getPatternProperties().isEmpty();
+    }
+
+    private static boolean isType(Schema<?> schema, String type) {
+        return type.equals(schema.getType()) || schema.getTypes() != null && schema.getTypes().contains(type);
+    }
+
+    private static long add(long a, long b) {
+        long sum = a + b;
+        return sum < 0 ? Long.MAX_VALUE : sum;
+    }
+
+    private static long multiply(long a, long b) {
+        return b != 0 && a > Long.MAX_VALUE / b ? Long.MAX_VALUE : a * b;
+    }
+}
@@ -7,14 +7,18 @@ import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.oashield.openapi.generators.modsecurity3.types.JsonSchemaTypeMapper;
 import org.openapitools.codegen.CodegenComposedSchemas;
 import org.openapitools.codegen.CodegenModel;
+import org.openapitools.codegen.CodegenParameter;
 import org.openapitools.codegen.CodegenProperty;
 import org.openapitools.codegen.model.ModelMap;
 import org.openapitools.codegen.model.ModelsMap;
 
 import lombok.extern.slf4j.Slf4j;
 
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 
 /**
  * Utility class for generating JSON Schema documents from OpenAPI models.
@@ -58,6 +62,100 @@ public class JsonSchemaGenerator {
         }
     }
 
+    /**
+     * Generate the self-contained schema document for one operation's request
+     * body: the body schema sits at the root (a model body is inlined, not
+     * referenced), the definitions are only those reachable from it, and
+     * annotations (title, description) are dropped. The document is minified.
+     *
+     * @param body the operation's body parameter
+     * @param definitions every model schema, keyed as in "#/definitions/X"
+     * @return the document, or null when the body is neither a model nor an array of models
+     */
+    public String generateOperationSchema(CodegenParameter body, Map<String, ? extends JsonNode> definitions) {
+        ObjectNode root = objectMapper.createObjectNode();
+        root.put("$schema", JSON_SCHEMA_DRAFT7);
+        if (body.isArray && body.items != null && definitions.containsKey(body.items.complexType)) {
+            root.put("type", "array");
+            root.putObject("items").put("$ref", "#/definitions/" + body.items.complexType);
+            if (body.minItems != null) {
+                root.put("minItems", body.minItems);
+            }
+            if (body.maxItems != null) {
+                root.put("maxItems", body.maxItems);
+            }
+        } else if (!body.isArray && definitions.containsKey(body.baseType)) {
+            root.setAll((ObjectNode) definitions.get(body.baseType).deepCopy());
+        } else {
+            return null;
+        }
+
+        // Breadth-first over $refs: each definition reachable from the root, once
+        Map<String, JsonNode> reachable = new TreeMap<String, JsonNode>();
+        Deque<JsonNode> pending = new ArrayDeque<JsonNode>();
+        pending.add(root);
+        while (!pending.isEmpty()) {
+            JsonNode node = pending.poll();
+            JsonNode ref = node.get("$ref");
+            if (ref != null && ref.isTextual() && ref.asText().startsWith("#/definitions/")) {
+                String name = ref.asText().substring("#/definitions/".length());
+                if (!reachable.containsKey(name) && definitions.containsKey(name)) {
+                    JsonNode definition = definitions.get(name).deepCopy();
+                    reachable.put(name, definition);
+                    pending.add(definition);
+                }
+            }
+            node.forEach(pending::add);
+        }
+
+        stripAnnotations(root);
+        if (!reachable.isEmpty()) {
+            ObjectNode defs = root.putObject("definitions");
+            for (Map.Entry<String, JsonNode> entry : reachable.entrySet()) {
+                stripAnnotations(entry.getValue());
+                defs.set(entry.getKey(), entry.getValue());
+            }
+        }
+        try {
+            return objectMapper.writeValueAsString(root);
+        } catch (Exception e) {
+            log.error("Error generating JSON Schema for body {}", body.baseName, e);
+            return null;
+        }
+    }
+
+    // Keywords whose value is a map of name -> subschema, and those whose value is
+    // a subschema or a list of subschemas; everything else (enum, const, ...) is data.
+    private static final List<String> SCHEMA_MAP_KEYWORDS = java.util.Arrays.asList(
+            "properties", "patternProperties", "definitions", "dependentSchemas");
+    private static final List<String> SUBSCHEMA_KEYWORDS = java.util.Arrays.asList(
+            "items", "additionalProperties", "not", "if", "then", "else", "contains", "propertyNames",
+            "allOf", "anyOf", "oneOf", "prefixItems");
+
+    /**
+     * Remove title and description from a schema and its subschemas, leaving
+     * property names and data values alone.
+     */
+    private static void stripAnnotations(JsonNode schema) {
+        if (schema.isArray()) {
+            schema.forEach(JsonSchemaGenerator::stripAnnotations);
+            return;
+        }
+        if (!(schema instanceof ObjectNode)) {
+            return;
+        }
+        ObjectNode node = (ObjectNode) schema;
+        node.remove("title");
+        node.remove("description");
+        for (Map.Entry<String, JsonNode> field : node.properties()) {
+            if (SCHEMA_MAP_KEYWORDS.contains(field.getKey())) {
+                field.getValue().forEach(JsonSchemaGenerator::stripAnnotations);
+            } else if (SUBSCHEMA_KEYWORDS.contains(field.getKey())) {
+                stripAnnotations(field.getValue());
+            }
+        }
+    }
+
     /**
      * Create the root JSON Schema object.
      *
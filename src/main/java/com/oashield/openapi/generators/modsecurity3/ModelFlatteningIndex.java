@@ -0,0 +1,159 @@
+package com.oashield.openapi.generators.modsecurity3;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+import org.openapitools.codegen.CodegenModel;
+import org.openapitools.codegen.CodegenProperty;
+import org.openapitools.codegen.model.ModelMap;
+
+import io.swagger.v3.oas.models.media.Schema;
+
+/**
+ * What body flattening needs to know about the spec's models, built once per
+ * generation: the model lookup, the flattened leaves of every body model and the
+ * raw spec schema behind every flattened path.
+ *
+ * A body model is flattened once per path prefix (an object body, or the
+ * elements of a root array body), however many operations take it. The
+ * memoized leaves are templates that are never rendered: each operation gets
+ * copies ({@link #body}), because decorating a property with one operation's
+ * rule ids and patterns must not show in another operation's rules. A copy is a
+ * single shallow clone; the recursion, the model lookups and the raw schema walks
+ * are not repeated.
+ *
+ * Raw schemas are looked up by flattened path ("json.tags.0.name") from a path
+ * map per root schema that reuses the entry of the parent path, so each path is
+ * walked one segment at a time and only once.
+ *
+ * Safe for operations processed in parallel: two operations flattening the same
+ * model at once compute equal leaves and keep the first.
+ */
+public class ModelFlatteningIndex {
+
+    private final UnaryOperator<Schema<?>> resolveRef;
+    private Map<String, CodegenModel> models;
+    private final Map<String, List<CodegenProperty>> bodies = new ConcurrentHashMap<String, List<CodegenProperty>>();
+    private final Map<Schema<?>, Map<String, Schema<?>>> rawPaths =
+        Collections.synchronizedMap(new IdentityHashMap<Schema<?>, Map<String, Schema<?>>>());
+
+    /**
+     * @param resolveRef resolves a raw schema's $ref to the component it names (the
+     *                   schema itself when it has none or the target is unknown)
+     */
+    public ModelFlatteningIndex(UnaryOperator<Schema<?>> resolveRef) {
+        this.resolveRef = resolveRef;
+    }
+
+    /**
+     * The models by class name and by schema name, built from the first list given;
+     * every API file of a run is processed with the same models.
+     */
+    public synchronized Map<String, CodegenModel> models(List<ModelMap> allModels) {
+        if (models == null) {
+            Map<String, CodegenModel> lookup = new HashMap<String, CodegenModel>();
+            if (allModels != null) {
+                for (ModelMap modelMap : allModels) {
+                    CodegenModel model = modelMap.getModel();
+                    if (model != null) {
+                        lookup.put(model.classname, model);
+                        lookup.put(model.name, model);
+                    }
+                }
+            }
+            models = Collections.unmodifiableMap(lookup);
+        }
+        return models;
+    }
+
+    /**
+     * An operation's copies of the flattened leaves of the body named by key,
+     * flattened now if no operation did before.
+     *
+     * @param key     the body model and path prefix; null flattens without memoizing
+     * @param flatten flattens the body into fresh leaves
+     */
+    public List<CodegenProperty> body(String key, Supplier<List<CodegenProperty>> flatten) {
+        if (key == null) {
+            return flatten.get();
+        }
+        List<CodegenProperty> templates = bodies.get(key);
+        if (templates == null) {
+            List<CodegenProperty> flattened = flatten.get();
+            templates = bodies.putIfAbsent(key, flattened);
+            if (templates == null) {
+                templates = flattened;
+            }
+        }
+        List<CodegenProperty> leaves = new ArrayList<CodegenProperty>(templates.size());
+        for (CodegenProperty template : templates) {
+            // clone() copies the vendor extensions map, the one thing decoration adds to
+            CodegenProperty leaf = template.clone();
+            if (leaf.vendorExtensions == null) {
+                leaf.vendorExtensions = new HashMap<String, Object>();
+            }
+            leaves.add(leaf);
+        }
+        return leaves;
+    }
+
+    /**
+     * Number of body models flattened so far.
+     */
+    public int flattenedBodies() {
+        return bodies.size();
+    }
+
+    /**
+     * The raw schema of a flattened body path ("json.tags.0.name") under root;
+     * "0" segments descend into array items, the first segment stands for root
+     * itself. Null when the path cannot be resolved.
+     */
+    public Schema<?> rawSchema(Schema<?> root, String flatPath) {
+        Map<String, Schema<?>> paths;
+        synchronized (rawPaths) {
+            paths = rawPaths.get(root);
+            if (paths == null) {
+                paths = new ConcurrentHashMap<String, Schema<?>>();
+                rawPaths.put(root, paths);
+            }
+        }
+        return rawSchema(root, flatPath, paths);
+    }
+
+    // ConcurrentHashMap holds no nulls; unresolvable paths are recorded as this marker
+    private static final Schema<?> UNRESOLVED = new Schema<Object>();
+
+    private Schema<?> rawSchema(Schema<?> root, String flatPath, Map<String, Schema<?>> paths) {
+        Schema<?> known = paths.get(flatPath);
+        if (known != null) {
+            return known == UNRESOLVED ? null : known;
+        }
+        Schema<?> schema;
+        int dot = flatPath.lastIndexOf('.');
+        if (dot < 0) {
+            schema = resolveRef.apply(root);
+        } else {
+            Schema<?> parent = rawSchema(root, flatPath.substring(0, dot), paths);
+            String segment = flatPath.substring(dot + 1);
+            if (parent == null) {
+                schema = null;
+            } else if ("0".equals(segment)) {
+                schema = resolveRef.apply(parent.getItems());
+            } else {
+                @SuppressWarnings("rawtypes")
+                Map<String, Schema> properties = parent.getProperties();
+                schema = properties != null ? resolveRef.apply(properties.get(segment)) : null;
+            }
+        }
+        paths.put(flatPath, schema != null ? schema : UNRESOLVED);
+        return schema;
+    }
+}
@@ -9,6 +9,7 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -21,6 +22,7 @@ import org.openapitools.codegen.CodegenProperty;
 import org.openapitools.codegen.CodegenType;
 import org.openapitools.codegen.DefaultCodegen;
 import org.openapitools.codegen.SupportingFile;
+import org.openapitools.codegen.model.ApiInfoMap;
 import org.openapitools.codegen.model.ModelMap;
 import org.openapitools.codegen.model.ModelsMap;
 import org.openapitools.codegen.model.OperationMap;
@@ -45,6 +47,8 @@ public class Modsecurity3Generator extends DefaultCodegen implements CodegenConf
     // JSON Schema generation configuration
     private boolean generateJsonSchema = true;
     public String jsonSchemaOutputFile = "schema.json";
+    // Indent schema.json for reading; minified by default, the engines do not care
+    private boolean jsonSchemaPretty = false;
 
     // Target WAF engine flavor: both accept the same SecLang core, but only
     // Coraza implements @validateSchema for JSON bodies (ModSecurity3's is XSD-only).
@@ -54,6 +58,17 @@ public class Modsecurity3Generator extends DefaultCodegen implements CodegenConf
     // rule. Coraza resolves it relative to the server process working directory, which
     // generally differs from the rules directory (e.g. "rules/schema.json").
     private String schemaRulePath = null;
+    // Coraza: one self-contained schema file per operation request body (under
+    // schemas/), referenced by that operation's @validateSchema rule instead of
+    // the combined schema.json
+    private boolean jsonSchemaPerOperation = false;
+    // Which JSON body rules carry the validation on Coraza: the per-field rules,
+    // the @validateSchema rule, or both. ModSecurity3 always uses the per-field rules.
+    private String bodyValidationStrategy = BODY_VALIDATION_BOTH;
+    private boolean perFieldBodyRules = true;
+    // Model schemas of the combined document, kept for the per-operation files
+    // only (schema.json itself is streamed one model at a time)
+    private final Map<String, ObjectNode> jsonSchemaDefinitions = new LinkedHashMap<String, ObjectNode>();
 
     // Deny behavior and logging (issue #16). denyAction is the disruptive action
     // SecDefaultAction applies when a generated rule blocks: deny (with denyStatus),
@@ -77,6 +92,92 @@ public class Modsecurity3Generator extends DefaultCodegen implements CodegenConf
     // false = emit no SecRuleEngine/SecRequestBodyAccess/SecDefaultAction, for
     // deployments whose existing ModSecurity config already sets them
     private boolean includeEngineConfig = true;
+    // How each API file routes a request to its operation block: "linear" tries
+    // every block in turn, "prefixTree" gates subtrees of operations sharing a
+    // literal path prefix so only the request's own subtree is evaluated.
+    private String routeDispatch = ROUTE_DISPATCH_LINEAR;
+    // How an operation's path rule matches: "strict" embeds every path parameter's
+    // validation pattern in the routing regex, "structural" routes on the path's
+    // shape and runs the strict regex only once path and method matched.
+    private String routeMatch = ROUTE_MATCH_STRICT;
+    // Group each API file's operations by HTTP method behind one method gate per
+    // bucket, so requests skip the path rules of every other method's operations.
+    private boolean groupByMethod = false;
+    // Route and validate URI, method, query, headers and cookies in phase 1, so
+    // unknown endpoints are rejected before any request body is buffered; only body
+    // validation stays in phase 2, reached through the tx.oas_op handoff.
+    private boolean earlyRouting = false;
+    // Per-operation body processor and body-size limit, set in phase 1 from the
+    // operation's consumes and body schema instead of globally by Content-Type.
+    // Needs earlyRouting: only phase-1 rules run before the body is read.
+    private boolean operationBodyControls = false;
+    // One rule ahead of the API files sends a path outside every operation's first
+    // path segment straight to the default deny, instead of through every block.
+    private boolean unknownEndpointPrefilter = false;
+    // Normalize the Content-Type once in phase 1 into TX:oas_ctype: the operations'
+    // media-type gates compare strings instead of matching the header, and the
+    // body parse error check runs once ahead of the API files.
+    private boolean classifyContentType = false;
+    // Run alongside the OWASP CRS: a request that passed its operation's checks
+    // goes on to the CRS instead of being allowed, with the arguments whose values
+    // were proven to hold only safe characters removed from the crsExclusionTags rules.
+    private boolean crsExclusions = false;
+    private List<String> crsExclusionTags = Arrays.asList("attack-sqli", "attack-xss");
+    // Observed request counts per operation (trafficProfile=<csv>); when set, hot
+    // operations and API files are emitted first. null = spec order.
+    private TrafficProfile trafficProfile = null;
+    // Regex cost budget: every emitted @rx pattern is analysed for backtracking
+    // hazards (PCRE, modsecurity3) and program size (RE2, coraza). regexBudgetAction
+    // decides what happens to one over budget: "warn" only logs, "rewrite" also applies
+    // language-preserving simplifications, "cap" additionally replaces spec
+    // patterns still over budget with the type-derived pattern.
+    private String regexBudgetAction = REGEX_ACTION_REWRITE;
+    private long regexStepBudget = 1_000_000L;
+    private long regexProgramBudget = 50_000L;
+    // Optional CSV cost report (one row per analysed rule pattern), relative to the output folder
+    private String regexCostReport = null;
+    private RegexCostAnalyzer regexCostAnalyzer = null;
+    // ruleId (Long, or a RuleIdSequence/StableRuleIds RuleId) followed by the report columns
+    private final List<Object[]> regexCostRows = java.util.Collections.synchronizedList(new ArrayList<Object[]>());
+    // Rule ids whose pattern became a plain string operator; their cost rows are left out of the report
+    private final java.util.Set<Object> reducedRuleIds = java.util.concurrent.ConcurrentHashMap.newKeySet();
+    // Worker threads for the operations of one API tag; 1 processes them in order
+    // on the calling thread. Output is identical either way.
+    private int parallelism = 1;
+    // How rule ids are assigned: "sequential" numbers the rules in spec order,
+    // "stable" derives each id from the rule's operation, kind and path inside a
+    // range reserved per API tag, so editing the spec only renumbers what it touches.
+    private String ruleIdStrategy = RULE_ID_SEQUENTIAL;
+    // When rule ids are taken: "reserved" gives every operation, parameter and body
+    // property a fixed block up front, "onDemand" hands out an id as the renderer
+    // writes each rule, so only emitted rules take one.
+    private String ruleIdAllocation = RULE_ID_RESERVED;
+    // Ids reserved per API tag with ruleIdStrategy=stable
+    private long stableRangeSize = StableRuleIds.TAG_RANGE_SIZE;
+    // First ids of the stable ranges already given to a tag in this run
+    private final java.util.Set<Long> stableTagRanges = new java.util.HashSet<Long>();
+    // Window of the sequential rule ids; its ranges are sized from the whole spec
+    // (ruleIdPlan) when the first API file is processed
+    private long ruleIdStart = RuleIdRangePlanner.DEFAULT_START;
+    private long ruleIdEnd = RuleIdRangePlanner.DEFAULT_END;
+    private RuleIdRangePlanner.Plan ruleIdPlan = null;
+    // Every API file's operations, grouped before the first one is processed
+    private Map<String, List<CodegenOperation>> operationGroups = null;
+    // Models, flattened body leaves and raw schema paths, built once per generation
+    private final ModelFlatteningIndex flatteningIndex = new ModelFlatteningIndex(this::resolveRawRef);
+    // Body parameters flattened by the rule id plan, taken by processOperation
+    private final Map<CodegenParameter, List<CodegenProperty>> plannedBodies =
+        java.util.Collections.synchronizedMap(new java.util.IdentityHashMap<CodegenParameter, List<CodegenProperty>>());
+    // Directory of the per-operation block cache (incremental regeneration),
+    // relative to the output folder; null = every operation is processed
+    private String incrementalCache = null;
+    private OperationCache operationCache = null;
+    // Operations processed in this run, keyed "<API name>/<operationId>", waiting
+    // for their API file to be written so their rendered block can be cached
+    private final Map<String, OperationCache.Entry> pendingCacheEntries = new HashMap<String, OperationCache.Entry>();
+    // Raw spec as a JSON tree and the operation template, read once for fingerprints
+    private com.fasterxml.jackson.databind.JsonNode rawSpecTree = null;
+    private String operationTemplateText = null;
 
     /**
      * Process the CLI options passed to the generator.
@@ -99,6 +200,11 @@ public class Modsecurity3Generator extends DefaultCodegen implements CodegenConf
             LOGGER.info("jsonSchemaOutputFile set to: {}", jsonSchemaOutputFile);
         }
 
+        if (additionalProperties.containsKey("jsonSchemaPretty")) {
+            jsonSchemaPretty = Boolean.parseBoolean(additionalProperties.get("jsonSchemaPretty").toString());
+            LOGGER.info("jsonSchemaPretty set to: {}", jsonSchemaPretty);
+        }
+
         if (additionalProperties.containsKey(ENGINE_FLAVOR)) {
             engineFlavor = additionalProperties.get(ENGINE_FLAVOR).toString();
             if (!FLAVOR_MODSECURITY3.equals(engineFlavor) && !FLAVOR_CORAZA.equals(engineFlavor)) {
@@ -124,6 +230,40 @@ public class Modsecurity3Generator extends DefaultCodegen implements CodegenConf
         }
         additionalProperties.put("schemaRulePath", schemaRulePath != null ? schemaRulePath : jsonSchemaOutputFile);
 
+        if (additionalProperties.containsKey("jsonSchemaPerOperation")) {
+            jsonSchemaPerOperation = Boolean.parseBoolean(additionalProperties.get("jsonSchemaPerOperation").toString());
+            LOGGER.info("jsonSchemaPerOperation set to: {}", jsonSchemaPerOperation);
+            if (jsonSchemaPerOperation && !FLAVOR_CORAZA.equals(engineFlavor)) {
+                LOGGER.warn("jsonSchemaPerOperation only applies to the coraza flavor; ignored");
+            }
+        }
+
+        if (additionalProperties.containsKey("bodyValidationStrategy")) {
+            bodyValidationStrategy = additionalProperties.get("bodyValidationStrategy").toString();
+            if (!BODY_VALIDATION_BOTH.equals(bodyValidationStrategy)
+                    && !BODY_VALIDATION_SCHEMA_ONLY.equals(bodyValidationStrategy)
+                    && !BODY_VALIDATION_PER_FIELD_ONLY.equals(bodyValidationStrategy)) {
+                throw new IllegalArgumentException(
+                    "Unknown bodyValidationStrategy '" + bodyValidationStrategy + "'; expected '"
+                        + BODY_VALIDATION_BOTH + "', '" + BODY_VALIDATION_SCHEMA_ONLY + "' or '"
+                        + BODY_VALIDATION_PER_FIELD_ONLY + "'");
+            }
+            LOGGER.info("bodyValidationStrategy set to: {}", bodyValidationStrategy);
+            if (!BODY_VALIDATION_BOTH.equals(bodyValidationStrategy) && !FLAVOR_CORAZA.equals(engineFlavor)) {
+                // without a JSON @validateSchema the per-field rules are the only body validation
+                LOGGER.warn("bodyValidationStrategy only applies to the coraza flavor; ignored");
+            }
+        }
+        boolean corazaStrategy = FLAVOR_CORAZA.equals(engineFlavor);
+        perFieldBodyRules = !corazaStrategy || !BODY_VALIDATION_SCHEMA_ONLY.equals(bodyValidationStrategy);
+        if (!perFieldBodyRules && !additionalProperties.containsKey("jsonSchemaPerOperation")) {
+            // the combined schema has no root, so only a per-operation schema validates a body
+            jsonSchemaPerOperation = true;
+            LOGGER.info("bodyValidationStrategy=schemaOnly enables jsonSchemaPerOperation");
+        }
+        additionalProperties.put("schemaBodyRule",
+            corazaStrategy && !BODY_VALIDATION_PER_FIELD_ONLY.equals(bodyValidationStrategy));
+
         if (additionalProperties.containsKey("denyAction")) {
             denyAction = additionalProperties.get("denyAction").toString();
             if (!Arrays.asList("deny", "drop", "pass", "redirect").contains(denyAction)) {
@@ -195,12 +335,190 @@ public class Modsecurity3Generator extends DefaultCodegen implements CodegenConf
         }
         additionalProperties.put("xsdRulePath", xsdRulePath != null ? xsdRulePath : xsdOutputFile);
 
+        if (additionalProperties.containsKey("routeDispatch")) {
+            routeDispatch = additionalProperties.get("routeDispatch").toString();
+            if (!ROUTE_DISPATCH_LINEAR.equals(routeDispatch) && !ROUTE_DISPATCH_PREFIX_TREE.equals(routeDispatch)) {
+                throw new IllegalArgumentException(
+                    "Unknown routeDispatch '" + routeDispatch + "'; expected '" + ROUTE_DISPATCH_LINEAR
+                        + "' or '" + ROUTE_DISPATCH_PREFIX_TREE + "'");
+            }
+            LOGGER.info("routeDispatch set to: {}", routeDispatch);
+        }
+
+        if (additionalProperties.containsKey("routeMatch")) {
+            routeMatch = additionalProperties.get("routeMatch").toString();
+            if (!ROUTE_MATCH_STRICT.equals(routeMatch) && !ROUTE_MATCH_STRUCTURAL.equals(routeMatch)) {
+                throw new IllegalArgumentException(
+                    "Unknown routeMatch '" + routeMatch + "'; expected '" + ROUTE_MATCH_STRICT
+                        + "' or '" + ROUTE_MATCH_STRUCTURAL + "'");
+            }
+            LOGGER.info("routeMatch set to: {}", routeMatch);
+        }
+
+        if (additionalProperties.containsKey("groupByMethod")) {
+            groupByMethod = Boolean.parseBoolean(additionalProperties.get("groupByMethod").toString());
+            LOGGER.info("groupByMethod set to: {}", groupByMethod);
+        }
+
+        if (additionalProperties.containsKey("earlyRouting")) {
+            earlyRouting = Boolean.parseBoolean(additionalProperties.get("earlyRouting").toString());
+            LOGGER.info("earlyRouting set to: {}", earlyRouting);
+        }
+        additionalProperties.put("earlyRouting", earlyRouting);
+        additionalProperties.put("routingPhase", earlyRouting ? 1 : 2);
+
+        if (additionalProperties.containsKey("operationBodyControls")) {
+            operationBodyControls = Boolean.parseBoolean(additionalProperties.get("operationBodyControls").toString());
+            LOGGER.info("operationBodyControls set to: {}", operationBodyControls);
+        }
+        if (operationBodyControls && !earlyRouting) {
+            throw new IllegalArgumentException(
+                "operationBodyControls=true requires earlyRouting=true: body controls must run in phase 1");
+        }
+        additionalProperties.put("operationBodyControls", operationBodyControls);
+
+        if (additionalProperties.containsKey("unknownEndpointPrefilter")) {
+            unknownEndpointPrefilter = Boolean.parseBoolean(additionalProperties.get("unknownEndpointPrefilter").toString());
+            LOGGER.info("unknownEndpointPrefilter set to: {}", unknownEndpointPrefilter);
+        }
+        additionalProperties.put("unknownEndpointPrefilter", unknownEndpointPrefilter);
+
+        if (additionalProperties.containsKey("classifyContentType")) {
+            classifyContentType = Boolean.parseBoolean(additionalProperties.get("classifyContentType").toString());
+            LOGGER.info("classifyContentType set to: {}", classifyContentType);
+        }
+        additionalProperties.put("classifyContentType", classifyContentType);
+
+        if (additionalProperties.containsKey("crsExclusions")) {
+            crsExclusions = Boolean.parseBoolean(additionalProperties.get("crsExclusions").toString());
+            LOGGER.info("crsExclusions set to: {}", crsExclusions);
+        }
+        additionalProperties.put("crsExclusions", crsExclusions);
+        if (additionalProperties.containsKey("crsExclusionTags")) {
+            crsExclusionTags = new ArrayList<String>();
+            for (String tag : additionalProperties.get("crsExclusionTags").toString().split(",")) {
+                if (!tag.trim().matches("[A-Za-z0-9._/-]+")) {
+                    throw new IllegalArgumentException(
+                        "Invalid crsExclusionTags entry '" + tag.trim() + "'; expected a comma-separated list of rule tags");
+                }
+                crsExclusionTags.add(tag.trim());
+            }
+            LOGGER.info("crsExclusionTags set to: {}", crsExclusionTags);
+        }
+
+        if (additionalProperties.containsKey("regexBudgetAction")) {
+            regexBudgetAction = additionalProperties.get("regexBudgetAction").toString();
+            if (!Arrays.asList(REGEX_ACTION_WARN, REGEX_ACTION_REWRITE, REGEX_ACTION_CAP).contains(regexBudgetAction)) {
+                throw new IllegalArgumentException(
+                    "Unknown regexBudgetAction '" + regexBudgetAction + "'; expected '" + REGEX_ACTION_WARN
+                        + "', '" + REGEX_ACTION_REWRITE + "' or '" + REGEX_ACTION_CAP + "'");
+            }
+            LOGGER.info("regexBudgetAction set to: {}", regexBudgetAction);
+        }
+        regexStepBudget = positiveLongOption("regexStepBudget", regexStepBudget);
+        regexProgramBudget = positiveLongOption("regexProgramBudget", regexProgramBudget);
+        if (additionalProperties.containsKey("regexCostReport")) {
+            regexCostReport = additionalProperties.get("regexCostReport").toString();
+            if (regexCostReport.isEmpty()) {
+                regexCostReport = null;
+            }
+        }
+        // rebuilt against the final flavor and budgets
+        regexCostAnalyzer = null;
+        parallelism = (int) Math.min(positiveLongOption("parallelism", parallelism), Short.MAX_VALUE);
+
+        if (additionalProperties.containsKey("ruleIdStrategy")) {
+            ruleIdStrategy = additionalProperties.get("ruleIdStrategy").toString();
+            if (!RULE_ID_SEQUENTIAL.equals(ruleIdStrategy) && !RULE_ID_STABLE.equals(ruleIdStrategy)) {
+                throw new IllegalArgumentException(
+                    "Unknown ruleIdStrategy '" + ruleIdStrategy + "'; expected '" + RULE_ID_SEQUENTIAL
+                        + "' or '" + RULE_ID_STABLE + "'");
+            }
+            LOGGER.info("ruleIdStrategy set to: {}", ruleIdStrategy);
+        }
+        if (additionalProperties.containsKey("ruleIdAllocation")) {
+            ruleIdAllocation = additionalProperties.get("ruleIdAllocation").toString();
+            if (!RULE_ID_RESERVED.equals(ruleIdAllocation) && !RULE_ID_ON_DEMAND.equals(ruleIdAllocation)) {
+                throw new IllegalArgumentException(
+                    "Unknown ruleIdAllocation '" + ruleIdAllocation + "'; expected '" + RULE_ID_RESERVED
+                        + "' or '" + RULE_ID_ON_DEMAND + "'");
+            }
+            if (RULE_ID_ON_DEMAND.equals(ruleIdAllocation) && RULE_ID_STABLE.equals(ruleIdStrategy)) {
+                throw new IllegalArgumentException(
+                    "ruleIdAllocation=onDemand numbers rules in output order; it cannot be combined with "
+                        + "ruleIdStrategy=stable");
+            }
+            LOGGER.info("ruleIdAllocation set to: {}", ruleIdAllocation);
+        }
+        ruleIdStart = positiveLongOption("ruleIdStart", ruleIdStart);
+        ruleIdEnd = positiveLongOption("ruleIdEnd", ruleIdEnd);
+        // rejects a window without room below its start or ending before it
+        new RuleIdRangePlanner(ruleIdStart, ruleIdEnd);
+        if (RULE_ID_STABLE.equals(ruleIdStrategy) && ruleIdEnd >= StableRuleIds.FIRST_ID) {
+            throw new IllegalArgumentException("ruleIdEnd " + ruleIdEnd + " overlaps the stable rule id band from "
+                + StableRuleIds.FIRST_ID);
+        }
+        stableRangeSize = positiveLongOption("stableRangeSize", stableRangeSize);
+        if (stableRangeSize > StableRuleIds.BAND_SIZE) {
+            throw new IllegalArgumentException("stableRangeSize " + stableRangeSize + " exceeds the stable rule id band of "
+                + StableRuleIds.BAND_SIZE);
+        }
+
+        if (additionalProperties.containsKey(INCREMENTAL_CACHE)) {
+            incrementalCache = additionalProperties.get(INCREMENTAL_CACHE).toString();
+            if (incrementalCache.isEmpty()) {
+                incrementalCache = null;
+            }
+        }
+        if (incrementalCache != null && RULE_ID_ON_DEMAND.equals(ruleIdAllocation)) {
+            // cached blocks are relocated by their fixed id blocks
+            throw new IllegalArgumentException("incrementalCache needs ruleIdAllocation=reserved");
+        }
+        if (incrementalCache != null) {
+            operationCache = new OperationCache(Paths.get(outputFolder).resolve(incrementalCache));
+            LOGGER.info("incrementalCache set to: {}", incrementalCache);
+        }
+
+        if (additionalProperties.containsKey("trafficProfile")) {
+            String profilePath = additionalProperties.get("trafficProfile").toString();
+            if (!profilePath.isEmpty()) {
+                trafficProfile = TrafficProfile.load(Paths.get(profilePath));
+                LOGGER.info("trafficProfile loaded from: {}", profilePath);
+            }
+        }
+
+        // Copy what raw keyword lookups read before the normalizer rewrites the spec
+        if (!openapiNormalizer().containsKey(RawSpecSnapshot.NORMALIZER_CLASS_RULE)) {
+            openapiNormalizer().put(RawSpecSnapshot.NORMALIZER_CLASS_RULE, RawSpecSnapshot.class.getName());
+        }
+
         // Real boolean for the mustache section; derived strings so templates stay flat
         additionalProperties.put("includeEngineConfig", includeEngineConfig);
         additionalProperties.put("logAction", enableLogging ? "log,auditlog" : "nolog");
         additionalProperties.put("denyActionDirective", buildDenyActionDirective());
     }
 
+    /**
+     * Parse a positive integer option, keeping the default when it is absent.
+     */
+    private long positiveLongOption(String key, long defaultValue) {
+        if (!additionalProperties.containsKey(key)) {
+            return defaultValue;
+        }
+        long value;
+        try {
+            value = Long.parseLong(additionalProperties.get(key).toString());
+        } catch (NumberFormatException e) {
+            value = -1;
+        }
+        if (value <= 0) {
+            throw new IllegalArgumentException(
+                "Invalid " + key + " '" + additionalProperties.get(key) + "'; expected a positive integer");
+        }
+        LOGGER.info("{} set to: {}", key, value);
+        return value;
+    }
+
     /**
      * The disruptive-action fragment of SecDefaultAction: deny/redirect carry a
      * status, drop/pass ignore it.
@@ -219,8 +537,17 @@ public class Modsecurity3Generator extends DefaultCodegen implements CodegenConf
   private static final Logger LOGGER = LoggerFactory.getLogger(Modsecurity3Generator.class);
 
   private static final String MODSECURITY_INDEX_KEY = "x-codegen-globalIndex";
+  // RuleIdBlock of an operation or parameter; the template reads slot N as x-codegen-ruleIds.N
+  private static final String MODSECURITY_RULE_IDS_KEY = "x-codegen-ruleIds";
   private static final int MODSECURITY_INDEX_MAX = 40;
   private static final String MODSECURITY_PATH_REGEX_KEY = "x-codegen-pathRegex";
+  // Route rule operator (@streq for template-free paths, @rx otherwise) and operand
+  private static final String MODSECURITY_PATH_OPERATOR_KEY = "x-codegen-pathOperator";
+  private static final String MODSECURITY_PATH_MATCH_KEY = "x-codegen-pathMatch";
+  // routeMatch=structural: the strict path regex, checked inside the operation block
+  private static final String MODSECURITY_PATH_VALIDATION_KEY = "x-codegen-pathValidation";
+  private static final String MODSECURITY_VALUE_OPERATOR_KEY = "x-codegen-valueOperator";
+  private static final String MODSECURITY_VALUE_MATCH_KEY = "x-codegen-valueMatch";
   private static final String VENDOR_EXTENSIONS_KEY = "vendorExtensions";
   private static final String MODSECURITY_HAS_ARRAY_MIN = "x-codegen-hasArrayMin";
   private static final String MODSECURITY_HAS_ARRAY_MAX = "x-codegen-hasArrayMax";
@@ -228,11 +555,35 @@ public class Modsecurity3Generator extends DefaultCodegen implements CodegenConf
   private static final String MODSECURITY_HAS_XML = "x-codegen-isXml";
   private static final String MODSECURITY_MODEL_PROPERTIES = "x-codegen-modelProperties";
   private static final String MODSECURITY_ARGS_ALLOWLIST = "x-codegen-argsAllowlist";
+  private static final String MODSECURITY_ARGS_ALLOWLIST_SELECTORS = "x-codegen-argsAllowlistSelectors";
+  private static final String MODSECURITY_ARGS_ALLOWLIST_REGIONS = "x-codegen-argsAllowlistRegions";
+  // Rendered block of an operation reused from the incremental cache
+  private static final String MODSECURITY_CACHED_BLOCK = "x-codegen-cachedBlock";
+  private static final String MODSECURITY_PER_FIELD_BODY_RULES = "x-codegen-perFieldBodyRules";
+  private static final String INCREMENTAL_CACHE = "incrementalCache";
 
   private static final String ENGINE_FLAVOR = "engineFlavor";
   private static final String FLAVOR_MODSECURITY3 = "modsecurity3";
   private static final String FLAVOR_CORAZA = "coraza";
 
+  private static final String BODY_VALIDATION_BOTH = "both";
+  private static final String BODY_VALIDATION_SCHEMA_ONLY = "schemaOnly";
+  private static final String BODY_VALIDATION_PER_FIELD_ONLY = "perFieldOnly";
+
+  private static final String ROUTE_DISPATCH_LINEAR = "linear";
+  private static final String ROUTE_DISPATCH_PREFIX_TREE = "prefixTree";
+  private static final String ROUTE_MATCH_STRICT = "strict";
+  private static final String ROUTE_MATCH_STRUCTURAL = "structural";
+
+  private static final String RULE_ID_SEQUENTIAL = "sequential";
+  private static final String RULE_ID_STABLE = "stable";
+  private static final String RULE_ID_RESERVED = "reserved";
+  private static final String RULE_ID_ON_DEMAND = "onDemand";
+
+  private static final String REGEX_ACTION_WARN = "warn";
+  private static final String REGEX_ACTION_REWRITE = "rewrite";
+  private static final String REGEX_ACTION_CAP = "cap";
+
   // Media-type classification keys set on each consume entry (exactly one is "true")
   static final String CONSUME_JSON = "isJson";
   static final String CONSUME_XML = "isXml";
@@ -244,8 +595,16 @@ public class Modsecurity3Generator extends DefaultCodegen implements CodegenConf
   private static final String JSON_ARGS_PREFIX = "json.";
   // ModSecurity3 keys array elements "json.items.array_0", Coraza "json.items.0";
   // this fragment matches either so generated selectors work on both engines.
+  // Directory, relative to the output folder, of the per-operation schema files
+  static final String OPERATION_SCHEMA_DIR = "schemas";
+  // Spec extension overriding the derived body-size limit of an operation
+  static final String MAX_BODY_BYTES_EXTENSION = "x-oashield-maxBodyBytes";
+  // SecRequestBodyLimit default of both engines; a derived limit above it would
+  // raise the deployment's limit instead of tightening it
+  private static final long DEFAULT_BODY_LIMIT = 13_107_200L;
   private static final String ARRAY_INDEX_REGEX = "(?:array_)?\\d{1,9}";
-  private static final String PROP_INDEX_KEY = "x-codegen-propIndex";
+  // RuleIdBlock of a flattened body property, read as x-codegen-propRuleIds.N
+  private static final String PROP_RULE_IDS_KEY = "x-codegen-propRuleIds";
   private static final int PROP_INDEX_MAX = 12;
   private static final int MAX_FLATTEN_DEPTH = 5;
 
@@ -412,6 +771,225 @@ public class Modsecurity3Generator extends DefaultCodegen implements CodegenConf
     patternString.contains("(?<!");
   }
 
+  private RegexCostAnalyzer regexCostAnalyzer() {
+    if (regexCostAnalyzer == null) {
+      regexCostAnalyzer = new RegexCostAnalyzer(regexStepBudget, regexProgramBudget,
+          FLAVOR_CORAZA.equals(engineFlavor));
+    }
+    return regexCostAnalyzer;
+  }
+
+  /**
+   * Analyse a pattern; one over budget is rewritten (unless regexBudgetAction=warn)
+   * so patterns within budget are emitted exactly as generated.
+   */
+  private RegexCostAnalyzer.Result budgetedAnalysis(String pattern) {
+    RegexCostAnalyzer.Result result = regexCostAnalyzer().analyze(pattern);
+    if (!REGEX_ACTION_WARN.equals(regexBudgetAction) && regexCostAnalyzer().overBudget(result)) {
+      RegexCostAnalyzer.Result rewritten = regexCostAnalyzer().rewrite(pattern);
+      if (!rewritten.pattern.equals(pattern)) {
+        LOGGER.info("Rewrote over-budget pattern {} as {}", pattern, rewritten.pattern);
+      }
+      return rewritten;
+    }
+    return result;
+  }
+
+  /**
+   * Vet a spec-supplied pattern before it is used: lookarounds are rejected, an
+   * over-budget pattern is rewritten and, with regexBudgetAction=cap, a pattern
+   * still over budget is rejected so the caller falls back to the type-derived
+   * pattern.
+   *
+   * @return the pattern to use, or null to fall back
+   */
+  String vetSpecPattern(String pattern) {
+    if (pattern == null || pattern.isEmpty()) {
+      return pattern;
+    }
+    if (isInvalidPattern(pattern)) {
+      LOGGER.warn("Invalid pattern string: {}", pattern);
+      return null;
+    }
+    if (REGEX_ACTION_WARN.equals(regexBudgetAction)) {
+      return pattern;
+    }
+    RegexCostAnalyzer.Result result = budgetedAnalysis(pattern);
+    if (REGEX_ACTION_CAP.equals(regexBudgetAction) && regexCostAnalyzer().overBudget(result)) {
+      LOGGER.warn("Pattern {} exceeds the regex budget ({}); using the type-derived pattern instead", pattern, result);
+      return null;
+    }
+    return result.pattern;
+  }
+
+  /**
+   * Budget check of a pattern about to be emitted into rule ruleId: rewrites it
+   * when over budget (unless regexBudgetAction=warn), warns when it is still over
+   * budget and records the row for the regex cost report.
+   *
+   * @return the pattern to emit
+   */
+  String reviewPattern(String pattern, Object ruleId, String target) {
+    if (pattern == null || pattern.isEmpty()) {
+      return pattern;
+    }
+    RegexCostAnalyzer analyzer = regexCostAnalyzer();
+    RegexCostAnalyzer.Result result = budgetedAnalysis(pattern);
+    boolean overBudget = analyzer.overBudget(result);
+    if (overBudget) {
+      LOGGER.warn("Rule {} ({}): pattern {} exceeds the regex budget: {}", ruleId, target, result.pattern, result);
+    }
+    regexCostRows.add(new Object[] {
+        ruleId,
+        target,
+        result.parsed ? result.complexity.name().toLowerCase(java.util.Locale.ROOT) : "unparsed",
+        String.valueOf(result.worstCaseSteps),
+        String.valueOf(result.programSize),
+        String.valueOf(result.re2Compatible),
+        String.valueOf(overBudget),
+        String.join("; ", result.hazards),
+        result.pattern});
+    return result.pattern;
+  }
+
+  /**
+   * Whether the operation's JSON bodies get the per-field rules: always, unless
+   * bodyValidationStrategy=schemaOnly and the @validateSchema rule references a
+   * per-operation schema whose root is the body. The combined schema only holds
+   * definitions and accepts any body, so it never replaces them.
+   */
+  private static boolean perFieldBodyRules(CodegenOperation co) {
+    return !Boolean.FALSE.equals(co.vendorExtensions.get(MODSECURITY_PER_FIELD_BODY_RULES));
+  }
+
+  /**
+   * Review the value patterns a decorated JSON body property emits; none are
+   * emitted when @validateSchema alone validates the body.
+   */
+  @SuppressWarnings("unchecked")
+  private void reviewBodyPatterns(CodegenOperation co, CodegenProperty prop) {
+    if (!perFieldBodyRules(co)) {
+      return;
+    }
+    Object pattern = prop.vendorExtensions.get("x-oashield-pattern");
+    if (pattern != null) {
+      prop.vendorExtensions.put("x-oashield-pattern", reviewPattern(pattern.toString(),
+          ruleId(prop.vendorExtensions, PROP_RULE_IDS_KEY, 2), "body property " + prop.baseName));
+    }
+    List<Map<String, Object>> ppRules = (List<Map<String, Object>>) prop.vendorExtensions.get("x-oashield-patternProps");
+    if (ppRules != null) {
+      for (Map<String, Object> rule : ppRules) {
+        rule.put("valuePattern", reviewPattern((String) rule.get("valuePattern"), rule.get("ruleId"),
+            "patternProperties value under " + prop.baseName));
+      }
+    }
+  }
+
+  /**
+   * Operator strength reduction over the operation's value rules, run once their
+   * patterns are final: each gets an operator and operand for the template, and
+   * a pattern admitting a single string becomes @streq (see
+   * {@link OperatorStrengthReduction}). Rules left on @rx render exactly as before.
+   */
+  @SuppressWarnings("unchecked")
+  private void reduceOperatorStrength(CodegenOperation co) {
+    for (CodegenParameter param : co.allParams) {
+      if (param.pattern != null && (param.isQueryParam || param.isFormParam || param.isHeaderParam
+          || param.isCookieParam)) {
+        int valueRuleSlot = param.isQueryParam ? 6 : param.isFormParam ? 10 : param.isHeaderParam ? 18 : 20;
+        reduceOperatorStrength(param.vendorExtensions, param.pattern,
+            ruleId(param.vendorExtensions, MODSECURITY_RULE_IDS_KEY, valueRuleSlot));
+      }
+      List<CodegenProperty> props = (List<CodegenProperty>) param.vendorExtensions.get(MODSECURITY_MODEL_PROPERTIES);
+      if (props == null) {
+        continue;
+      }
+      for (CodegenProperty prop : props) {
+        Object pattern = prop.vendorExtensions.get("x-oashield-pattern");
+        if (pattern != null) {
+          reduceOperatorStrength(prop.vendorExtensions, pattern.toString(),
+              ruleId(prop.vendorExtensions, PROP_RULE_IDS_KEY, 2));
+        }
+        List<Map<String, Object>> ppRules =
+            (List<Map<String, Object>>) prop.vendorExtensions.get("x-oashield-patternProps");
+        if (ppRules != null) {
+          for (Map<String, Object> rule : ppRules) {
+            reduceOperatorStrength(rule, (String) rule.get("valuePattern"), rule.get("ruleId"));
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Rule id of a slot of the RuleIdBlock stored under key, for the cost report and
+   * the operator strength reduction; it never hands out an on-demand id.
+   */
+  private static Number ruleId(Map<String, Object> vendorExtensions, String key, int slot) {
+    return ((RuleIdBlock) vendorExtensions.get(key)).id(slot);
+  }
+
+  private void reduceOperatorStrength(Map<String, Object> target, String pattern, Object ruleId) {
+    String operator = OperatorStrengthReduction.operator(pattern);
+    target.put(MODSECURITY_VALUE_OPERATOR_KEY, operator);
+    target.put(MODSECURITY_VALUE_MATCH_KEY, OperatorStrengthReduction.operand(pattern));
+    if (!OperatorStrengthReduction.RX.equals(operator)) {
+      // no regex is compiled for this rule any more; its cost row is dropped when reported
+      reducedRuleIds.add(ruleId);
+    }
+  }
+
+  /**
+   * Write the regex cost report: one CSV row per analysed rule pattern, most
+   * expensive first.
+   */
+  private void writeRegexCostReport() {
+    List<String[]> rows = new ArrayList<String[]>();
+    synchronized (regexCostRows) {
+      for (Object[] row : regexCostRows) {
+        if (row[0] instanceof Number && !RuleIdBlock.isKnown((Number) row[0])) {
+          // an on-demand rule the template did not write
+          continue;
+        }
+        if (reducedRuleIds.contains(row[0])) {
+          continue;
+        }
+        String[] cells = new String[row.length];
+        for (int i = 0; i < row.length; i++) {
+          cells[i] = String.valueOf(row[i]);
+        }
+        rows.add(cells);
+      }
+    }
+    // a total order: rows of parallel runs are recorded in no particular order
+    rows.sort((a, b) -> {
+      int order = Long.compare(Long.parseLong(b[3]), Long.parseLong(a[3]));
+      for (int i = 0; order == 0 && i < a.length; i++) {
+        order = a[i].compareTo(b[i]);
+      }
+      return order;
+    });
+    StringBuilder csv = new StringBuilder(
+        "ruleId,target,growth,worstCaseSteps,re2ProgramSize,re2Compatible,overBudget,hazards,pattern\n");
+    for (String[] row : rows) {
+      for (int i = 0; i < row.length; i++) {
+        csv.append(i > 0 ? "," : "").append('"').append(row[i].replace("\"", "\"\"")).append('"');
+      }
+      csv.append('\n');
+    }
+    try {
+      File outputDir = new File(outputFolder);
+      if (!outputDir.exists()) {
+        outputDir.mkdirs();
+      }
+      File reportFile = new File(outputDir, regexCostReport);
+      writeOutputFile(reportFile, csv.toString());
+      LOGGER.info("Regex cost report written: {}", reportFile.getAbsolutePath());
+    } catch (IOException e) {
+      LOGGER.error("Error writing regex cost report", e);
+    }
+  }
+
   /**
    * Provides an opportunity to inspect and modify operation data before the code
    * is generated.
@@ -429,311 +1007,875 @@ public class Modsecurity3Generator extends DefaultCodegen implements CodegenConf
     String basePathRegex = buildBasePathRegex();
 
     // $ref properties carry no vars of their own; resolve them via the model list
-    Map<String, CodegenModel> modelLookup = new HashMap<String, CodegenModel>();
-    if (allModels != null) {
-      for (ModelMap modelMap : allModels) {
-        CodegenModel model = modelMap.getModel();
-        if (model != null) {
-          modelLookup.put(model.classname, model);
-          modelLookup.put(model.name, model);
-        }
-      }
-    }
-
-    // iterate over the operation and perhaps modify something
-    for (CodegenOperation co : opList) {
-      for (int i=1; i<=MODSECURITY_INDEX_MAX;i++) {
-        co.vendorExtensions.put(MODSECURITY_INDEX_KEY + "_" + i, globalIndex++);
-      }
-      LOGGER.debug("Processing operation: {}", co.operationId);
-
-      boolean includeRequestJSON = false;
-      boolean includeRequestXML = false;
-
-      if(co.hasConsumes) {
-        LOGGER.debug("Operation: {} Consumes: {}", co.baseName, co.consumes);
-        int consumeIndex = 0;
-        for (Map<String, String> consume : co.consumes) {
-          String mediaType = consume.get("mediaType");
-          // Canonical single classification key per consume entry. DefaultCodegen's
-          // isJson/isXml string flags are replaced: the string "false" is truthy in
-          // mustache sections, and unclassified media types previously fell through
-          // to an unconditional block (form/multipart operations could never succeed).
-          String classification = classifyMediaType(mediaType);
-          consume.remove("isJson");
-          consume.remove("isXml");
-          consume.put(classification, "true");
-          includeRequestJSON |= CONSUME_JSON.equals(classification);
-          includeRequestXML |= CONSUME_XML.equals(classification);
-
-          // Unique marker suffix and rule ids per consume entry: two consumes of the
-          // same class would otherwise emit duplicate SecMarker names and rule ids.
-          consume.put("consumeIndex", String.valueOf(consumeIndex++));
-          consume.put("oasGateId", String.valueOf(globalParamIndex++));
-          consume.put("oasBodyErrId", String.valueOf(globalParamIndex++));
-          consume.put("oasSchemaId", String.valueOf(globalParamIndex++));
-          consume.put("oasPassId", String.valueOf(globalParamIndex++));
-
-          // mediaType can contain regex metacharacters (e.g. application/vnd.api+json);
-          // '*' wildcards (application/*) match any token in that position
-          if (mediaType != null) {
-            consume.put("mediaTypeRegex", escapeRegexLiteral(mediaType).replace("\\*", "[^/\\s]+"));
-          }
+    Map<String, CodegenModel> modelLookup = flatteningIndex.models(allModels);
+
+    // Sequential rule id ranges are sized from the whole spec before the first id
+    // is handed out.
+    if (ruleIdPlan == null) {
+      ruleIdPlan = planRuleIds(opList, modelLookup);
+      globalIndex = ruleIdPlan.operationBase;
+      globalParamIndex = ruleIdPlan.parameterBase;
+    }
+
+    // Emission order and dispatch gates: traffic order first, then method buckets,
+    // then the prefix tree inside each bucket. Ordering happens before rule ids are
+    // handed out.
+    String basePath = resolveBasePath();
+    final StableRuleIds stableIds = RULE_ID_STABLE.equals(ruleIdStrategy)
+        ? new StableRuleIds(ops.getClassname(), stableTagRanges, stableRangeSize)
+        : null;
+    if (trafficProfile != null) {
+      final TrafficProfile profile = trafficProfile;
+      opList = TrafficProfile.order(opList, co -> profile.weight(co, basePath), TrafficProfile::routePrecedence);
+      ops.setOperation(opList);
+    }
+    boolean prefixTree = ROUTE_DISPATCH_PREFIX_TREE.equals(routeDispatch);
+    if (prefixTree && basePath.contains("{")) {
+      // @beginsWith gates need a literal prefix from the start of the path
+      LOGGER.warn("routeDispatch=prefixTree needs a literal base path, got '{}'; using linear dispatch", basePath);
+      prefixTree = false;
+    }
+    if (prefixTree || groupByMethod) {
+      List<List<CodegenOperation>> buckets = groupByMethod
+          ? RouteDispatchPlanner.methodBuckets(opList)
+          : java.util.Collections.singletonList(opList);
+      List<CodegenOperation> ordered = new ArrayList<CodegenOperation>(opList.size());
+      for (List<CodegenOperation> bucket : buckets) {
+        if (prefixTree && stableIds != null) {
+          // the same prefix can be gated once per method bucket
+          String gateKey = "route:" + (groupByMethod ? bucket.get(0).httpMethod : "") + ":";
+          bucket = RouteDispatchPlanner.plan(bucket, basePath, prefix -> stableIds.next(gateKey + prefix));
+        } else if (prefixTree) {
+          bucket = RouteDispatchPlanner.plan(bucket, basePath, () -> globalParamIndex++);
         }
-
-        // OAS3 requestBody.required defaults to FALSE: a bodiless request to an
-        // operation with an optional body must skip the body checks instead of
-        // being blocked by the content-type fallthrough.
-        if (!isRequestBodyRequired(co)) {
-          co.vendorExtensions.put("x-codegen-optionalBody", true);
+        if (groupByMethod) {
+          RouteDispatchPlanner.markMethodBucket(bucket);
         }
+        ordered.addAll(bucket);
       }
-
-      // Add vendor extension for JSON and XML
-      co.vendorExtensions.put(MODSECURITY_HAS_JSON, includeRequestJSON);
-      co.vendorExtensions.put(MODSECURITY_HAS_XML, includeRequestXML);
-      co.vendorExtensions.put("validateBodySchema", validateBodySchema);
-
-      // Names allowed to appear in ARGS_NAMES for this operation (query + form +
-      // flattened JSON body fields); anything else is denied by the generated allowlist rule.
-      java.util.Set<String> argsAllowlist = new java.util.LinkedHashSet<String>();
-
-      // Loop through parameters and print information about them
-      for (CodegenParameter param : co.allParams) {
-
-        // We don't want to use a different method for required arrays
-        if (param.required && param.isArray && (param.getMinItems() == null || param.getMinItems() == 0)) {
-          LOGGER.debug("Required array parameter: {}", param.baseName);
-          param.setMinItems(1);
+      opList = ordered;
+      ops.setOperation(opList);
+    }
+
+    // Incremental regeneration: an operation rendered before from the same inputs
+    // reuses its cached block instead of being processed again.
+    String apiName = ops.getClassname();
+    OperationCache.Entry[] cached = new OperationCache.Entry[opList.size()];
+    String[] fingerprints = new String[opList.size()];
+    if (operationCache != null) {
+      for (int k = 0; k < opList.size(); k++) {
+        fingerprints[k] = operationFingerprint(opList.get(k), basePath);
+        cached[k] = operationCache.load(apiName, opList.get(k).operationId, fingerprints[k]);
+        if (cached[k] != null && (cached[k].keyedIds != null) != (stableIds != null)) {
+          cached[k] = null;
         }
+      }
+    }
 
-        if (param.isModel) {
-          LOGGER.debug("Model parameter: {}", param.baseName);
-          // We need to flatten the model into something that can be used in the template
-          // This will be a new vendor extension with an array of properties that represent
-          // the model. Both engines flatten JSON bodies into ARGS as "json.<path>".
-          // Composed (allOf/oneOf/anyOf) body models carry no vars on the parameter
-          // itself; resolve them via the model list.
-          CodegenModel bodyModel = modelLookup.get(param.baseType);
-          if (bodyModel == null) {
-            bodyModel = modelLookup.get(param.dataType);
+    // Sequential ids: operation-range ids are a fixed 40 per operation in emission
+    // order; the parameter range is drawn per operation (RuleIdSequence) and laid
+    // out in the same order, so both modes assign exactly the same ids. Stable ids
+    // are drawn by key and resolved once every operation of the tag is done; their
+    // blocks claim an id per slot as the tag is rendered. On
+    // demand, the blocks take their ids from the parameter range as the tag is
+    // rendered, after the single ids drawn here.
+    final boolean onDemand = RULE_ID_ON_DEMAND.equals(ruleIdAllocation);
+    long firstIndex = globalIndex;
+    if (stableIds == null && !onDemand) {
+      globalIndex += (long) MODSECURITY_INDEX_MAX * opList.size();
+    }
+    RuleIdSequence[] sequences = new RuleIdSequence[opList.size()];
+    boolean[] processed = new boolean[opList.size()];
+    if (parallelism > 1 && opList.size() > 1) {
+      // lazily built shared state must exist before the workers race for it
+      regexCostAnalyzer();
+      List<java.util.concurrent.ForkJoinTask<?>> tasks = new ArrayList<java.util.concurrent.ForkJoinTask<?>>();
+      java.util.concurrent.ForkJoinPool pool = new java.util.concurrent.ForkJoinPool(parallelism);
+      try {
+        for (int k = 0; k < opList.size(); k++) {
+          if (cached[k] != null) {
+            continue;
           }
-          List<CodegenProperty> rootVars = param.vars;
-          if ((rootVars == null || rootVars.isEmpty()) && bodyModel != null) {
-            rootVars = bodyModel.vars;
-          }
-          List<CodegenProperty> flattenedProperties = new ArrayList<CodegenProperty>();
-          if (rootVars != null) {
-            for (CodegenProperty prop : rootVars) {
-              List<CodegenProperty> properties = flattenModel(prop, JSON_ARGS_PREFIX, 1, modelLookup);
-              flattenedProperties.addAll(properties);
-            }
-          }
-          if (bodyModel != null && unionMembers(bodyModel.getComposedSchemas()) != null) {
-            // oneOf/anyOf body: vars is the union of all branches, only one of which
-            // must be present, so no property can be individually required
-            for (CodegenProperty prop : flattenedProperties) {
-              prop.required = false;
-            }
+          CodegenOperation co = opList.get(k);
+          final RuleIds operationIds;
+          final RuleIds ids;
+          if (stableIds != null) {
+            operationIds = stableIds.forOperation(co.operationId);
+            ids = operationIds;
+          } else if (onDemand) {
+            sequences[k] = new RuleIdSequence();
+            operationIds = new OnDemandRuleIds(null, this::nextRenderedRuleId);
+            ids = new OnDemandRuleIds(sequences[k], this::nextRenderedRuleId);
+          } else {
+            operationIds = new RuleIdSequence(firstIndex + (long) MODSECURITY_INDEX_MAX * k);
+            sequences[k] = new RuleIdSequence();
+            ids = sequences[k];
           }
+          processed[k] = true;
+          tasks.add(pool.submit(() -> processOperation(co, operationIds, ids, basePath, basePathRegex, modelLookup)));
+        }
+        for (java.util.concurrent.ForkJoinTask<?> task : tasks) {
+          task.join();
+        }
+      } finally {
+        pool.shutdownNow();
+      }
+    }
+    for (int k = 0; k < opList.size(); k++) {
+      CodegenOperation co = opList.get(k);
+      long operationIndex = firstIndex + (long) MODSECURITY_INDEX_MAX * k;
+      if (cached[k] != null && stableIds != null) {
+        // its keys still take their ids; the block is reused once they are resolved
+        stableIds.reserve(co.operationId, cached[k].keyedIds.keySet());
+        continue;
+      }
+      if (cached[k] != null) {
+        OperationCache.Entry entry = cached[k];
+        long paramBase = globalParamIndex;
+        reuseCachedOperation(co, entry, id -> entry.relocate(id, operationIndex, paramBase, MODSECURITY_INDEX_MAX));
+        globalParamIndex += entry.paramIds;
+        continue;
+      }
+      if (stableIds != null) {
+        if (!processed[k]) {
+          RuleIds ids = stableIds.forOperation(co.operationId);
+          processOperation(co, ids, ids, basePath, basePathRegex, modelLookup);
+        }
+        continue;
+      }
+      if (sequences[k] == null && onDemand) {
+        sequences[k] = new RuleIdSequence(globalParamIndex);
+        processOperation(co, new OnDemandRuleIds(null, this::nextRenderedRuleId),
+            new OnDemandRuleIds(sequences[k], this::nextRenderedRuleId), basePath, basePathRegex, modelLookup);
+      } else if (sequences[k] == null) {
+        sequences[k] = new RuleIdSequence(globalParamIndex);
+        processOperation(co, new RuleIdSequence(operationIndex), sequences[k], basePath, basePathRegex,
+            modelLookup);
+      } else {
+        sequences[k].resolve(globalParamIndex);
+      }
+      if (operationCache != null) {
+        pendingCacheEntries.put(apiName + "/" + co.operationId, new OperationCache.Entry(fingerprints[k],
+            operationIndex, globalParamIndex, sequences[k].size(), null, null));
+      }
+      globalParamIndex += sequences[k].size();
+    }
+    if (stableIds != null) {
+      stableIds.resolve();
+      for (int k = 0; k < opList.size(); k++) {
+        CodegenOperation co = opList.get(k);
+        if (cached[k] != null) {
+          // a key that now resolves to another id (a new colliding key took it) moves
+          reuseCachedOperation(co, cached[k], stableIds.reuse(co.operationId, cached[k]));
+        } else if (operationCache != null) {
+          pendingCacheEntries.put(apiName + "/" + co.operationId, new OperationCache.Entry(fingerprints[k],
+              stableIds.ids(co.operationId), stableIds.renderedIds(co.operationId)));
+        }
+      }
+    }
 
-          // Raw-spec keyword pass: const and patternProperties are not surfaced by
-          // the codegen abstractions, so resolve them from the parsed spec schema
-          // along each flattened path.
-          io.swagger.v3.oas.models.media.Schema<?> rawRoot = rawSchemaByName(param.baseType);
-          if (rawRoot == null) {
-            rawRoot = rawSchemaByName(param.dataType);
-          }
-          if (rawRoot != null) {
-            for (CodegenProperty prop : flattenedProperties) {
-              io.swagger.v3.oas.models.media.Schema<?> rawProp = rawSchemaForPath(rawRoot, prop.baseName);
-              if (rawProp == null) {
-                continue;
-              }
-              if (rawProp.getConst() != null) {
-                prop.pattern = "^" + escapeRegexLiteral(String.valueOf(rawProp.getConst())) + "$";
-                // const admits exactly one value — never null, even when codegen
-                // inferred nullability from a type-less schema
-                prop.isNullable = false;
-              }
-              if (rawProp.getPatternProperties() != null && (prop.isMap || prop.isFreeFormObject)) {
-                List<Map<String, Object>> ppRules = new ArrayList<Map<String, Object>>();
-                for (Map.Entry<String, io.swagger.v3.oas.models.media.Schema> pp
-                    : rawProp.getPatternProperties().entrySet()) {
-                  Map<String, Object> rule = new HashMap<String, Object>();
-                  rule.put("nameRegex", patternPropertiesNameRegex(pp.getKey()));
-                  rule.put("valuePattern", rawValuePattern(pp.getValue()));
-                  ppRules.add(rule);
-                }
-                prop.vendorExtensions.put("x-oashield-patternProps", ppRules);
-              }
-            }
+    Map<String, Object> vendorExtensions = new HashMap<String, Object>();
+    vendorExtensions.put(MODSECURITY_INDEX_KEY, globalIndex++);
+    results.put(VENDOR_EXTENSIONS_KEY, vendorExtensions);
+    if (stableIds == null) {
+      if (globalIndex > ruleIdPlan.parameterBase) {
+        throw new IllegalStateException("Operation rule ids of " + apiName + " run into the parameter range at "
+            + ruleIdPlan.parameterBase + "\n" + ruleIdPlan.report());
+      }
+      ruleIdPlan.checkParameterEnd(globalParamIndex, apiName);
+    }
+
+    return results;
+  }
+
+  /**
+   * Next id of a rule written by the renderer (ruleIdAllocation=onDemand); the
+   * API files are rendered one at a time, after their operations are processed.
+   */
+  private long nextRenderedRuleId() {
+    ruleIdPlan.checkParameterEnd(globalParamIndex + 1, "rendered rules");
+    return globalParamIndex++;
+  }
+
+  /**
+   * Records the grouping of every operation into API files; all of them are
+   * grouped before the first file is processed, so the rule id plan sees the
+   * whole spec.
+   */
+  @Override
+  public void addOperationToGroup(String tag, String resourcePath, io.swagger.v3.oas.models.Operation operation,
+      CodegenOperation co, Map<String, List<CodegenOperation>> operations) {
+    super.addOperationToGroup(tag, resourcePath, operation, co, operations);
+    if (operationGroups == null) {
+      operationGroups = operations;
+    }
+  }
 
-            // dependentRequired at the body root: presence of the trigger property
-            // demands the dependent property (chained count rules on both engines)
-            io.swagger.v3.oas.models.media.Schema<?> resolvedRoot = resolveRawRef(rawRoot);
-            if (resolvedRoot.getDependentRequired() != null) {
-              List<Map<String, Object>> depRules = new ArrayList<Map<String, Object>>();
-              for (Map.Entry<String, List<String>> dep : resolvedRoot.getDependentRequired().entrySet()) {
-                for (String requiredName : dep.getValue()) {
-                  Map<String, Object> rule = new HashMap<String, Object>();
-                  rule.put("trigger", JSON_ARGS_PREFIX + dep.getKey());
-                  rule.put("dependent", JSON_ARGS_PREFIX + requiredName);
-                  rule.put("depRuleId", globalParamIndex++);
-                  depRules.add(rule);
+  /**
+   * Size the sequential rule id ranges from every operation of the spec and fail
+   * fast when they do not fit the window. The body parameters flattened to count
+   * their properties are reused when their operation is processed. Allowlist
+   * region rules depend on the final patterns and are checked as they are drawn.
+   *
+   * @param current the operations of the API file being processed, for callers
+   *                that did not group the spec's operations
+   */
+  private RuleIdRangePlanner.Plan planRuleIds(List<CodegenOperation> current, Map<String, CodegenModel> modelLookup) {
+    RuleIdRangePlanner planner = new RuleIdRangePlanner(ruleIdStart, ruleIdEnd);
+    if (RULE_ID_STABLE.equals(ruleIdStrategy)) {
+      // only the mainconfig rules take their ids from the window
+      return planner.plan();
+    }
+    java.util.Collection<List<CodegenOperation>> groups = operationGroups != null && !operationGroups.isEmpty()
+        ? operationGroups.values()
+        : java.util.Collections.singletonList(current);
+    long operations = 0;
+    long parameters = 0;
+    long consumes = 0;
+    long properties = 0;
+    long keywordRules = 0;
+    long crsBodyExclusions = 0;
+    for (List<CodegenOperation> group : groups) {
+      for (CodegenOperation co : group) {
+        operations++;
+        consumes += co.consumes != null ? co.consumes.size() : 0;
+        if (co.allParams == null) {
+          continue;
+        }
+        parameters += co.allParams.size();
+        for (CodegenParameter param : co.allParams) {
+          List<CodegenProperty> flattened = flattenBody(param, modelLookup);
+          if (flattened != null) {
+            plannedBodies.put(param, flattened);
+            properties += flattened.size();
+            keywordRules += keywordRuleCount(param, flattened);
+            if (crsExclusions && co.consumes != null) {
+              for (Map<String, String> consume : co.consumes) {
+                if (CONSUME_JSON.equals(classifyMediaType(consume.get("mediaType")))) {
+                  crsBodyExclusions += flattened.size();
                 }
               }
-              param.vendorExtensions.put("x-oashield-dependentRules", depRules);
             }
           }
+        }
+      }
+    }
+    if (RULE_ID_ON_DEMAND.equals(ruleIdAllocation)) {
+      // the blocks draw from the parameter range as they are rendered, checked by
+      // nextRenderedRuleId; a full block is the most a rule set can take
+      planner.operationRange("API files", groups.size(), 1)
+          .parameterRangeAtMost("operations", operations, MODSECURITY_INDEX_MAX)
+          .parameterRangeAtMost("parameters", parameters, MODSECURITY_INDEX_MAX)
+          .parameterRangeAtMost("body properties", properties, PROP_INDEX_MAX);
+    } else {
+      planner.operationRange("operations", operations, MODSECURITY_INDEX_MAX)
+          .operationRange("API files", groups.size(), 1)
+          .parameterRange("parameters", parameters, MODSECURITY_INDEX_MAX)
+          .parameterRange("body properties", properties, PROP_INDEX_MAX);
+    }
+    // gate, body error, schema and pass, plus body limit and body control
+    planner.parameterRange("consumed media types", consumes, 6)
+        .parameterRange("patternProperties/dependentRequired", keywordRules, 1)
+        // the exclusion and its line-break check
+        .parameterRange("CRS exclusions of JSON body properties", crsBodyExclusions, 2)
+        .parameterRange("route gates", ROUTE_DISPATCH_PREFIX_TREE.equals(routeDispatch) ? operations : 0, 1);
+    RuleIdRangePlanner.Plan plan = planner.plan();
+    LOGGER.debug("{}", plan.report());
+    return plan;
+  }
 
-          for (CodegenProperty prop : flattenedProperties) {
-            decorateBodyProperty(prop, argsAllowlist);
-          }
+  /**
+   * Rules a model body gets from raw spec keywords: one per patternProperties
+   * entry of a map property and one per dependentRequired pair at its root.
+   */
+  private int keywordRuleCount(CodegenParameter param, List<CodegenProperty> flattened) {
+    if (!param.isModel) {
+      return 0;
+    }
+    io.swagger.v3.oas.models.media.Schema<?> rawRoot = rawSchemaByName(param.baseType);
+    if (rawRoot == null) {
+      rawRoot = rawSchemaByName(param.dataType);
+    }
+    if (rawRoot == null) {
+      return 0;
+    }
+    int rules = 0;
+    for (CodegenProperty prop : flattened) {
+      if (prop.isMap || prop.isFreeFormObject) {
+        io.swagger.v3.oas.models.media.Schema<?> rawProp = rawSchemaForPath(rawRoot, prop.baseName);
+        if (rawProp != null && rawProp.getPatternProperties() != null) {
+          rules += rawProp.getPatternProperties().size();
+        }
+      }
+    }
+    io.swagger.v3.oas.models.media.Schema<?> resolvedRoot = resolveRawRef(rawRoot);
+    if (resolvedRoot.getDependentRequired() != null) {
+      for (List<String> dependents : resolvedRoot.getDependentRequired().values()) {
+        rules += dependents.size();
+      }
+    }
+    return rules;
+  }
+
+  /**
+   * Set up an operation whose block comes from the incremental cache: its
+   * operation-range ids (dispatch gates outside the block use them), the block
+   * relocated to its current ids, and its regex cost rows.
+   */
+  private void reuseCachedOperation(CodegenOperation co, OperationCache.Entry entry,
+      java.util.function.LongUnaryOperator move) {
+    LOGGER.debug("Reusing cached block of operation: {}", co.operationId);
+    Number[] operationIds = new Number[MODSECURITY_INDEX_MAX];
+    for (int i=1; i<=MODSECURITY_INDEX_MAX;i++) {
+      operationIds[i - 1] = move.applyAsLong(entry.operationRuleId(i));
+    }
+    co.vendorExtensions.put(MODSECURITY_RULE_IDS_KEY, RuleIdBlock.of(operationIds));
+    co.vendorExtensions.put(MODSECURITY_CACHED_BLOCK, entry.relocatedBlock(move));
+    for (String[] row : entry.costRows) {
+      Object[] relocated = Arrays.copyOf(row, row.length, Object[].class);
+      relocated[0] = move.applyAsLong(Long.parseLong(row[0]));
+      regexCostRows.add(relocated);
+    }
+    // the per-operation schema file is not part of the block
+    writeOperationJsonSchema(co);
+  }
+
+  /**
+   * Reuse the cached block of an operation with stable rule ids: the block and its
+   * regex cost rows take their ids as the block is rendered.
+   */
+  private void reuseCachedOperation(CodegenOperation co, OperationCache.Entry entry, StableRuleIds.Reused reused) {
+    LOGGER.debug("Reusing cached block of operation: {}", co.operationId);
+    co.vendorExtensions.put(MODSECURITY_RULE_IDS_KEY, reused.operationIds(MODSECURITY_INDEX_MAX));
+    co.vendorExtensions.put(MODSECURITY_CACHED_BLOCK, reused);
+    for (String[] row : entry.costRows) {
+      Object[] relocated = Arrays.copyOf(row, row.length, Object[].class);
+      relocated[0] = reused.id(Long.parseLong(row[0]));
+      regexCostRows.add(relocated);
+    }
+    writeOperationJsonSchema(co);
+  }
+
+  /**
+   * Digest of everything an operation's block is rendered from: the raw spec
+   * operation (less its responses) and its path-level parameters, every component they reference
+   * (transitively), the security setup, the generator options and the template.
+   * Rule ids are left out; cached blocks are relocated instead.
+   */
+  private String operationFingerprint(CodegenOperation co, String basePath) {
+    List<String> inputs = new ArrayList<String>();
+    inputs.add(Integer.toString(OperationCache.FORMAT));
+    inputs.add(String.valueOf(Modsecurity3Generator.class.getPackage().getImplementationVersion()));
+    inputs.add(operationTemplate());
+    for (CliOption option : cliOptions) {
+      if (!"parallelism".equals(option.getOpt())) {
+        inputs.add(option.getOpt() + "=" + additionalProperties.get(option.getOpt()));
+      }
+    }
+    inputs.add(basePath);
+    inputs.add(co.operationId + " " + co.httpMethod + " " + co.path);
+
+    com.fasterxml.jackson.databind.JsonNode spec = rawSpecTree();
+    com.fasterxml.jackson.databind.JsonNode pathItem = spec.path("paths").path(co.path);
+    com.fasterxml.jackson.databind.JsonNode operation = pathItem.path(co.httpMethod.toLowerCase(java.util.Locale.ROOT));
+    if (operation.isObject()) {
+      // rules check requests only; a changed response model must not invalidate the block
+      operation = ((ObjectNode) operation).deepCopy();
+      ((ObjectNode) operation).remove("responses");
+    }
+    inputs.add(operation.toString());
+    inputs.add(pathItem.path("parameters").toString());
+    inputs.add(spec.path("security").toString());
+    inputs.add(spec.path("components").path("securitySchemes").toString());
+
+    java.util.TreeMap<String, String> referenced = new java.util.TreeMap<String, String>();
+    java.util.Deque<com.fasterxml.jackson.databind.JsonNode> pending =
+        new java.util.ArrayDeque<com.fasterxml.jackson.databind.JsonNode>();
+    pending.push(operation);
+    pending.push(pathItem.path("parameters"));
+    while (!pending.isEmpty()) {
+      com.fasterxml.jackson.databind.JsonNode node = pending.pop();
+      com.fasterxml.jackson.databind.JsonNode ref = node.get("$ref");
+      if (ref != null && ref.isTextual() && ref.asText().startsWith("#/") && !referenced.containsKey(ref.asText())) {
+        com.fasterxml.jackson.databind.JsonNode target = spec.at(ref.asText().substring(1));
+        referenced.put(ref.asText(), target.toString());
+        pending.push(target);
+      }
+      for (com.fasterxml.jackson.databind.JsonNode child : node) {
+        pending.push(child);
+      }
+    }
+    for (Map.Entry<String, String> component : referenced.entrySet()) {
+      inputs.add(component.getKey() + "=" + component.getValue());
+    }
+    return OperationCache.digest(inputs);
+  }
+
+  private com.fasterxml.jackson.databind.JsonNode rawSpecTree() {
+    if (rawSpecTree == null) {
+      io.swagger.v3.oas.models.OpenAPI raw = rawOpenAPI();
+      ObjectMapper mapper = raw != null && raw.getSpecVersion() == io.swagger.v3.oas.models.SpecVersion.V31
+          ? io.swagger.v3.core.util.Json31.mapper()
+          : io.swagger.v3.core.util.Json.mapper();
+      rawSpecTree = raw != null ? mapper.valueToTree(raw) : mapper.createObjectNode();
+    }
+    return rawSpecTree;
+  }
+
+  /**
+   * Text of the API file template, from the template directory or the classpath.
+   */
+  private String operationTemplate() {
+    if (operationTemplateText == null) {
+      String template = apiTemplateFiles.keySet().iterator().next();
+      File custom = new File(templateDir(), template);
+      try (java.io.InputStream in = custom.isFile()
+          ? Files.newInputStream(custom.toPath())
+          : getClass().getClassLoader().getResourceAsStream(embeddedTemplateDir() + "/" + template)) {
+        java.io.ByteArrayOutputStream text = new java.io.ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        for (int n; in != null && (n = in.read(buffer)) > 0; ) {
+          text.write(buffer, 0, n);
+        }
+        operationTemplateText = new String(text.toByteArray(), java.nio.charset.StandardCharsets.UTF_8);
+      } catch (IOException e) {
+        throw new IllegalStateException("Cannot read template " + template, e);
+      }
+    }
+    return operationTemplateText;
+  }
+
+  /**
+   * Flattening, pattern generation, allowlist and path regex of one operation.
+   * Touches no state shared with the other operations of the tag except the
+   * (synchronized) regex cost rows, so operations can be processed in parallel.
+   *
+   * @param operationIds source of the operation's block of MODSECURITY_INDEX_MAX rule ids
+   * @param ids the operation's parameter-range ids
+   */
+  private void processOperation(CodegenOperation co, RuleIds operationIds, RuleIds ids, String basePath,
+      String basePathRegex, Map<String, CodegenModel> modelLookup) {
+    co.vendorExtensions.put(MODSECURITY_RULE_IDS_KEY,
+        operationIds.block(OperationCache.OPERATION_KEY_PREFIX, MODSECURITY_INDEX_MAX));
+    LOGGER.debug("Processing operation: {}", co.operationId);
+
+    boolean includeRequestJSON = false;
+    boolean includeRequestXML = false;
+
+    if(co.hasConsumes) {
+      LOGGER.debug("Operation: {} Consumes: {}", co.baseName, co.consumes);
+      int consumeIndex = 0;
+      String operationSchemaPath = writeOperationJsonSchema(co);
+      if (!perFieldBodyRules && operationSchemaPath == null && co.bodyParam != null) {
+        LOGGER.warn("Operation {} has no per-operation JSON schema; its body keeps the per-field rules "
+            + "under bodyValidationStrategy=schemaOnly", co.operationId);
+      }
+      co.vendorExtensions.put(MODSECURITY_PER_FIELD_BODY_RULES, perFieldBodyRules || operationSchemaPath == null);
+      for (Map<String, String> consume : co.consumes) {
+        String mediaType = consume.get("mediaType");
+        // Canonical single classification key per consume entry. DefaultCodegen's
+        // isJson/isXml string flags are replaced: the string "false" is truthy in
+        // mustache sections, and unclassified media types previously fell through
+        // to an unconditional block (form/multipart operations could never succeed).
+        String classification = classifyMediaType(mediaType);
+        consume.remove("isJson");
+        consume.remove("isXml");
+        consume.put(classification, "true");
+        includeRequestJSON |= CONSUME_JSON.equals(classification);
+        includeRequestXML |= CONSUME_XML.equals(classification);
+
+        // Unique marker suffix and rule ids per consume entry: two consumes of the
+        // same class would otherwise emit duplicate SecMarker names and rule ids.
+        consume.put("consumeIndex", String.valueOf(consumeIndex++));
+        String consumeKey = "consume:" + mediaType + ":";
+        ids.next(consume, "oasGateId", consumeKey + "gate");
+        ids.next(consume, "oasBodyErrId", consumeKey + "bodyError");
+        ids.next(consume, "oasSchemaId", consumeKey + "schema");
+        ids.next(consume, "oasPassId", consumeKey + "pass");
+
+        // mediaType can contain regex metacharacters (e.g. application/vnd.api+json);
+        // '*' wildcards (application/*) match any token in that position
+        if (mediaType != null) {
+          consume.put("mediaTypeRegex", escapeRegexLiteral(mediaType).replace("\\*", "[^/\\s]+"));
+        }
+        decorateMediaTypeMatch(consume, mediaType);
+        if (operationBodyControls) {
+          decorateBodyControls(co, consume, classification, ids);
+        }
+        if (CONSUME_JSON.equals(classification) && operationSchemaPath != null) {
+          consume.put("schemaRulePath", operationSchemaPath);
+        }
+      }
+
+      // OAS3 requestBody.required defaults to FALSE: a bodiless request to an
+      // operation with an optional body must skip the body checks instead of
+      // being blocked by the content-type fallthrough.
+      if (!isRequestBodyRequired(co)) {
+        co.vendorExtensions.put("x-codegen-optionalBody", true);
+      }
+    }
 
-          // Add the flattened properties to the parameter
-          param.vendorExtensions.put(MODSECURITY_MODEL_PROPERTIES, flattenedProperties);
-        } else if (param.isBodyParam && param.isArray) {
-          // Root-level JSON array body: flatten as an array at the root. Element
-          // index 0 stands in for every element (generalized to a regex later);
-          // without this the ARGS_NAMES allowlist is empty and every element key
-          // is rejected as an unknown parameter.
-          // Coraza also lists the bare "json" container node in ARGS_NAMES for
-          // root arrays (it does not for object bodies).
-          argsAllowlist.add("json");
-          List<CodegenProperty> flattenedProperties = new ArrayList<CodegenProperty>();
-          List<CodegenProperty> itemVars = null;
-          if (param.items != null) {
-            if (param.items.vars != null && !param.items.vars.isEmpty()) {
-              itemVars = param.items.vars;
-            } else {
-              itemVars = lookupModelVars(param.items, modelLookup);
+    // Add vendor extension for JSON and XML
+    co.vendorExtensions.put(MODSECURITY_HAS_JSON, includeRequestJSON);
+    co.vendorExtensions.put(MODSECURITY_HAS_XML, includeRequestXML);
+    co.vendorExtensions.put("validateBodySchema", validateBodySchema);
+
+    // Names allowed to appear in ARGS_NAMES for this operation (query + form +
+    // flattened JSON body fields); anything else is denied by the generated allowlist rule.
+    java.util.Set<String> argsAllowlist = new java.util.LinkedHashSet<String>();
+
+    // Loop through parameters and print information about them
+    for (CodegenParameter param : co.allParams) {
+
+      // We don't want to use a different method for required arrays
+      if (param.required && param.isArray && (param.getMinItems() == null || param.getMinItems() == 0)) {
+        LOGGER.debug("Required array parameter: {}", param.baseName);
+        param.setMinItems(1);
+      }
+
+      if (param.isModel) {
+        LOGGER.debug("Model parameter: {}", param.baseName);
+        // We need to flatten the model into something that can be used in the template
+        // This will be a new vendor extension with an array of properties that represent
+        // the model. Both engines flatten JSON bodies into ARGS as "json.<path>".
+        // Composed (allOf/oneOf/anyOf) body models carry no vars on the parameter
+        // itself; resolve them via the model list.
+        List<CodegenProperty> flattenedProperties = flattenedBody(param, modelLookup);
+
+        // Raw-spec keyword pass: const and patternProperties are not surfaced by
+        // the codegen abstractions, so resolve them from the parsed spec schema
+        // along each flattened path.
+        io.swagger.v3.oas.models.media.Schema<?> rawRoot = rawSchemaByName(param.baseType);
+        if (rawRoot == null) {
+          rawRoot = rawSchemaByName(param.dataType);
+        }
+        if (rawRoot != null) {
+          for (CodegenProperty prop : flattenedProperties) {
+            io.swagger.v3.oas.models.media.Schema<?> rawProp = rawSchemaForPath(rawRoot, prop.baseName);
+            if (rawProp == null) {
+              continue;
             }
-          }
-          if (itemVars != null) {
-            for (CodegenProperty prop : itemVars) {
-              flattenedProperties.addAll(flattenModel(prop, JSON_ARGS_PREFIX + "0.", 2, modelLookup));
+            if (rawProp.getConst() != null) {
+              prop.pattern = "^" + escapeRegexLiteral(String.valueOf(rawProp.getConst())) + "$";
+              // const admits exactly one value — never null, even when codegen
+              // inferred nullability from a type-less schema
+              prop.isNullable = false;
+            }
+            if (rawProp.getPatternProperties() != null && (prop.isMap || prop.isFreeFormObject)) {
+              List<Map<String, Object>> ppRules = new ArrayList<Map<String, Object>>();
+              for (Map.Entry<String, io.swagger.v3.oas.models.media.Schema> pp
+                  : rawProp.getPatternProperties().entrySet()) {
+                Map<String, Object> rule = new HashMap<String, Object>();
+                rule.put("nameRegex", patternPropertiesNameRegex(pp.getKey()));
+                rule.put("valuePattern", rawValuePattern(pp.getValue()));
+                ppRules.add(rule);
+              }
+              prop.vendorExtensions.put("x-oashield-patternProps", ppRules);
             }
-          } else if (param.items != null) {
-            // root array of primitives: element keys are json.0 / json.array_0
-            CodegenProperty leaf = flattenedLeaf(param.items, JSON_ARGS_PREFIX);
-            leaf.baseName = JSON_ARGS_PREFIX + "0";
-            flattenedProperties.add(leaf);
           }
-          for (CodegenProperty prop : flattenedProperties) {
-            decorateBodyProperty(prop, argsAllowlist);
+
+          // dependentRequired at the body root: presence of the trigger property
+          // demands the dependent property (chained count rules on both engines)
+          io.swagger.v3.oas.models.media.Schema<?> resolvedRoot = resolveRawRef(rawRoot);
+          if (resolvedRoot.getDependentRequired() != null) {
+            List<Map<String, Object>> depRules = new ArrayList<Map<String, Object>>();
+            for (Map.Entry<String, List<String>> dep : resolvedRoot.getDependentRequired().entrySet()) {
+              for (String requiredName : dep.getValue()) {
+                Map<String, Object> rule = new HashMap<String, Object>();
+                rule.put("trigger", JSON_ARGS_PREFIX + dep.getKey());
+                rule.put("dependent", JSON_ARGS_PREFIX + requiredName);
+                rule.put("depRuleId", ids.next("dependentRequired:" + dep.getKey() + ":" + requiredName));
+                depRules.add(rule);
+              }
+            }
+            param.vendorExtensions.put("x-oashield-dependentRules", depRules);
           }
-          param.vendorExtensions.put(MODSECURITY_MODEL_PROPERTIES, flattenedProperties);
         }
 
-        if (param.isQueryParam || param.isFormParam) {
-          argsAllowlist.add(escapeRegexLiteral(param.baseName));
+        for (CodegenProperty prop : flattenedProperties) {
+          decorateBodyProperty(prop, argsAllowlist, ids);
+          reviewBodyPatterns(co, prop);
         }
 
-        param.vendorExtensions.put(MODSECURITY_HAS_ARRAY_MIN, (param.getMinItems() != null));
-        param.vendorExtensions.put(MODSECURITY_HAS_ARRAY_MAX, (param.getMaxItems() != null));
-        for (int i=1; i<=MODSECURITY_INDEX_MAX;i++) {
-          param.vendorExtensions.put(MODSECURITY_INDEX_KEY + "_" + i, globalParamIndex++);
+        // Add the flattened properties to the parameter
+        param.vendorExtensions.put(MODSECURITY_MODEL_PROPERTIES, flattenedProperties);
+      } else if (param.isBodyParam && param.isArray) {
+        // Root-level JSON array body: flatten as an array at the root. Element
+        // index 0 stands in for every element (generalized to a regex later);
+        // without this the ARGS_NAMES allowlist is empty and every element key
+        // is rejected as an unknown parameter.
+        // Coraza also lists the bare "json" container node in ARGS_NAMES for
+        // root arrays (it does not for object bodies).
+        argsAllowlist.add("json");
+        List<CodegenProperty> flattenedProperties = flattenedBody(param, modelLookup);
+        for (CodegenProperty prop : flattenedProperties) {
+          decorateBodyProperty(prop, argsAllowlist, ids);
+          reviewBodyPatterns(co, prop);
         }
+        param.vendorExtensions.put(MODSECURITY_MODEL_PROPERTIES, flattenedProperties);
+      }
+
+      if (param.isQueryParam || param.isFormParam) {
+        argsAllowlist.add(escapeRegexLiteral(param.baseName));
+      }
+
+      param.vendorExtensions.put(MODSECURITY_HAS_ARRAY_MIN, (param.getMinItems() != null));
+      param.vendorExtensions.put(MODSECURITY_HAS_ARRAY_MAX, (param.getMaxItems() != null));
+      String paramKey = "param:" + parameterLocation(param) + ":" + param.baseName + ":";
+      param.vendorExtensions.put(MODSECURITY_RULE_IDS_KEY, ids.block(paramKey, MODSECURITY_INDEX_MAX));
+
+      String patternString = sanitizeSpecPattern(param.pattern);
 
-        String patternString = sanitizeSpecPattern(param.pattern);
+      if(patternString != null && !patternString.isEmpty()) {
+        LOGGER.debug("Config pattern string used: {}", patternString);
+        patternString = vetSpecPattern(patternString);
+      }
 
-        if(patternString != null && !patternString.isEmpty()) {
-          LOGGER.debug("Config pattern string used: {}", patternString);
-          if(isInvalidPattern(patternString)) {
-            LOGGER.warn("Invalid pattern string: {}", patternString);
-            patternString = null;
+      if(patternString == null || patternString.isEmpty()) {
+        // anyOf/oneOf parameter: a value matching any member schema is valid, so
+        // the members' patterns are combined into one alternation.
+        List<CodegenProperty> paramUnion = unionMembers(param.getComposedSchemas());
+        if (paramUnion != null) {
+          patternString = patternGenerationService.getComposedPattern(paramUnion, param.required);
+        } else if (param.isArray && param.items != null) {
+          // array parameters validate each value against the ITEM schema (the
+          // param's own flags describe the container, not the elements)
+          String itemPattern = vetSpecPattern(sanitizeSpecPattern(param.items.pattern));
+          if (itemPattern == null || itemPattern.isEmpty()) {
+            itemPattern = patternGenerationService.getPropertyPattern(param.items);
           }
+          patternString = itemPattern;
+        } else {
+          patternString = getParamPattern(param);
+        }
+        LOGGER.debug("Calculated pattern string {}", patternString);
+      }
+      // content: parameter — the value is an encoded document (e.g. JSON in a
+      // query string) that the engines do not parse per-field; cap its length
+      // and rely on the allowlist entry for the name.
+      if (param.getContent() != null && !param.getContent().isEmpty() && !param.isBodyParam) {
+        // RE2 (Coraza) rejects repeat counts above 1000, so the cap is clamped
+        int cap = Math.min(param.getMaxLength() != null ? param.getMaxLength() : 1000, 1000);
+        patternString = "^[\\s\\S]{0," + cap + "}$";
+      }
+      // multipleOf: power-of-10 multiples of integers are expressible as a
+      // trailing-zeros pattern; anything else is enforced via schema.json only.
+      int paramZeros = powerOfTenZeros(param.getMultipleOf());
+      if (paramZeros > 0 && !param.isArray && (param.isInteger || param.isLong)) {
+        patternString = "^(?:0|[0-9]{1," + (19 - paramZeros) + "}0{" + paramZeros + "})$";
+      }
+      // explode=false arrays arrive as ONE delimited value (CSV / space / pipe
+      // per style), so validate the joined form and suppress the per-value
+      // count rules, whose &ARGS count would always be 1.
+      if (param.isArray && !param.isExplode && (param.isQueryParam || param.isFormParam)
+          && patternString != null && !patternString.isEmpty()) {
+        patternString = buildJoinedArrayPattern(param, patternString);
+        param.vendorExtensions.put("x-codegen-joinedArray", true);
+        param.vendorExtensions.put(MODSECURITY_HAS_ARRAY_MIN, false);
+        param.vendorExtensions.put(MODSECURITY_HAS_ARRAY_MAX, false);
+      }
+      // deepObject query params serialize as name[prop]=value: allow those keys
+      // (the scalar ARGS_GET:name rules no-op on an empty collection).
+      if (param.isDeepObject && param.isQueryParam) {
+        argsAllowlist.add(escapeRegexLiteral(param.baseName) + "\\[[^\\]]{1,64}\\]");
+      }
+      // allowEmptyValue: an empty value is explicitly valid for this parameter
+      if (param.isAllowEmptyValue && patternString != null && !patternString.isEmpty()) {
+        patternString = "^(?:" + stripAnchors(patternString) + ")?$";
+      }
+      // Always write back: spec-provided patterns arrive DefaultCodegen-mangled
+      // (/.../-delimited, backslashes doubled), and the template and
+      // buildPathMatchRegex read param.pattern directly.
+      param.setPattern(patternString);
+      int valueRuleSlot = param.isQueryParam ? 6 : param.isFormParam ? 10
+          : param.isHeaderParam ? 18 : param.isCookieParam ? 20 : 0;
+      if (valueRuleSlot != 0) {
+        param.setPattern(reviewPattern(patternString,
+            ruleId(param.vendorExtensions, MODSECURITY_RULE_IDS_KEY, valueRuleSlot), "parameter " + param.baseName));
+      }
+      LOGGER.debug("param: {}, validation: {}, pattern: {}", param.hasValidation, param.pattern);
+      LOGGER.debug("Parameter: {}, data type: {}, isString: {}, max length: {}", param.baseName, param.getDataType(),
+          param.isString, param.getMaxLength());
 
+    }
+
+    // Security-scheme parameters never appear in allParams; an apiKey in the
+    // query string must not be rejected as an unknown parameter. Header/cookie
+    // keys need no exemption (undeclared headers and cookies are not blocked).
+    if (co.authMethods != null) {
+      for (org.openapitools.codegen.CodegenSecurity auth : co.authMethods) {
+        if (Boolean.TRUE.equals(auth.isApiKey) && Boolean.TRUE.equals(auth.isKeyInQuery)
+            && auth.keyParamName != null) {
+          argsAllowlist.add(escapeRegexLiteral(auth.keyParamName));
         }
+      }
+    }
 
-        if(patternString == null || patternString.isEmpty()) {
-          // anyOf/oneOf parameter: a value matching any member schema is valid, so
-          // the members' patterns are combined into one alternation.
-          List<CodegenProperty> paramUnion = unionMembers(param.getComposedSchemas());
-          if (paramUnion != null) {
-            patternString = patternGenerationService.getComposedPattern(paramUnion, param.required);
-          } else if (param.isArray && param.items != null) {
-            // array parameters validate each value against the ITEM schema (the
-            // param's own flags describe the container, not the elements)
-            String itemPattern = sanitizeSpecPattern(param.items.pattern);
-            if (itemPattern == null || itemPattern.isEmpty() || isInvalidPattern(itemPattern)) {
-              itemPattern = patternGenerationService.getPropertyPattern(param.items);
-            }
-            patternString = itemPattern;
-          } else {
-            patternString = getParamPattern(param);
-          }
-          LOGGER.debug("Calculated pattern string {}", patternString);
-        }
-        // content: parameter — the value is an encoded document (e.g. JSON in a
-        // query string) that the engines do not parse per-field; cap its length
-        // and rely on the allowlist entry for the name.
-        if (param.getContent() != null && !param.getContent().isEmpty() && !param.isBodyParam) {
-          // RE2 (Coraza) rejects repeat counts above 1000, so the cap is clamped
-          int cap = Math.min(param.getMaxLength() != null ? param.getMaxLength() : 1000, 1000);
-          patternString = "^[\\s\\S]{0," + cap + "}$";
-        }
-        // multipleOf: power-of-10 multiples of integers are expressible as a
-        // trailing-zeros pattern; anything else is enforced via schema.json only.
-        int paramZeros = powerOfTenZeros(param.getMultipleOf());
-        if (paramZeros > 0 && !param.isArray && (param.isInteger || param.isLong)) {
-          patternString = "^(?:0|[0-9]{1," + (19 - paramZeros) + "}0{" + paramZeros + "})$";
-        }
-        // explode=false arrays arrive as ONE delimited value (CSV / space / pipe
-        // per style), so validate the joined form and suppress the per-value
-        // count rules, whose &ARGS count would always be 1.
-        if (param.isArray && !param.isExplode && (param.isQueryParam || param.isFormParam)
-            && patternString != null && !patternString.isEmpty()) {
-          patternString = buildJoinedArrayPattern(param, patternString);
-          param.vendorExtensions.put("x-codegen-joinedArray", true);
-          param.vendorExtensions.put(MODSECURITY_HAS_ARRAY_MIN, false);
-          param.vendorExtensions.put(MODSECURITY_HAS_ARRAY_MAX, false);
-        }
-        // deepObject query params serialize as name[prop]=value: allow those keys
-        // (the scalar ARGS_GET:name rules no-op on an empty collection).
-        if (param.isDeepObject && param.isQueryParam) {
-          argsAllowlist.add(escapeRegexLiteral(param.baseName) + "\\[[^\\]]{1,64}\\]");
-        }
-        // allowEmptyValue: an empty value is explicitly valid for this parameter
-        if (param.isAllowEmptyValue && patternString != null && !patternString.isEmpty()) {
-          patternString = "^(?:" + stripAnchors(patternString) + ")?$";
-        }
-        // Always write back: spec-provided patterns arrive DefaultCodegen-mangled
-        // (/.../-delimited, backslashes doubled), and the template and
-        // buildPathMatchRegex read param.pattern directly.
-        param.setPattern(patternString);
-        LOGGER.debug("param: {}, validation: {}, pattern: {}", param.hasValidation, param.pattern);
-        LOGGER.debug("Parameter: {}, data type: {}, isString: {}, max length: {}", param.baseName, param.getDataType(),
-            param.isString, param.getMaxLength());
-
-      }
-
-      // Security-scheme parameters never appear in allParams; an apiKey in the
-      // query string must not be rejected as an unknown parameter. Header/cookie
-      // keys need no exemption (undeclared headers and cookies are not blocked).
-      if (co.authMethods != null) {
-        for (org.openapitools.codegen.CodegenSecurity auth : co.authMethods) {
-          if (Boolean.TRUE.equals(auth.isApiKey) && Boolean.TRUE.equals(auth.isKeyInQuery)
-              && auth.keyParamName != null) {
-            argsAllowlist.add(escapeRegexLiteral(auth.keyParamName));
-          }
+    // One regex matches the route AND validates path parameter values: each {param}
+    // is replaced with that parameter's validation pattern. Works on both engines,
+    // unlike the Coraza-only @restpath/ARGS_PATH (issue #42). Must run after the
+    // param loop so parameter patterns exist.
+    reduceOperatorStrength(co);
+    if (crsExclusions) {
+      decorateCrsExclusions(co, ids);
+    }
+
+    co.vendorExtensions.put(MODSECURITY_PATH_REGEX_KEY, basePathRegex + buildPathMatchRegex(co));
+    // Template-free paths route by plain string equality: cheaper than an
+    // anchored regex on both engines, and no pattern has to be compiled.
+    if (!co.path.contains("{") && !basePath.contains("{")) {
+      co.vendorExtensions.put(MODSECURITY_PATH_OPERATOR_KEY, "@streq");
+      co.vendorExtensions.put(MODSECURITY_PATH_MATCH_KEY, basePath + co.path);
+    } else {
+      String strict = "^" + co.vendorExtensions.get(MODSECURITY_PATH_REGEX_KEY) + "$";
+      String structural = ROUTE_MATCH_STRUCTURAL.equals(routeMatch)
+          ? "^" + basePathRegex + buildPathMatchRegex(co, true) + "$"
+          : strict;
+      co.vendorExtensions.put(MODSECURITY_PATH_OPERATOR_KEY, "@rx");
+      co.vendorExtensions.put(MODSECURITY_PATH_MATCH_KEY, reviewPattern(structural,
+          ruleId(co.vendorExtensions, MODSECURITY_RULE_IDS_KEY, 2), "path " + co.path));
+      // Structural routing: the shape picked this operation, the parameter
+      // patterns now decide, and a mismatch falls through to the next operation
+      // exactly as the strict route rule would have.
+      if (!structural.equals(strict)) {
+        co.vendorExtensions.put(MODSECURITY_PATH_VALIDATION_KEY, reviewPattern(strict,
+            ruleId(co.vendorExtensions, MODSECURITY_RULE_IDS_KEY, 6), "path parameters of " + co.path));
+      }
+    }
+    // The allowlist is emitted as a factored trie regex; one too large to compile
+    // within regexProgramBudget is split into per-prefix regions, each checked
+    // by its own rule behind a gate on the region prefixes.
+    ArgsNameTrie argsTrie = new ArgsNameTrie(argsAllowlist);
+    List<ArgsNameTrie.Region> regions =
+        argsTrie.split(p -> regexCostAnalyzer().analyze(p).programSize, regexProgramBudget);
+    if (regions.size() == 1) {
+      co.vendorExtensions.put(MODSECURITY_ARGS_ALLOWLIST, regions.get(0).allowlist);
+      // reported only: the allowlist is assembled inside the template
+      reviewPattern("^(?:" + regions.get(0).allowlist + ")$",
+          ruleId(co.vendorExtensions, MODSECURITY_RULE_IDS_KEY, 14), "parameter name allowlist of " + co.operationId);
+    } else {
+      List<String> selectors = new ArrayList<String>();
+      List<Map<String, Object>> regionRules = new ArrayList<Map<String, Object>>();
+      for (ArgsNameTrie.Region region : regions) {
+        // '/' would end the ARGS_NAMES:/.../ selector
+        String selector = region.selector.replace("/", "\\/");
+        selectors.add(selector);
+        if (region.allowlist == null) {
+          continue;
         }
+        Map<String, Object> rule = new HashMap<String, Object>();
+        rule.put("selector", selector);
+        rule.put("allowlist", region.allowlist);
+        rule.put("ruleId", ids.next("allowlist:" + region.selector));
+        regionRules.add(rule);
+        reviewPattern("^(?:" + region.allowlist + ")$", rule.get("ruleId"),
+            "parameter name allowlist of " + co.operationId + " (" + region.selector + ")");
+      }
+      co.vendorExtensions.put(MODSECURITY_ARGS_ALLOWLIST_SELECTORS, String.join("|", selectors));
+      co.vendorExtensions.put(MODSECURITY_ARGS_ALLOWLIST_REGIONS, regionRules);
+    }
+  }
+
+  /**
+   * The flattened properties of a body parameter, from the rule id plan when it
+   * already flattened them.
+   */
+  private List<CodegenProperty> flattenedBody(CodegenParameter param, Map<String, CodegenModel> modelLookup) {
+    List<CodegenProperty> flattened = plannedBodies.remove(param);
+    return flattened != null ? flattened : flattenBody(param, modelLookup);
+  }
+
+  /**
+   * Flatten a body parameter into one property per JSON leaf: a model body from
+   * its vars (or its model's, for composed bodies), a root array body from its
+   * items. Returns null for any other parameter. A body of a known model is
+   * flattened once per run; every parameter taking it gets its own copies of the
+   * leaves.
+   */
+  private List<CodegenProperty> flattenBody(CodegenParameter param, Map<String, CodegenModel> modelLookup) {
+    if (param.isModel) {
+      CodegenModel model = modelLookup.get(param.baseType);
+      final CodegenModel bodyModel = model != null ? model : modelLookup.get(param.dataType);
+      List<CodegenProperty> vars = param.vars;
+      if ((vars == null || vars.isEmpty()) && bodyModel != null) {
+        vars = bodyModel.vars;
+      }
+      final List<CodegenProperty> rootVars = vars;
+      // the parameter's vars are its own copies of the model's, flattened alike
+      String key = bodyModel != null && sameProperties(rootVars, bodyModel.vars) ? "model:" + bodyModel.name : null;
+      return flatteningIndex.body(key, () -> flattenModelBody(bodyModel, rootVars, modelLookup));
+    } else if (param.isBodyParam && param.isArray) {
+      String key = param.items != null && (param.items.vars == null || param.items.vars.isEmpty())
+          && lookupModelVars(param.items, modelLookup) != null ? "array:" + param.items.complexType : null;
+      return flatteningIndex.body(key, () -> flattenArrayBody(param, modelLookup));
+    }
+    return null;
+  }
+
+  private static boolean sameProperties(List<CodegenProperty> vars, List<CodegenProperty> modelVars) {
+    if (vars == modelVars) {
+      return true;
+    }
+    if (vars == null || modelVars == null || vars.size() != modelVars.size()) {
+      return false;
+    }
+    for (int i = 0; i < vars.size(); i++) {
+      if (!java.util.Objects.equals(vars.get(i).baseName, modelVars.get(i).baseName)
+          || !java.util.Objects.equals(vars.get(i).dataType, modelVars.get(i).dataType)) {
+        return false;
       }
+    }
+    return true;
+  }
 
-      // One regex matches the route AND validates path parameter values: each {param}
-      // is replaced with that parameter's validation pattern. Works on both engines,
-      // unlike the Coraza-only @restpath/ARGS_PATH (issue #42). Must run after the
-      // param loop so parameter patterns exist.
-      co.vendorExtensions.put(MODSECURITY_PATH_REGEX_KEY, basePathRegex + buildPathMatchRegex(co));
-      co.vendorExtensions.put(MODSECURITY_ARGS_ALLOWLIST, String.join("|", argsAllowlist));
+  private List<CodegenProperty> flattenModelBody(CodegenModel bodyModel, List<CodegenProperty> rootVars,
+      Map<String, CodegenModel> modelLookup) {
+    List<CodegenProperty> flattenedProperties = new ArrayList<CodegenProperty>();
+    if (rootVars != null) {
+      for (CodegenProperty prop : rootVars) {
+        List<CodegenProperty> properties = flattenModel(prop, JSON_ARGS_PREFIX, 1, modelLookup);
+        flattenedProperties.addAll(properties);
+      }
     }
+    if (bodyModel != null && unionMembers(bodyModel.getComposedSchemas()) != null) {
+      // oneOf/anyOf body: vars is the union of all branches, only one of which
+      // must be present, so no property can be individually required
+      for (CodegenProperty prop : flattenedProperties) {
+        prop.required = false;
+      }
+    }
+    return flattenedProperties;
+  }
 
-    Map<String, Object> vendorExtensions = new HashMap<String, Object>();
-    vendorExtensions.put(MODSECURITY_INDEX_KEY, globalIndex++);
-    results.put(VENDOR_EXTENSIONS_KEY, vendorExtensions);
+  private List<CodegenProperty> flattenArrayBody(CodegenParameter param, Map<String, CodegenModel> modelLookup) {
+    List<CodegenProperty> flattenedProperties = new ArrayList<CodegenProperty>();
+    List<CodegenProperty> itemVars = null;
+    if (param.items != null) {
+      if (param.items.vars != null && !param.items.vars.isEmpty()) {
+        itemVars = param.items.vars;
+      } else {
+        itemVars = lookupModelVars(param.items, modelLookup);
+      }
+    }
+    if (itemVars != null) {
+      for (CodegenProperty prop : itemVars) {
+        flattenedProperties.addAll(flattenModel(prop, JSON_ARGS_PREFIX + "0.", 2, modelLookup));
+      }
+    } else if (param.items != null) {
+      // root array of primitives: element keys are json.0 / json.array_0
+      CodegenProperty leaf = flattenedLeaf(param.items, JSON_ARGS_PREFIX);
+      leaf.baseName = JSON_ARGS_PREFIX + "0";
+      flattenedProperties.add(leaf);
+    }
+    return flattenedProperties;
+  }
 
-    return results;
+  /**
+   * Where a parameter is sent, as in the spec's "in" (body for request bodies).
+   */
+  private static String parameterLocation(CodegenParameter param) {
+    return param.isPathParam ? "path" : param.isQueryParam ? "query" : param.isHeaderParam ? "header"
+        : param.isCookieParam ? "cookie" : param.isFormParam ? "formData" : "body";
   }
 
   public List<CodegenProperty> flattenModel(CodegenProperty currentProperty, String baseNamePrefix) {
@@ -835,31 +1977,19 @@ public class Modsecurity3Generator extends DefaultCodegen implements CodegenConf
     return properties;
   }
 
-  // Un-normalized spec parse, lazily created: openapi-generator's normalizer
-  // rewrites this.openAPI in place (e.g. it drops 3.1 prefixItems), so raw
-  // keyword lookups re-read the original document.
+  // The spec as parsed, taken before openapi-generator's normalizer rewrote
+  // this.openAPI in place (e.g. dropping 3.1 prefixItems); this.openAPI when the
+  // normalizer did not run or was replaced by a configured NORMALIZER_CLASS.
   private io.swagger.v3.oas.models.OpenAPI rawOpenAPI;
 
+  @Override
+  public void preprocessOpenAPI(io.swagger.v3.oas.models.OpenAPI openAPI) {
+    rawOpenAPI = RawSpecSnapshot.take(openAPI);
+    super.preprocessOpenAPI(openAPI);
+  }
+
   private io.swagger.v3.oas.models.OpenAPI rawOpenAPI() {
-    if (rawOpenAPI == null) {
-      String spec = getInputSpec();
-      if (spec != null && !spec.isEmpty()) {
-        try {
-          io.swagger.v3.parser.core.models.ParseOptions options =
-              new io.swagger.v3.parser.core.models.ParseOptions();
-          options.setResolve(true);
-          io.swagger.v3.parser.core.models.SwaggerParseResult result =
-              new io.swagger.v3.parser.OpenAPIV3Parser().readLocation(spec, null, options);
-          rawOpenAPI = result != null ? result.getOpenAPI() : null;
-        } catch (Exception e) {
-          LOGGER.warn("Could not re-parse spec '{}' for raw keyword lookups: {}", spec, e.getMessage());
-        }
-      }
-      if (rawOpenAPI == null) {
-        rawOpenAPI = this.openAPI;
-      }
-    }
-    return rawOpenAPI;
+    return rawOpenAPI != null ? rawOpenAPI : this.openAPI;
   }
 
   /**
@@ -890,17 +2020,7 @@ public class Modsecurity3Generator extends DefaultCodegen implements CodegenConf
    */
   io.swagger.v3.oas.models.media.Schema<?> rawSchemaForPath(
       io.swagger.v3.oas.models.media.Schema<?> root, String flatPath) {
-    io.swagger.v3.oas.models.media.Schema<?> current = resolveRawRef(root);
-    String[] segments = flatPath.split("\\.");
-    for (int i = 1; i < segments.length && current != null; i++) { // segment 0 is the "json" prefix
-      if ("0".equals(segments[i])) {
-        current = resolveRawRef(current.getItems());
-      } else {
-        Map<String, io.swagger.v3.oas.models.media.Schema> props = current.getProperties();
-        current = props != null ? resolveRawRef(props.get(segments[i])) : null;
-      }
-    }
-    return current;
+    return root != null ? flatteningIndex.rawSchema(root, flatPath) : null;
   }
 
   /**
@@ -922,8 +2042,9 @@ public class Modsecurity3Generator extends DefaultCodegen implements CodegenConf
     if (schema == null) {
       return "^.*$";
     }
-    if (schema.getPattern() != null && !isInvalidPattern(schema.getPattern())) {
-      return schema.getPattern();
+    String specPattern = vetSpecPattern(schema.getPattern());
+    if (specPattern != null && !specPattern.isEmpty()) {
+      return specPattern;
     }
     String type = schema.getType();
     if (type == null && schema.getTypes() != null && !schema.getTypes().isEmpty()) {
@@ -967,6 +2088,243 @@ public class Modsecurity3Generator extends DefaultCodegen implements CodegenConf
     return CONSUME_OTHER;
   }
 
+  /**
+   * How a consume entry's rules recognize its media type: a prefix regex on the
+   * Content-Type header, or with classifyContentType a string comparison against
+   * TX:oas_ctype, the header's media type lowercased and without parameters.
+   * Declared types that carry parameters keep the header regex, which is the only
+   * place those parameters are still visible.
+   */
+  private void decorateMediaTypeMatch(Map<String, String> consume, String mediaType) {
+    String normalized = mediaType != null ? mediaType.trim().toLowerCase(java.util.Locale.ROOT) : null;
+    if (!classifyContentType || normalized == null || normalized.contains(";")) {
+      consume.put("mediaTypeTarget", "REQUEST_HEADERS:Content-Type");
+      consume.put("mediaTypeOperator", "@rx");
+      consume.put("mediaTypeMatch", "^" + (mediaType != null ? consume.get("mediaTypeRegex") : ""));
+      return;
+    }
+    consume.put("mediaTypeTarget", "TX:oas_ctype");
+    int wildcard = normalized.indexOf('*');
+    if (wildcard < 0) {
+      consume.put("mediaTypeOperator", "@streq");
+      consume.put("mediaTypeMatch", normalized);
+    } else if (wildcard == normalized.length() - 1 && normalized.endsWith("/*")) {
+      consume.put("mediaTypeOperator", "@beginsWith");
+      consume.put("mediaTypeMatch", normalized.substring(0, wildcard));
+    } else {
+      consume.put("mediaTypeOperator", "@rx");
+      consume.put("mediaTypeMatch", "^" + escapeRegexLiteral(normalized).replace("\\*", "[^/\\s]+") + "$");
+    }
+  }
+
+  /**
+   * Write the per-operation schema file for a JSON request body
+   * (jsonSchemaPerOperation, coraza flavor).
+   *
+   * @return the path the @validateSchema rule references, or null to keep the
+   *         combined schema (option off, or a body that is not a model)
+   */
+  private String writeOperationJsonSchema(CodegenOperation co) {
+    if (!jsonSchemaPerOperation || !FLAVOR_CORAZA.equals(engineFlavor) || co.bodyParam == null
+        || jsonSchemaDefinitions.isEmpty()) {
+      return null;
+    }
+    String schema = new JsonSchemaGenerator().generateOperationSchema(co.bodyParam, jsonSchemaDefinitions);
+    if (schema == null) {
+      return null;
+    }
+    String fileName = OPERATION_SCHEMA_DIR + "/" + co.operationId + ".json";
+    File schemaFile = new File(outputFolder, fileName);
+    schemaFile.getParentFile().mkdirs();
+    try {
+      writeOutputFile(schemaFile, schema);
+    } catch (java.io.IOException e) {
+      LOGGER.error("Error writing JSON Schema for {}", co.operationId, e);
+      return null;
+    }
+    // next to the combined schema as the rules reference it
+    String combined = additionalProperties.get("schemaRulePath").toString();
+    int slash = combined.lastIndexOf('/');
+    return (slash >= 0 ? combined.substring(0, slash + 1) : "") + fileName;
+  }
+
+  /**
+   * CRS exclusions (crsExclusions) for the arguments whose value rule admits
+   * only safe characters ({@link SafeCharacterPattern}). Both engines remove
+   * ARGS:name as a whole, and ARGS:name also holds a same-named argument from
+   * the other half of the request (query string or body) that no value rule
+   * checked: each exclusion only applies while that half has no such argument.
+   * The engines compile @rx in multiline mode, where ^ and $ also match at a line
+   * break, so the value rule only proves the value's lines: each exclusion is
+   * preceded by a rule that rejects a line break in the excluded values.
+   * JSON body exclusions sit in each JSON media type's block, where the body
+   * was validated, and need the per-field rules that prove the values.
+   */
+  @SuppressWarnings("unchecked")
+  private void decorateCrsExclusions(CodegenOperation co, RuleIds ids) {
+    List<String> bodyTargets = new ArrayList<String>();
+    for (CodegenParameter param : co.allParams) {
+      if (!param.isDeepObject && SafeCharacterPattern.admitsOnlySafeCharacters(param.pattern)) {
+        Map<String, Object> exclusion = null;
+        if (param.isQueryParam && safeCrsTarget(param.paramName)) {
+          exclusion = crsExclusion("ARGS:" + param.paramName, "ARGS_GET:" + param.paramName,
+              "ARGS_POST:" + param.paramName);
+        } else if (param.isFormParam && safeCrsTarget(param.paramName)) {
+          exclusion = crsExclusion("ARGS:" + param.paramName, "ARGS_POST:" + param.paramName,
+              "ARGS_GET:" + param.paramName);
+        } else if (param.isCookieParam && safeCrsTarget(param.baseName)) {
+          exclusion = crsExclusion("REQUEST_COOKIES:" + param.baseName, "REQUEST_COOKIES:" + param.baseName,
+              null);
+        }
+        if (exclusion != null) {
+          param.vendorExtensions.put("x-codegen-crsExclusion", exclusion);
+        }
+      }
+      List<CodegenProperty> props = (List<CodegenProperty>) param.vendorExtensions.get(MODSECURITY_MODEL_PROPERTIES);
+      if (props == null || !validateBodySchema || !perFieldBodyRules(co)) {
+        continue;
+      }
+      for (CodegenProperty prop : props) {
+        Object target = prop.vendorExtensions.get("x-oashield-argTarget");
+        Object pattern = prop.vendorExtensions.get("x-oashield-pattern");
+        // regex selectors (array elements, map entries) cannot be removed by name
+        if (target != null && pattern != null && safeCrsTarget(target.toString())
+            && SafeCharacterPattern.admitsOnlySafeCharacters(pattern.toString())) {
+          bodyTargets.add(target.toString());
+        }
+      }
+    }
+    if (bodyTargets.isEmpty() || co.consumes == null) {
+      return;
+    }
+    for (Map<String, String> consume : co.consumes) {
+      if (!consume.containsKey(CONSUME_JSON)) {
+        continue;
+      }
+      List<Map<String, Object>> exclusions = new ArrayList<Map<String, Object>>();
+      for (String target : bodyTargets) {
+        Map<String, Object> exclusion = crsExclusion("ARGS:" + target, "ARGS_POST:" + target, "ARGS_GET:" + target);
+        String key = "consume:" + consume.get("mediaType") + ":crsExclusion:" + target;
+        exclusion.put("lineBreakRuleId", ids.next(key + ":lineBreak"));
+        exclusion.put("ruleId", ids.next(key));
+        exclusions.add(exclusion);
+      }
+      ((Map<String, Object>) (Map<String, ?>) consume).put("oasCrsExclusions", exclusions);
+    }
+  }
+
+  /**
+   * @param target the target the CRS rules skip
+   * @param values the values the exclusion covers, checked for line breaks
+   * @param guard  the other request half's same-named argument, or null
+   */
+  private Map<String, Object> crsExclusion(String target, String values, String guard) {
+    List<String> ctl = new ArrayList<String>();
+    for (String tag : crsExclusionTags) {
+      ctl.add("ctl:ruleRemoveTargetByTag=" + tag + ";" + target);
+    }
+    Map<String, Object> exclusion = new HashMap<String, Object>();
+    exclusion.put("ctl", String.join(",", ctl));
+    exclusion.put("values", values);
+    if (guard != null) {
+      exclusion.put("guard", guard);
+    }
+    return exclusion;
+  }
+
+  // Written unquoted into a ctl action list; anything else keeps the CRS checks
+  private static boolean safeCrsTarget(String name) {
+    return name != null && name.matches("[A-Za-z0-9_.-]+");
+  }
+
+  /**
+   * Phase-1 body controls for one consume entry: the body processor for JSON and
+   * XML, and the largest body that can pass the operation's checks. The limit
+   * comes from x-oashield-maxBodyBytes (media type, requestBody, then operation)
+   * or is derived from the JSON or urlencoded body schema; none is set when the
+   * schema is unbounded or the bound exceeds the engines' default body limit.
+   */
+  private void decorateBodyControls(CodegenOperation co, Map<String, String> consume, String classification,
+      RuleIds ids) {
+    if (CONSUME_JSON.equals(classification)) {
+      consume.put("oasBodyProcessor", "JSON");
+    } else if (CONSUME_XML.equals(classification)) {
+      consume.put("oasBodyProcessor", "XML");
+    }
+
+    io.swagger.v3.oas.models.Operation rawOp = rawOperation(co);
+    io.swagger.v3.oas.models.parameters.RequestBody body = rawOp != null && rawOp.getRequestBody() != null
+        ? org.openapitools.codegen.utils.ModelUtils.getReferencedRequestBody(rawOpenAPI(), rawOp.getRequestBody())
+        : null;
+    io.swagger.v3.oas.models.media.MediaType media = body != null && body.getContent() != null
+        ? body.getContent().get(consume.get("mediaType"))
+        : null;
+    long limit = -1;
+    for (Map<String, Object> extensions : Arrays.asList(
+        media != null ? media.getExtensions() : null,
+        body != null ? body.getExtensions() : null,
+        rawOp != null ? rawOp.getExtensions() : null)) {
+      if (extensions != null && extensions.containsKey(MAX_BODY_BYTES_EXTENSION)) {
+        limit = maxBodyBytes(extensions.get(MAX_BODY_BYTES_EXTENSION), co);
+        break;
+      }
+    }
+    if (limit < 0 && media != null && media.getSchema() != null) {
+      BodySizeBound bound = new BodySizeBound(this::resolveRawRef);
+      if (CONSUME_JSON.equals(classification)) {
+        limit = bound.json(media.getSchema());
+      } else if (consume.get("mediaType").toLowerCase(java.util.Locale.ROOT)
+          .startsWith("application/x-www-form-urlencoded")) {
+        limit = bound.urlencoded(media.getSchema());
+      }
+      if (limit > DEFAULT_BODY_LIMIT) {
+        limit = -1;
+      }
+    }
+    if (limit >= 0) {
+      consume.put("oasBodyLimit", String.valueOf(limit));
+      ids.next(consume, "oasBodyLimitId", "consume:" + consume.get("mediaType") + ":bodyLimit");
+    }
+    if (consume.containsKey("oasBodyProcessor") || limit >= 0 && FLAVOR_CORAZA.equals(engineFlavor)) {
+      ids.next(consume, "oasBodyControlId", "consume:" + consume.get("mediaType") + ":bodyControl");
+    }
+  }
+
+  private static long maxBodyBytes(Object value, CodegenOperation co) {
+    long limit;
+    try {
+      limit = Long.parseLong(String.valueOf(value).trim());
+    } catch (NumberFormatException e) {
+      limit = -1;
+    }
+    if (limit <= 0) {
+      throw new IllegalArgumentException("Invalid " + MAX_BODY_BYTES_EXTENSION + " '" + value + "' on operation "
+          + co.operationId + "; expected a positive number of bytes");
+    }
+    return limit;
+  }
+
+  /**
+   * The raw spec operation behind a CodegenOperation, or null.
+   */
+  private io.swagger.v3.oas.models.Operation rawOperation(CodegenOperation co) {
+    io.swagger.v3.oas.models.OpenAPI raw = rawOpenAPI();
+    if (raw == null || raw.getPaths() == null) {
+      return null;
+    }
+    io.swagger.v3.oas.models.PathItem pathItem = raw.getPaths().get(co.path);
+    if (pathItem == null) {
+      return null;
+    }
+    try {
+      return pathItem.readOperationsMap()
+          .get(io.swagger.v3.oas.models.PathItem.HttpMethod
+              .valueOf(co.httpMethod.toUpperCase(java.util.Locale.ROOT)));
+    } catch (IllegalArgumentException e) {
+      return null;
+    }
+  }
+
   /**
    * Resolve the raw spec requestBody.required for an operation. CodegenOperation
    * does not expose it for form-param operations (their body param is dissolved
@@ -1094,6 +2452,16 @@ public class Modsecurity3Generator extends DefaultCodegen implements CodegenConf
    * matrix/label style path params include their style prefix in the match.
    */
   String buildPathMatchRegex(CodegenOperation co) {
+    return buildPathMatchRegex(co, false);
+  }
+
+  /**
+   * The path-match regex, or with structural set its shape only: a parameter
+   * whose pattern never admits a '/' matches [^/]* instead. That accepts every
+   * path the full regex accepts, so it can route ahead of it. Patterns that may
+   * span segments are kept as they are.
+   */
+  String buildPathMatchRegex(CodegenOperation co, boolean structural) {
     Map<String, CodegenParameter> pathParams = new HashMap<String, CodegenParameter>();
     for (CodegenParameter param : co.allParams) {
       if (param.isPathParam) {
@@ -1109,7 +2477,10 @@ public class Modsecurity3Generator extends DefaultCodegen implements CodegenConf
       CodegenParameter param = pathParams.get(m.group(1));
       String core;
       if (param != null && param.pattern != null && !param.pattern.isEmpty()) {
-        core = "(?:" + stripAnchors(param.pattern) + ")";
+        String pattern = stripAnchors(param.pattern);
+        core = structural && !"[^/]+".equals(pattern) && withinSegment(pattern)
+            ? "[^/]*"
+            : "(?:" + pattern + ")";
       } else {
         core = "[^/]+";
       }
@@ -1125,6 +2496,16 @@ public class Modsecurity3Generator extends DefaultCodegen implements CodegenConf
     return regex.toString();
   }
 
+  /**
+   * True when a path parameter pattern (anchors stripped) can never match a '/':
+   * the [^/] patterns generated for path strings, and patterns that admit only
+   * SafeCharacterPattern's character set.
+   */
+  static boolean withinSegment(String pattern) {
+    return pattern.matches("\\[\\^/\\](?:[*+]|\\{[0-9]+(?:,[0-9]*)?\\})")
+        || SafeCharacterPattern.admitsOnlySafeCharacters("^(?:" + pattern + ")$");
+  }
+
   /**
    * Joined (explode=false) array parameter pattern: the whole delimited list in a
    * single value, item repetitions bounded by minItems/maxItems.
@@ -1145,12 +2526,73 @@ public class Modsecurity3Generator extends DefaultCodegen implements CodegenConf
     return "^" + item + "(?:" + sep + item + "){" + lo + "," + hi + "}$";
   }
 
+  /**
+   * Regex for the unknownEndpointPrefilter rule: the base path followed by the
+   * first path segment of some operation, as a factored alternation. Every path
+   * an operation routes starts this way, so a request path that does not can be
+   * denied without trying the operations. Null when an operation's first segment
+   * is templated, which admits any path.
+   */
+  String buildUnknownEndpointPrefilter(ApiInfoMap apiInfo) {
+    java.util.Set<String> segments = new java.util.TreeSet<String>();
+    boolean root = false;
+    if (apiInfo.getApis() == null) {
+      return null;
+    }
+    for (OperationsMap api : apiInfo.getApis()) {
+      for (CodegenOperation co : api.getOperations().getOperation()) {
+        String path = co.path.startsWith("/") ? co.path.substring(1) : co.path;
+        int slash = path.indexOf('/');
+        String segment = slash < 0 ? path : path.substring(0, slash);
+        if (segment.contains("{")) {
+          LOGGER.info("unknownEndpointPrefilter: {} starts with a path parameter; no prefilter emitted", co.path);
+          return null;
+        }
+        if (segment.isEmpty()) {
+          root = true;
+        } else {
+          segments.add(escapeRegexLiteral(segment));
+        }
+      }
+    }
+    if (segments.isEmpty() && !root) {
+      return null;
+    }
+    String prefix = "^" + buildBasePathRegex() + "/";
+    if (segments.isEmpty()) {
+      return prefix + "$";
+    }
+    String first = "(?:" + new ArgsNameTrie(segments).toRegex() + ")(?:/|$)";
+    // an operation on "/" routes the bare base path plus slash
+    return prefix + (root ? "(?:" + first + "|$)" : first);
+  }
+
   /**
    * Regex prefix for the deployed base path: the basePath CLI option when set
    * (empty string disables prefixing), otherwise the path component of the first
    * servers.url. Server-URL template variables match one path segment.
    */
   String buildBasePathRegex() {
+    String path = resolveBasePath();
+    if (path.isEmpty()) {
+      return "";
+    }
+    StringBuilder regex = new StringBuilder();
+    java.util.regex.Matcher m = java.util.regex.Pattern.compile("\\{[^/{}]+\\}").matcher(path);
+    int last = 0;
+    while (m.find()) {
+      regex.append(escapeRegexLiteral(path.substring(last, m.start()))).append("[^/]+");
+      last = m.end();
+    }
+    regex.append(escapeRegexLiteral(path.substring(last)));
+    return regex.toString();
+  }
+
+  /**
+   * The deployed base path as a normalized literal ("/v2", no trailing slash), or
+   * "" for none. Server-URL template variables are kept as {name} placeholders.
+   */
+  String resolveBasePath() {
     String path = basePathOverride;
     if (path == null && this.openAPI != null && this.openAPI.getServers() != null
         && !this.openAPI.getServers().isEmpty()) {
@@ -1179,18 +2621,7 @@ public class Modsecurity3Generator extends DefaultCodegen implements CodegenConf
     if (path.isEmpty()) {
       return "";
     }
-    if (!path.startsWith("/")) {
-      path = "/" + path;
-    }
-    StringBuilder regex = new StringBuilder();
-    java.util.regex.Matcher m = java.util.regex.Pattern.compile("\\{[^/{}]+\\}").matcher(path);
-    int last = 0;
-    while (m.find()) {
-      regex.append(escapeRegexLiteral(path.substring(last, m.start()))).append("[^/]+");
-      last = m.end();
-    }
-    regex.append(escapeRegexLiteral(path.substring(last)));
-    return regex.toString();
+    return path.startsWith("/") ? path : "/" + path;
   }
 
   static String stripAnchors(String pattern) {
@@ -1213,8 +2644,10 @@ public class Modsecurity3Generator extends DefaultCodegen implements CodegenConf
    * when the path crosses an array, a regex selector ("/^json\.tags\.(?:array_)?\d{1,9}\.name$/")
    * that matches both engines' array key forms.
    */
-  private void decorateBodyProperty(CodegenProperty prop, java.util.Collection<String> argsAllowlist) {
+  void decorateBodyProperty(CodegenProperty prop, java.util.Collection<String> argsAllowlist,
+      RuleIds ids) {
     String path = prop.baseName;
+    String propKey = "prop:" + path + ":";
     boolean indexedPath = path.matches(".*\\.0(\\..*|$)");
     boolean indexed = indexedPath || prop.isArray;
 
@@ -1269,11 +2702,9 @@ public class Modsecurity3Generator extends DefaultCodegen implements CodegenConf
           String nameRegex = (String) rule.get("nameRegex");
           argsAllowlist.add(body + "\\." + nameRegex);
           rule.put("selector", "/(?i)^" + body + "\\." + nameRegex + "$/");
-          rule.put("ruleId", globalParamIndex++);
-        }
-        for (int i = 1; i <= PROP_INDEX_MAX; i++) {
-          prop.vendorExtensions.put(PROP_INDEX_KEY + "_" + i, globalParamIndex++);
+          rule.put("ruleId", ids.next(propKey + "patternProperties:" + nameRegex));
         }
+        prop.vendorExtensions.put(PROP_RULE_IDS_KEY, ids.block(propKey, PROP_INDEX_MAX));
         return;
       }
       argsAllowlist.add(body + "\\..{1,256}");
@@ -1282,17 +2713,15 @@ public class Modsecurity3Generator extends DefaultCodegen implements CodegenConf
           && !valueSchema.isModel && !valueSchema.isMap && !valueSchema.isArray
           && !valueSchema.isFreeFormObject) {
         prop.vendorExtensions.put("x-oashield-argTarget", "/(?i)^" + body + "\\.[^.]{1,64}$/");
-        String valuePattern = sanitizeSpecPattern(valueSchema.pattern);
-        if (valuePattern == null || valuePattern.isEmpty() || isInvalidPattern(valuePattern)) {
+        String valuePattern = vetSpecPattern(sanitizeSpecPattern(valueSchema.pattern));
+        if (valuePattern == null || valuePattern.isEmpty()) {
           valuePattern = patternGenerationService.getPropertyPattern(valueSchema);
         }
         prop.vendorExtensions.put("x-oashield-pattern", valuePattern);
       }
       // No required-presence rule: an empty map produces no ARGS keys on
       // ModSecurity3, making {} indistinguishable from an absent property.
-      for (int i = 1; i <= PROP_INDEX_MAX; i++) {
-        prop.vendorExtensions.put(PROP_INDEX_KEY + "_" + i, globalParamIndex++);
-      }
+      prop.vendorExtensions.put(PROP_RULE_IDS_KEY, ids.block(propKey, PROP_INDEX_MAX));
       return;
     }
 
@@ -1307,8 +2736,8 @@ public class Modsecurity3Generator extends DefaultCodegen implements CodegenConf
         typeSource = prop.items;
       }
     }
-    String pattern = sanitizeSpecPattern(typeSource.pattern);
-    if (pattern == null || pattern.isEmpty() || isInvalidPattern(pattern)) {
+    String pattern = vetSpecPattern(sanitizeSpecPattern(typeSource.pattern));
+    if (pattern == null || pattern.isEmpty()) {
       pattern = patternGenerationService.getPropertyPattern(typeSource);
     }
     // multipleOf: power-of-10 integer multiples become a trailing-zeros pattern
@@ -1335,9 +2764,7 @@ public class Modsecurity3Generator extends DefaultCodegen implements CodegenConf
       }
     }
 
-    for (int i = 1; i <= PROP_INDEX_MAX; i++) {
-      prop.vendorExtensions.put(PROP_INDEX_KEY + "_" + i, globalParamIndex++);
-    }
+    prop.vendorExtensions.put(PROP_RULE_IDS_KEY, ids.block(propKey, PROP_INDEX_MAX));
   }
 
   /**
@@ -1351,6 +2778,207 @@ public class Modsecurity3Generator extends DefaultCodegen implements CodegenConf
     return "Generates a modsecurity3 client library.";
   }
 
+  /**
+   * incrementalCache also turns on minimal updates: files whose content did not
+   * change are not rewritten, so a WAF watching them does not reload. Read before
+   * processOpts, hence straight from the additional properties.
+   */
+  @Override
+  public boolean isEnableMinimalUpdate() {
+    return super.isEnableMinimalUpdate() || incrementalCacheRequested();
+  }
+
+  /**
+   * incrementalCache collects the rendered operation blocks from the written API
+   * files in {@link #postProcessFile(File, String)}.
+   */
+  @Override
+  public boolean isEnablePostProcessFile() {
+    return super.isEnablePostProcessFile() || incrementalCacheRequested();
+  }
+
+  private boolean incrementalCacheRequested() {
+    Object dir = additionalProperties.get(INCREMENTAL_CACHE);
+    return dir != null && !dir.toString().isEmpty();
+  }
+
+  /**
+   * Caches the blocks of the operations processed in this run once their API
+   * file is written.
+   */
+  @Override
+  public void postProcessFile(File file, String fileType) {
+    super.postProcessFile(file, fileType);
+    if (operationCache == null || file == null || !"api".equals(fileType) || pendingCacheEntries.isEmpty()) {
+      return;
+    }
+    String apiName = file.getName().replaceFirst("\\.conf$", "");
+    String content;
+    try {
+      content = new String(Files.readAllBytes(file.toPath()), java.nio.charset.StandardCharsets.UTF_8);
+    } catch (IOException e) {
+      LOGGER.warn("Cannot read {} to cache its operations: {}", file, e.getMessage());
+      return;
+    }
+    java.util.Iterator<Map.Entry<String, OperationCache.Entry>> pending = pendingCacheEntries.entrySet().iterator();
+    while (pending.hasNext()) {
+      Map.Entry<String, OperationCache.Entry> next = pending.next();
+      if (!next.getKey().startsWith(apiName + "/")) {
+        continue;
+      }
+      pending.remove();
+      String operationId = next.getKey().substring(apiName.length() + 1);
+      OperationCache.Entry entry = next.getValue();
+      String block = OperationCache.extractBlock(content, operationId);
+      if (block == null) {
+        LOGGER.warn("No block for operation {} in {}; not cached", operationId, file);
+        continue;
+      }
+      List<String[]> rows = new ArrayList<String[]>();
+      synchronized (regexCostRows) {
+        for (Object[] row : regexCostRows) {
+          if (reducedRuleIds.contains(row[0])) {
+            continue;
+          }
+          long ruleId;
+          try {
+            ruleId = Long.parseLong(String.valueOf(row[0]));
+          } catch (NumberFormatException e) {
+            continue;
+          }
+          if (entry.owns(ruleId, MODSECURITY_INDEX_MAX)) {
+            String[] cells = new String[row.length];
+            for (int i = 0; i < row.length; i++) {
+              cells[i] = String.valueOf(row[i]);
+            }
+            rows.add(cells);
+          }
+        }
+      }
+      operationCache.store(apiName, operationId, entry.withBlock(block, rows));
+    }
+  }
+
+  /**
+   * Write a generated file. With minimal updates (incrementalCache or
+   * --minimal-update) a file whose content is unchanged is left untouched, like
+   * the template output.
+   */
+  private void writeOutputFile(File file, String content) throws IOException {
+    if (isEnableMinimalUpdate() && file.isFile()
+        && content.equals(new String(Files.readAllBytes(file.toPath()), java.nio.charset.Charset.defaultCharset()))) {
+      LOGGER.info("skipping unchanged file {}", file);
+      return;
+    }
+    try (FileWriter writer = new FileWriter(file)) {
+      writer.write(content);
+    }
+  }
+
+  /**
+   * Writes a file's content to a stream.
+   */
+  private interface ContentWriter {
+    void write(java.io.OutputStream out) throws IOException;
+  }
+
+  /**
+   * Write a generated file streamed by content, never holding it in memory. With
+   * minimal updates an unchanged file is left untouched: the content goes to a
+   * temporary file beside it that replaces the file only if the two differ.
+   */
+  private void writeOutputFile(File file, ContentWriter content) throws IOException {
+    if (!isEnableMinimalUpdate() || !file.isFile()) {
+      try (java.io.OutputStream out = new java.io.BufferedOutputStream(Files.newOutputStream(file.toPath()))) {
+        content.write(out);
+      }
+      return;
+    }
+    java.nio.file.Path written = Files.createTempFile(file.getAbsoluteFile().getParentFile().toPath(),
+        file.getName(), ".tmp");
+    try {
+      try (java.io.OutputStream out = new java.io.BufferedOutputStream(Files.newOutputStream(written))) {
+        content.write(out);
+      }
+      if (sameContent(written, file.toPath())) {
+        LOGGER.info("skipping unchanged file {}", file);
+      } else {
+        Files.move(written, file.toPath(), java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+      }
+    } finally {
+      Files.deleteIfExists(written);
+    }
+  }
+
+  private static boolean sameContent(java.nio.file.Path a, java.nio.file.Path b) throws IOException {
+    if (Files.size(a) != Files.size(b)) {
+      return false;
+    }
+    try (java.io.InputStream inA = new java.io.BufferedInputStream(Files.newInputStream(a));
+        java.io.InputStream inB = new java.io.BufferedInputStream(Files.newInputStream(b))) {
+      int next;
+      do {
+        next = inA.read();
+        if (next != inB.read()) {
+          return false;
+        }
+      } while (next >= 0);
+      return true;
+    }
+  }
+
+  /**
+   * Runs once all API files are processed: writes the regex cost report when
+   * requested, and orders the mainconfig Include list by traffic when a profile
+   * is set: the API file holding the most requested operations is included first. A file with a
+   * route more specific than an overlapping route in an earlier file moves ahead
+   * of it, so cross-file shadowing cannot get worse than spec order.
+   */
+  @Override
+  public Map<String, Object> postProcessSupportingFileData(Map<String, Object> objs) {
+    Map<String, Object> result = super.postProcessSupportingFileData(objs);
+    // the closing rules follow the parameter range as it was actually drawn
+    RuleIdRangePlanner.Plan plan = ruleIdPlan != null
+        ? ruleIdPlan
+        : new RuleIdRangePlanner(ruleIdStart, ruleIdEnd).plan();
+    long closingBase = plan.closingBase(ruleIdPlan != null ? globalParamIndex : plan.parameterBase);
+    result.put("xmlProcessorRuleId", plan.start - 2);
+    result.put("jsonProcessorRuleId", plan.start - 1);
+    result.put("unknownEndpointRuleId", closingBase);
+    result.put("unknownBodyEndpointRuleId", closingBase + 1);
+    result.put("contentTypeRuleId", closingBase + 3);
+    result.put("bodyErrorRuleId", closingBase + 4);
+    plannedBodies.clear();
+    if (unknownEndpointPrefilter && result.get("apiInfo") instanceof ApiInfoMap) {
+      String prefilter = buildUnknownEndpointPrefilter((ApiInfoMap) result.get("apiInfo"));
+      if (prefilter != null) {
+        result.put("unknownEndpointPrefilterRuleId", closingBase + 2);
+        result.put("unknownEndpointPrefilterRegex",
+            reviewPattern(prefilter, closingBase + 2, "unknown endpoint prefilter"));
+      }
+    }
+    if (regexCostReport != null) {
+      writeRegexCostReport();
+    }
+    Object apiInfo = result.get("apiInfo");
+    if (trafficProfile != null && apiInfo instanceof ApiInfoMap && ((ApiInfoMap) apiInfo).getApis() != null) {
+      final TrafficProfile profile = trafficProfile;
+      final String basePath = resolveBasePath();
+      ApiInfoMap apis = (ApiInfoMap) apiInfo;
+      apis.setApis(TrafficProfile.order(apis.getApis(),
+          api -> {
+            long weight = 0;
+            for (CodegenOperation co : api.getOperations().getOperation()) {
+              weight += profile.weight(co, basePath);
+            }
+            return weight;
+          },
+          TrafficProfile.groupPrecedence(api -> api.getOperations().getOperation(),
+              TrafficProfile::routePrecedence)));
+    }
+    return result;
+  }
+
   /**
    * Process all models and generate JSON Schema. (The per-ModelsMap
    * postProcessModels hook is deliberately NOT overridden: it used to overwrite
@@ -1405,15 +3033,12 @@ public class Modsecurity3Generator extends DefaultCodegen implements CodegenConf
   private void generateXmlSchema(Map<String, ModelsMap> models) {
     LOGGER.info("Generating XSD from models...");
     try {
-      String xsd = new XsdGenerator().generateXsd(models);
       File outputDir = new File(outputFolder);
       if (!outputDir.exists()) {
         outputDir.mkdirs();
       }
       File xsdFile = new File(outputDir, xsdOutputFile);
-      try (FileWriter writer = new FileWriter(xsdFile)) {
-        writer.write(xsd);
-      }
+      writeOutputFile(xsdFile, out -> new XsdGenerator().writeXsd(models, out));
       LOGGER.info("XSD generated successfully: {}", xsdFile.getAbsolutePath());
     } catch (Exception e) {
       LOGGER.error("Error generating XSD", e);
@@ -1421,28 +3046,48 @@ public class Modsecurity3Generator extends DefaultCodegen implements CodegenConf
   }
 
   /**
-   * Generate JSON Schema from models.
+   * Generate JSON Schema from models. The document is streamed to the file one
+   * model at a time, so only the model being written is held in memory.
    *
    * @param models The models to convert to JSON Schema
    */
-  private void generateJsonSchema(Map<String, ModelsMap> models) {
+  private void generateJsonSchema(final Map<String, ModelsMap> models) {
     LOGGER.info("Generating JSON Schema from models...");
 
     try {
-      // Create a combined schema with all models
-      ObjectMapper objectMapper = new ObjectMapper();
-      ObjectNode rootSchema = objectMapper.createObjectNode();
-      rootSchema.put("$schema", "http://json-schema.org/draft-07/schema#");
-      rootSchema.put("title", "OpenAPI Schema Definitions");
-      rootSchema.put("description", "JSON Schema definitions generated from OpenAPI specification");
+      File outputDir = new File(outputFolder);
+      if (!outputDir.exists()) {
+        outputDir.mkdirs();
+      }
+
+      File schemaFile = new File(outputDir, jsonSchemaOutputFile);
+      writeOutputFile(schemaFile, out -> writeJsonSchema(models, out));
+
+      LOGGER.info("JSON Schema generated successfully: {}", schemaFile.getAbsolutePath());
+    } catch (Exception e) {
+      LOGGER.error("Error generating JSON Schema", e);
+    }
+  }
+
+  private void writeJsonSchema(Map<String, ModelsMap> models, java.io.OutputStream out) throws IOException {
+    ObjectMapper objectMapper = new ObjectMapper();
+    try (com.fasterxml.jackson.core.JsonGenerator json = objectMapper.getFactory().createGenerator(out)) {
+      if (jsonSchemaPretty) {
+        json.useDefaultPrettyPrinter();
+      }
+      json.writeStartObject();
+      json.writeStringField("$schema", "http://json-schema.org/draft-07/schema#");
+      json.writeStringField("title", "OpenAPI Schema Definitions");
+      json.writeStringField("description", "JSON Schema definitions generated from OpenAPI specification");
       // No root "type": the document is a definitions container and the request
       // body may legally be an object OR an array (root-array bodies would fail
       // a type:object root under Coraza's @validateSchema).
-      ObjectNode definitions = rootSchema.putObject("definitions");
+      json.writeObjectFieldStart("definitions");
 
       JsonSchemaGenerator generator = new JsonSchemaGenerator();
+      boolean keepDefinitions = jsonSchemaPerOperation && FLAVOR_CORAZA.equals(engineFlavor);
 
-      // Process each model and add to the combined schema
+      // Process each model and add it to the combined schema
       for (Map.Entry<String, ModelsMap> entry : models.entrySet()) {
         String modelName = entry.getKey();
         ModelsMap modelsMap = entry.getValue();
@@ -1464,33 +3109,23 @@ public class Modsecurity3Generator extends DefaultCodegen implements CodegenConf
         }
         ObjectNode modelSchema = generator.generateModelSchema(model, rawSchema);
         if (modelSchema != null) {
-          definitions.set(modelName, modelSchema);
+          json.writeFieldName(modelName);
+          objectMapper.writeTree(json, modelSchema);
+          if (keepDefinitions) {
+            jsonSchemaDefinitions.put(modelName, modelSchema);
+          }
         }
       }
 
-      // Convert the schema to a JSON string
-      String jsonSchema = objectMapper.writerWithDefaultPrettyPrinter().writeValueAsString(rootSchema);
-
-      // Write JSON Schema to file
-      File outputDir = new File(outputFolder);
-      if (!outputDir.exists()) {
-        outputDir.mkdirs();
-      }
-
-      File schemaFile = new File(outputDir, jsonSchemaOutputFile);
-      try (FileWriter writer = new FileWriter(schemaFile)) {
-        writer.write(jsonSchema);
-      }
-
-      LOGGER.info("JSON Schema generated successfully: {}", schemaFile.getAbsolutePath());
-    } catch (Exception e) {
-      LOGGER.error("Error generating JSON Schema", e);
+      json.writeEndObject();
+      json.writeEndObject();
     }
   }
 
   public Modsecurity3Generator() {
     super();
     LOGGER.debug("Initializing Modsecurity3Generator");
+    patternGenerationService.setSpecPatternFilter(this::vetSpecPattern);
 
     // super.outputFolder = "output/modsecurity3";
     /**
@@ -1526,12 +3161,15 @@ public class Modsecurity3Generator extends DefaultCodegen implements CodegenConf
         .defaultValue(Boolean.toString(generateJsonSchema)));
     cliOptions.add(new CliOption("jsonSchemaOutputFile", "JSON Schema output file name")
         .defaultValue(jsonSchemaOutputFile));
+    cliOptions.add(new CliOption("jsonSchemaPretty", "Indent the JSON Schema file; it is minified otherwise")
+        .defaultValue(Boolean.toString(jsonSchemaPretty)));
 
     // Engine flavor and body validation options
     additionalProperties.put("isCoraza", false);
     additionalProperties.put("isModsec3", true);
     additionalProperties.put("validateBodySchema", validateBodySchema);
     additionalProperties.put("schemaRulePath", jsonSchemaOutputFile);
+    additionalProperties.put("schemaBodyRule", false);
     cliOptions.add(new CliOption(ENGINE_FLAVOR,
         "Target WAF engine: 'modsecurity3' (per-field JSON body rules) or 'coraza' (adds @validateSchema)")
         .defaultValue(FLAVOR_MODSECURITY3));
@@ -1541,6 +3179,14 @@ public class Modsecurity3Generator extends DefaultCodegen implements CodegenConf
         "Schema file path as referenced from the generated @validateSchema rule (coraza flavor); "
             + "resolved by Coraza relative to the server working directory")
         .defaultValue(jsonSchemaOutputFile));
+    cliOptions.add(new CliOption("jsonSchemaPerOperation",
+        "Write one minified, self-contained schema file per JSON request body under schemas/ and reference it "
+            + "from that operation's @validateSchema rule (coraza flavor)")
+        .defaultValue(Boolean.toString(jsonSchemaPerOperation)));
+    cliOptions.add(new CliOption("bodyValidationStrategy",
+        "JSON body rules on the coraza flavor: 'both' (per-field rules and @validateSchema), 'schemaOnly' "
+            + "(@validateSchema only) or 'perFieldOnly' (per-field rules only)")
+        .defaultValue(bodyValidationStrategy));
 
     // Deny behavior and logging options (issue #16)
     additionalProperties.put("includeEngineConfig", includeEngineConfig);
@@ -1581,6 +3227,89 @@ public class Modsecurity3Generator extends DefaultCodegen implements CodegenConf
     cliOptions.add(new CliOption("xsdRulePath",
         "XSD path as referenced from the generated @validateSchema XML rule")
         .defaultValue(xsdOutputFile));
+    cliOptions.add(new CliOption("routeDispatch",
+        "Operation routing inside each API file: 'linear' (every operation's path rule in turn) or "
+            + "'prefixTree' (string gates skip whole subtrees of operations under another literal path prefix)")
+        .defaultValue(routeDispatch));
+    cliOptions.add(new CliOption("routeMatch",
+        "How an operation's path rule matches: 'strict' (path parameter validation patterns embedded in the "
+            + "routing regex) or 'structural' (route on literal segments and [^/]* per parameter, then validate "
+            + "the path parameters once path and method matched)")
+        .defaultValue(routeMatch));
+    cliOptions.add(new CliOption("groupByMethod",
+        "Group each API file's operations by HTTP method behind one method gate per group")
+        .defaultValue(Boolean.toString(groupByMethod)));
+    additionalProperties.put("earlyRouting", false);
+    additionalProperties.put("routingPhase", 2);
+    cliOptions.add(new CliOption("earlyRouting",
+        "Route requests and validate path, method, query, header and cookie parameters in phase 1, "
+            + "before the request body is read; body validation stays in phase 2")
+        .defaultValue(Boolean.toString(earlyRouting)));
+    additionalProperties.put("operationBodyControls", false);
+    cliOptions.add(new CliOption("operationBodyControls",
+        "Select the body processor and limit the body size per operation in phase 1, from its consumes, "
+            + "its body schema (maxLength, maxItems) or x-oashield-maxBodyBytes; requires earlyRouting")
+        .defaultValue(Boolean.toString(operationBodyControls)));
+    additionalProperties.put("unknownEndpointPrefilter", false);
+    cliOptions.add(new CliOption("unknownEndpointPrefilter",
+        "Deny a request whose path starts with no operation's first path segment in one rule ahead of the "
+            + "API files, instead of after trying every operation")
+        .defaultValue(Boolean.toString(unknownEndpointPrefilter)));
+    additionalProperties.put("classifyContentType", false);
+    cliOptions.add(new CliOption("classifyContentType",
+        "Normalize the Content-Type once per request into TX:oas_ctype, compare it by string in each "
+            + "operation's media-type rules, and check body parse errors in one rule ahead of the API files")
+        .defaultValue(Boolean.toString(classifyContentType)));
+    additionalProperties.put("crsExclusions", false);
+    cliOptions.add(new CliOption("crsExclusions",
+        "Hand requests that passed their operation's checks on to the OWASP CRS instead of allowing them, "
+            + "removing the arguments proven to hold only safe characters from the crsExclusionTags rules; "
+            + "the generated rules must be included before the CRS")
+        .defaultValue(Boolean.toString(crsExclusions)));
+    cliOptions.add(new CliOption("crsExclusionTags",
+        "Comma-separated CRS rule tags whose rules skip the arguments crsExclusions proves safe")
+        .defaultValue(String.join(",", crsExclusionTags)));
+    cliOptions.add(new CliOption("regexBudgetAction",
+        "What to do with an emitted regex over the cost budget: 'warn' (log only), 'rewrite' (also apply "
+            + "language-preserving simplifications) or 'cap' (also replace over-budget spec patterns with "
+            + "the type-derived pattern)")
+        .defaultValue(regexBudgetAction));
+    cliOptions.add(new CliOption("regexStepBudget",
+        "Estimated worst-case backtracking steps tolerated per pattern (modsecurity3 flavor, PCRE)")
+        .defaultValue(Long.toString(regexStepBudget)));
+    cliOptions.add(new CliOption("regexProgramBudget",
+        "Estimated RE2 program size tolerated per pattern (coraza flavor)")
+        .defaultValue(Long.toString(regexProgramBudget)));
+    cliOptions.add(new CliOption("regexCostReport",
+        "File name, relative to the output folder, of a CSV report listing the cost of every emitted rule pattern"));
+    cliOptions.add(new CliOption("parallelism",
+        "Worker threads processing the operations of each API tag; the output is identical for any value")
+        .defaultValue(Integer.toString(parallelism)));
+    cliOptions.add(new CliOption("ruleIdStrategy",
+        "How rule ids are assigned: 'sequential' (numbered in spec order) or 'stable' (derived from each "
+            + "rule's operationId, kind and parameter path in a range reserved per API tag, so spec edits "
+            + "only change the ids of the rules they touch)")
+        .defaultValue(ruleIdStrategy));
+    cliOptions.add(new CliOption("stableRangeSize",
+        "Rule ids reserved per API tag with ruleIdStrategy=stable; changing it moves every stable id")
+        .defaultValue(Long.toString(stableRangeSize)));
+    cliOptions.add(new CliOption("ruleIdStart",
+        "First rule id of the sequential id window; the two rules below it select the body processors")
+        .defaultValue(Long.toString(ruleIdStart)));
+    cliOptions.add(new CliOption("ruleIdEnd",
+        "Last rule id of the sequential id window; generation fails, with a report of the ids needed, "
+            + "when the spec does not fit")
+        .defaultValue(Long.toString(ruleIdEnd)));
+    cliOptions.add(new CliOption("ruleIdAllocation",
+        "When sequential rule ids are taken: 'reserved' (a fixed block per operation, parameter and body "
+            + "property) or 'onDemand' (an id per rule as the template writes it)")
+        .defaultValue(ruleIdAllocation));
+    cliOptions.add(new CliOption(INCREMENTAL_CACHE,
+        "Directory, relative to the output folder, caching each operation's rendered rules; unchanged "
+            + "operations are reused and unchanged files are not rewritten"));
+    cliOptions.add(new CliOption("trafficProfile",
+        "CSV of '<operationId or METHOD /path>,<request count>' lines; hot operations and API files "
+            + "are emitted first, more specific routes always before the general ones they overlap"));
 
     /**
      * Supporting Files. You can write single files for the generator with the
@@ -0,0 +1,45 @@
+package com.oashield.openapi.generators.modsecurity3;
+
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Rule ids of one operation with ruleIdAllocation=onDemand: the blocks of the
+ * operation, its parameters and its body properties take an id per rule only
+ * when the renderer writes that rule ({@link RuleIdBlock#onDemand}), while the
+ * single ids (consume, patternProperties, dependentRequired and allowlist region
+ * rules) are drawn from the wrapped ids as before.
+ *
+ * Operations of a tag are rendered one after another, in emission order, after
+ * the tag is processed, so the ids stay the same from run to run however the
+ * operations were processed.
+ */
+public class OnDemandRuleIds implements RuleIds {
+
+    private final RuleIds ids;
+    private final LongSupplier allocator;
+
+    /**
+     * @param ids       source of the single ids; null when the operation draws none
+     * @param allocator hands out the next id while a tag is rendered
+     */
+    public OnDemandRuleIds(RuleIds ids, LongSupplier allocator) {
+        this.ids = ids;
+        this.allocator = allocator;
+    }
+
+    @Override
+    public Number next(String key) {
+        return ids.next(key);
+    }
+
+    @Override
+    public void next(Map<String, String> target, String targetKey, String key) {
+        ids.next(target, targetKey, key);
+    }
+
+    @Override
+    public RuleIdBlock block(String key, int size) {
+        return RuleIdBlock.onDemand(size, allocator);
+    }
+}
@@ -0,0 +1,309 @@
+package com.oashield.openapi.generators.modsecurity3;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.LongUnaryOperator;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+/**
+ * On-disk cache of rendered operation blocks for incremental regeneration.
+ *
+ * An entry holds one operation's rule block as it was written to its API file,
+ * the fingerprint of the inputs it was rendered from, the rule ids it was
+ * rendered with and its regex cost report rows. An operation whose fingerprint
+ * is unchanged reuses the block instead of being processed again.
+ *
+ * Rule ids are not part of the fingerprint: inserting an operation shifts the
+ * ids of every operation after it, but not their ids relative to the start of
+ * their two id ranges. A reused block is relocated to the operation's current
+ * ranges, so it is exactly the block a full run would render. With stable rule
+ * ids (ruleIdStrategy=stable) the entry records each rule's key instead, and the
+ * block is relocated id by id in the rare case a key now resolves differently;
+ * the keys its rendered block slots claimed are kept in claim order, so a reused
+ * block claims them again exactly as a full run would.
+ *
+ * Entries live under {@code <dir>/<API name>/<operationId>.json}.
+ */
+public class OperationCache {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(OperationCache.class);
+
+    /** Bumped whenever the entry layout or the meaning of a fingerprint changes. */
+    static final int FORMAT = 3;
+
+    // rule ids in actions: "id:4200002,... and ...,id:4200022"
+    private static final Pattern RULE_ID = Pattern.compile("(?<=[\",])id:(\\d+)");
+
+    /** Key prefix of the operation-range rules in {@link Entry#keyedIds}. */
+    public static final String OPERATION_KEY_PREFIX = "op:";
+
+    /**
+     * One operation's cached block.
+     */
+    public static final class Entry {
+        public final String fingerprint;
+        /** First id of the operation range (globalIndex) the block was rendered with. */
+        public final long firstIndex;
+        /** First id of the parameter range (globalParamIndex) the block was rendered with. */
+        public final long paramBase;
+        /** Number of parameter-range ids the operation uses. */
+        public final int paramIds;
+        /** Rendered block, from the operation header through its END marker; null until harvested. */
+        public final String block;
+        /** Regex cost report rows, rule id first. */
+        public final List<String[]> costRows;
+        /** Stable rule ids drawn up front by rule key; null for sequential ids. */
+        public final Map<String, Long> keyedIds;
+        /** Stable rule ids of the rendered block slots by rule key, in claim order; null for sequential ids. */
+        public final Map<String, Long> renderedIds;
+
+        public Entry(String fingerprint, long firstIndex, long paramBase, int paramIds, String block,
+                List<String[]> costRows) {
+            this(fingerprint, firstIndex, paramBase, paramIds, block, costRows, null, null);
+        }
+
+        public Entry(String fingerprint, Map<String, Long> keyedIds, Map<String, Long> renderedIds) {
+            this(fingerprint, 0, 0, 0, null, null, keyedIds, renderedIds);
+        }
+
+        private Entry(String fingerprint, long firstIndex, long paramBase, int paramIds, String block,
+                List<String[]> costRows, Map<String, Long> keyedIds, Map<String, Long> renderedIds) {
+            this.fingerprint = fingerprint;
+            this.firstIndex = firstIndex;
+            this.paramBase = paramBase;
+            this.paramIds = paramIds;
+            this.block = block;
+            this.costRows = costRows;
+            this.keyedIds = keyedIds;
+            this.renderedIds = renderedIds;
+        }
+
+        public Entry withBlock(String block, List<String[]> costRows) {
+            return new Entry(fingerprint, firstIndex, paramBase, paramIds, block, costRows, keyedIds, renderedIds);
+        }
+
+        /**
+         * The id the block was rendered with for the operation-range rule in the
+         * given slot (1-based); sequential ids only.
+         */
+        public long operationRuleId(int slot) {
+            return firstIndex + slot - 1;
+        }
+
+        /**
+         * The id a rule rendered with this entry's ranges has in the given ranges;
+         * ids outside both ranges are returned unchanged.
+         */
+        public long relocate(long ruleId, long toFirstIndex, long toParamBase, int operationIds) {
+            if (ruleId >= firstIndex && ruleId < firstIndex + operationIds) {
+                return ruleId - firstIndex + toFirstIndex;
+            }
+            if (ruleId >= paramBase && ruleId < paramBase + paramIds) {
+                return ruleId - paramBase + toParamBase;
+            }
+            return ruleId;
+        }
+
+        /**
+         * Whether a rule id belongs to one of this entry's ranges.
+         */
+        public boolean owns(long ruleId, int operationIds) {
+            if (keyedIds != null) {
+                return keyedIds.containsValue(ruleId) || renderedIds.containsValue(ruleId);
+            }
+            return ruleId >= firstIndex && ruleId < firstIndex + operationIds
+                || ruleId >= paramBase && ruleId < paramBase + paramIds;
+        }
+
+        /**
+         * The block with every rule id moved to the given ranges.
+         */
+        public String relocatedBlock(long toFirstIndex, long toParamBase, int operationIds) {
+            if (toFirstIndex == firstIndex && toParamBase == paramBase) {
+                return block;
+            }
+            return relocatedBlock(id -> relocate(id, toFirstIndex, toParamBase, operationIds));
+        }
+
+        /**
+         * The block with every rule id moved by the given mapping.
+         */
+        public String relocatedBlock(LongUnaryOperator move) {
+            Matcher matcher = RULE_ID.matcher(block);
+            StringBuffer relocated = new StringBuffer(block.length());
+            while (matcher.find()) {
+                long id = move.applyAsLong(Long.parseLong(matcher.group(1)));
+                matcher.appendReplacement(relocated, "id:" + id);
+            }
+            matcher.appendTail(relocated);
+            return relocated.toString();
+        }
+    }
+
+    private final Path dir;
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    public OperationCache(Path dir) {
+        this.dir = dir;
+    }
+
+    private Path entryPath(String apiName, String operationId) {
+        return dir.resolve(apiName).resolve(operationId + ".json");
+    }
+
+    /**
+     * The cached entry of an operation, or null when there is none or it was
+     * rendered from different inputs.
+     */
+    public Entry load(String apiName, String operationId, String fingerprint) {
+        Path path = entryPath(apiName, operationId);
+        if (!Files.isRegularFile(path)) {
+            return null;
+        }
+        try {
+            JsonNode node = mapper.readTree(path.toFile());
+            if (node.path("format").asInt() != FORMAT || !fingerprint.equals(node.path("fingerprint").asText())
+                    || !node.path("block").isTextual()) {
+                return null;
+            }
+            List<String[]> rows = new ArrayList<String[]>();
+            for (JsonNode row : node.path("costRows")) {
+                String[] cells = new String[row.size()];
+                for (int i = 0; i < cells.length; i++) {
+                    cells[i] = row.get(i).asText();
+                }
+                rows.add(cells);
+            }
+            Map<String, Long> keyedIds = null;
+            Map<String, Long> renderedIds = null;
+            if (node.path("keyedIds").isObject()) {
+                keyedIds = ids(node.path("keyedIds"), new TreeMap<String, Long>());
+                renderedIds = ids(node.path("renderedIds"), new LinkedHashMap<String, Long>());
+            }
+            return new Entry(fingerprint, node.path("firstIndex").asLong(), node.path("paramBase").asLong(),
+                    node.path("paramIds").asInt(), node.path("block").asText(), rows, keyedIds, renderedIds);
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Ignoring unreadable cache entry {}: {}", path, e.getMessage());
+            return null;
+        }
+    }
+
+    private static Map<String, Long> ids(JsonNode node, Map<String, Long> ids) {
+        for (Map.Entry<String, JsonNode> id : node.properties()) {
+            ids.put(id.getKey(), id.getValue().asLong());
+        }
+        return ids;
+    }
+
+    /**
+     * Store an entry; an entry file whose content is unchanged is not rewritten.
+     */
+    public void store(String apiName, String operationId, Entry entry) {
+        ObjectNode node = mapper.createObjectNode();
+        node.put("format", FORMAT);
+        node.put("fingerprint", entry.fingerprint);
+        node.put("firstIndex", entry.firstIndex);
+        node.put("paramBase", entry.paramBase);
+        node.put("paramIds", entry.paramIds);
+        node.put("block", entry.block);
+        if (entry.keyedIds != null) {
+            ObjectNode ids = node.putObject("keyedIds");
+            for (Map.Entry<String, Long> id : entry.keyedIds.entrySet()) {
+                ids.put(id.getKey(), id.getValue());
+            }
+            ObjectNode rendered = node.putObject("renderedIds");
+            for (Map.Entry<String, Long> id : entry.renderedIds.entrySet()) {
+                rendered.put(id.getKey(), id.getValue());
+            }
+        }
+        ArrayNode rows = node.putArray("costRows");
+        for (String[] row : entry.costRows) {
+            ArrayNode cells = rows.addArray();
+            for (String cell : row) {
+                cells.add(cell);
+            }
+        }
+        Path path = entryPath(apiName, operationId);
+        try {
+            byte[] content = mapper.writerWithDefaultPrettyPrinter().writeValueAsBytes(node);
+            if (Files.isRegularFile(path) && Arrays.equals(content, Files.readAllBytes(path))) {
+                return;
+            }
+            Files.createDirectories(path.getParent());
+            Files.write(path, content);
+        } catch (IOException e) {
+            LOGGER.warn("Could not write cache entry {}: {}", path, e.getMessage());
+        }
+    }
+
+    /**
+     * The block of an operation in a rendered API file: from its "# operationId:"
+     * header through its END marker, or null when the file has none.
+     */
+    public static String extractBlock(String apiFile, String operationId) {
+        String header = "# " + operationId + ": ";
+        int start = 0;
+        if (!apiFile.startsWith(header)) {
+            start = apiFile.indexOf("\n" + header);
+            if (start < 0) {
+                return null;
+            }
+            start++;
+        }
+        String end = "\nSecMarker END_" + operationId;
+        int from = start;
+        while (true) {
+            int marker = apiFile.indexOf(end, from);
+            if (marker < 0) {
+                return null;
+            }
+            int stop = marker + end.length();
+            if (stop == apiFile.length() || apiFile.charAt(stop) == '\n' || apiFile.charAt(stop) == '\r') {
+                return apiFile.substring(start, stop);
+            }
+            from = stop;
+        }
+    }
+
+    /**
+     * Hex SHA-256 digest of the given inputs.
+     */
+    public static String digest(List<String> inputs) {
+        try {
+            MessageDigest sha = MessageDigest.getInstance("SHA-256");
+            for (String input : inputs) {
+                byte[] bytes = String.valueOf(input).getBytes(StandardCharsets.UTF_8);
+                // length-prefixed so adjacent inputs cannot run into each other
+                sha.update(Integer.toString(bytes.length).getBytes(StandardCharsets.UTF_8));
+                sha.update((byte) ':');
+                sha.update(bytes);
+            }
+            StringBuilder hex = new StringBuilder();
+            for (byte b : sha.digest()) {
+                hex.append(String.format("%02x", b));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 unavailable", e);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.oashield.openapi.generators.modsecurity3;
+
+/**
+ * Replaces value-rule regexes with a cheaper operator where the result is the
+ * same for every input.
+ *
+ * A pattern that admits exactly one string — a const, a single-value enum, or a
+ * spec pattern that is an anchored literal — becomes {@code @streq}: both
+ * engines compare it byte for byte instead of running a regex. Patterns that
+ * admit several values keep {@code @rx}. {@code @within} and {@code @pm} are
+ * substring tests (an enum list admits "ail" within "available pending sold"),
+ * and the extra rules needed to restore whole-value semantics cost more per
+ * request than the one anchored alternation they would replace.
+ */
+public class OperatorStrengthReduction {
+
+    public static final String RX = "@rx";
+    public static final String STREQ = "@streq";
+
+    private OperatorStrengthReduction() {
+    }
+
+    /**
+     * The operator for a value rule: {@link #STREQ} when the pattern admits exactly
+     * one string that can be written as a {@code @streq} operand, else {@link #RX}.
+     */
+    public static String operator(String pattern) {
+        return wholeValueLiteral(pattern) != null ? STREQ : RX;
+    }
+
+    /**
+     * The operand for {@link #operator(String)}: the literal for {@code @streq},
+     * the unchanged pattern for {@code @rx}.
+     */
+    public static String operand(String pattern) {
+        String literal = wholeValueLiteral(pattern);
+        return literal != null ? literal : pattern;
+    }
+
+    /**
+     * The single string an anchored pattern admits ({@code ^lit$}, {@code ^(lit)$}
+     * or {@code ^(?:lit)$} with lit built only of literal characters), or null when
+     * the pattern admits more than one string or the literal is not a safe
+     * {@code @streq} operand.
+     */
+    static String wholeValueLiteral(String pattern) {
+        if (pattern == null || pattern.length() < 3 || !pattern.startsWith("^") || !pattern.endsWith("$")
+                || pattern.endsWith("\\$")) {
+            return null;
+        }
+        String body = pattern.substring(1, pattern.length() - 1);
+        if (body.startsWith("(?:") && body.endsWith(")")) {
+            body = body.substring(3, body.length() - 1);
+        } else if (body.startsWith("(") && body.endsWith(")") && !body.startsWith("(?")) {
+            body = body.substring(1, body.length() - 1);
+        }
+        StringBuilder literal = new StringBuilder();
+        for (int i = 0; i < body.length(); i++) {
+            char c = body.charAt(i);
+            if (c == '\\') {
+                if (i + 1 >= body.length() || Character.isLetterOrDigit(body.charAt(i + 1))) {
+                    // \d, \w, \b, backreferences, ...
+                    return null;
+                }
+                literal.append(body.charAt(++i));
+            } else if (".^$|()[]{}*+?".indexOf(c) >= 0) {
+                return null;
+            } else {
+                literal.append(c);
+            }
+        }
+        return safeOperand(literal.toString()) ? literal.toString() : null;
+    }
+
+    // The operand is written unquoted inside a double-quoted SecRule argument and
+    // is macro-expanded by both engines; anything that would be reinterpreted on
+    // the way keeps the regex.
+    private static boolean safeOperand(String literal) {
+        if (literal.isEmpty() || literal.contains("%{") || Character.isWhitespace(literal.charAt(0))
+                || Character.isWhitespace(literal.charAt(literal.length() - 1))) {
+            return false;
+        }
+        for (int i = 0; i < literal.length(); i++) {
+            char c = literal.charAt(i);
+            if (c < 0x20 || c == 0x7f || "\"\\'&<>=`".indexOf(c) >= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -6,6 +6,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.List;
+import java.util.function.UnaryOperator;
 
 /**
  * Service responsible for generating ModSecurity parameter patterns.
@@ -15,6 +16,21 @@ public class PatternGenerationService {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(PatternGenerationService.class);
 
+    // Vets spec-supplied member patterns of anyOf/oneOf compositions: returns the
+    // pattern to use, or null to fall back to the member's type-derived pattern.
+    private UnaryOperator<String> specPatternFilter = pattern ->
+            pattern.contains("(?!") || pattern.contains("(?=") || pattern.contains("(?<") ? null : pattern;
+
+    /**
+     * Replace the check applied to spec-supplied composition member patterns
+     * (default: reject lookarounds).
+     *
+     * @param specPatternFilter returns the pattern to use, or null to fall back
+     */
+    public void setSpecPatternFilter(UnaryOperator<String> specPatternFilter) {
+        this.specPatternFilter = specPatternFilter;
+    }
+
     /**
      * Generates a regex string to validate the input of a parameter.
      *
@@ -171,8 +187,10 @@ public class PatternGenerationService {
                 continue;
             }
             String pattern = Modsecurity3Generator.sanitizeSpecPattern(member.pattern);
-            if (pattern == null || pattern.isEmpty()
-                    || pattern.contains("(?!") || pattern.contains("(?=") || pattern.contains("(?<")) {
+            if (pattern != null && !pattern.isEmpty()) {
+                pattern = specPatternFilter.apply(pattern);
+            }
+            if (pattern == null || pattern.isEmpty()) {
                 pattern = getPropertyPattern(member);
             }
             alternatives.add(Modsecurity3Generator.stripAnchors(pattern));
@@ -0,0 +1,99 @@
+package com.oashield.openapi.generators.modsecurity3;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import org.openapitools.codegen.OpenAPINormalizer;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.swagger.v3.core.util.Json;
+import io.swagger.v3.core.util.Json31;
+import io.swagger.v3.oas.models.Components;
+import io.swagger.v3.oas.models.OpenAPI;
+import io.swagger.v3.oas.models.Paths;
+import io.swagger.v3.oas.models.SpecVersion;
+import io.swagger.v3.oas.models.security.SecurityRequirement;
+
+/**
+ * Normalizer that copies the parts of the spec the generator reads raw before
+ * openapi-generator's normalizer rewrites them in place: the 3.1 normalization
+ * replaces array schemas and drops their prefixItems, and the simplification
+ * rules rewrite composed schemas. The copy holds the components, the paths and
+ * the top-level security requirements, which is all the raw keyword lookups
+ * (const, patternProperties, dependentRequired, prefixItems), the request body
+ * controls and the incremental cache fingerprints look at.
+ *
+ * The generator installs this class through the NORMALIZER_CLASS normalizer rule
+ * unless one is configured already. The copy travels on the document itself,
+ * under {@link #EXTENSION}, until the generator takes it in preprocessOpenAPI
+ * ({@link #take}); openapi-generator creates the normalizer by reflection and
+ * gives it no other way back to the generator.
+ */
+public class RawSpecSnapshot extends OpenAPINormalizer {
+
+    /** Normalizer rule naming the normalizer class to create. */
+    public static final String NORMALIZER_CLASS_RULE = "NORMALIZER_CLASS";
+
+    static final String EXTENSION = "x-oashield-raw-spec";
+
+    public RawSpecSnapshot(OpenAPI openAPI, Map<String, String> inputRules) {
+        super(openAPI, inputRules);
+    }
+
+    @Override
+    protected void normalize() {
+        if (openAPI != null) {
+            openAPI.addExtension(EXTENSION, copy(openAPI));
+        }
+        super.normalize();
+    }
+
+    /**
+     * Removes the copy taken before normalization from the document and returns
+     * it, or null when the document was not normalized by this class.
+     */
+    public static OpenAPI take(OpenAPI openAPI) {
+        Map<String, Object> extensions = openAPI != null ? openAPI.getExtensions() : null;
+        Object snapshot = extensions != null ? extensions.remove(EXTENSION) : null;
+        if (extensions != null && extensions.isEmpty()) {
+            openAPI.setExtensions(null);
+        }
+        return snapshot instanceof OpenAPI ? (OpenAPI) snapshot : null;
+    }
+
+    /**
+     * Deep copy of the components, paths and top-level security requirements of
+     * a document; nothing else is copied.
+     */
+    public static OpenAPI copy(OpenAPI openAPI) {
+        SpecVersion version = openAPI.getSpecVersion() != null ? openAPI.getSpecVersion() : SpecVersion.V30;
+        ObjectMapper mapper = version == SpecVersion.V31 ? Json31.mapper() : Json.mapper();
+        OpenAPI copy = new OpenAPI(version);
+        copy.setOpenapi(openAPI.getOpenapi());
+        try {
+            if (openAPI.getComponents() != null) {
+                copy.setComponents(copy(mapper, openAPI.getComponents(),
+                        mapper.getTypeFactory().constructType(Components.class)));
+            }
+            if (openAPI.getPaths() != null) {
+                copy.setPaths(copy(mapper, openAPI.getPaths(), mapper.getTypeFactory().constructType(Paths.class)));
+            }
+            if (openAPI.getSecurity() != null) {
+                List<SecurityRequirement> security = copy(mapper, openAPI.getSecurity(),
+                        mapper.getTypeFactory().constructCollectionType(ArrayList.class, SecurityRequirement.class));
+                copy.setSecurity(security);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not copy the spec for raw keyword lookups: " + e.getMessage(), e);
+        }
+        return copy;
+    }
+
+    private static <T> T copy(ObjectMapper mapper, Object value, JavaType type) throws IOException {
+        return mapper.readValue(mapper.writeValueAsBytes(value), type);
+    }
+}
@@ -0,0 +1,1346 @@
+package com.oashield.openapi.generators.modsecurity3;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Static cost analysis of the regexes emitted into @rx rules.
+ *
+ * The two engines fail differently on a bad pattern: libmodsecurity3 runs PCRE,
+ * a backtracking matcher whose worst case is polynomial or exponential in the
+ * input length when repetitions can split the same input in several ways;
+ * Coraza runs Go's RE2-style matcher, which is linear but compiles counted
+ * repetitions by copying, so nested counts inflate the program and counts above
+ * 1000 are rejected outright.
+ *
+ * The analyzer parses a pattern into a small syntax tree and reports:
+ * <ul>
+ * <li>backtracking hazards: nested quantifiers ((a+)+, (\w+\s?)*), ambiguous
+ * alternations under a quantifier ((\w|\d)+) and chains of overlapping
+ * repetitions (\d+\d*\d+), with an estimated worst-case step count;</li>
+ * <li>the estimated RE2 program size and whether RE2 accepts the pattern at all
+ * (repeat counts, lookarounds, backreferences).</li>
+ * </ul>
+ * It also offers language-preserving rewrites that remove redundant nesting:
+ * (?:X+)+ becomes X+, identical alternatives are dropped and single-character
+ * alternatives are merged into one class.
+ *
+ * The estimates are heuristics for ranking and budgeting, not exact bounds.
+ */
+public class RegexCostAnalyzer {
+
+    /** Backtracking growth class of a pattern. */
+    public enum Complexity {
+        LINEAR, POLYNOMIAL, EXPONENTIAL
+    }
+
+    /** Input length assumed for patterns that do not bound their own match width. */
+    static final int ASSUMED_INPUT_LENGTH = 1000;
+    /** Go's regexp parser rejects repeat counts, and nested counts multiplied out, above this. */
+    static final int RE2_MAX_REPEAT = 1000;
+
+    // bit 256 stands for every character outside Latin-1
+    private static final int OTHER = 256;
+    private static final int ALPHABET = 257;
+
+    private final long stepBudget;
+    private final long programBudget;
+    private final boolean re2;
+
+    /**
+     * @param stepBudget    worst-case backtracking steps tolerated (PCRE engines)
+     * @param programBudget RE2 program instructions tolerated (Coraza)
+     * @param re2           true when the target engine is RE2-based (Coraza)
+     */
+    public RegexCostAnalyzer(long stepBudget, long programBudget, boolean re2) {
+        this.stepBudget = stepBudget;
+        this.programBudget = programBudget;
+        this.re2 = re2;
+    }
+
+    /** Analysis of one pattern. */
+    public static final class Result {
+        /** The analysed pattern (the rewritten text when produced by {@link #rewrite}). */
+        public final String pattern;
+        /** False when the pattern uses syntax the analyzer does not understand. */
+        public final boolean parsed;
+        public final Complexity complexity;
+        /** Polynomial degree (1 for linear patterns). */
+        public final int degree;
+        public final long worstCaseSteps;
+        public final long programSize;
+        public final boolean re2Compatible;
+        public final List<String> hazards;
+
+        Result(String pattern, boolean parsed, Complexity complexity, int degree, long worstCaseSteps,
+                long programSize, boolean re2Compatible, List<String> hazards) {
+            this.pattern = pattern;
+            this.parsed = parsed;
+            this.complexity = complexity;
+            this.degree = degree;
+            this.worstCaseSteps = worstCaseSteps;
+            this.programSize = programSize;
+            this.re2Compatible = re2Compatible;
+            this.hazards = Collections.unmodifiableList(hazards);
+        }
+
+        @Override
+        public String toString() {
+            if (!parsed) {
+                return "not analysed (" + String.join("; ", hazards) + ")";
+            }
+            String growth = complexity == Complexity.POLYNOMIAL ? "polynomial (degree " + degree + ")"
+                    : complexity.name().toLowerCase(java.util.Locale.ROOT);
+            return growth + ", ~" + worstCaseSteps + " backtracking steps, RE2 program size " + programSize
+                    + (hazards.isEmpty() ? "" : ": " + String.join("; ", hazards));
+        }
+    }
+
+    /**
+     * Analyse a pattern as written.
+     *
+     * @param pattern the regex
+     * @return the analysis
+     */
+    public Result analyze(String pattern) {
+        Node root;
+        try {
+            root = new Parser(pattern).parse();
+        } catch (RuntimeException e) {
+            return unparsed(pattern, String.valueOf(e.getMessage()));
+        }
+        return evaluate(pattern, root);
+    }
+
+    /**
+     * Apply the language-preserving rewrites and analyse the result. The returned
+     * pattern equals the input when no rewrite applies.
+     *
+     * @param pattern the regex
+     * @return the analysis of the rewritten pattern
+     */
+    public Result rewrite(String pattern) {
+        Node root;
+        try {
+            root = new Parser(pattern).parse();
+        } catch (RuntimeException e) {
+            return unparsed(pattern, String.valueOf(e.getMessage()));
+        }
+        // with a backreference, the group numbering must survive the rewrite
+        root = simplify(root, contains(root, BACKREF));
+        String rewritten = emit(root);
+        if (rewritten.equals(pattern)) {
+            return evaluate(pattern, root);
+        }
+        // re-parse so the analysed tree is exactly what will be emitted
+        return analyze(rewritten);
+    }
+
+    /**
+     * Whether the analysis exceeds the budget of the target engine: the step budget
+     * for PCRE, the program budget and RE2 syntax limits for Coraza.
+     */
+    public boolean overBudget(Result result) {
+        if (!result.parsed) {
+            return false;
+        }
+        if (re2) {
+            return !result.re2Compatible || result.programSize > programBudget;
+        }
+        return result.worstCaseSteps > stepBudget;
+    }
+
+    private static Result unparsed(String pattern, String reason) {
+        List<String> hazards = new ArrayList<String>();
+        hazards.add("unsupported syntax: " + reason);
+        return new Result(pattern, false, Complexity.LINEAR, 1, 0, 0, true, hazards);
+    }
+
+    // ---------------------------------------------------------------- syntax tree
+
+    private static final int CHAR = 0;
+    private static final int SEQ = 1;
+    private static final int ALT = 2;
+    private static final int GROUP = 3;
+    private static final int REPEAT = 4;
+    private static final int EMPTY = 5;
+
+    private static final class Node {
+        final int kind;
+        BitSet chars;
+        // a CHAR that can be merged into a bracket class: its class body text
+        String classBody;
+        List<Node> kids = new ArrayList<Node>();
+        int min;
+        int max;              // -1: unbounded
+        boolean counted;      // {n,m} rather than * + ?
+        String suffix = "";   // lazy "?" or possessive "+"
+        boolean atomic;       // (?>...) or possessive repeat
+        boolean lookaround;
+        boolean backref;
+        String open = "(?:";
+        String text;          // original source; null once rewritten
+
+        Node(int kind) {
+            this.kind = kind;
+        }
+
+        Node kid() {
+            return kids.get(0);
+        }
+    }
+
+    private static final class Parser {
+        private final String s;
+        private int pos;
+        private boolean ci;
+
+        Parser(String s) {
+            this.s = s;
+        }
+
+        Node parse() {
+            Node root = parseAlt();
+            if (pos != s.length()) {
+                throw new IllegalStateException("unbalanced ')' at " + pos);
+            }
+            return root;
+        }
+
+        private Node parseAlt() {
+            int start = pos;
+            List<Node> branches = new ArrayList<Node>();
+            branches.add(parseSeq());
+            while (pos < s.length() && s.charAt(pos) == '|') {
+                pos++;
+                branches.add(parseSeq());
+            }
+            if (branches.size() == 1) {
+                return branches.get(0);
+            }
+            Node alt = new Node(ALT);
+            alt.kids = branches;
+            alt.text = s.substring(start, pos);
+            return alt;
+        }
+
+        private Node parseSeq() {
+            int start = pos;
+            Node seq = new Node(SEQ);
+            while (pos < s.length() && s.charAt(pos) != '|' && s.charAt(pos) != ')') {
+                int atomStart = pos;
+                Node atom = parseAtom();
+                while (pos < s.length()) {
+                    Node repeat = parseQuantifier(atom, atomStart);
+                    if (repeat == null) {
+                        break;
+                    }
+                    atom = repeat;
+                }
+                seq.kids.add(atom);
+            }
+            seq.text = s.substring(start, pos);
+            return seq.kids.size() == 1 ? seq.kid() : seq;
+        }
+
+        private Node parseQuantifier(Node atom, int atomStart) {
+            char c = s.charAt(pos);
+            int min;
+            int max;
+            boolean counted = false;
+            int end;
+            if (c == '*') {
+                min = 0;
+                max = -1;
+                end = pos + 1;
+            } else if (c == '+') {
+                min = 1;
+                max = -1;
+                end = pos + 1;
+            } else if (c == '?') {
+                min = 0;
+                max = 1;
+                end = pos + 1;
+            } else if (c == '{') {
+                int close = s.indexOf('}', pos);
+                String body = close > 0 ? s.substring(pos + 1, close) : "";
+                if (!body.matches("\\d+(,\\d*)?")) {
+                    return null; // a literal '{' (PCRE semantics)
+                }
+                int comma = body.indexOf(',');
+                min = Integer.parseInt(comma < 0 ? body : body.substring(0, comma));
+                max = comma < 0 ? min : (comma == body.length() - 1 ? -1 : Integer.parseInt(body.substring(comma + 1)));
+                counted = true;
+                end = close + 1;
+            } else {
+                return null;
+            }
+            if (atom.kind == EMPTY) {
+                throw new IllegalStateException("quantifier without operand at " + pos);
+            }
+            Node repeat = new Node(REPEAT);
+            repeat.kids.add(atom);
+            repeat.min = min;
+            repeat.max = max;
+            repeat.counted = counted;
+            pos = end;
+            if (pos < s.length() && (s.charAt(pos) == '?' || s.charAt(pos) == '+')) {
+                repeat.suffix = String.valueOf(s.charAt(pos));
+                repeat.atomic = s.charAt(pos) == '+';
+                pos++;
+            }
+            repeat.text = s.substring(atomStart, pos);
+            return repeat;
+        }
+
+        private Node parseAtom() {
+            int start = pos;
+            char c = s.charAt(pos);
+            Node node;
+            switch (c) {
+                case '(':
+                    node = parseGroup();
+                    break;
+                case '[':
+                    node = charNode(parseClass());
+                    break;
+                case '.':
+                    pos++;
+                    node = charNode(all());
+                    break;
+                case '^':
+                case '$':
+                    pos++;
+                    node = new Node(EMPTY);
+                    break;
+                case '\\':
+                    node = parseEscape();
+                    break;
+                case '*':
+                case '+':
+                case '?':
+                    throw new IllegalStateException("quantifier without operand at " + pos);
+                default:
+                    pos++;
+                    node = charNode(literal(c));
+                    node.classBody = classLiteral(c);
+            }
+            node.text = s.substring(start, pos);
+            if (node.kind == CHAR && node.classBody == null && c == '[' && s.charAt(start + 1) != '^') {
+                node.classBody = node.text.substring(1, node.text.length() - 1);
+            } else if (node.kind == CHAR && c == '\\' && node.classBody == null && !node.backref) {
+                node.classBody = node.text;
+            }
+            return node;
+        }
+
+        private Node parseGroup() {
+            pos++; // (
+            Node group = new Node(GROUP);
+            boolean savedCi = ci;
+            if (s.startsWith("?:", pos)) {
+                pos += 2;
+            } else if (s.startsWith("?=", pos) || s.startsWith("?!", pos)) {
+                pos += 2;
+                group.lookaround = true;
+            } else if (s.startsWith("?<=", pos) || s.startsWith("?<!", pos)) {
+                pos += 3;
+                group.lookaround = true;
+            } else if (s.startsWith("?>", pos)) {
+                pos += 2;
+                group.atomic = true;
+            } else if (s.startsWith("?#", pos)) {
+                int close = s.indexOf(')', pos);
+                if (close < 0) {
+                    throw new IllegalStateException("unterminated comment");
+                }
+                pos = close + 1;
+                return new Node(EMPTY);
+            } else if (s.startsWith("?P<", pos) || s.startsWith("?<", pos) || s.startsWith("?'", pos)) {
+                int close = s.indexOf(s.charAt(pos + 1) == '\'' ? '\'' : '>', pos + 2);
+                if (close < 0) {
+                    throw new IllegalStateException("unterminated group name");
+                }
+                pos = close + 1;
+            } else if (pos < s.length() && s.charAt(pos) == '?') {
+                // inline flags: (?i) applies to the rest of the enclosing group, (?i:...) to its body
+                int end = pos + 1;
+                while (end < s.length() && (Character.isLetter(s.charAt(end)) || s.charAt(end) == '-')) {
+                    end++;
+                }
+                if (end >= s.length() || (s.charAt(end) != ')' && s.charAt(end) != ':')) {
+                    throw new IllegalStateException("unsupported group construct at " + pos);
+                }
+                String flags = s.substring(pos + 1, end);
+                int minus = flags.indexOf('-');
+                boolean caseless = flags.substring(0, minus < 0 ? flags.length() : minus).contains("i");
+                if (s.charAt(end) == ')') {
+                    pos = end + 1;
+                    ci = caseless || (ci && !(minus >= 0 && flags.substring(minus).contains("i")));
+                    return new Node(EMPTY);
+                }
+                ci = caseless || ci;
+                pos = end + 1;
+            }
+            group.open = s.substring(s.lastIndexOf('(', pos - 1), pos);
+            group.kids.add(parseAlt());
+            if (pos >= s.length() || s.charAt(pos) != ')') {
+                throw new IllegalStateException("missing ')'");
+            }
+            pos++;
+            ci = savedCi;
+            if (group.lookaround) {
+                Node empty = new Node(EMPTY);
+                empty.lookaround = true;
+                return empty;
+            }
+            return group;
+        }
+
+        private Node parseEscape() {
+            if (pos + 1 >= s.length()) {
+                throw new IllegalStateException("trailing backslash");
+            }
+            char e = s.charAt(pos + 1);
+            if ("bBAzZG".indexOf(e) >= 0) {
+                pos += 2;
+                return new Node(EMPTY);
+            }
+            if ((e >= '1' && e <= '9') || e == 'k') {
+                pos += 2;
+                if (e == 'k') {
+                    int close = s.indexOf('>', pos);
+                    pos = close < 0 ? s.length() : close + 1;
+                }
+                while (pos < s.length() && Character.isDigit(s.charAt(pos))) {
+                    pos++;
+                }
+                Node node = charNode(all());
+                node.backref = true;
+                return node;
+            }
+            return charNode(escapeSet());
+        }
+
+        /** Character set of the escape at pos (inside or outside a class); advances past it. */
+        private BitSet escapeSet() {
+            char e = s.charAt(pos + 1);
+            pos += 2;
+            BitSet set = new BitSet(ALPHABET);
+            switch (e) {
+                case 'd':
+                    set.set('0', '9' + 1);
+                    return set;
+                case 'D':
+                    set.set('0', '9' + 1);
+                    return complement(set);
+                case 'w':
+                    return word();
+                case 'W':
+                    return complement(word());
+                case 's':
+                    return space();
+                case 'S':
+                    return complement(space());
+                case 'h':
+                    set.set(' ');
+                    set.set('\t');
+                    return set;
+                case 'p':
+                case 'P':
+                    if (pos < s.length() && s.charAt(pos) == '{') {
+                        int close = s.indexOf('}', pos);
+                        pos = close < 0 ? s.length() : close + 1;
+                    } else {
+                        pos++;
+                    }
+                    return all();
+                case 'x':
+                    return literal(hexEscape());
+                case 'u':
+                    if (pos + 4 > s.length()) {
+                        throw new IllegalStateException("short \\u escape");
+                    }
+                    int u = Integer.parseInt(s.substring(pos, pos + 4), 16);
+                    pos += 4;
+                    return literal(u);
+                case 'n':
+                    return literal('\n');
+                case 't':
+                    return literal('\t');
+                case 'r':
+                    return literal('\r');
+                case 'f':
+                    return literal('\f');
+                case 'v':
+                    return literal(0x0B);
+                case 'e':
+                    return literal(0x1B);
+                case 'a':
+                    return literal(0x07);
+                case '0':
+                    int octal = 0;
+                    while (pos < s.length() && s.charAt(pos) >= '0' && s.charAt(pos) <= '7' && octal < 32) {
+                        octal = octal * 8 + (s.charAt(pos++) - '0');
+                    }
+                    return literal(octal);
+                case 'c':
+                    if (pos >= s.length()) {
+                        throw new IllegalStateException("short \\c escape");
+                    }
+                    return literal(Character.toUpperCase(s.charAt(pos++)) ^ 0x40);
+                case 'Q':
+                case 'E':
+                    throw new IllegalStateException("\\Q...\\E quoting");
+                default:
+                    if (Character.isLetterOrDigit(e)) {
+                        throw new IllegalStateException("unknown escape \\" + e);
+                    }
+                    return literal(e);
+            }
+        }
+
+        private int hexEscape() {
+            int end;
+            int value;
+            if (pos < s.length() && s.charAt(pos) == '{') {
+                end = s.indexOf('}', pos);
+                if (end < 0) {
+                    throw new IllegalStateException("unterminated \\x{...}");
+                }
+                value = Integer.parseInt(s.substring(pos + 1, end), 16);
+                pos = end + 1;
+                return value;
+            }
+            end = Math.min(pos + 2, s.length());
+            value = end > pos ? Integer.parseInt(s.substring(pos, end), 16) : 0;
+            pos = end;
+            return value;
+        }
+
+        private BitSet parseClass() {
+            pos++; // [
+            boolean negated = pos < s.length() && s.charAt(pos) == '^';
+            if (negated) {
+                pos++;
+            }
+            BitSet set = new BitSet(ALPHABET);
+            boolean first = true;
+            while (true) {
+                if (pos >= s.length()) {
+                    throw new IllegalStateException("unterminated character class");
+                }
+                char c = s.charAt(pos);
+                if (c == ']' && !first) {
+                    pos++;
+                    break;
+                }
+                first = false;
+                if (c == '[' && s.startsWith("[:", pos)) {
+                    int close = s.indexOf(":]", pos);
+                    if (close < 0) {
+                        throw new IllegalStateException("unterminated POSIX class");
+                    }
+                    set.or(posixClass(s.substring(pos + 2, close)));
+                    pos = close + 2;
+                    continue;
+                }
+                int lo;
+                if (c == '\\') {
+                    char e = pos + 1 < s.length() ? s.charAt(pos + 1) : 0;
+                    if ("dDwWsShpP".indexOf(e) >= 0) {
+                        set.or(escapeSet());
+                        continue;
+                    }
+                    BitSet single = escapeSet();
+                    lo = single.nextSetBit(0);
+                } else {
+                    lo = c;
+                    pos++;
+                }
+                if (pos + 1 < s.length() && s.charAt(pos) == '-' && s.charAt(pos + 1) != ']') {
+                    pos++;
+                    int hi;
+                    if (s.charAt(pos) == '\\') {
+                        hi = escapeSet().nextSetBit(0);
+                    } else {
+                        hi = s.charAt(pos++);
+                    }
+                    if (hi < lo) {
+                        throw new IllegalStateException("invalid class range");
+                    }
+                    for (int i = lo; i <= Math.min(hi, 255); i++) {
+                        set.or(literal(i));
+                    }
+                    if (hi > 255) {
+                        set.set(OTHER);
+                    }
+                } else {
+                    set.or(literal(lo));
+                }
+            }
+            return negated ? complement(set) : set;
+        }
+
+        private BitSet literal(int c) {
+            BitSet set = new BitSet(ALPHABET);
+            set.set(c > 255 ? OTHER : c);
+            if (ci && c < 128 && Character.isLetter(c)) {
+                set.set(Character.toLowerCase(c));
+                set.set(Character.toUpperCase(c));
+            }
+            return set;
+        }
+    }
+
+    private static Node charNode(BitSet chars) {
+        Node node = new Node(CHAR);
+        node.chars = chars;
+        return node;
+    }
+
+    private static String classLiteral(char c) {
+        return "\\]^-[".indexOf(c) >= 0 ? "\\" + c : String.valueOf(c);
+    }
+
+    private static BitSet all() {
+        BitSet set = new BitSet(ALPHABET);
+        set.set(0, ALPHABET);
+        return set;
+    }
+
+    private static BitSet complement(BitSet set) {
+        BitSet result = all();
+        result.andNot(set);
+        return result;
+    }
+
+    private static BitSet word() {
+        BitSet set = new BitSet(ALPHABET);
+        set.set('a', 'z' + 1);
+        set.set('A', 'Z' + 1);
+        set.set('0', '9' + 1);
+        set.set('_');
+        return set;
+    }
+
+    private static BitSet space() {
+        BitSet set = new BitSet(ALPHABET);
+        for (char c : new char[] {' ', '\t', '\n', '\r', '\f', 0x0B}) {
+            set.set(c);
+        }
+        return set;
+    }
+
+    private static BitSet posixClass(String name) {
+        BitSet set = new BitSet(ALPHABET);
+        switch (name) {
+            case "digit":
+                set.set('0', '9' + 1);
+                return set;
+            case "alpha":
+                set.set('a', 'z' + 1);
+                set.set('A', 'Z' + 1);
+                return set;
+            case "alnum":
+                set.set('a', 'z' + 1);
+                set.set('A', 'Z' + 1);
+                set.set('0', '9' + 1);
+                return set;
+            case "space":
+                return space();
+            case "upper":
+                set.set('A', 'Z' + 1);
+                return set;
+            case "lower":
+                set.set('a', 'z' + 1);
+                return set;
+            case "xdigit":
+                set.set('0', '9' + 1);
+                set.set('a', 'f' + 1);
+                set.set('A', 'F' + 1);
+                return set;
+            default:
+                set.set(0x21, 0x7F);
+                return set;
+        }
+    }
+
+    // ---------------------------------------------------------------- analysis
+
+    private Result evaluate(String pattern, Node root) {
+        Set<String> hazards = new LinkedHashSet<String>();
+        boolean[] exponential = new boolean[1];
+        findBacktrackingHazards(root, false, hazards, exponential);
+
+        boolean anchored = startsAnchored(pattern);
+        int degree = Math.max(1, longestOverlapChain(root, false));
+        if (!anchored && leadsWithUnboundedRepeat(root)) {
+            // an unanchored leading repetition is retried from every start offset
+            degree++;
+            hazards.add("unanchored leading repetition is retried at every offset");
+        }
+        if (degree > 1 && !exponential[0]) {
+            hazards.add("overlapping adjacent repetitions");
+        }
+
+        long width = maxWidth(root);
+        long n = width < 0 ? ASSUMED_INPUT_LENGTH : Math.max(1, Math.min(width, ASSUMED_INPUT_LENGTH));
+        long starts = anchored ? 1 : ASSUMED_INPUT_LENGTH;
+        Complexity complexity;
+        long steps;
+        if (exponential[0]) {
+            complexity = Complexity.EXPONENTIAL;
+            steps = multiply(starts, n >= 62 ? Long.MAX_VALUE : 1L << n);
+        } else if (degree > 1) {
+            complexity = Complexity.POLYNOMIAL;
+            steps = starts;
+            for (int i = 0; i < degree; i++) {
+                steps = multiply(steps, n);
+            }
+        } else {
+            complexity = Complexity.LINEAR;
+            steps = multiply(multiply(starts, n), Math.max(1, atoms(root)));
+        }
+
+        boolean re2Compatible = true;
+        if (contains(root, LOOKAROUND)) {
+            re2Compatible = false;
+            hazards.add("lookaround is not supported by RE2");
+        }
+        if (contains(root, BACKREF)) {
+            re2Compatible = false;
+            hazards.add("backreference is not supported by RE2");
+        }
+        long repeatProduct = repeatProduct(root);
+        if (repeatProduct > RE2_MAX_REPEAT) {
+            re2Compatible = false;
+            hazards.add("repeat count " + repeatProduct + " exceeds the RE2 limit of " + RE2_MAX_REPEAT);
+        }
+        return new Result(pattern, true, complexity, exponential[0] ? 0 : degree, steps, programSize(root),
+                re2Compatible, new ArrayList<String>(hazards));
+    }
+
+    private static boolean startsAnchored(String pattern) {
+        String p = pattern.replaceFirst("^(\\(\\?[a-zA-Z-]+\\))+", "");
+        return p.startsWith("^") || p.startsWith("\\A");
+    }
+
+    private static void findBacktrackingHazards(Node node, boolean atomic, Set<String> hazards, boolean[] exponential) {
+        atomic |= node.atomic;
+        if (node.kind == REPEAT && !atomic && (node.max < 0 || node.max > 1)) {
+            Node body = node.kid();
+            BitSet firstOfBody = first(body);
+            if (nestedAmbiguity(items(unwrap(body)), firstOfBody)) {
+                exponential[0] = true;
+                hazards.add("nested quantifier in " + text(node));
+            }
+            if (overlappingConcatenation(body, false)) {
+                exponential[0] = true;
+                hazards.add("overlapping repetitions concatenated under quantifier in " + text(node));
+            }
+            if (ambiguousAlternation(body, firstOfBody)) {
+                exponential[0] = true;
+                hazards.add("ambiguous alternation under quantifier in " + text(node));
+            }
+        }
+        if (node.kind == SEQ && !atomic) {
+            // a repeated group that can re-split what an earlier unbounded repetition consumed
+            BitSet chain = null;
+            for (Node item : node.kids) {
+                Node u = unwrap(item);
+                if (u.kind == REPEAT && !u.atomic && (u.max < 0 || u.max > 1) && chain != null
+                        && first(u.kid()).intersects(chain) && containsVariableRepeat(u.kid())) {
+                    exponential[0] = true;
+                    hazards.add("repeated group " + text(u) + " overlaps the preceding repetition");
+                }
+                if (u.kind == REPEAT && !u.atomic && u.max < 0) {
+                    chain = chars(u.kid());
+                } else if (!nullable(item) && !first(item).intersects(chain == null ? new BitSet() : chain)) {
+                    chain = null;
+                }
+            }
+        }
+        for (Node kid : node.kids) {
+            findBacktrackingHazards(kid, atomic, hazards, exponential);
+        }
+    }
+
+    /**
+     * Whether a repeated body can split one input between iterations in several
+     * ways: some variable repetition inside it is only surrounded by nullable items
+     * and can consume the characters a new iteration starts with.
+     */
+    private static boolean nestedAmbiguity(List<List<Node>> branches, BitSet firstOfBody) {
+        for (List<Node> items : branches) {
+            for (int i = 0; i < items.size(); i++) {
+                if (!allNullable(items, 0, i) || !allNullable(items, i + 1, items.size())) {
+                    continue;
+                }
+                Node item = unwrap(items.get(i));
+                if (item.kind == REPEAT && !item.atomic && item.max != item.min && (item.max < 0 || item.max >= 2)
+                        && chars(item.kid()).intersects(firstOfBody)) {
+                    return true;
+                }
+                if ((item.kind == SEQ || item.kind == ALT) && nestedAmbiguity(items(item), firstOfBody)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Whether a repeated body concatenates variable repetitions where one can start
+     * with a character the previous one consumes, only nullable or overlapping items
+     * between: one iteration can then split its input in several ways, and every
+     * iteration multiplies them.
+     */
+    private static boolean overlappingConcatenation(Node node, boolean atomic) {
+        atomic |= node.atomic;
+        if (node.kind == SEQ && !atomic) {
+            BitSet chain = null;
+            for (Node item : node.kids) {
+                Node u = unwrap(item);
+                if (u.kind == REPEAT && !u.atomic && u.max != u.min) {
+                    if (chain != null && first(u.kid()).intersects(chain)) {
+                        return true;
+                    }
+                    chain = chars(u.kid());
+                } else if (!nullable(item) && (chain == null || !first(item).intersects(chain))) {
+                    chain = null;
+                }
+            }
+        }
+        for (Node kid : node.kids) {
+            if (overlappingConcatenation(kid, atomic)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Whether alternatives under a repetition overlap: single characters or
+     * variable repetitions starting alike, or alternatives of different widths
+     * starting alike whose remainder can also start a new iteration, as in (a|aa)+.
+     */
+    private static boolean ambiguousAlternation(Node node, BitSet firstOfBody) {
+        if (node.atomic) {
+            return false;
+        }
+        if (node.kind == ALT) {
+            for (int i = 0; i < node.kids.size(); i++) {
+                for (int j = i + 1; j < node.kids.size(); j++) {
+                    Node a = node.kids.get(i);
+                    Node b = node.kids.get(j);
+                    if (!first(a).intersects(first(b))) {
+                        continue;
+                    }
+                    boolean singleChars = minWidth(a) == 1 && maxWidth(a) == 1 && minWidth(b) == 1 && maxWidth(b) == 1;
+                    if (singleChars || containsVariableRepeat(a) || containsVariableRepeat(b)) {
+                        return true;
+                    }
+                    boolean sameWidth = minWidth(a) == maxWidth(a) && minWidth(a) == minWidth(b) && minWidth(b) == maxWidth(b);
+                    if (!sameWidth && (chars(a).intersects(firstOfBody) || chars(b).intersects(firstOfBody))) {
+                        return true;
+                    }
+                }
+            }
+        }
+        if (node.kind == REPEAT) {
+            return false; // judged when that repetition itself is visited
+        }
+        for (Node kid : node.kids) {
+            if (ambiguousAlternation(kid, firstOfBody)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Longest chain of unbounded repetitions each able to start with a character the
+     * previous one consumes, only nullable items between.
+     */
+    private static int longestOverlapChain(Node node, boolean atomic) {
+        atomic |= node.atomic;
+        int best = 0;
+        if (node.kind == SEQ && !atomic) {
+            int length = 0;
+            BitSet chain = null;
+            for (Node item : node.kids) {
+                Node u = unwrap(item);
+                if (u.kind == REPEAT && !u.atomic && u.max < 0) {
+                    length = chain != null && first(u.kid()).intersects(chain) ? length + 1 : 1;
+                    chain = chars(u.kid());
+                } else if (!nullable(item) && (chain == null || !first(item).intersects(chain))) {
+                    length = 0;
+                    chain = null;
+                }
+                best = Math.max(best, length);
+            }
+        }
+        for (Node kid : node.kids) {
+            best = Math.max(best, longestOverlapChain(kid, atomic));
+        }
+        return best;
+    }
+
+    /**
+     * An unanchored pattern whose first item is an unbounded repetition followed by
+     * something that can fail: every start offset re-runs the repetition.
+     */
+    private static boolean leadsWithUnboundedRepeat(Node root) {
+        Node node = unwrap(root);
+        if (node.kind != SEQ) {
+            return false;
+        }
+        for (int i = 0; i < node.kids.size(); i++) {
+            Node item = node.kids.get(i);
+            if (item.kind == EMPTY) {
+                continue;
+            }
+            Node u = unwrap(item);
+            return u.kind == REPEAT && u.max < 0 && !u.atomic && !allNullable(node.kids, i + 1, node.kids.size());
+        }
+        return false;
+    }
+
+    private static List<List<Node>> items(Node node) {
+        List<List<Node>> branches = new ArrayList<List<Node>>();
+        if (node.kind == ALT) {
+            for (Node kid : node.kids) {
+                branches.add(unwrap(kid).kind == SEQ ? unwrap(kid).kids : Collections.singletonList(kid));
+            }
+        } else {
+            branches.add(node.kind == SEQ ? node.kids : Collections.singletonList(node));
+        }
+        return branches;
+    }
+
+    /** Strip plain (non-atomic) groups around a node. */
+    private static Node unwrap(Node node) {
+        while (node.kind == GROUP && !node.atomic) {
+            node = node.kid();
+        }
+        return node;
+    }
+
+    private static boolean allNullable(List<Node> items, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (!nullable(items.get(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean nullable(Node node) {
+        switch (node.kind) {
+            case CHAR:
+                return false;
+            case EMPTY:
+                return true;
+            case SEQ:
+                for (Node kid : node.kids) {
+                    if (!nullable(kid)) {
+                        return false;
+                    }
+                }
+                return true;
+            case ALT:
+                for (Node kid : node.kids) {
+                    if (nullable(kid)) {
+                        return true;
+                    }
+                }
+                return false;
+            case REPEAT:
+                return node.min == 0 || nullable(node.kid());
+            default:
+                return nullable(node.kid());
+        }
+    }
+
+    private static BitSet first(Node node) {
+        BitSet set = new BitSet(ALPHABET);
+        switch (node.kind) {
+            case CHAR:
+                set.or(node.chars);
+                break;
+            case SEQ:
+                for (Node kid : node.kids) {
+                    set.or(first(kid));
+                    if (!nullable(kid)) {
+                        break;
+                    }
+                }
+                break;
+            case ALT:
+                for (Node kid : node.kids) {
+                    set.or(first(kid));
+                }
+                break;
+            case EMPTY:
+                break;
+            default:
+                set.or(first(node.kid()));
+        }
+        return set;
+    }
+
+    private static BitSet chars(Node node) {
+        BitSet set = new BitSet(ALPHABET);
+        if (node.kind == CHAR) {
+            set.or(node.chars);
+        }
+        for (Node kid : node.kids) {
+            set.or(chars(kid));
+        }
+        return set;
+    }
+
+    private static boolean containsVariableRepeat(Node node) {
+        if (node.kind == REPEAT && node.max != node.min) {
+            return true;
+        }
+        for (Node kid : node.kids) {
+            if (containsVariableRepeat(kid)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static long minWidth(Node node) {
+        switch (node.kind) {
+            case CHAR:
+                return 1;
+            case EMPTY:
+                return 0;
+            case SEQ:
+                long sum = 0;
+                for (Node kid : node.kids) {
+                    sum = add(sum, minWidth(kid));
+                }
+                return sum;
+            case ALT:
+                long min = Long.MAX_VALUE;
+                for (Node kid : node.kids) {
+                    min = Math.min(min, minWidth(kid));
+                }
+                return min;
+            case REPEAT:
+                return multiply(node.min, minWidth(node.kid()));
+            default:
+                return minWidth(node.kid());
+        }
+    }
+
+    /** Maximum match width, -1 when unbounded. */
+    private static long maxWidth(Node node) {
+        switch (node.kind) {
+            case CHAR:
+                return 1;
+            case EMPTY:
+                return 0;
+            case SEQ:
+                long sum = 0;
+                for (Node kid : node.kids) {
+                    long w = maxWidth(kid);
+                    if (w < 0) {
+                        return -1;
+                    }
+                    sum = add(sum, w);
+                }
+                return sum;
+            case ALT:
+                long max = 0;
+                for (Node kid : node.kids) {
+                    long w = maxWidth(kid);
+                    if (w < 0) {
+                        return -1;
+                    }
+                    max = Math.max(max, w);
+                }
+                return max;
+            case REPEAT:
+                long inner = maxWidth(node.kid());
+                if (inner == 0) {
+                    return 0;
+                }
+                return inner < 0 || node.max < 0 ? -1 : multiply(node.max, inner);
+            default:
+                return maxWidth(node.kid());
+        }
+    }
+
+    private static int atoms(Node node) {
+        int count = node.kind == CHAR ? 1 : 0;
+        for (Node kid : node.kids) {
+            count += atoms(kid);
+        }
+        return count;
+    }
+
+    /** Approximate RE2 instruction count: counted repetitions are compiled by copying their body. */
+    private static long programSize(Node node) {
+        switch (node.kind) {
+            case CHAR:
+            case EMPTY:
+                return 1;
+            case SEQ:
+                long sum = 0;
+                for (Node kid : node.kids) {
+                    sum = add(sum, programSize(kid));
+                }
+                return sum;
+            case ALT:
+                long alt = node.kids.size() - 1;
+                for (Node kid : node.kids) {
+                    alt = add(alt, programSize(kid));
+                }
+                return alt;
+            case REPEAT:
+                long body = programSize(node.kid());
+                if (node.max < 0) {
+                    return add(multiply(body, Math.max(node.min, 1)), 1);
+                }
+                return add(multiply(body, node.max), node.max - node.min);
+            default:
+                return programSize(node.kid());
+        }
+    }
+
+    /** Largest product of nested explicit repeat counts. */
+    private static long repeatProduct(Node node) {
+        long inner = 1;
+        for (Node kid : node.kids) {
+            inner = Math.max(inner, repeatProduct(kid));
+        }
+        if (node.kind == REPEAT && node.counted) {
+            return multiply(Math.max(node.min, node.max), inner);
+        }
+        return inner;
+    }
+
+    private static final int LOOKAROUND = 0;
+    private static final int BACKREF = 1;
+
+    private static boolean contains(Node node, int feature) {
+        if (feature == LOOKAROUND ? node.lookaround : node.backref) {
+            return true;
+        }
+        for (Node kid : node.kids) {
+            if (contains(kid, feature)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String text(Node node) {
+        return emit(node);
+    }
+
+    private static long add(long a, long b) {
+        long r = a + b;
+        return r < 0 ? Long.MAX_VALUE : r;
+    }
+
+    private static long multiply(long a, long b) {
+        if (a == 0 || b == 0) {
+            return 0;
+        }
+        return a > Long.MAX_VALUE / b ? Long.MAX_VALUE : a * b;
+    }
+
+    // ---------------------------------------------------------------- rewriting
+
+    /**
+     * Rewrite bottom-up; a rewritten node drops its source text so it is re-emitted.
+     * With keepCaptures no rewrite removes or duplicates a capturing group.
+     */
+    private static Node simplify(Node node, boolean keepCaptures) {
+        boolean changed = false;
+        for (int i = 0; i < node.kids.size(); i++) {
+            Node kid = node.kids.get(i);
+            Node simplified = simplify(kid, keepCaptures);
+            if (simplified != kid || simplified.text == null) {
+                node.kids.set(i, simplified);
+                changed = true;
+            }
+        }
+        if (changed) {
+            node.text = null;
+        }
+        switch (node.kind) {
+            case REPEAT:
+                return keepCaptures && containsCapture(node.kid()) ? node : collapseNestedRepeat(node);
+            case ALT:
+                return keepCaptures && containsCapture(node) ? node : simplifyAlternation(node);
+            case SEQ:
+                return keepCaptures && containsCapture(node) ? node : mergeAdjacentRepeats(node);
+            default:
+                return node;
+        }
+    }
+
+    /**
+     * (?:X+)+ -> X+, (?:X*)+ / (?:X+)* / (?:X?)* ... -> X*, (?:X{n,})+ -> X{n,}:
+     * the language is unchanged. Inline flag groups between the repetitions stay
+     * around X, as in (?i:X+)+ -> (?i:X)+.
+     */
+    private static Node collapseNestedRepeat(Node outer) {
+        Node inner = unwrap(outer.kid());
+        if (inner.kind != REPEAT || outer.atomic || inner.atomic || !simpleCount(outer)) {
+            return outer;
+        }
+        Node merged = new Node(REPEAT);
+        merged.kids.add(withFlagGroups(outer.kid(), inner.kid()));
+        merged.max = -1;
+        if (outer.min == 1 && outer.max < 0 && inner.max < 0) {
+            // any sum of one or more counts of at least n is itself at least n
+            merged.min = inner.min;
+            merged.counted = inner.min > 1;
+            return merged;
+        }
+        if (!simpleCount(inner) || (outer.max >= 0 && inner.max >= 0)) {
+            return outer;
+        }
+        merged.min = outer.min == 0 || inner.min == 0 ? 0 : 1;
+        return merged;
+    }
+
+    /** Wrap body in the inline flag groups, such as (?i:, found from node down to body. */
+    private static Node withFlagGroups(Node node, Node body) {
+        if (node.kind != GROUP || node.atomic) {
+            return body;
+        }
+        Node inner = withFlagGroups(node.kid(), body);
+        if (!node.open.matches("\\(\\?[a-zA-Z-]+:")) {
+            return inner;
+        }
+        Node group = new Node(GROUP);
+        group.open = node.open;
+        group.kids.add(inner);
+        return group;
+    }
+
+    private static boolean containsCapture(Node node) {
+        if (node.kind == GROUP && (node.open.equals("(")
+                || node.open.startsWith("(?<") || node.open.startsWith("(?P<") || node.open.startsWith("(?'"))) {
+            return true;
+        }
+        for (Node kid : node.kids) {
+            if (containsCapture(kid)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean simpleCount(Node repeat) {
+        return (repeat.min == 0 || repeat.min == 1) && (repeat.max == 1 || repeat.max < 0);
+    }
+
+    /** Drop duplicate alternatives; merge all-single-character alternatives into one class. */
+    private static Node simplifyAlternation(Node alt) {
+        List<Node> unique = new ArrayList<Node>();
+        Set<String> seen = new LinkedHashSet<String>();
+        for (Node kid : alt.kids) {
+            if (seen.add(emit(kid))) {
+                unique.add(kid);
+            }
+        }
+        if (unique.size() != alt.kids.size()) {
+            alt.kids = unique;
+            alt.text = null;
+        }
+        if (alt.kids.size() == 1) {
+            return alt.kid();
+        }
+        StringBuilder body = new StringBuilder();
+        BitSet set = new BitSet(ALPHABET);
+        for (Node kid : alt.kids) {
+            if (kid.kind != CHAR || kid.classBody == null) {
+                return alt;
+            }
+            body.append(kid.classBody);
+            set.or(kid.chars);
+        }
+        Node merged = charNode(set);
+        merged.classBody = body.toString();
+        merged.text = "[" + body + "]";
+        return merged;
+    }
+
+    /** X{a,}X{b,} -> X{a+b,} for identical X. */
+    private static Node mergeAdjacentRepeats(Node seq) {
+        List<Node> kids = new ArrayList<Node>();
+        for (Node kid : seq.kids) {
+            Node last = kids.isEmpty() ? null : kids.get(kids.size() - 1);
+            if (last != null && last.kind == REPEAT && kid.kind == REPEAT && last.max < 0 && kid.max < 0
+                    && !last.atomic && !kid.atomic && emit(last.kid()).equals(emit(kid.kid()))) {
+                Node merged = new Node(REPEAT);
+                merged.kids.add(last.kid());
+                merged.min = last.min + kid.min;
+                merged.max = -1;
+                merged.counted = merged.min > 1;
+                kids.set(kids.size() - 1, merged);
+                seq.text = null;
+            } else {
+                kids.add(kid);
+            }
+        }
+        seq.kids = kids;
+        return seq.kids.size() == 1 ? seq.kid() : seq;
+    }
+
+    private static String emit(Node node) {
+        if (node.text != null) {
+            return node.text;
+        }
+        StringBuilder out = new StringBuilder();
+        switch (node.kind) {
+            case SEQ:
+                for (Node kid : node.kids) {
+                    out.append(emit(kid));
+                }
+                break;
+            case ALT:
+                for (int i = 0; i < node.kids.size(); i++) {
+                    out.append(i > 0 ? "|" : "").append(emit(node.kids.get(i)));
+                }
+                break;
+            case GROUP:
+                out.append(node.open).append(emit(node.kid())).append(')');
+                break;
+            case REPEAT:
+                Node body = node.kid();
+                boolean wrap = body.kind == SEQ || body.kind == ALT;
+                out.append(wrap ? "(?:" : "").append(emit(body)).append(wrap ? ")" : "");
+                if (node.min == 0 && node.max < 0) {
+                    out.append('*');
+                } else if (node.min == 1 && node.max < 0) {
+                    out.append('+');
+                } else if (node.min == 0 && node.max == 1) {
+                    out.append('?');
+                } else if (node.max == node.min) {
+                    out.append('{').append(node.min).append('}');
+                } else {
+                    out.append('{').append(node.min).append(',').append(node.max < 0 ? "" : String.valueOf(node.max)).append('}');
+                }
+                out.append(node.suffix);
+                break;
+            default:
+                break;
+        }
+        return out.toString();
+    }
+}
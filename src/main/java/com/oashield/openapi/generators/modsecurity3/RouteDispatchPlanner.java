@@ -0,0 +1,224 @@
+package com.oashield.openapi.generators.modsecurity3;
+
+import org.openapitools.codegen.CodegenOperation;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * Plans how the operation blocks of one API file are ordered and gated.
+ *
+ * Prefix-tree dispatch (routeDispatch=prefixTree): operations are grouped into a
+ * trie of their literal path segments and every subtree holding more than one
+ * operation gets a cheap string gate that skips the whole subtree when the request
+ * path lies outside it. A request then only evaluates the operation blocks under
+ * its own prefix instead of every block in the file.
+ *
+ * Method buckets (groupByMethod=true): operations are grouped by HTTP method and
+ * each bucket is preceded by one method gate, so a request never evaluates the
+ * path rules of operations declared for another method.
+ */
+public class RouteDispatchPlanner {
+
+    /** Gates to emit in front of an operation, outermost first. */
+    static final String ROUTE_GATES_KEY = "x-codegen-routeGates";
+    /** Subtree end markers to emit after an operation, innermost first. */
+    static final String ROUTE_MARKERS_KEY = "x-codegen-routeMarkers";
+    /** Set on the first operation of a method bucket: the bucket's last operationId. */
+    static final String METHOD_GATE_KEY = "x-codegen-methodGate";
+
+    private static final String MARKER_PREFIX = "ROUTE_";
+
+    private RouteDispatchPlanner() {
+    }
+
+    /**
+     * A subtree end marker; named after its gate's rule id, which may only be
+     * known once the tag's ids are resolved.
+     */
+    private static final class Marker {
+        final Number gateId;
+
+        Marker(Number gateId) {
+            this.gateId = gateId;
+        }
+
+        @Override
+        public String toString() {
+            return MARKER_PREFIX + gateId;
+        }
+    }
+
+    private static final class Node {
+        final String prefix;
+        final Map<String, Node> children = new LinkedHashMap<String, Node>();
+        final List<CodegenOperation> ops = new ArrayList<CodegenOperation>();
+
+        Node(String prefix) {
+            this.prefix = prefix;
+        }
+
+        int size() {
+            int size = ops.size();
+            for (Node child : children.values()) {
+                size += child.size();
+            }
+            return size;
+        }
+    }
+
+    /**
+     * Reorder the operations into trie order and attach the gate and marker vendor
+     * extensions the template renders.
+     *
+     * Within a subtree, deeper (more literal) routes come before the operations
+     * that end at the subtree root, so /user/login is tried before /user/{username};
+     * operations ending on the same node keep their relative order.
+     *
+     * @param ops      the operations of one API file
+     * @param basePath literal deployed base path ("" for none); must not be templated
+     * @param ids      rule id source for the gate rules
+     * @return the operations in emission order
+     */
+    public static List<CodegenOperation> plan(List<CodegenOperation> ops, String basePath, LongSupplier ids) {
+        return plan(ops, basePath, (Function<String, Number>) prefix -> ids.getAsLong());
+    }
+
+    /**
+     * Like {@link #plan(List, String, LongSupplier)}, drawing each gate's rule id
+     * by the prefix it gates (stable rule ids).
+     *
+     * @param ids rule id source for the gate rules, keyed by gated prefix
+     */
+    public static List<CodegenOperation> plan(List<CodegenOperation> ops, String basePath,
+            Function<String, Number> ids) {
+        Node root = new Node("");
+        for (CodegenOperation co : ops) {
+            Node node = root;
+            for (String segment : literalSegments(co.path)) {
+                Node child = node.children.get(segment);
+                if (child == null) {
+                    child = new Node(node.prefix + "/" + segment);
+                    node.children.put(segment, child);
+                }
+                node = child;
+            }
+            node.ops.add(co);
+        }
+
+        List<CodegenOperation> ordered = new ArrayList<CodegenOperation>(ops.size());
+        visit(root, basePath, ordered, ids);
+        return ordered;
+    }
+
+    private static void visit(Node node, String basePath, List<CodegenOperation> ordered,
+            Function<String, Number> ids) {
+        int first = ordered.size();
+        Map<String, Object> gate = null;
+        // A single-operation subtree is already gated by the operation's own path
+        // rule, and a pass-through node (no operations, one child) by its child.
+        boolean worthGating = node.size() > 1 && !(node.ops.isEmpty() && node.children.size() == 1);
+        String prefix = basePath + node.prefix;
+        if (worthGating && !prefix.isEmpty()) {
+            Number gateId = ids.apply(prefix);
+            gate = new HashMap<String, Object>();
+            gate.put("gateId", gateId);
+            gate.put("operator", node.children.isEmpty() && allLiteral(node) ? "@streq" : "@beginsWith");
+            gate.put("prefix", prefix);
+            gate.put("marker", new Marker(gateId));
+        }
+
+        for (Node child : node.children.values()) {
+            visit(child, basePath, ordered, ids);
+        }
+        ordered.addAll(node.ops);
+
+        if (gate != null && ordered.size() > first) {
+            // pre-order open (outer gates first), post-order close (inner markers first)
+            extensionList(ordered.get(first), ROUTE_GATES_KEY).add(0, gate);
+            extensionList(ordered.get(ordered.size() - 1), ROUTE_MARKERS_KEY).add(gate.get("marker"));
+        }
+    }
+
+    /**
+     * Split the operations into one bucket per HTTP method, buckets in order of the
+     * method's first appearance. Operations keep their relative order inside a
+     * bucket, so overlapping routes of the same method keep their precedence.
+     *
+     * @param ops the operations of one API file
+     * @return the method buckets
+     */
+    public static List<List<CodegenOperation>> methodBuckets(List<CodegenOperation> ops) {
+        Map<String, List<CodegenOperation>> buckets = new LinkedHashMap<String, List<CodegenOperation>>();
+        for (CodegenOperation co : ops) {
+            String method = co.httpMethod != null ? co.httpMethod.toUpperCase(java.util.Locale.ROOT) : "";
+            List<CodegenOperation> bucket = buckets.get(method);
+            if (bucket == null) {
+                bucket = new ArrayList<CodegenOperation>();
+                buckets.put(method, bucket);
+            }
+            bucket.add(co);
+        }
+        return new ArrayList<List<CodegenOperation>>(buckets.values());
+    }
+
+    /**
+     * Mark the first operation of an (already ordered) method bucket so the
+     * template emits the bucket's method gate. The gate skips to the END_ marker
+     * of the bucket's last operation; single-operation buckets need no gate beyond
+     * the operation's own method rule.
+     *
+     * @param bucket the operations of one method, in emission order
+     */
+    public static void markMethodBucket(List<CodegenOperation> bucket) {
+        if (bucket.size() < 2) {
+            return;
+        }
+        Map<String, Object> gate = new HashMap<String, Object>();
+        gate.put("lastOperationId", bucket.get(bucket.size() - 1).operationId);
+        bucket.get(0).vendorExtensions.put(METHOD_GATE_KEY, gate);
+    }
+
+    /**
+     * Literal path segments before the first templated one: "/pet/{petId}/uploadImage"
+     * yields [pet]; "/store/inventory" yields [store, inventory].
+     */
+    static List<String> literalSegments(String path) {
+        List<String> segments = new ArrayList<String>();
+        for (String segment : path.split("/")) {
+            if (segment.isEmpty()) {
+                continue;
+            }
+            if (segment.contains("{")) {
+                break;
+            }
+            segments.add(segment);
+        }
+        return segments;
+    }
+
+    private static boolean allLiteral(Node node) {
+        for (CodegenOperation co : node.ops) {
+            if (!node.prefix.equals(co.path)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> List<T> extensionList(CodegenOperation co, String key) {
+        Object existing = co.vendorExtensions.get(key);
+        if (existing instanceof List) {
+            return (List<T>) existing;
+        }
+        List<T> list = new ArrayList<T>();
+        co.vendorExtensions.put(key, list);
+        return list;
+    }
+}
@@ -0,0 +1,315 @@
+package com.oashield.openapi.generators.modsecurity3;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.function.IntToLongFunction;
+import java.util.function.LongSupplier;
+
+/**
+ * The rule ids of one operation, parameter or body property: one object in place
+ * of a vendor extension per rule slot.
+ *
+ * Templates read the id of slot N as {@code vendorExtensions.x-codegen-ruleIds.N}
+ * (or {@code x-codegen-propRuleIds.N}); that lookup is {@link #get(Object)}.
+ * Generator code reads an id with {@link #id(int)}, which never hands out an id,
+ * so the regex cost report and the operator strength reduction can refer to a
+ * rule before its id is known.
+ *
+ * A reserved block owns a fixed number of ids, contiguous (sequential
+ * allocation) or drawn one by one, and computes or looks them up on demand. An
+ * on-demand block ({@link #onDemand}) owns no ids: the first time the renderer
+ * reads a slot, that slot draws the next id (onDemand allocation) or claims its
+ * keyed id (stable allocation), so only the rules actually written take one.
+ */
+public abstract class RuleIdBlock extends AbstractMap<String, Number> {
+
+    private final int size;
+
+    private RuleIdBlock(int size) {
+        this.size = size;
+    }
+
+    /**
+     * Number of rule slots.
+     */
+    public int slots() {
+        return size;
+    }
+
+    /**
+     * A block of size ids starting at first: a Long, or an id whose value is known
+     * once its sequence is resolved.
+     */
+    public static RuleIdBlock contiguous(Number first, int size) {
+        return new Contiguous(first, size);
+    }
+
+    /**
+     * A block of the given ids, slot 1 first.
+     */
+    public static RuleIdBlock of(Number... ids) {
+        return new Listed(ids);
+    }
+
+    /**
+     * A block whose slots draw an id from the allocator the first time the
+     * renderer reads them.
+     */
+    public static RuleIdBlock onDemand(int size, LongSupplier allocator) {
+        return new OnDemand(size, slot -> allocator.getAsLong());
+    }
+
+    /**
+     * A block whose slots draw the id the allocator gives for the slot (1-based)
+     * the first time the renderer reads them.
+     */
+    public static RuleIdBlock onDemand(int size, IntToLongFunction allocator) {
+        return new OnDemand(size, allocator);
+    }
+
+    /**
+     * The id of a slot (1-based) for generator code: a Long once it is known, or a
+     * Number whose value is known once the ids are resolved or the rule is rendered.
+     */
+    public abstract Number id(int slot);
+
+    /**
+     * Whether the id of a slot is known; an on-demand slot is not until it is rendered.
+     */
+    public abstract boolean isAssigned(int slot);
+
+    /**
+     * The id of a slot for the renderer; an on-demand slot draws it now.
+     */
+    protected abstract long render(int slot);
+
+    /**
+     * The id of the slot named by key ("1" to size), for the renderer; null for any
+     * other key.
+     */
+    @Override
+    public Number get(Object key) {
+        int slot = slot(key);
+        return slot < 0 ? null : Long.valueOf(render(slot));
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return slot(key) >= 0;
+    }
+
+    /**
+     * The assigned ids only, so that listing a block (debug output) draws no id.
+     */
+    @Override
+    public Set<Entry<String, Number>> entrySet() {
+        return new AbstractSet<Entry<String, Number>>() {
+            @Override
+            public Iterator<Entry<String, Number>> iterator() {
+                List<Entry<String, Number>> entries = new ArrayList<Entry<String, Number>>();
+                for (int slot = 1; slot <= size; slot++) {
+                    if (isAssigned(slot)) {
+                        entries.add(new SimpleImmutableEntry<String, Number>(String.valueOf(slot), id(slot)));
+                    }
+                }
+                return entries.iterator();
+            }
+
+            @Override
+            public int size() {
+                int assigned = 0;
+                for (int slot = 1; slot <= RuleIdBlock.this.size; slot++) {
+                    assigned += isAssigned(slot) ? 1 : 0;
+                }
+                return assigned;
+            }
+        };
+    }
+
+    // blocks are compared by identity: two blocks never share a rule
+    @Override
+    public boolean equals(Object other) {
+        return this == other;
+    }
+
+    @Override
+    public int hashCode() {
+        return System.identityHashCode(this);
+    }
+
+    private int slot(Object key) {
+        if (!(key instanceof String)) {
+            return -1;
+        }
+        try {
+            int slot = Integer.parseInt((String) key);
+            return slot >= 1 && slot <= size ? slot : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    final void check(int slot) {
+        if (slot < 1 || slot > size) {
+            throw new IndexOutOfBoundsException("Rule id slot " + slot + " of a block of " + size);
+        }
+    }
+
+    /**
+     * Whether the value of an id is known: a deferred id (RuleIdSequence,
+     * StableRuleIds, an on-demand slot) refuses its value until it is resolved or
+     * rendered.
+     */
+    public static boolean isKnown(Number id) {
+        if (id instanceof Long) {
+            return true;
+        }
+        try {
+            id.longValue();
+            return true;
+        } catch (IllegalStateException e) {
+            return false;
+        }
+    }
+
+    /**
+     * An id of a block that is not a Long yet; equal to the same slot of the same
+     * block, so cost rows recorded with it can be found again.
+     */
+    private static final class SlotId extends Number {
+        private static final long serialVersionUID = 1L;
+
+        private final transient RuleIdBlock block;
+        private final int slot;
+
+        private SlotId(RuleIdBlock block, int slot) {
+            this.block = block;
+            this.slot = slot;
+        }
+
+        @Override
+        public long longValue() {
+            if (!block.isAssigned(slot)) {
+                throw new IllegalStateException("Rule id of slot " + slot + " read before it was assigned");
+            }
+            return block.render(slot);
+        }
+
+        @Override
+        public int intValue() {
+            return (int) longValue();
+        }
+
+        @Override
+        public float floatValue() {
+            return longValue();
+        }
+
+        @Override
+        public double doubleValue() {
+            return longValue();
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof SlotId && ((SlotId) other).block == block && ((SlotId) other).slot == slot;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(block) * 31 + slot;
+        }
+
+        @Override
+        public String toString() {
+            // log messages written while the operation is processed see "pending"
+            return block.isAssigned(slot) ? String.valueOf(block.render(slot)) : "pending";
+        }
+    }
+
+    private static final class Contiguous extends RuleIdBlock {
+        private final Number first;
+
+        Contiguous(Number first, int size) {
+            super(size);
+            this.first = first;
+        }
+
+        @Override
+        public Number id(int slot) {
+            check(slot);
+            return first instanceof Long ? Long.valueOf(first.longValue() + slot - 1) : new SlotId(this, slot);
+        }
+
+        @Override
+        public boolean isAssigned(int slot) {
+            return isKnown(first);
+        }
+
+        @Override
+        protected long render(int slot) {
+            return first.longValue() + slot - 1;
+        }
+    }
+
+    private static final class Listed extends RuleIdBlock {
+        private final Number[] ids;
+
+        Listed(Number[] ids) {
+            super(ids.length);
+            this.ids = ids;
+        }
+
+        @Override
+        public Number id(int slot) {
+            check(slot);
+            return ids[slot - 1];
+        }
+
+        @Override
+        public boolean isAssigned(int slot) {
+            return isKnown(ids[slot - 1]);
+        }
+
+        @Override
+        protected long render(int slot) {
+            return ids[slot - 1].longValue();
+        }
+    }
+
+    private static final class OnDemand extends RuleIdBlock {
+        private static final long UNASSIGNED = 0;
+
+        private final long[] ids;
+        private final transient IntToLongFunction allocator;
+
+        OnDemand(int size, IntToLongFunction allocator) {
+            super(size);
+            this.ids = new long[size];
+            this.allocator = allocator;
+        }
+
+        @Override
+        public Number id(int slot) {
+            check(slot);
+            return new SlotId(this, slot);
+        }
+
+        @Override
+        public boolean isAssigned(int slot) {
+            return ids[slot - 1] != UNASSIGNED;
+        }
+
+        @Override
+        protected long render(int slot) {
+            if (ids[slot - 1] == UNASSIGNED) {
+                ids[slot - 1] = allocator.applyAsLong(slot);
+            }
+            return ids[slot - 1];
+        }
+    }
+}
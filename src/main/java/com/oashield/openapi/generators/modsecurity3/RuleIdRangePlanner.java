@@ -0,0 +1,169 @@
+package com.oashield.openapi.generators.modsecurity3;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lays out the sequential rule id ranges inside the configured id window
+ * (ruleIdStart..ruleIdEnd) before any id is handed out.
+ *
+ * The window holds, in order: the operation range (a fixed block per operation
+ * plus one id per API file), the parameter range (parameters, body properties,
+ * consume entries, body keyword rules and route gates, drawn as each operation
+ * is processed) and the closing rules of mainconfig.conf. Two more mainconfig
+ * rules sit just below the window start.
+ *
+ * The default layout starts the parameter range {@link #PARAMETER_OFFSET} and the
+ * closing rules {@link #CLOSING_OFFSET} ids into the window. A range that would
+ * run into the next one pushes it back instead, so no two rules share an id
+ * whatever the size of the spec. A spec whose planned ids do not fit the window
+ * is rejected up front with a report of what needs how many ids. Ids drawn only
+ * as rules are written (ruleIdAllocation=onDemand) are reported as an upper
+ * bound and checked as they are drawn, with {@link Plan#checkParameterEnd}.
+ */
+public class RuleIdRangePlanner {
+
+    public static final long DEFAULT_START = 4_200_001L;
+    public static final long DEFAULT_END = 4_999_999L;
+    /** Default distance from the window start to the parameter range. */
+    public static final long PARAMETER_OFFSET = 10_000L;
+    /** Default distance from the window start to the closing rules. */
+    public static final long CLOSING_OFFSET = 20_000L;
+    /** mainconfig.conf rules just below the window start (body processor selection). */
+    public static final int LEADING_IDS = 2;
+    /** mainconfig.conf rules after the parameter range (unknown endpoint, its prefilter, Content-Type classification). */
+    public static final int CLOSING_IDS = 5;
+
+    /**
+     * Where each range starts, for one spec.
+     */
+    public static final class Plan {
+        public final long start;
+        public final long end;
+        public final long operationBase;
+        public final long parameterBase;
+        /** Parameter-range ids the counted rules need. */
+        public final long parameterIds;
+        private final String report;
+
+        private Plan(long start, long end, long operationBase, long parameterBase, long parameterIds, String report) {
+            this.start = start;
+            this.end = end;
+            this.operationBase = operationBase;
+            this.parameterBase = parameterBase;
+            this.parameterIds = parameterIds;
+            this.report = report;
+        }
+
+        /**
+         * First id of the closing rules, once the parameter range is known to end
+         * before parameterEnd (exclusive).
+         */
+        public long closingBase(long parameterEnd) {
+            return Math.max(start + CLOSING_OFFSET, parameterEnd);
+        }
+
+        /**
+         * Fail when the parameter range, ending before parameterEnd (exclusive),
+         * leaves no room in the window for the closing rules.
+         *
+         * @throws IllegalStateException naming the range that ran out
+         */
+        public void checkParameterEnd(long parameterEnd, String where) {
+            long last = closingBase(parameterEnd) + CLOSING_IDS - 1;
+            if (last > end) {
+                throw new IllegalStateException("Rule ids of " + where + " run past ruleIdEnd " + end + " (need up to "
+                    + last + "); raise ruleIdEnd or use ruleIdStrategy=stable.\n" + report);
+            }
+        }
+
+        /**
+         * The layout and the counts it was sized from.
+         */
+        public String report() {
+            return report;
+        }
+    }
+
+    private final long start;
+    private final long end;
+    private final List<String> rows = new ArrayList<String>();
+    private long operationIds;
+    private long parameterIds;
+    private long onDemandIds;
+
+    public RuleIdRangePlanner(long start, long end) {
+        if (start <= LEADING_IDS) {
+            throw new IllegalArgumentException("ruleIdStart must be above " + LEADING_IDS + ", got " + start);
+        }
+        if (end < start) {
+            throw new IllegalArgumentException("ruleIdEnd " + end + " lies before ruleIdStart " + start);
+        }
+        this.start = start;
+        this.end = end;
+    }
+
+    /**
+     * Count rules in the operation range.
+     */
+    public RuleIdRangePlanner operationRange(String what, long count, long idsEach) {
+        operationIds += row(what, count, idsEach);
+        return this;
+    }
+
+    /**
+     * Count rules in the parameter range.
+     */
+    public RuleIdRangePlanner parameterRange(String what, long count, long idsEach) {
+        parameterIds += row(what, count, idsEach);
+        return this;
+    }
+
+    /**
+     * Count rules in the parameter range that take an id only when written: at
+     * most idsEach per count. Reported, but left out of the up-front check.
+     */
+    public RuleIdRangePlanner parameterRangeAtMost(String what, long count, long idsEach) {
+        onDemandIds += row(what + " (at most)", count, idsEach);
+        return this;
+    }
+
+    private long row(String what, long count, long idsEach) {
+        long ids = count * idsEach;
+        rows.add(String.format("  %-32s %9d x %3d = %10d ids", what, count, idsEach, ids));
+        return ids;
+    }
+
+    /**
+     * Lay out the ranges.
+     *
+     * @throws IllegalArgumentException when the counted rules do not fit the window
+     */
+    public Plan plan() {
+        long operationBase = start;
+        long parameterBase = Math.max(start + PARAMETER_OFFSET, operationBase + operationIds);
+        long closingBase = Math.max(start + CLOSING_OFFSET, parameterBase + parameterIds);
+        long last = closingBase + CLOSING_IDS - 1;
+
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("Rule id window %d..%d:%n", start - LEADING_IDS, end));
+        report.append(String.format("  mainconfig body processors      %d..%d%n", start - LEADING_IDS, start - 1));
+        report.append(String.format("  operation range                 %d..%d (%d ids)%n",
+            operationBase, operationBase + operationIds - 1, operationIds));
+        report.append(String.format("  parameter range                 %d..%d (%d ids)%n",
+            parameterBase, parameterBase + parameterIds - 1, parameterIds));
+        if (onDemandIds > 0) {
+            report.append(String.format("  drawn as rules are written      up to %d more ids%n", onDemandIds));
+        }
+        report.append(String.format("  mainconfig closing rules        %d..%d%n", closingBase, last));
+        report.append("Counted rules:\n");
+        for (String row : rows) {
+            report.append(row).append('\n');
+        }
+        if (last > end) {
+            throw new IllegalArgumentException("The spec needs rule ids up to " + last + ", past ruleIdEnd " + end
+                + "; raise ruleIdEnd or use ruleIdStrategy=stable.\n" + report);
+        }
+        return new Plan(start, end, operationBase, parameterBase, parameterIds, report.toString());
+    }
+}
@@ -0,0 +1,161 @@
+package com.oashield.openapi.generators.modsecurity3;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Rule ids of the parameter range (globalParamIndex) drawn by one operation, in
+ * the order the operation draws them.
+ *
+ * Sequential processing knows the first id up front and hands out plain Long
+ * values. Operations processed in parallel do not: each draws from its own
+ * unresolved sequence, and once every operation of the tag is done the sequences
+ * are resolved in emission order, each starting where the previous one ended.
+ * The ids then are exactly the ones a sequential run would have assigned, and the
+ * ids already stored in vendor extensions and consume entries pick up their
+ * values before any template is rendered.
+ */
+public class RuleIdSequence implements RuleIds {
+
+    /**
+     * An id drawn from an unresolved sequence; its value is known once the
+     * sequence is resolved.
+     */
+    public static final class RuleId extends Number {
+        private static final long serialVersionUID = 1L;
+
+        private final transient RuleIdSequence sequence;
+        private final int offset;
+
+        private RuleId(RuleIdSequence sequence, int offset) {
+            this.sequence = sequence;
+            this.offset = offset;
+        }
+
+        @Override
+        public long longValue() {
+            if (!sequence.isResolved()) {
+                throw new IllegalStateException("Rule id read before its sequence was resolved");
+            }
+            return sequence.base + offset;
+        }
+
+        @Override
+        public int intValue() {
+            return (int) longValue();
+        }
+
+        @Override
+        public float floatValue() {
+            return longValue();
+        }
+
+        @Override
+        public double doubleValue() {
+            return longValue();
+        }
+
+        @Override
+        public String toString() {
+            // only log messages written while the operation is processed see this
+            return sequence.isResolved() ? String.valueOf(longValue()) : "pending";
+        }
+    }
+
+    private static final long UNRESOLVED = -1;
+
+    private long base;
+    private int size;
+    // consume entries (string-valued maps) waiting for their id
+    private final List<Map<String, String>> pendingTargets = new ArrayList<Map<String, String>>();
+    private final List<String> pendingKeys = new ArrayList<String>();
+    private final List<RuleId> pendingIds = new ArrayList<RuleId>();
+
+    /**
+     * A sequence whose first id is known.
+     */
+    public RuleIdSequence(long base) {
+        this.base = base;
+    }
+
+    /**
+     * A sequence whose first id is set later by {@link #resolve(long)}.
+     */
+    public RuleIdSequence() {
+        this(UNRESOLVED);
+    }
+
+    public boolean isResolved() {
+        return base != UNRESOLVED;
+    }
+
+    /**
+     * Number of ids drawn so far.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Draw the next id: a Long when the sequence is resolved, a {@link RuleId}
+     * otherwise.
+     */
+    public Number next() {
+        int offset = size++;
+        return isResolved() ? Long.valueOf(base + offset) : new RuleId(this, offset);
+    }
+
+    /**
+     * Draw the next id into a string-valued map, now or when the sequence is resolved.
+     */
+    public void next(Map<String, String> target, String key) {
+        Number id = next();
+        if (id instanceof RuleId) {
+            pendingTargets.add(target);
+            pendingKeys.add(key);
+            pendingIds.add((RuleId) id);
+        } else {
+            target.put(key, String.valueOf(id));
+        }
+    }
+
+    /**
+     * Draw the next id; the key plays no part in sequential allocation.
+     */
+    @Override
+    public Number next(String key) {
+        return next();
+    }
+
+    @Override
+    public void next(Map<String, String> target, String targetKey, String key) {
+        next(target, targetKey);
+    }
+
+    /**
+     * Draw size consecutive ids; the key plays no part in sequential allocation.
+     */
+    @Override
+    public RuleIdBlock block(String key, int size) {
+        Number first = next();
+        this.size += size - 1;
+        return RuleIdBlock.contiguous(first, size);
+    }
+
+    /**
+     * Fix the first id of an unresolved sequence.
+     */
+    public void resolve(long firstId) {
+        if (isResolved()) {
+            throw new IllegalStateException("Rule id sequence already starts at " + base);
+        }
+        base = firstId;
+        for (int i = 0; i < pendingIds.size(); i++) {
+            pendingTargets.get(i).put(pendingKeys.get(i), String.valueOf(pendingIds.get(i).longValue()));
+        }
+        pendingTargets.clear();
+        pendingKeys.clear();
+        pendingIds.clear();
+    }
+}
@@ -0,0 +1,31 @@
+package com.oashield.openapi.generators.modsecurity3;
+
+import java.util.Map;
+
+/**
+ * Source of the rule ids one operation draws outside its operation range.
+ *
+ * Every id is drawn with a key naming the rule it is for: the rule kind plus the
+ * parameter or property path, relative to the operation. Sequential allocation
+ * ({@link RuleIdSequence}) ignores the key; stable allocation
+ * ({@link StableRuleIds}) derives the id from it.
+ */
+public interface RuleIds {
+
+    /**
+     * Draw the id of the rule named by key: a Long, or a Number whose value is
+     * known once the ids of the tag are resolved.
+     */
+    Number next(String key);
+
+    /**
+     * Draw the id of the rule named by key into a string-valued map, now or once
+     * the ids of the tag are resolved.
+     */
+    void next(Map<String, String> target, String targetKey, String key);
+
+    /**
+     * Draw the ids of a block of size rules, slot i named by key + i.
+     */
+    RuleIdBlock block(String key, int size);
+}
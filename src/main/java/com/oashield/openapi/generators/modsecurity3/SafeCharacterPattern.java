@@ -0,0 +1,166 @@
+package com.oashield.openapi.generators.modsecurity3;
+
+/**
+ * Decides whether a value pattern only admits values built of a safe character
+ * set: ASCII letters and digits plus {@code . _ - : + ,}. Integers, decimals,
+ * booleans, UUIDs, dates and date-times, and enums of plain words all qualify.
+ * No SQL or markup can be written with those characters, so the CRS injection
+ * rules have nothing to find in a value that passed such a pattern.
+ *
+ * The check is conservative: the pattern must be anchored at both ends with no
+ * top-level alternation, and may only use literals, classes and escapes drawn
+ * from the safe set, groups, alternation inside groups and quantifiers. Anything
+ * else (the dot, negated classes, \s, inline flags, lookarounds, backreferences)
+ * fails the check, even where the values it admits would happen to be safe.
+ *
+ * Both engines compile @rx in multiline mode, so ^ and $ also match at a line
+ * break and an engine applying the pattern proves every line of a value, not
+ * the value itself. Callers relying on the result must rule out line breaks in
+ * the value separately.
+ */
+public class SafeCharacterPattern {
+
+    private static final String SAFE_PUNCTUATION = "._-:+,";
+
+    private SafeCharacterPattern() {
+    }
+
+    /**
+     * True when every value pattern admits consists of safe characters only.
+     */
+    public static boolean admitsOnlySafeCharacters(String pattern) {
+        if (pattern == null || pattern.length() < 2 || !pattern.startsWith("^") || !pattern.endsWith("$")
+                || pattern.endsWith("\\$")) {
+            return false;
+        }
+        String body = pattern.substring(1, pattern.length() - 1);
+        int depth = 0;
+        for (int i = 0; i < body.length(); i++) {
+            char c = body.charAt(i);
+            switch (c) {
+                case '\\':
+                    if (i + 1 >= body.length() || !safeEscape(body.charAt(++i))) {
+                        return false;
+                    }
+                    break;
+                case '[':
+                    int end = classEnd(body, i);
+                    if (end < 0 || !safeClass(body.substring(i + 1, end))) {
+                        return false;
+                    }
+                    i = end;
+                    break;
+                case '(':
+                    if (body.startsWith("(?:", i)) {
+                        i += 2;
+                    } else if (body.startsWith("(?", i)) {
+                        // inline flags, lookarounds, named groups
+                        return false;
+                    }
+                    depth++;
+                    break;
+                case ')':
+                    if (--depth < 0) {
+                        return false;
+                    }
+                    break;
+                case '|':
+                    // ^a|b$ anchors each branch at one end only
+                    if (depth == 0) {
+                        return false;
+                    }
+                    break;
+                case '.':
+                    // any character, not the literal dot
+                    return false;
+                case '*':
+                case '+':
+                case '?':
+                    break;
+                case '{':
+                    int close = body.indexOf('}', i);
+                    if (close < 0 || !body.substring(i + 1, close).matches("[0-9]+(?:,[0-9]*)?")) {
+                        return false;
+                    }
+                    i = close;
+                    break;
+                default:
+                    if (!safe(c)) {
+                        return false;
+                    }
+            }
+        }
+        return depth == 0;
+    }
+
+    private static boolean safe(char c) {
+        return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9'
+                || SAFE_PUNCTUATION.indexOf(c) >= 0;
+    }
+
+    // \d and \w are ASCII-only on both engines' regex libraries
+    private static boolean safeEscape(char c) {
+        return c == 'd' || c == 'w' || !Character.isLetterOrDigit(c) && safe(c);
+    }
+
+    // Index of the ']' closing the class opened at start, or -1
+    private static int classEnd(String body, int start) {
+        for (int i = start + 1; i < body.length(); i++) {
+            char c = body.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == ']') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean safeClass(String members) {
+        if (members.isEmpty() || members.startsWith("^")) {
+            return false;
+        }
+        int i = 0;
+        while (i < members.length()) {
+            char c = members.charAt(i);
+            if (c == '[') {
+                // POSIX classes and nested sets
+                return false;
+            }
+            if (c == '\\') {
+                if (i + 1 >= members.length() || !safeEscape(members.charAt(i + 1))) {
+                    return false;
+                }
+                if (Character.isLetter(members.charAt(i + 1))) {
+                    // \d and \w: a set, never a range bound
+                    i += 2;
+                    continue;
+                }
+                c = members.charAt(i + 1);
+                i += 2;
+            } else {
+                i++;
+            }
+            if (i + 1 < members.length() && members.charAt(i) == '-') {
+                // a range c-last, its bound possibly escaped
+                char last = members.charAt(i + 1);
+                i += 2;
+                if (last == '\\') {
+                    if (i >= members.length() || Character.isLetterOrDigit(members.charAt(i))) {
+                        return false;
+                    }
+                    last = members.charAt(i++);
+                }
+                for (char r = c; r <= last; r++) {
+                    if (!safe(r)) {
+                        return false;
+                    }
+                }
+            }
+            if (!safe(c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,478 @@
+package com.oashield.openapi.generators.modsecurity3;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Rule ids of one API tag derived from what each rule checks rather than from
+ * its position in the spec (ruleIdStrategy=stable).
+ *
+ * Every tag owns a reserved range of ids (stableRangeSize, {@link #TAG_RANGE_SIZE}
+ * by default), picked by the hash of the tag name. Inside it, a rule's id is the
+ * hash of its key: the operationId, the rule kind and the parameter or property
+ * path. Inserting, removing or reordering operations therefore leaves the ids of
+ * every other rule alone, and an edited operation only changes the ids of the
+ * rules it gains or loses.
+ *
+ * Keys hashing to the same id are detected once the whole tag has drawn its ids:
+ * a key alone on its home id keeps it, and the contested keys are placed in key
+ * order, the first on the home id and the others on the next free ids. Only a
+ * rule whose key collides changes id when another rule comes or goes. Ids are
+ * resolved after the tag is processed, so operations processed in parallel get
+ * the same ids as a sequential run.
+ *
+ * The blocks of operations, parameters and properties draw nothing up front: a
+ * slot claims its keyed id when the renderer writes it, on the next free id from
+ * its home in the resolved range. Only the rules written take an id, and the
+ * tag is rendered in emission order, so the claims are the same from run to run.
+ */
+public class StableRuleIds {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(StableRuleIds.class);
+
+    /** First id of the stable band; the band stays below 2^31 for both engines. */
+    public static final long FIRST_ID = 1_000_000_000L;
+    /** Ids in the stable band. */
+    public static final long BAND_SIZE = 1_000_000_000L;
+    /** Ids reserved per tag by default. */
+    public static final long TAG_RANGE_SIZE = 100_000L;
+    /** Tag ranges in the band at the default range size. */
+    public static final int TAG_RANGES = (int) (BAND_SIZE / TAG_RANGE_SIZE);
+
+    // separates the operationId from the rule key; tag-level keys start with it
+    private static final String SEPARATOR = "|";
+
+    /**
+     * An id drawn before the tag's ids are resolved.
+     */
+    public static final class RuleId extends Number {
+        private static final long serialVersionUID = 1L;
+
+        private final transient StableRuleIds owner;
+        private final String key;
+        private long value = -1;
+
+        private RuleId(StableRuleIds owner, String key) {
+            this.owner = owner;
+            this.key = key;
+        }
+
+        @Override
+        public long longValue() {
+            if (!owner.resolved) {
+                throw new IllegalStateException("Rule id of " + key + " read before the tag's ids were resolved");
+            }
+            return value;
+        }
+
+        @Override
+        public int intValue() {
+            return (int) longValue();
+        }
+
+        @Override
+        public float floatValue() {
+            return longValue();
+        }
+
+        @Override
+        public double doubleValue() {
+            return longValue();
+        }
+
+        @Override
+        public String toString() {
+            // only log messages written while the operation is processed see this
+            return owner.resolved ? String.valueOf(value) : "pending";
+        }
+    }
+
+    private final String tag;
+    private final long rangeSize;
+    private final long rangeStart;
+    private final Map<String, RuleId> drawn = new LinkedHashMap<String, RuleId>();
+    // claimed ids of the rendered block slots by operation, in claim order
+    private final Map<String, Map<String, Long>> rendered = new HashMap<String, Map<String, Long>>();
+    private BitSet taken;
+    private long used;
+    private final List<Map<String, String>> pendingTargets = new ArrayList<Map<String, String>>();
+    private final List<String> pendingKeys = new ArrayList<String>();
+    private final List<RuleId> pendingIds = new ArrayList<RuleId>();
+    private boolean resolved;
+
+    /**
+     * The allocator of a tag with the default range size.
+     *
+     * @see #StableRuleIds(String, Set, long)
+     */
+    public StableRuleIds(String tag, Set<Long> takenRanges) {
+        this(tag, takenRanges, TAG_RANGE_SIZE);
+    }
+
+    /**
+     * The allocator of a tag, in a range not yet taken by another tag.
+     *
+     * @param tag         the tag (API file) name
+     * @param takenRanges first ids of the ranges of the tags allocated before; the
+     *                    new range is added to it
+     * @param rangeSize   ids reserved per tag, the same for every tag of a run
+     */
+    public StableRuleIds(String tag, Set<Long> takenRanges, long rangeSize) {
+        if (rangeSize < 1 || rangeSize > BAND_SIZE) {
+            throw new IllegalArgumentException("Stable rule id range size must be between 1 and " + BAND_SIZE);
+        }
+        this.tag = tag;
+        this.rangeSize = rangeSize;
+        int ranges = (int) (BAND_SIZE / rangeSize);
+        int home = (int) Long.remainderUnsigned(hash(tag), ranges);
+        for (int probe = 0; probe < ranges; probe++) {
+            long start = FIRST_ID + rangeSize * ((home + probe) % ranges);
+            if (takenRanges.add(start)) {
+                if (probe > 0) {
+                    LOGGER.warn("Rule id range of tag {} collides with another tag's; moved {} ranges on", tag, probe);
+                }
+                rangeStart = start;
+                return;
+            }
+        }
+        throw new IllegalStateException("No stable rule id range left for tag " + tag);
+    }
+
+    public long rangeStart() {
+        return rangeStart;
+    }
+
+    public long rangeSize() {
+        return rangeSize;
+    }
+
+    /**
+     * Draw the id of a tag-level rule (a route gate); the key must be unique in
+     * the tag.
+     */
+    public Number next(String key) {
+        return draw(SEPARATOR + key);
+    }
+
+    /**
+     * The ids of one operation's rules. A key drawn more than once by the same
+     * operation (two flattened properties of one path) gets an occurrence suffix.
+     */
+    public RuleIds forOperation(final String operationId) {
+        final String prefix = operationId + SEPARATOR;
+        final Map<String, Integer> occurrences = new HashMap<String, Integer>();
+        return new RuleIds() {
+            @Override
+            public Number next(String key) {
+                return draw(prefix + occurrence(key));
+            }
+
+            @Override
+            public void next(Map<String, String> target, String targetKey, String key) {
+                RuleId id = draw(prefix + occurrence(key));
+                synchronized (StableRuleIds.this) {
+                    pendingTargets.add(target);
+                    pendingKeys.add(targetKey);
+                    pendingIds.add(id);
+                }
+            }
+
+            @Override
+            public RuleIdBlock block(String key, int size) {
+                final String[] keys = new String[size];
+                for (int i = 1; i <= size; i++) {
+                    keys[i - 1] = occurrence(key + i);
+                }
+                return RuleIdBlock.onDemand(size, slot -> claim(operationId, keys[slot - 1]));
+            }
+
+            private String occurrence(String key) {
+                Integer seen = occurrences.get(key);
+                occurrences.put(key, seen == null ? 1 : seen + 1);
+                return seen == null ? key : key + "#" + (seen + 1);
+            }
+        };
+    }
+
+    private synchronized RuleId draw(String key) {
+        if (resolved) {
+            throw new IllegalStateException("Rule ids of tag " + tag + " are already resolved");
+        }
+        if (drawn.containsKey(key)) {
+            throw new IllegalStateException("Rule id key " + key + " drawn twice in tag " + tag);
+        }
+        RuleId id = new RuleId(this, key);
+        drawn.put(key, id);
+        return id;
+    }
+
+    /**
+     * Assign every drawn key its id.
+     *
+     * @throws IllegalStateException when the tag draws more ids than its range holds
+     */
+    public synchronized void resolve() {
+        if (resolved) {
+            throw new IllegalStateException("Rule ids of tag " + tag + " are already resolved");
+        }
+        if (drawn.size() > rangeSize) {
+            throw rangeFull(drawn.size());
+        }
+        Map<Long, List<RuleId>> byHome = new TreeMap<Long, List<RuleId>>();
+        for (RuleId id : drawn.values()) {
+            long home = Long.remainderUnsigned(hash(id.key), rangeSize);
+            List<RuleId> ids = byHome.get(home);
+            if (ids == null) {
+                ids = new ArrayList<RuleId>(1);
+                byHome.put(home, ids);
+            }
+            ids.add(id);
+        }
+        taken = new BitSet();
+        List<RuleId> contested = new ArrayList<RuleId>();
+        for (Map.Entry<Long, List<RuleId>> home : byHome.entrySet()) {
+            if (home.getValue().size() == 1) {
+                home.getValue().get(0).value = home.getKey();
+                taken.set(home.getKey().intValue());
+            } else {
+                home.getValue().sort(Comparator.comparing(id -> id.key));
+                contested.addAll(home.getValue());
+            }
+        }
+        int collisions = 0;
+        for (RuleId id : contested) {
+            int slot = freeSlot(id.key);
+            if (slot != Long.remainderUnsigned(hash(id.key), rangeSize)) {
+                collisions++;
+            }
+            id.value = slot;
+            taken.set(slot);
+        }
+        used = drawn.size();
+        if (collisions > 0) {
+            LOGGER.debug("{} rule id collisions in tag {} resolved by probing", collisions, tag);
+        }
+        for (RuleId id : drawn.values()) {
+            id.value += rangeStart;
+        }
+        resolved = true;
+        for (int i = 0; i < pendingIds.size(); i++) {
+            pendingTargets.get(i).put(pendingKeys.get(i), String.valueOf(pendingIds.get(i).value));
+        }
+        pendingTargets.clear();
+        pendingKeys.clear();
+        pendingIds.clear();
+    }
+
+    /**
+     * Claim the id of a block slot as the renderer writes it; a slot claimed
+     * before (a cached block's slot read by a method gate) keeps its id.
+     */
+    private synchronized long claim(String operationId, String key) {
+        if (!resolved) {
+            throw new IllegalStateException("Rule id of " + key + " rendered before the tag's ids were resolved");
+        }
+        Map<String, Long> ids = rendered(operationId);
+        Long id = ids.get(key);
+        if (id != null) {
+            return id;
+        }
+        String fullKey = operationId + SEPARATOR + key;
+        if (drawn.containsKey(fullKey)) {
+            throw new IllegalStateException("Rule id key " + fullKey + " drawn twice in tag " + tag);
+        }
+        if (used >= rangeSize) {
+            throw rangeFull(used + 1);
+        }
+        int slot = freeSlot(fullKey);
+        taken.set(slot);
+        used++;
+        ids.put(key, rangeStart + slot);
+        return rangeStart + slot;
+    }
+
+    // the home of a key in the range, or the next free id after it
+    private int freeSlot(String key) {
+        int slot = taken.nextClearBit((int) Long.remainderUnsigned(hash(key), rangeSize));
+        return slot < rangeSize ? slot : taken.nextClearBit(0);
+    }
+
+    private IllegalStateException rangeFull(long needed) {
+        return new IllegalStateException("Tag " + tag + " needs " + needed + " rule ids; its stable range holds "
+            + rangeSize + " (stableRangeSize)");
+    }
+
+    private Map<String, Long> rendered(String operationId) {
+        Map<String, Long> ids = rendered.get(operationId);
+        if (ids == null) {
+            ids = new LinkedHashMap<String, Long>();
+            rendered.put(operationId, ids);
+        }
+        return ids;
+    }
+
+    /**
+     * The ids claimed by the rendered block slots of one operation, in claim
+     * order; the map fills as the operation is rendered.
+     */
+    public synchronized Map<String, Long> renderedIds(String operationId) {
+        return Collections.unmodifiableMap(rendered(operationId));
+    }
+
+    /**
+     * An operation reused from the incremental cache. Its block is relocated when
+     * the renderer writes it: the slots it rendered claim their ids again, in the
+     * order they were first claimed, exactly as a full run renders them.
+     */
+    public Reused reuse(String operationId, OperationCache.Entry entry) {
+        return new Reused(operationId, entry);
+    }
+
+    /**
+     * The cached block of one operation; its text is the relocated block.
+     */
+    public final class Reused {
+        private final String operationId;
+        private final OperationCache.Entry entry;
+        // the key of every id the block was rendered with
+        private final Map<Long, String> keys = new HashMap<Long, String>();
+        private String block;
+
+        private Reused(String operationId, OperationCache.Entry entry) {
+            this.operationId = operationId;
+            this.entry = entry;
+            for (Map.Entry<String, Long> id : entry.keyedIds.entrySet()) {
+                keys.put(id.getValue(), SEPARATOR + id.getKey());
+            }
+            for (Map.Entry<String, Long> id : entry.renderedIds.entrySet()) {
+                keys.put(id.getValue(), id.getKey());
+            }
+        }
+
+        /**
+         * The operation-range block, for the rules written outside the cached block
+         * (a method gate); its slots claim their ids when rendered.
+         */
+        public RuleIdBlock operationIds(int size) {
+            return RuleIdBlock.onDemand(size,
+                slot -> claim(operationId, OperationCache.OPERATION_KEY_PREFIX + slot));
+        }
+
+        /**
+         * The current id of a rule the block was rendered with; known once the block
+         * is rendered.
+         */
+        public Number id(final long cachedId) {
+            return new Number() {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                public long longValue() {
+                    return move(cachedId, false);
+                }
+
+                @Override
+                public int intValue() {
+                    return (int) longValue();
+                }
+
+                @Override
+                public float floatValue() {
+                    return longValue();
+                }
+
+                @Override
+                public double doubleValue() {
+                    return longValue();
+                }
+
+                @Override
+                public String toString() {
+                    return block != null ? String.valueOf(longValue()) : "pending";
+                }
+            };
+        }
+
+        private long move(long cachedId, boolean claiming) {
+            String key = keys.get(cachedId);
+            if (key == null) {
+                return cachedId;
+            }
+            if (key.startsWith(SEPARATOR)) {
+                return drawn.get(operationId + key).longValue();
+            }
+            if (!claiming && block == null) {
+                throw new IllegalStateException("Rule id of " + key + " read before its cached block was rendered");
+            }
+            return claim(operationId, key);
+        }
+
+        @Override
+        public String toString() {
+            if (block == null) {
+                for (String key : entry.renderedIds.keySet()) {
+                    claim(operationId, key);
+                }
+                block = entry.relocatedBlock(id -> move(id, true));
+            }
+            return block;
+        }
+    }
+
+    /**
+     * The resolved ids of one operation by rule key, in key order.
+     */
+    public synchronized Map<String, Long> ids(String operationId) {
+        String prefix = operationId + SEPARATOR;
+        Map<String, Long> ids = new TreeMap<String, Long>();
+        for (RuleId id : drawn.values()) {
+            if (id.key.startsWith(prefix)) {
+                ids.put(id.key.substring(prefix.length()), id.longValue());
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * Draw the ids of an operation that is not processed (its block comes from
+     * the incremental cache), so they take part in collision resolution.
+     */
+    public void reserve(String operationId, Collection<String> keys) {
+        RuleIds ids = forOperation(operationId);
+        for (String key : keys) {
+            ids.next(key);
+        }
+    }
+
+    /**
+     * 64-bit hash of a key: the first eight bytes of its SHA-256 digest, so that
+     * keys differing in one character land far apart.
+     */
+    static long hash(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(key.getBytes(StandardCharsets.UTF_8));
+            long hash = 0;
+            for (int i = 0; i < 8; i++) {
+                hash = hash << 8 | (digest[i] & 0xff);
+            }
+            return hash;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 unavailable", e);
+        }
+    }
+}
@@ -0,0 +1,280 @@
+package com.oashield.openapi.generators.modsecurity3;
+
+import org.openapitools.codegen.CodegenOperation;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.function.Function;
+import java.util.function.ToLongFunction;
+
+/**
+ * Observed request counts per operation (trafficProfile=&lt;file&gt;), used to emit
+ * hot operations and API files first so a typical request reaches its own
+ * operation block after evaluating fewer rules.
+ *
+ * The profile is a CSV of {@code key,count} lines where key is either an
+ * operationId or a method and path such as {@code GET /pet/{petId}} (the path as
+ * written in the spec, with or without the deployed base path). Blank lines and
+ * lines starting with '#' are ignored, as is a non-numeric header line.
+ *
+ * Reordering never lets a general route shadow a more specific one of the same
+ * method: /users/me is always emitted before /users/{id}, whatever the counts.
+ */
+public class TrafficProfile {
+
+    private final Map<String, Long> counts;
+
+    TrafficProfile(Map<String, Long> counts) {
+        this.counts = counts;
+    }
+
+    /**
+     * Read a traffic profile CSV.
+     *
+     * @param file the profile
+     * @return the parsed profile
+     * @throws IllegalArgumentException if the file cannot be read or a line is malformed
+     */
+    public static TrafficProfile load(Path file) {
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Cannot read trafficProfile '" + file + "': " + e.getMessage(), e);
+        }
+        return parse(lines, file.toString());
+    }
+
+    static TrafficProfile parse(List<String> lines, String source) {
+        Map<String, Long> counts = new HashMap<String, Long>();
+        boolean first = true;
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i).trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+            int comma = line.lastIndexOf(',');
+            String key = comma > 0 ? line.substring(0, comma).trim() : "";
+            String value = comma > 0 ? line.substring(comma + 1).trim() : "";
+            long count;
+            try {
+                count = Long.parseLong(value);
+            } catch (NumberFormatException e) {
+                if (first) {
+                    // header line, e.g. "operation,count"
+                    first = false;
+                    continue;
+                }
+                count = -1;
+            }
+            first = false;
+            if (key.isEmpty() || count < 0) {
+                throw new IllegalArgumentException("Invalid trafficProfile line " + (i + 1) + " in '" + source
+                    + "': expected '<operationId or METHOD /path>,<request count>', got '" + lines.get(i) + "'");
+            }
+            counts.merge(normalizeKey(key), count, Long::sum);
+        }
+        return new TrafficProfile(counts);
+    }
+
+    /**
+     * Request count of an operation; operations absent from the profile count zero.
+     * An operationId entry and a method+path entry for the same operation add up.
+     *
+     * @param co       the operation
+     * @param basePath literal deployed base path ("" for none)
+     * @return the operation's request count
+     */
+    public long weight(CodegenOperation co, String basePath) {
+        long weight = 0;
+        if (co.operationId != null) {
+            weight += counts.getOrDefault(co.operationId, 0L);
+        }
+        if (co.httpMethod != null && co.path != null) {
+            String method = co.httpMethod.toUpperCase(Locale.ROOT);
+            weight += counts.getOrDefault(method + " " + co.path, 0L);
+            if (!basePath.isEmpty()) {
+                weight += counts.getOrDefault(method + " " + basePath + co.path, 0L);
+            }
+        }
+        return weight;
+    }
+
+    private static String normalizeKey(String key) {
+        int space = key.indexOf(' ');
+        if (space > 0 && key.substring(space).trim().startsWith("/")) {
+            return key.substring(0, space).toUpperCase(Locale.ROOT) + " " + key.substring(space).trim();
+        }
+        return key;
+    }
+
+    /**
+     * Relative-order requirement between two items, given in their original order.
+     */
+    public interface Precedence<T> {
+        /**
+         * @return {@code -1} if {@code earlier} must stay before {@code later},
+         *         {@code 1} if {@code later} must move before {@code earlier},
+         *         {@code 0} if they may be emitted in either order
+         */
+        int compare(T earlier, T later);
+    }
+
+    /**
+     * Order items by descending weight subject to the precedence constraints. An
+     * item that must precede heavier items is weighted as the heaviest of them.
+     * Items of equal weight keep their original relative order; if the
+     * constraints are cyclic the earliest remaining item is released first.
+     *
+     * @param items      the items in original order
+     * @param weight     the weight of an item
+     * @param precedence the ordering constraints
+     * @return the items in emission order
+     */
+    public static <T> List<T> order(List<T> items, ToLongFunction<T> weight, Precedence<T> precedence) {
+        int n = items.size();
+        if (n < 2) {
+            return new ArrayList<T>(items);
+        }
+        final long[] weights = new long[n];
+        int[] pending = new int[n];
+        List<List<Integer>> successors = new ArrayList<List<Integer>>(n);
+        for (int i = 0; i < n; i++) {
+            weights[i] = weight.applyAsLong(items.get(i));
+            successors.add(new ArrayList<Integer>());
+        }
+        for (int i = 0; i < n; i++) {
+            for (int j = i + 1; j < n; j++) {
+                int p = precedence.compare(items.get(i), items.get(j));
+                if (p < 0) {
+                    successors.get(i).add(j);
+                    pending[j]++;
+                } else if (p > 0) {
+                    successors.get(j).add(i);
+                    pending[i]++;
+                }
+            }
+        }
+        // An item holding back a heavier one inherits its weight, so a hot general
+        // route is not stuck behind cold specific routes that merely must precede it.
+        boolean changed = true;
+        for (int round = 0; changed && round < n; round++) {
+            changed = false;
+            for (int i = 0; i < n; i++) {
+                for (int s : successors.get(i)) {
+                    if (weights[s] > weights[i]) {
+                        weights[i] = weights[s];
+                        changed = true;
+                    }
+                }
+            }
+        }
+
+        PriorityQueue<Integer> ready = new PriorityQueue<Integer>(n, (a, b) -> weights[a] != weights[b]
+            ? Long.compare(weights[b], weights[a]) : Integer.compare(a, b));
+        for (int i = 0; i < n; i++) {
+            if (pending[i] == 0) {
+                ready.add(i);
+            }
+        }
+        boolean[] emitted = new boolean[n];
+        List<T> ordered = new ArrayList<T>(n);
+        while (ordered.size() < n) {
+            Integer next = ready.poll();
+            if (next == null) {
+                // constraint cycle: release the earliest remaining item
+                for (int i = 0; i < n; i++) {
+                    if (!emitted[i]) {
+                        next = i;
+                        break;
+                    }
+                }
+            }
+            if (emitted[next]) {
+                continue;
+            }
+            emitted[next] = true;
+            ordered.add(items.get(next));
+            for (int s : successors.get(next)) {
+                if (--pending[s] == 0 && !emitted[s]) {
+                    ready.add(s);
+                }
+            }
+        }
+        return ordered;
+    }
+
+    /**
+     * Precedence between two operations of one API file: operations of the same
+     * method whose paths can match the same request keep their original order,
+     * unless the later one is strictly more specific (literal where the earlier
+     * one is templated), in which case it must move first.
+     */
+    public static int routePrecedence(CodegenOperation earlier, CodegenOperation later) {
+        if (earlier.httpMethod != null && later.httpMethod != null
+                && !earlier.httpMethod.equalsIgnoreCase(later.httpMethod)) {
+            return 0;
+        }
+        List<String> a = segments(earlier.path);
+        List<String> b = segments(later.path);
+        if (a.size() != b.size()) {
+            return 0;
+        }
+        boolean laterMoreSpecific = false;
+        boolean earlierMoreSpecific = false;
+        for (int i = 0; i < a.size(); i++) {
+            boolean aTemplated = a.get(i).contains("{");
+            boolean bTemplated = b.get(i).contains("{");
+            if (!aTemplated && !bTemplated) {
+                if (!a.get(i).equals(b.get(i))) {
+                    return 0;
+                }
+            } else if (aTemplated && !bTemplated) {
+                laterMoreSpecific = true;
+            } else if (!aTemplated) {
+                earlierMoreSpecific = true;
+            }
+        }
+        return laterMoreSpecific && !earlierMoreSpecific ? 1 : -1;
+    }
+
+    /**
+     * Lift an operation-level precedence to groups of operations (API files): a
+     * group must move before an earlier one if some of its operations must, and
+     * nothing requires the reverse; conflicting requirements keep the original order.
+     */
+    public static <G, T> Precedence<G> groupPrecedence(Function<G, List<T>> members, Precedence<T> precedence) {
+        return (earlier, later) -> {
+            boolean forward = false;
+            boolean backward = false;
+            for (T x : members.apply(earlier)) {
+                for (T y : members.apply(later)) {
+                    int p = precedence.compare(x, y);
+                    forward |= p < 0;
+                    backward |= p > 0;
+                }
+            }
+            return backward && !forward ? 1 : (forward || backward ? -1 : 0);
+        };
+    }
+
+    private static List<String> segments(String path) {
+        if (path == null) {
+            return Collections.emptyList();
+        }
+        List<String> segments = new ArrayList<String>();
+        for (String segment : path.split("/", -1)) {
+            segments.add(segment);
+        }
+        return segments;
+    }
+}
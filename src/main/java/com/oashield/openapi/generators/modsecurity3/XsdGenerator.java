@@ -1,10 +1,16 @@
 package com.oashield.openapi.generators.modsecurity3;
 
+import java.io.IOException;
+import java.io.OutputStream;
 import java.io.StringWriter;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
 import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
 import javax.xml.transform.OutputKeys;
 import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
@@ -31,6 +37,11 @@ import lombok.extern.slf4j.Slf4j;
  * docs/engine-behavior.md. The generated XSD is therefore only wired into rules
  * behind the validateXmlSchema option (default false); it remains useful for
  * upstream/application-side validation.
+ *
+ * Two writers produce the same schema: {@link #writeXsd} streams each
+ * complexType and element to the output as it goes, and is what the generator
+ * uses; {@link #generateXsd} builds a DOM document and returns it as text.
+ * Occurrence bounds, types and facets are decided once, for both.
  */
 @Slf4j
 public class XsdGenerator {
@@ -48,15 +59,10 @@ public class XsdGenerator {
             doc.appendChild(schema);
 
             for (Map.Entry<String, ModelsMap> entry : models.entrySet()) {
-                if (entry.getValue().getModels() == null || entry.getValue().getModels().isEmpty()) {
-                    continue;
-                }
-                ModelMap modelMap = entry.getValue().getModels().get(0);
-                CodegenModel model = modelMap.getModel();
-                if (model == null) {
-                    continue;
+                CodegenModel model = model(entry.getValue());
+                if (model != null) {
+                    addModel(doc, schema, entry.getKey(), model);
                 }
-                addModel(doc, schema, entry.getKey(), model);
             }
 
             StringWriter writer = new StringWriter();
@@ -141,11 +147,8 @@ public class XsdGenerator {
     }
 
     private void applyOccurs(Element repeated, CodegenProperty arrayVar) {
-        Integer min = arrayVar.getMinItems();
-        Integer max = arrayVar.getMaxItems();
-        repeated.setAttribute("minOccurs",
-                min != null ? min.toString() : (arrayVar.required && !arrayVar.isXmlWrapped ? "1" : "0"));
-        repeated.setAttribute("maxOccurs", max != null ? max.toString() : "unbounded");
+        repeated.setAttribute("minOccurs", minOccurs(arrayVar));
+        repeated.setAttribute("maxOccurs", maxOccurs(arrayVar));
     }
 
     /**
@@ -158,10 +161,7 @@ public class XsdGenerator {
             return;
         }
 
-        boolean hasFacets = var.pattern != null || var.getMinLength() != null || var.getMaxLength() != null
-                || var.minimum != null || var.maximum != null
-                || (var.allowableValues != null && var.allowableValues.get("values") instanceof List);
-        if (!hasFacets) {
+        if (!hasFacets(var)) {
             element.setAttribute("type", xsdType(var));
             return;
         }
@@ -169,43 +169,233 @@ public class XsdGenerator {
         Element simpleType = doc.createElementNS(XS_NS, "xs:simpleType");
         Element restriction = doc.createElementNS(XS_NS, "xs:restriction");
         restriction.setAttribute("base", xsdType(var));
+        for (String[] facet : facets(var)) {
+            addFacet(doc, restriction, facet[0], "value", facet[1]);
+        }
+
+        simpleType.appendChild(restriction);
+        element.appendChild(simpleType);
+    }
+
+    private void addFacet(Document doc, Element restriction, String facet, String attr, String value) {
+        Element el = doc.createElementNS(XS_NS, facet);
+        el.setAttribute(attr, value);
+        restriction.appendChild(el);
+    }
+
+    /**
+     * Stream one XSD with the same content as {@link #generateXsd} to out, one
+     * complexType and root element at a time; nothing but the model being
+     * written is held in memory. Leaves out closed.
+     */
+    public void writeXsd(Map<String, ModelsMap> models, OutputStream out) throws IOException {
+        try {
+            XMLStreamWriter xml = XMLOutputFactory.newInstance().createXMLStreamWriter(out, "UTF-8");
+            xml.writeStartDocument("UTF-8", "1.0");
+            xml.writeCharacters("\n");
+            xml.writeStartElement("xs", "schema", XS_NS);
+            xml.writeNamespace("xs", XS_NS);
+            for (Map.Entry<String, ModelsMap> entry : models.entrySet()) {
+                CodegenModel model = model(entry.getValue());
+                if (model != null) {
+                    writeModel(xml, entry.getKey(), model);
+                }
+            }
+            indent(xml, 0);
+            xml.writeEndElement();
+            xml.writeCharacters("\n");
+            xml.writeEndDocument();
+            xml.close();
+        } catch (XMLStreamException e) {
+            throw new IOException("Error writing XSD: " + e.getMessage(), e);
+        }
+    }
 
+    private void writeModel(XMLStreamWriter xml, String modelName, CodegenModel model) throws XMLStreamException {
+        String rootName = model.getXmlName() != null ? model.getXmlName() : modelName;
+        List<CodegenProperty> attributes = new ArrayList<CodegenProperty>();
+
+        indent(xml, 1);
+        xml.writeStartElement(XS_NS, "complexType");
+        xml.writeAttribute("name", modelName);
+        indent(xml, 2);
+        xml.writeStartElement(XS_NS, "sequence");
+        boolean empty = true;
+        if (model.vars != null) {
+            for (CodegenProperty var : model.vars) {
+                if (var.isXmlAttribute) {
+                    // xs:attribute children must follow the content model inside xs:complexType
+                    attributes.add(var);
+                } else {
+                    writeProperty(xml, var, 3);
+                    empty = false;
+                }
+            }
+        }
+        if (!empty) {
+            indent(xml, 2);
+        }
+        xml.writeEndElement();
+        for (CodegenProperty var : attributes) {
+            indent(xml, 2);
+            xml.writeEmptyElement(XS_NS, "attribute");
+            xml.writeAttribute("name", elementName(var));
+            xml.writeAttribute("type", xsdType(var));
+            if (var.required) {
+                xml.writeAttribute("use", "required");
+            }
+        }
+        indent(xml, 1);
+        xml.writeEndElement();
+
+        indent(xml, 1);
+        xml.writeEmptyElement(XS_NS, "element");
+        xml.writeAttribute("name", rootName);
+        xml.writeAttribute("type", modelName);
+    }
+
+    private void writeProperty(XMLStreamWriter xml, CodegenProperty var, int depth) throws XMLStreamException {
+        String name = elementName(var);
+
+        if (var.isArray) {
+            CodegenProperty item = var.items;
+            String itemName = item != null && item.getXmlName() != null ? item.getXmlName() : name;
+            int itemDepth = depth;
+            if (var.isXmlWrapped) {
+                indent(xml, depth);
+                xml.writeStartElement(XS_NS, "element");
+                xml.writeAttribute("name", name);
+                xml.writeAttribute("minOccurs", var.required ? "1" : "0");
+                indent(xml, depth + 1);
+                xml.writeStartElement(XS_NS, "complexType");
+                indent(xml, depth + 2);
+                xml.writeStartElement(XS_NS, "sequence");
+                itemDepth = depth + 3;
+            }
+            writeElement(xml, itemName, item != null ? item : var, itemDepth,
+                    minOccurs(var), maxOccurs(var));
+            if (var.isXmlWrapped) {
+                indent(xml, depth + 2);
+                xml.writeEndElement();
+                indent(xml, depth + 1);
+                xml.writeEndElement();
+                indent(xml, depth);
+                xml.writeEndElement();
+            }
+            return;
+        }
+
+        writeElement(xml, name, var, depth, var.required ? "1" : "0", null);
+    }
+
+    /**
+     * Write an xs:element whose type is a reference, a built-in type or an inline
+     * restriction, as {@link #typeOrRestriction} decides it for the DOM.
+     */
+    private void writeElement(XMLStreamWriter xml, String name, CodegenProperty var, int depth,
+            String minOccurs, String maxOccurs) throws XMLStreamException {
+        boolean restricted = !(var.isModel && var.complexType != null) && hasFacets(var);
+        indent(xml, depth);
+        if (restricted) {
+            xml.writeStartElement(XS_NS, "element");
+        } else {
+            xml.writeEmptyElement(XS_NS, "element");
+        }
+        xml.writeAttribute("name", name);
+        xml.writeAttribute("minOccurs", minOccurs);
+        if (maxOccurs != null) {
+            xml.writeAttribute("maxOccurs", maxOccurs);
+        }
+        if (!restricted) {
+            xml.writeAttribute("type", var.isModel && var.complexType != null ? var.complexType : xsdType(var));
+            return;
+        }
+        indent(xml, depth + 1);
+        xml.writeStartElement(XS_NS, "simpleType");
+        indent(xml, depth + 2);
+        xml.writeStartElement(XS_NS, "restriction");
+        xml.writeAttribute("base", xsdType(var));
+        for (String[] facet : facets(var)) {
+            indent(xml, depth + 3);
+            xml.writeEmptyElement(XS_NS, facet[0].substring("xs:".length()));
+            xml.writeAttribute("value", facet[1]);
+        }
+        indent(xml, depth + 2);
+        xml.writeEndElement();
+        indent(xml, depth + 1);
+        xml.writeEndElement();
+        indent(xml, depth);
+        xml.writeEndElement();
+    }
+
+    private static void indent(XMLStreamWriter xml, int depth) throws XMLStreamException {
+        StringBuilder indent = new StringBuilder("\n");
+        for (int i = 0; i < depth; i++) {
+            indent.append("    ");
+        }
+        xml.writeCharacters(indent.toString());
+    }
+
+    private static CodegenModel model(ModelsMap modelsMap) {
+        if (modelsMap.getModels() == null || modelsMap.getModels().isEmpty()) {
+            return null;
+        }
+        ModelMap modelMap = modelsMap.getModels().get(0);
+        return modelMap.getModel();
+    }
+
+    private static String elementName(CodegenProperty var) {
+        return var.getXmlName() != null ? var.getXmlName() : var.baseName;
+    }
+
+    private static String minOccurs(CodegenProperty arrayVar) {
+        Integer min = arrayVar.getMinItems();
+        return min != null ? min.toString() : (arrayVar.required && !arrayVar.isXmlWrapped ? "1" : "0");
+    }
+
+    private static String maxOccurs(CodegenProperty arrayVar) {
+        Integer max = arrayVar.getMaxItems();
+        return max != null ? max.toString() : "unbounded";
+    }
+
+    private static boolean hasFacets(CodegenProperty var) {
+        return var.pattern != null || var.getMinLength() != null || var.getMaxLength() != null
+                || var.minimum != null || var.maximum != null
+                || (var.allowableValues != null && var.allowableValues.get("values") instanceof List);
+    }
+
+    /**
+     * The restriction facets of a simple-typed property, in document order, as
+     * {facet element, value} pairs.
+     */
+    private static List<String[]> facets(CodegenProperty var) {
+        List<String[]> facets = new ArrayList<String[]>();
         String pattern = Modsecurity3Generator.sanitizeSpecPattern(var.pattern);
         if (pattern != null && !pattern.isEmpty()) {
             // XSD patterns are implicitly anchored
-            addFacet(doc, restriction, "xs:pattern", "value", Modsecurity3Generator.stripAnchors(pattern));
+            facets.add(new String[] {"xs:pattern", Modsecurity3Generator.stripAnchors(pattern)});
         }
         if (var.getMinLength() != null) {
-            addFacet(doc, restriction, "xs:minLength", "value", var.getMinLength().toString());
+            facets.add(new String[] {"xs:minLength", var.getMinLength().toString()});
         }
         if (var.getMaxLength() != null) {
-            addFacet(doc, restriction, "xs:maxLength", "value", var.getMaxLength().toString());
+            facets.add(new String[] {"xs:maxLength", var.getMaxLength().toString()});
         }
         if (var.minimum != null) {
-            addFacet(doc, restriction, var.exclusiveMinimum ? "xs:minExclusive" : "xs:minInclusive",
-                    "value", var.minimum);
+            facets.add(new String[] {var.exclusiveMinimum ? "xs:minExclusive" : "xs:minInclusive", var.minimum});
         }
         if (var.maximum != null) {
-            addFacet(doc, restriction, var.exclusiveMaximum ? "xs:maxExclusive" : "xs:maxInclusive",
-                    "value", var.maximum);
+            facets.add(new String[] {var.exclusiveMaximum ? "xs:maxExclusive" : "xs:maxInclusive", var.maximum});
         }
         if (var.allowableValues != null && var.allowableValues.get("values") instanceof List) {
             for (Object value : (List<?>) var.allowableValues.get("values")) {
-                addFacet(doc, restriction, "xs:enumeration", "value", String.valueOf(value));
+                facets.add(new String[] {"xs:enumeration", String.valueOf(value)});
             }
         }
-
-        simpleType.appendChild(restriction);
-        element.appendChild(simpleType);
-    }
-
-    private void addFacet(Document doc, Element restriction, String facet, String attr, String value) {
-        Element el = doc.createElementNS(XS_NS, facet);
-        el.setAttribute(attr, value);
-        restriction.appendChild(el);
+        return facets;
     }
 
-    private String xsdType(CodegenProperty var) {
+    private static String xsdType(CodegenProperty var) {
         if (var.isInteger) {
             return "xs:int";
         }
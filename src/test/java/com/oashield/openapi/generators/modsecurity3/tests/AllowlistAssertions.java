@@ -0,0 +1,28 @@
+package com.oashield.openapi.generators.modsecurity3.tests;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Checks on the ARGS_NAMES allowlists of a generated rule file.
+ */
+final class AllowlistAssertions {
+
+    private static final Pattern ALLOWLIST = Pattern.compile("SecRule ARGS_NAMES \"!@rx (\\^\\(\\?:.*?\\)\\$)\"");
+
+    private AllowlistAssertions() {
+    }
+
+    /**
+     * Whether some ARGS_NAMES allowlist rule in the config admits the argument name.
+     */
+    static boolean allowlisted(String conf, String name) {
+        Matcher m = ALLOWLIST.matcher(conf);
+        while (m.find()) {
+            if (name.matches(m.group(1))) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
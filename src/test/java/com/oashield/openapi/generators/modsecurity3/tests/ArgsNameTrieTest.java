@@ -0,0 +1,127 @@
+package com.oashield.openapi.generators.modsecurity3.tests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.openapitools.codegen.DefaultGenerator;
+import org.openapitools.codegen.config.CodegenConfigurator;
+
+import com.oashield.openapi.generators.modsecurity3.ArgsNameTrie;
+
+/**
+ * Tests for the trie-factored ARGS_NAMES allowlist: the factored regex admits
+ * exactly the names of the flat alternation, and an allowlist over the program
+ * budget is split into prefix regions that together admit the same names.
+ */
+public class ArgsNameTrieTest {
+
+    private static final List<String> ENTRIES = Arrays.asList(
+            "petId",
+            "json\\.id",
+            "json\\.category",
+            "json\\.category\\.id",
+            "json\\.category\\.name",
+            "json\\.name",
+            "json\\.tags",
+            "json\\.tags\\.(?:array_)?\\d{1,9}",
+            "json\\.tags\\.(?:array_)?\\d{1,9}\\.id",
+            "json\\.attrs\\..{1,256}",
+            "filter\\[[^\\]]{1,64}\\]",
+            "a",
+            "b");
+
+    private static final List<String> NAMES = Arrays.asList(
+            "petId", "petI", "petIdx", "json", "json.id", "json.i", "json.category", "json.category.id",
+            "json.category.", "json.category.name", "json.name", "json.tags", "json.tags.0", "json.tags.array_12",
+            "json.tags.0.id", "json.tags.0.name", "json.attrs.x.y", "json.attrs.", "filter[a]", "filter[]",
+            "a", "b", "c", "ab", "");
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void sharedPrefixesAreFactored() {
+        ArgsNameTrie trie = new ArgsNameTrie(Arrays.asList(
+                "json\\.id", "json\\.category", "json\\.category\\.id", "json\\.category\\.name"));
+        assertEquals("json\\.(?:id|category(?:\\.(?:id|name))?)", trie.toRegex());
+        assertEquals("[ab]", new ArgsNameTrie(Arrays.asList("a", "b")).toRegex());
+        assertEquals("q", new ArgsNameTrie(Arrays.asList("q")).toRegex());
+    }
+
+    @Test
+    public void factoredRegexAdmitsExactlyTheFlatAlternation() {
+        Pattern flat = Pattern.compile("^(?:" + String.join("|", ENTRIES) + ")$");
+        Pattern factored = Pattern.compile("^(?:" + new ArgsNameTrie(ENTRIES).toRegex() + ")$");
+        for (String name : NAMES) {
+            assertEquals(flat.matcher(name).matches(), factored.matcher(name).matches(), name);
+        }
+    }
+
+    @Test
+    public void equivalentEscapesShareNodes() {
+        // '-' and '\-' are the same literal
+        assertEquals("x-[ab]", new ArgsNameTrie(Arrays.asList("x\\-a", "x-b")).toRegex());
+    }
+
+    @Test
+    public void splitRegionsAdmitTheSameNames() {
+        ArgsNameTrie trie = new ArgsNameTrie(ENTRIES);
+        List<ArgsNameTrie.Region> regions = trie.split(String::length, 40);
+        assertTrue(regions.size() > 2, "a small budget must split the allowlist");
+        Pattern flat = Pattern.compile("^(?:" + String.join("|", ENTRIES) + ")$");
+        for (String name : NAMES) {
+            List<ArgsNameTrie.Region> selected = new ArrayList<ArgsNameTrie.Region>();
+            for (ArgsNameTrie.Region region : regions) {
+                if (Pattern.compile("^(?:" + region.selector + ")").matcher(name).lookingAt()) {
+                    selected.add(region);
+                }
+            }
+            assertTrue(selected.size() <= 1, "region selectors must be disjoint: " + name);
+            boolean admitted = selected.size() == 1 && (selected.get(0).allowlist == null
+                    || name.matches("^(?:" + selected.get(0).allowlist + ")$"));
+            assertEquals(flat.matcher(name).matches(), admitted, name);
+        }
+    }
+
+    @Test
+    public void allowlistWithinBudgetIsNotSplit() {
+        List<ArgsNameTrie.Region> regions = new ArgsNameTrie(ENTRIES).split(String::length, 100_000);
+        assertEquals(1, regions.size());
+    }
+
+    @Test
+    public void generatorSplitsAllowlistOverProgramBudget() throws IOException {
+        Path out = tempDir.resolve("out");
+        CodegenConfigurator configurator = new CodegenConfigurator()
+                .setGeneratorName("modsecurity3")
+                .setInputSpec("samples/petstore.yaml")
+                .setOutputDir(out.toString());
+        configurator.addAdditionalProperty("regexProgramBudget", "40");
+        new DefaultGenerator().opts(configurator.toClientOptInput()).generate();
+        String pet = Files.readString(out.resolve("PetApi.conf"));
+
+        // the prefix gate keeps the allowlist rule id; regions get their own ids
+        assertTrue(pet.contains("SecRule ARGS_NAMES \"!@rx ^(?:json\\.(?:"), pet);
+        Matcher region = Pattern.compile("SecRule ARGS_NAMES:/\\^\\(\\?:([^/]*)\\)/ \"!@rx \\^\\(\\?:(.*?)\\)\\$\"")
+                .matcher(pet);
+        List<String> allowlists = new ArrayList<String>();
+        while (region.find()) {
+            allowlists.add(region.group(2));
+        }
+        assertTrue(allowlists.size() > 1, pet);
+        assertTrue(allowlists.stream().anyMatch("json.tags.array_0.name"::matches), allowlists.toString());
+        assertFalse(allowlists.stream().anyMatch("json.tags.array_0.colour"::matches), allowlists.toString());
+    }
+}
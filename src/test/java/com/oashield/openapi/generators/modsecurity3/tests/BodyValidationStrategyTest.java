@@ -0,0 +1,141 @@
+package com.oashield.openapi.generators.modsecurity3.tests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.openapitools.codegen.DefaultGenerator;
+import org.openapitools.codegen.config.CodegenConfigurator;
+
+import com.oashield.openapi.generators.modsecurity3.Modsecurity3Generator;
+
+/**
+ * Tests for bodyValidationStrategy: on Coraza, JSON bodies are validated by the
+ * per-field rules, the @validateSchema rule, or both; ModSecurity3 keeps its
+ * per-field rules whatever the strategy.
+ */
+public class BodyValidationStrategyTest {
+
+    private static final String SCHEMA_RULE = "SecRule REQUEST_BODY \"@validateSchema";
+    private static final String REQUIRED_RULE = "SecRule &ARGS:json.name \"@eq 0\"";
+    private static final String VALUE_RULE = "SecRule ARGS:json.id \"!@rx ^[0-9]{1,19}$\"";
+
+    @TempDir
+    Path tempDir;
+
+    private String generate(String flavor, String strategy, String... properties) throws IOException {
+        return generateSpec("samples/petstore.yaml", "PetApi.conf", flavor, strategy, properties);
+    }
+
+    private String generateSpec(String spec, String file, String flavor, String strategy, String... properties)
+            throws IOException {
+        final CodegenConfigurator configurator = new CodegenConfigurator()
+                .setGeneratorName("modsecurity3")
+                .setInputSpec(spec)
+                .setOutputDir(tempDir.toString())
+                .addAdditionalProperty("engineFlavor", flavor);
+        if (strategy != null) {
+            configurator.addAdditionalProperty("bodyValidationStrategy", strategy);
+        }
+        for (int i = 0; i < properties.length; i += 2) {
+            configurator.addAdditionalProperty(properties[i], properties[i + 1]);
+        }
+        new DefaultGenerator().opts(configurator.toClientOptInput()).generate();
+        return Files.readString(tempDir.resolve(file));
+    }
+
+    @Test
+    public void bothIsTheDefault() throws IOException {
+        String conf = generate("coraza", null);
+        assertEquals(conf, generate("coraza", "both"));
+        assertTrue(conf.contains(SCHEMA_RULE), conf);
+        assertTrue(conf.contains(REQUIRED_RULE), conf);
+    }
+
+    @Test
+    public void schemaOnlyDropsPerFieldBodyRulesOnCoraza() throws IOException {
+        String conf = generate("coraza", "schemaOnly");
+
+        // each model body is validated against its own root schema
+        assertTrue(conf.contains(SCHEMA_RULE + " schemas/addPet.json\""), conf);
+        assertFalse(conf.contains(REQUIRED_RULE), "required property rule must be left to @validateSchema");
+        assertFalse(conf.contains(VALUE_RULE), "value rule must be left to @validateSchema");
+        assertFalse(conf.contains("ARGS:/(?i)^json\\."), "no regex selectors over the body args");
+        assertFalse(conf.contains("SecRule &ARGS:/(?i)^json\\."), "no element count rules");
+        // the content-type gate, parse-error check and allowlist stay
+        assertTrue(conf.contains("SecRule REQUEST_HEADERS:Content-Type \"!@rx ^application/json"), conf);
+        assertTrue(conf.contains("SecRule REQBODY_ERROR \"!@eq 0\""), conf);
+        assertTrue(conf.contains("SecRule ARGS_NAMES \"!@rx ^(?:"), conf);
+        assertEquals(allowlistRules(generate("coraza", "both")), allowlistRules(conf),
+                "flattened body names stay allowlisted");
+    }
+
+    @Test
+    public void schemaOnlyKeepsPerFieldRulesWithoutARootSchema() throws IOException {
+        Path spec = tempDir.resolve("spec.yaml");
+        Files.writeString(spec, "openapi: 3.0.0\n"
+                + "info: {title: t, version: '1'}\n"
+                + "paths:\n"
+                + "  /orders:\n    post:\n      operationId: createOrder\n      tags: [orders]\n"
+                + "      requestBody:\n        required: true\n        content:\n          application/json:\n"
+                + "            schema:\n              type: object\n              required: [count, code]\n"
+                + "              properties:\n"
+                + "                count: {type: integer, minimum: 1, maximum: 5}\n"
+                + "                code: {type: string, pattern: '^[A-Z]{3}$'}\n"
+                + "      responses: {'200': {description: ok}}\n");
+        // an inline body has no per-operation schema; the combined one accepts any JSON
+        String conf = generateSpec(spec.toString(), "OrdersApi.conf", "coraza", "schemaOnly");
+        assertTrue(conf.contains(SCHEMA_RULE + " schema.json\""), conf);
+        assertTrue(conf.contains("SecRule &ARGS:json.count \"@eq 0\""), conf);
+        assertTrue(conf.contains("SecRule ARGS:json.count \"@gt 5\""), conf);
+        Matcher code = Pattern.compile("SecRule ARGS:json\\.code \"!@rx (\\S+)\"").matcher(conf);
+        assertTrue(code.find(), conf);
+        assertFalse(Pattern.compile(code.group(1)).matcher("abc").find(), "an invalid code is still rejected");
+
+        // nor does a model body once per-operation schemas are turned off
+        String pet = generate("coraza", "schemaOnly", "jsonSchemaPerOperation", "false");
+        assertTrue(pet.contains(SCHEMA_RULE + " schema.json\""), pet);
+        assertTrue(pet.contains(REQUIRED_RULE), pet);
+        assertTrue(pet.contains(VALUE_RULE), pet);
+    }
+
+    @Test
+    public void perFieldOnlyDropsSchemaRuleOnCoraza() throws IOException {
+        String conf = generate("coraza", "perFieldOnly");
+
+        assertFalse(conf.contains(SCHEMA_RULE), conf);
+        assertTrue(conf.contains(REQUIRED_RULE), conf);
+        assertTrue(conf.contains(VALUE_RULE), conf);
+    }
+
+    @Test
+    public void modsecurity3IgnoresTheStrategy() throws IOException {
+        String conf = generate("modsecurity3", null);
+        assertEquals(conf, generate("modsecurity3", "schemaOnly"));
+        assertTrue(conf.contains(REQUIRED_RULE), conf);
+        assertFalse(conf.contains(SCHEMA_RULE), conf);
+    }
+
+    @Test
+    public void unknownStrategyIsRejected() {
+        Modsecurity3Generator generator = new Modsecurity3Generator();
+        generator.additionalProperties().put("bodyValidationStrategy", "schema");
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, generator::processOpts);
+        assertTrue(e.getMessage().contains("bodyValidationStrategy"), e.getMessage());
+    }
+
+    private static List<String> allowlistRules(String conf) {
+        return conf.lines().filter(line -> line.startsWith("SecRule ARGS_NAMES")).collect(Collectors.toList());
+    }
+}
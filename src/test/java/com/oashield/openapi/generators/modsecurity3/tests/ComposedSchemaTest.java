@@ -11,6 +11,7 @@ import org.openapitools.codegen.config.CodegenConfigurator;
 import java.io.File;
 import java.nio.file.Files;
 
+import static com.oashield.openapi.generators.modsecurity3.tests.AllowlistAssertions.allowlisted;
 import static org.junit.jupiter.api.Assertions.*;
 
 /**
@@ -43,7 +44,7 @@ public class ComposedSchemaTest {
         // Contact.id is anyOf [integer, string(uuid)]
         assertTrue(rules.contains("SecRule ARGS:json.id \"!@rx ^(?:[0-9]{1,19}|"),
                 "json.id should be validated against an alternation of the anyOf member patterns");
-        assertTrue(rules.contains("|json\\.id|"),
+        assertTrue(allowlisted(rules, "json.id"),
                 "json.id must appear in the ARGS_NAMES allowlist");
     }
 
@@ -72,7 +73,7 @@ public class ComposedSchemaTest {
                 "property from the inline allOf member must be validated");
         assertFalse(rules.contains("ARGS_NAMES \"!@rx ^(?:)$\""),
                 "allOf body must not produce an empty ARGS_NAMES allowlist");
-        assertTrue(rules.contains("json\\.species") && rules.contains("json\\.breed"),
+        assertTrue(allowlisted(rules, "json.species") && allowlisted(rules, "json.breed"),
                 "allOf properties must be allowlisted");
     }
 
@@ -0,0 +1,101 @@
+package com.oashield.openapi.generators.modsecurity3.tests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.openapitools.codegen.DefaultGenerator;
+import org.openapitools.codegen.config.CodegenConfigurator;
+
+/**
+ * Tests for classifyContentType: the Content-Type is normalized once in phase 1,
+ * operations compare it as a string, and body parse errors are checked once.
+ */
+public class ContentTypeClassificationTest {
+
+    private static final String CLASSIFICATION =
+            "SecRule REQUEST_HEADERS:Content-Type \"@rx ^\\s*([^;\\s]*)\" \"id:4220004,phase:1,pass,nolog,t:none,"
+                    + "t:lowercase,capture,setvar:tx.oas_ctype=%{TX.1}\"";
+    private static final String BODY_ERROR = "SecRule REQBODY_ERROR \"!@eq 0\"";
+
+    @TempDir
+    Path tempDir;
+
+    private String generate(String spec, String file, String... properties) throws IOException {
+        final CodegenConfigurator configurator = new CodegenConfigurator()
+                .setGeneratorName("modsecurity3")
+                .setInputSpec(spec)
+                .setOutputDir(tempDir.toString());
+        for (int i = 0; i < properties.length; i += 2) {
+            configurator.addAdditionalProperty(properties[i], properties[i + 1]);
+        }
+        new DefaultGenerator().opts(configurator.toClientOptInput()).generate();
+        return Files.readString(tempDir.resolve(file));
+    }
+
+    @Test
+    public void offByDefault() throws IOException {
+        String conf = generate("samples/petstore.yaml", "PetApi.conf");
+        assertFalse(conf.contains("TX:oas_ctype"), conf);
+        assertTrue(conf.contains("SecRule REQUEST_HEADERS:Content-Type \"!@rx ^application/json\""), conf);
+        assertTrue(conf.contains(BODY_ERROR), conf);
+        assertFalse(generate("samples/petstore.yaml", "mainconfig.conf").contains("oas_ctype"));
+    }
+
+    @Test
+    public void operationsCompareTheClassifiedMediaType() throws IOException {
+        String conf = generate("samples/petstore.yaml", "PetApi.conf", "classifyContentType", "true");
+        assertTrue(conf.contains("SecRule TX:oas_ctype \"!@streq application/json\" \"id:4210001,phase:2,pass,nolog,"
+                + "skipAfter:ENDMEDIA_addPet_0\""), conf);
+        assertTrue(conf.contains("SecRule TX:oas_ctype \"!@streq multipart/form-data\""), conf);
+        assertFalse(conf.contains("SecRule REQUEST_HEADERS:Content-Type \"!@rx"), conf);
+        // the missing-header check of optional bodies still reads the header
+        assertTrue(conf.contains("SecRule &REQUEST_HEADERS:Content-Type \"@eq 0\""), conf);
+    }
+
+    @Test
+    public void bodyErrorIsCheckedOnceAheadOfTheApiFiles() throws IOException {
+        String conf = generate("samples/petstore.yaml", "PetApi.conf", "classifyContentType", "true");
+        assertFalse(conf.contains(BODY_ERROR), conf);
+
+        String main = generate("samples/petstore.yaml", "mainconfig.conf", "classifyContentType", "true");
+        int classification = main.indexOf(CLASSIFICATION);
+        int bodyError = main.indexOf(BODY_ERROR + " \"id:4220005,phase:2,block,");
+        assertTrue(classification >= 0 && bodyError > classification, main);
+        assertTrue(bodyError < main.indexOf("Include PetApi.conf"), main);
+    }
+
+    @Test
+    public void bodyControlsCompareTheClassifiedMediaType() throws IOException {
+        String conf = generate("samples/petstore.yaml", "PetApi.conf", "classifyContentType", "true",
+                "earlyRouting", "true", "operationBodyControls", "true");
+        assertTrue(conf.contains("SecRule TX:oas_ctype \"@streq application/json\" \"id:"), conf);
+        assertTrue(conf.contains(",phase:1,pass,nolog,ctl:requestBodyProcessor=JSON"), conf);
+    }
+
+    @Test
+    public void wildcardsAndParametersKeepTheirMeaning() throws IOException {
+        Path spec = tempDir.resolve("spec.yaml");
+        Files.writeString(spec, "openapi: 3.0.0\n"
+                + "info: {title: t, version: '1'}\n"
+                + "paths:\n"
+                + "  /upload:\n    post:\n      operationId: upload\n      tags: [files]\n"
+                + "      requestBody:\n        required: true\n        content:\n"
+                + "          image/*: {schema: {type: string, format: binary}}\n"
+                + "          Text/Plain: {schema: {type: string}}\n"
+                + "          'text/csv; header=present': {schema: {type: string}}\n"
+                + "      responses: {'200': {description: ok}}\n");
+        String conf = generate(spec.toString(), "FilesApi.conf", "classifyContentType", "true");
+        assertTrue(conf.contains("SecRule TX:oas_ctype \"!@beginsWith image/\""), conf);
+        assertTrue(conf.contains("SecRule TX:oas_ctype \"!@streq text/plain\""), conf);
+        // parameters are not part of TX:oas_ctype, so the header regex stays
+        assertTrue(conf.contains("SecRule REQUEST_HEADERS:Content-Type \"!@rx ^text/csv; header=present\""), conf);
+        assertEquals(3, conf.split("skipAfter:ENDMEDIA_upload_").length - 1, conf);
+    }
+}
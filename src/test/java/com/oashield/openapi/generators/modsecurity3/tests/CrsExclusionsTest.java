@@ -0,0 +1,173 @@
+package com.oashield.openapi.generators.modsecurity3.tests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.openapitools.codegen.DefaultGenerator;
+import org.openapitools.codegen.config.CodegenConfigurator;
+
+import com.oashield.openapi.generators.modsecurity3.Modsecurity3Generator;
+import com.oashield.openapi.generators.modsecurity3.SafeCharacterPattern;
+
+/**
+ * Tests for crsExclusions: which value patterns prove an argument safe, and the
+ * exclusions and CRS handoff emitted once an operation's checks passed.
+ */
+public class CrsExclusionsTest {
+
+    @TempDir
+    Path tempDir;
+
+    private String generate(Map<String, Object> additionalProperties, String file) throws IOException {
+        final CodegenConfigurator configurator = new CodegenConfigurator()
+                .setGeneratorName("modsecurity3")
+                .setInputSpec("samples/petstore.yaml")
+                .setOutputDir(tempDir.toString());
+        for (Map.Entry<String, Object> entry : additionalProperties.entrySet()) {
+            configurator.addAdditionalProperty(entry.getKey(), entry.getValue());
+        }
+        new DefaultGenerator().opts(configurator.toClientOptInput()).generate();
+        return Files.readString(tempDir.resolve(file));
+    }
+
+    private static Map<String, Object> crsExclusions() {
+        Map<String, Object> props = new HashMap<>();
+        props.put("crsExclusions", "true");
+        return props;
+    }
+
+    @Test
+    public void typedAndEnumPatternsAreSafe() {
+        assertTrue(SafeCharacterPattern.admitsOnlySafeCharacters("^[0-9]{1,19}$"));
+        assertTrue(SafeCharacterPattern.admitsOnlySafeCharacters("^-?\\d+(?:\\.\\d+)?$"));
+        assertTrue(SafeCharacterPattern.admitsOnlySafeCharacters("^(true|false)$"));
+        assertTrue(SafeCharacterPattern.admitsOnlySafeCharacters(
+                "^[0-9a-fA-F]{8}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{4}-[0-9a-fA-F]{12}$"));
+        assertTrue(SafeCharacterPattern.admitsOnlySafeCharacters(
+                "^(\\d{4}-(0[1-9]|1[0-2])-(0[1-9]|[12]\\d|3[01])T([01]\\d|2[0-3]):([0-5]\\d)(\\.\\d+)?([Zz]|[+\\-](0\\d|1[0-4])(:[0-5]\\d)?))$"));
+        assertTrue(SafeCharacterPattern.admitsOnlySafeCharacters(
+                "^(?:(available|pending|sold))(?:,(?:(available|pending|sold))){0,999}$"));
+        assertTrue(SafeCharacterPattern.admitsOnlySafeCharacters("^(?:[0-9]{1,19})?$"));
+    }
+
+    @Test
+    public void freeTextAndUnanchoredPatternsAreNotSafe() {
+        assertFalse(SafeCharacterPattern.admitsOnlySafeCharacters("^.+$"));
+        assertFalse(SafeCharacterPattern.admitsOnlySafeCharacters("^[\\s\\S]{0,1000}$"));
+        assertFalse(SafeCharacterPattern.admitsOnlySafeCharacters("^[^/]+$"));
+        assertFalse(SafeCharacterPattern.admitsOnlySafeCharacters("^[a-z ]+$"));
+        assertFalse(SafeCharacterPattern.admitsOnlySafeCharacters("^(a|b c)$"));
+        assertFalse(SafeCharacterPattern.admitsOnlySafeCharacters("^[0-9]+"));
+        assertFalse(SafeCharacterPattern.admitsOnlySafeCharacters("[0-9]+$"));
+        assertFalse(SafeCharacterPattern.admitsOnlySafeCharacters("^[0-9]+|.*$"));
+        assertFalse(SafeCharacterPattern.admitsOnlySafeCharacters("^(?i)[a-z]+$"));
+        // ranges are checked character by character, escaped bounds included
+        assertFalse(SafeCharacterPattern.admitsOnlySafeCharacters("^[+-\\:]+$"));
+        assertFalse(SafeCharacterPattern.admitsOnlySafeCharacters("^[\\.-z]+$"));
+        assertFalse(SafeCharacterPattern.admitsOnlySafeCharacters("^a\\|b$"));
+        assertFalse(SafeCharacterPattern.admitsOnlySafeCharacters(null));
+    }
+
+    @Test
+    public void offByDefault() throws IOException {
+        String conf = generate(new HashMap<>(), "PetApi.conf");
+        assertFalse(conf.contains("ctl:ruleRemoveTargetByTag"), conf);
+        assertTrue(conf.contains("allow:request"), conf);
+        assertFalse(generate(new HashMap<>(), "mainconfig.conf").contains("API_CHECKS_PASSED"));
+    }
+
+    @Test
+    public void validatedRequestsGoOnToTheCrs() throws IOException {
+        String conf = generate(crsExclusions(), "PetApi.conf");
+        assertFalse(conf.contains("allow:request"), conf);
+        assertTrue(conf.contains("skipAfter:API_CHECKS_PASSED\""), conf);
+        String main = generate(crsExclusions(), "mainconfig.conf");
+        assertTrue(main.indexOf("SecMarker API_CHECKS_PASSED") > main.indexOf("'Unknown API endpoint'"), main);
+    }
+
+    @Test
+    public void onlyProvenArgumentsAreExcluded() throws IOException {
+        String conf = generate(crsExclusions(), "PetApi.conf");
+
+        // integer body property: excluded unless the query string carries the same name
+        assertTrue(conf.contains("SecRule &ARGS_GET:json.id \"@eq 0\""), conf);
+        assertTrue(conf.contains(",phase:2,pass,nolog,ctl:ruleRemoveTargetByTag=attack-sqli;ARGS:json.id,"
+                + "ctl:ruleRemoveTargetByTag=attack-xss;ARGS:json.id\""), conf);
+        // enum query parameter: excluded unless the body carries the same name
+        assertTrue(conf.contains("SecRule &ARGS_POST:status \"@eq 0\""), conf);
+        // free text (^.+$) and array elements keep the CRS checks
+        assertFalse(conf.contains(";ARGS:json.name"), conf);
+        assertFalse(conf.contains(";ARGS:json.photoUrls"), conf);
+
+        // exclusions come after the body checks that prove the values
+        int valueRule = conf.indexOf("SecRule ARGS:json.id \"!@rx");
+        int exclusion = conf.indexOf("SecRule &ARGS_GET:json.id \"@eq 0\"");
+        assertTrue(valueRule >= 0 && exclusion > valueRule, conf);
+    }
+
+    @Test
+    public void lineBreaksAreRejectedBeforeTheExclusion() throws IOException {
+        String conf = generate(crsExclusions(), "PetApi.conf");
+        String payload = "1\n' UNION SELECT password FROM users--";
+
+        // both engines compile @rx multiline: the value rule alone passes the payload
+        Matcher valueRule = Pattern.compile("SecRule ARGS:json\\.id \"!@rx (\\S+)\"").matcher(conf);
+        assertTrue(valueRule.find(), conf);
+        assertTrue(Pattern.compile(valueRule.group(1), Pattern.MULTILINE).matcher(payload).find());
+
+        // the line-break rule rejects it ahead of every exclusion
+        String lineBreak = "SecRule ARGS_POST:json.id \"@rx [\\r\\n]\" \"id:";
+        int check = conf.indexOf(lineBreak);
+        int exclusion = conf.indexOf("SecRule &ARGS_GET:json.id \"@eq 0\"");
+        assertTrue(check >= 0 && check < exclusion, conf);
+        assertTrue(conf.substring(check, exclusion).contains(",phase:2,block,"), conf);
+        assertTrue(Pattern.compile("[\r\n]").matcher(payload).find());
+
+        int queryCheck = conf.indexOf("SecRule ARGS_GET:status \"@rx [\\r\\n]\"");
+        assertTrue(queryCheck >= 0 && queryCheck < conf.indexOf("SecRule &ARGS_POST:status \"@eq 0\""), conf);
+        assertEquals(count(conf, "ctl:ruleRemoveTargetByTag=attack-sqli"), count(conf, "\"@rx [\\r\\n]\""), conf);
+    }
+
+    private static int count(String text, String fragment) {
+        return text.split(Pattern.quote(fragment), -1).length - 1;
+    }
+
+    @Test
+    public void tagsAreConfigurable() throws IOException {
+        Map<String, Object> props = crsExclusions();
+        props.put("crsExclusionTags", "attack-sqli, attack-rce");
+        String conf = generate(props, "PetApi.conf");
+        assertTrue(conf.contains("ctl:ruleRemoveTargetByTag=attack-rce;ARGS:json.id\""), conf);
+        assertFalse(conf.contains("attack-xss"), conf);
+    }
+
+    @Test
+    public void schemaOnlyBodiesKeepTheCrsChecks() throws IOException {
+        Map<String, Object> props = crsExclusions();
+        props.put("engineFlavor", "coraza");
+        props.put("bodyValidationStrategy", "schemaOnly");
+        String conf = generate(props, "PetApi.conf");
+        assertFalse(conf.contains(";ARGS:json."), conf);
+        assertTrue(conf.contains("SecRule &ARGS_POST:status \"@eq 0\""), conf);
+    }
+
+    @Test
+    public void invalidTagIsRejected() {
+        Modsecurity3Generator generator = new Modsecurity3Generator();
+        generator.additionalProperties().put("crsExclusionTags", "attack-sqli;ARGS");
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, generator::processOpts);
+        assertTrue(e.getMessage().contains("crsExclusionTags"), e.getMessage());
+    }
+}
@@ -0,0 +1,137 @@
+package com.oashield.openapi.generators.modsecurity3.tests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.openapitools.codegen.DefaultGenerator;
+import org.openapitools.codegen.config.CodegenConfigurator;
+
+/**
+ * Tests for earlyRouting: routing, parameter checks and the unknown-endpoint deny
+ * run in phase 1, body validation stays in phase 2 behind the tx.oas_op handoff.
+ */
+public class EarlyRoutingTest {
+
+    @TempDir
+    Path tempDir;
+
+    private void generate(Map<String, Object> additionalProperties) {
+        final CodegenConfigurator configurator = new CodegenConfigurator()
+                .setGeneratorName("modsecurity3")
+                .setInputSpec("samples/petstore.yaml")
+                .setOutputDir(tempDir.toString());
+        for (Map.Entry<String, Object> entry : additionalProperties.entrySet()) {
+            configurator.addAdditionalProperty(entry.getKey(), entry.getValue());
+        }
+        new DefaultGenerator().opts(configurator.toClientOptInput()).generate();
+    }
+
+    private String read(String file) throws IOException {
+        return Files.readString(tempDir.resolve(file));
+    }
+
+    private void generateEarly(String... extra) {
+        Map<String, Object> props = new HashMap<>();
+        props.put("earlyRouting", "true");
+        for (int i = 0; i + 1 < extra.length; i += 2) {
+            props.put(extra[i], extra[i + 1]);
+        }
+        generate(props);
+    }
+
+    @Test
+    public void everythingRunsInPhase2ByDefault() throws IOException {
+        generate(new HashMap<>());
+        String pet = read("PetApi.conf");
+        String main = read("mainconfig.conf");
+        assertFalse(pet.contains("phase:1"), pet);
+        assertFalse(pet.contains("tx.oas_op"), pet);
+        assertFalse(main.contains("ROUTED_API_CHECKS"), main);
+        assertTrue(main.contains("SecAction \"id:4220001,log,auditlog,block,phase:2,msg:'Unknown API endpoint'\""), main);
+    }
+
+    @Test
+    public void routingAndParameterRulesMoveToPhase1() throws IOException {
+        generateEarly();
+        String pet = read("PetApi.conf");
+        assertTrue(pet.contains("SecRule REQUEST_FILENAME \"!@streq /v2/pet/findByStatus\" \"id:4200082,phase:1,"), pet);
+        assertTrue(pet.contains("SecRule REQUEST_METHOD \"!@within GET\" \"id:4200083,phase:1,"), pet);
+        assertTrue(pet.matches("(?s).*SecRule ARGS_GET:status \"[^\"]+\" \"id:\\d+,phase:1,.*"), pet);
+        assertTrue(pet.matches("(?s).*SecRule REQUEST_HEADERS:api_key \"[^\"]+\" \"id:\\d+,phase:1,.*"), pet);
+
+        // form fields, the name allowlist and the body rules need the parsed body
+        assertTrue(pet.matches("(?s).*SecRule ARGS_POST:name \"[^\"]+\" \"id:\\d+,phase:2,.*"), pet);
+        assertTrue(pet.matches("(?s).*SecRule ARGS_NAMES \"[^\"]+\" \"id:\\d+,phase:2,.*"), pet);
+        assertTrue(pet.matches("(?s).*SecRule ARGS:json\\.id \"[^\"]+\" \"id:\\d+,phase:2,.*"), pet);
+        assertTrue(pet.contains("SecRule REQBODY_ERROR \"!@eq 0\" \"id:4210002,phase:2,"), pet);
+    }
+
+    @Test
+    public void routedOperationIsHandedToPhase2() throws IOException {
+        generateEarly();
+        String pet = read("PetApi.conf");
+        assertTrue(pet.contains("SecAction \"id:4200004,phase:1,pass,nolog,setvar:tx.oas_op=addPet,"
+                + "skipAfter:ROUTED_API_CHECKS\""), pet);
+        assertTrue(pet.contains("SecRule TX:oas_op \"!@streq addPet\" \"id:4200005,phase:2,pass,nolog,"
+                + "skipAfter:END_addPet\""), pet);
+
+        // the handoff jumps past the phase-1 deny, so it must follow every phase-1 check
+        for (String block : pet.split("SecMarker END_")) {
+            int handoff = block.indexOf("setvar:tx.oas_op=");
+            if (handoff < 0) {
+                continue;
+            }
+            assertFalse(block.substring(handoff).contains(",phase:1,"), block);
+            // and phase 2 must meet the operation gate before any of the operation's rules
+            int gate = block.indexOf("SecRule TX:oas_op");
+            assertTrue(gate >= 0, block);
+            assertFalse(block.substring(0, gate).matches("(?s).*,phase:2,.*"), block);
+        }
+    }
+
+    @Test
+    public void operationsWithoutBodyTurnOffBodyAccess() throws IOException {
+        generateEarly();
+        String pet = read("PetApi.conf");
+        assertTrue(pet.contains("setvar:tx.oas_op=getPetById,ctl:requestBodyAccess=Off,skipAfter:ROUTED_API_CHECKS"), pet);
+        assertTrue(pet.contains("setvar:tx.oas_op=findPetsByStatus,ctl:requestBodyAccess=Off,"), pet);
+        assertTrue(pet.contains("setvar:tx.oas_op=updatePetWithForm,skipAfter:ROUTED_API_CHECKS"), pet);
+        assertTrue(pet.contains("setvar:tx.oas_op=uploadFile,skipAfter:ROUTED_API_CHECKS"), pet);
+    }
+
+    @Test
+    public void mainConfigDeniesUnroutedRequestsInPhase1() throws IOException {
+        generateEarly();
+        String main = read("mainconfig.conf");
+        assertTrue(main.contains("SecDefaultAction \"phase:1,log,auditlog,deny,status:403\""), main);
+        assertTrue(main.contains("SecDefaultAction \"phase:2,log,auditlog,deny,status:403\""), main);
+        int failed = main.indexOf("SecMarker FAILED_API_CHECKS");
+        int phase1Deny = main.indexOf("SecAction \"id:4220001,log,auditlog,block,phase:1,msg:'Unknown API endpoint'\"");
+        int routed = main.indexOf("SecMarker ROUTED_API_CHECKS");
+        int phase2Deny = main.indexOf("SecRule &TX:oas_op \"@eq 1\" \"id:4220002,log,auditlog,block,phase:2,");
+        assertTrue(failed >= 0 && failed < phase1Deny && phase1Deny < routed && routed < phase2Deny, main);
+
+        generateEarly("includeEngineConfig", "false");
+        main = read("mainconfig.conf");
+        assertFalse(main.contains("SecDefaultAction"), main);
+        assertTrue(main.contains("block,phase:1,msg:'Unknown API endpoint'"), main);
+    }
+
+    @Test
+    public void dispatchGatesMoveToPhase1() throws IOException {
+        generateEarly("groupByMethod", "true", "routeDispatch", "prefixTree");
+        String pet = read("PetApi.conf");
+        assertTrue(pet.matches("(?s).*SecRule REQUEST_METHOD \"!@streq \\w+\" \"id:\\d+,phase:1,.*"), pet);
+        assertTrue(pet.matches("(?s).*SecRule REQUEST_FILENAME \"!@beginsWith [^\"]+\" \"id:\\d+,phase:1,.*"), pet);
+        assertEquals(pet.split("setvar:tx.oas_op=", -1).length - 1, pet.split("SecRule TX:oas_op", -1).length - 1);
+    }
+}
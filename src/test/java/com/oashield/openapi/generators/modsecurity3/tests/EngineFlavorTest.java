@@ -1,5 +1,6 @@
 package com.oashield.openapi.generators.modsecurity3.tests;
 
+import static com.oashield.openapi.generators.modsecurity3.tests.AllowlistAssertions.allowlisted;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
@@ -61,7 +62,8 @@ public class EngineFlavorTest {
         assertTrue(conf.contains("SecRule ARGS:json.status \"!@rx ^(available|pending|sold)$\""), "enum rule");
         // additionalProperties enforcement incl. container prefixes (Coraza lists them)
         assertTrue(conf.contains("SecRule ARGS_NAMES \"!@rx ^(?:"), "ARGS_NAMES allowlist rule");
-        assertTrue(conf.contains("json\\.category|json\\.category\\.id"), "allowlist includes container prefixes");
+        assertTrue(allowlisted(conf, "json.category") && allowlisted(conf, "json.category.id"),
+                "allowlist includes container prefixes");
     }
 
     @Test
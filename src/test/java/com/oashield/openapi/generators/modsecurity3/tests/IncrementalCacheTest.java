@@ -0,0 +1,170 @@
+package com.oashield.openapi.generators.modsecurity3.tests;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.openapitools.codegen.DefaultGenerator;
+import org.openapitools.codegen.config.CodegenConfigurator;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.oashield.openapi.generators.modsecurity3.OperationCache;
+
+/**
+ * Tests for incrementalCache: unchanged operations reuse their cached block,
+ * relocated to their current rule ids, and unchanged files are not rewritten.
+ */
+public class IncrementalCacheTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static final String NEW_OPERATION = "paths:\n"
+            + "  /pet/ping:\n"
+            + "    get:\n"
+            + "      tags: [pet]\n"
+            + "      operationId: pingPet\n"
+            + "      parameters:\n"
+            + "        - {name: verbose, in: query, schema: {type: boolean}}\n"
+            + "      responses:\n"
+            + "        '200': {description: ok}\n";
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private Path spec(String name, String from, String to) throws IOException {
+        String text = new String(Files.readAllBytes(Paths.get("samples/petstore.yaml")), "UTF-8");
+        if (from != null) {
+            assertTrue(text.contains(from), from);
+            text = text.replaceFirst(java.util.regex.Pattern.quote(from), java.util.regex.Matcher.quoteReplacement(to));
+        }
+        Path spec = tempDir.resolve(name + ".yaml");
+        Files.write(spec, text.getBytes("UTF-8"));
+        return spec;
+    }
+
+    private Path generate(Path spec, String outName, boolean incremental) {
+        Path out = tempDir.resolve(outName);
+        CodegenConfigurator configurator = new CodegenConfigurator()
+                .setGeneratorName("modsecurity3")
+                .setInputSpec(spec.toString())
+                .setOutputDir(out.toString());
+        configurator.addAdditionalProperty("regexCostReport", "cost.csv");
+        if (incremental) {
+            configurator.addAdditionalProperty("incrementalCache", ".oashield-cache");
+        }
+        new DefaultGenerator().opts(configurator.toClientOptInput()).generate();
+        return out;
+    }
+
+    private static List<Path> outputFiles(Path root) throws IOException {
+        try (Stream<Path> walk = Files.walk(root)) {
+            return walk.filter(Files::isRegularFile)
+                    .map(root::relativize)
+                    .filter(p -> !p.startsWith(".oashield-cache") && !p.startsWith(".openapi-generator"))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+
+    private static void assertSameOutput(Path expected, Path actual) throws IOException {
+        List<Path> files = outputFiles(expected);
+        assertEquals(files, outputFiles(actual));
+        for (Path file : files) {
+            assertArrayEquals(Files.readAllBytes(expected.resolve(file)), Files.readAllBytes(actual.resolve(file)),
+                    file.toString());
+        }
+    }
+
+    private void markCachedBlock(Path out, String api, String operationId, String mark) throws IOException {
+        Path entry = out.resolve(".oashield-cache").resolve(api).resolve(operationId + ".json");
+        ObjectNode node = (ObjectNode) mapper.readTree(entry.toFile());
+        node.put("block", node.get("block").asText().replace("\n", "\n" + mark + "\n"));
+        mapper.writeValue(entry.toFile(), node);
+    }
+
+    @Test
+    public void unchangedOperationsReuseTheirCachedBlock() throws IOException {
+        Path spec = spec("petstore", null, null);
+        Path out = generate(spec, "out", true);
+        assertTrue(Files.isRegularFile(out.resolve(".oashield-cache/PetApi/getPetById.json")));
+        assertSameOutput(generate(spec, "full", false), out);
+
+        markCachedBlock(out, "PetApi", "getPetById", "# from the cache");
+        generate(spec, "out", true);
+        String pet = new String(Files.readAllBytes(out.resolve("PetApi.conf")), "UTF-8");
+        assertTrue(pet.contains("# from the cache"), pet);
+    }
+
+    @Test
+    public void insertedOperationRelocatesTheCachedBlocksAfterIt() throws IOException {
+        generate(spec("before", null, null), "out", true);
+        Path after = spec("after", "paths:\n", NEW_OPERATION);
+        Path out = generate(after, "out", true);
+        assertSameOutput(generate(after, "full", false), out);
+
+        // the shifted operations still came from the cache
+        markCachedBlock(out, "PetApi", "updatePet", "# from the cache");
+        generate(after, "out", true);
+        String pet = new String(Files.readAllBytes(out.resolve("PetApi.conf")), "UTF-8");
+        assertTrue(pet.contains("# from the cache"), pet);
+    }
+
+    @Test
+    public void changedModelInvalidatesTheOperationsReferencingIt() throws IOException {
+        Path out = generate(spec("before", null, null), "out", true);
+        markCachedBlock(out, "PetApi", "addPet", "# stale");
+        markCachedBlock(out, "PetApi", "getPetById", "# from the cache");
+
+        Path after = spec("after", "          example: doggie\n", "          example: doggie\n          maxLength: 32\n");
+        generate(after, "out", true);
+        String pet = new String(Files.readAllBytes(out.resolve("PetApi.conf")), "UTF-8");
+        assertFalse(pet.contains("# stale"), pet);
+        // the body model is not an input of getPetById
+        assertTrue(pet.contains("# from the cache"), pet);
+    }
+
+    @Test
+    public void unchangedFilesAreNotRewritten() throws IOException {
+        Path spec = spec("petstore", null, null);
+        Path out = generate(spec, "out", true);
+        FileTime old = FileTime.fromMillis(0);
+        for (String file : new String[] {"PetApi.conf", "UserApi.conf", "mainconfig.conf", "schema.json", "cost.csv"}) {
+            Files.setLastModifiedTime(out.resolve(file), old);
+        }
+
+        generate(spec("edited", "operationId: getPetById", "operationId: getPetById\n      deprecated: true"),
+                "out", true);
+        assertEquals(old, Files.getLastModifiedTime(out.resolve("UserApi.conf")));
+        assertEquals(old, Files.getLastModifiedTime(out.resolve("mainconfig.conf")));
+        assertEquals(old, Files.getLastModifiedTime(out.resolve("schema.json")));
+        assertEquals(old, Files.getLastModifiedTime(out.resolve("cost.csv")));
+        // deprecated is an input of the operation, though it does not change the rules
+        assertEquals(old, Files.getLastModifiedTime(out.resolve("PetApi.conf")));
+
+        generate(spec("renamed", "operationId: getPetById", "operationId: fetchPet"), "out", true);
+        assertNotEquals(old, Files.getLastModifiedTime(out.resolve("PetApi.conf")));
+        assertEquals(old, Files.getLastModifiedTime(out.resolve("UserApi.conf")));
+    }
+
+    @Test
+    public void blocksAreCutAtTheirOwnEndMarker() {
+        String file = "\n# a: GET /a\nSecRule x\nSecMarker END_a\n\n# ab: GET /ab\nSecMarker END_ab\nSecMarker END_abc\n";
+        assertEquals("# a: GET /a\nSecRule x\nSecMarker END_a", OperationCache.extractBlock(file, "a"));
+        assertEquals("# ab: GET /ab\nSecMarker END_ab", OperationCache.extractBlock(file, "ab"));
+        assertEquals(null, OperationCache.extractBlock(file, "abc"));
+    }
+}
@@ -0,0 +1,122 @@
+package com.oashield.openapi.generators.modsecurity3.tests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.openapitools.codegen.DefaultGenerator;
+import org.openapitools.codegen.config.CodegenConfigurator;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Tests for jsonSchemaPerOperation: each JSON request body gets a minified
+ * schema file with the body at the root and only its reachable definitions.
+ */
+public class JsonSchemaPerOperationTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final ObjectMapper mapper = new ObjectMapper();
+
+    private Path generate(String spec, String flavor) {
+        Path out = tempDir.resolve(flavor);
+        CodegenConfigurator configurator = new CodegenConfigurator()
+                .setGeneratorName("modsecurity3")
+                .setInputSpec(spec)
+                .setOutputDir(out.toString());
+        configurator.addAdditionalProperty("engineFlavor", flavor);
+        configurator.addAdditionalProperty("jsonSchemaPerOperation", "true");
+        configurator.addAdditionalProperty("schemaRulePath", "rules/schema.json");
+        new DefaultGenerator().opts(configurator.toClientOptInput()).generate();
+        return out;
+    }
+
+    private static List<String> names(JsonNode object) {
+        List<String> names = new ArrayList<String>();
+        object.fieldNames().forEachRemaining(names::add);
+        return names;
+    }
+
+    @Test
+    public void modelBodyIsInlinedWithReachableDefinitionsOnly() throws IOException {
+        Path out = generate("samples/petstore.yaml", "coraza");
+        String text = Files.readString(out.resolve("schemas/addPet.json"));
+        assertFalse(text.contains("\n"), "minified: " + text);
+
+        JsonNode schema = mapper.readTree(text);
+        assertFalse(schema.has("$ref"), text);
+        assertEquals("object", schema.get("type").asText());
+        assertTrue(schema.get("properties").has("photoUrls"), text);
+        assertEquals(Arrays.asList("Category", "Tag"), names(schema.get("definitions")));
+        assertFalse(text.contains("\"title\""), text);
+
+        String pet = Files.readString(out.resolve("PetApi.conf"));
+        assertTrue(pet.contains("SecRule REQUEST_BODY \"@validateSchema rules/schemas/addPet.json\""), pet);
+    }
+
+    @Test
+    public void arrayBodyReferencesItsItemModel() throws IOException {
+        Path out = generate("samples/petstore.yaml", "coraza");
+        JsonNode schema = mapper.readTree(out.resolve("schemas/createUsersWithListInput.json").toFile());
+        assertEquals("array", schema.get("type").asText());
+        assertEquals("#/definitions/User", schema.get("items").get("$ref").asText());
+        assertEquals(Arrays.asList("User"), names(schema.get("definitions")));
+    }
+
+    @Test
+    public void annotationKeywordsGoButPropertyNamesStay() throws IOException {
+        Path spec = tempDir.resolve("spec.yaml");
+        Files.write(spec, Arrays.asList(
+                "openapi: 3.0.3",
+                "info: {title: t, version: '1'}",
+                "paths:",
+                "  /docs:",
+                "    post:",
+                "      operationId: addDoc",
+                "      requestBody:",
+                "        content:",
+                "          application/json:",
+                "            schema: {$ref: '#/components/schemas/Doc'}",
+                "      responses:",
+                "        '200': {description: ok}",
+                "components:",
+                "  schemas:",
+                "    Doc:",
+                "      type: object",
+                "      description: A document",
+                "      properties:",
+                "        title: {type: string, description: The title}",
+                "        description: {type: string}",
+                "        parent: {$ref: '#/components/schemas/Doc'}",
+                "    Unused:",
+                "      type: object",
+                "      properties:",
+                "        x: {type: string}"));
+        Path out = generate(spec.toString(), "coraza");
+        JsonNode schema = mapper.readTree(out.resolve("schemas/addDoc.json").toFile());
+        assertEquals(Arrays.asList("title", "description", "parent"), names(schema.get("properties")));
+        assertFalse(schema.has("description"), schema.toString());
+        assertFalse(schema.get("properties").get("title").has("description"), schema.toString());
+        // the recursive reference keeps its own model as a definition
+        assertEquals(Arrays.asList("Doc"), names(schema.get("definitions")));
+    }
+
+    @Test
+    public void modsecurity3FlavorKeepsTheCombinedSchema() throws IOException {
+        Path out = generate("samples/petstore.yaml", "modsecurity3");
+        assertFalse(Files.exists(out.resolve("schemas")));
+        assertTrue(Files.exists(out.resolve("schema.json")));
+    }
+}
@@ -0,0 +1,79 @@
+package com.oashield.openapi.generators.modsecurity3.tests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.openapitools.codegen.DefaultGenerator;
+import org.openapitools.codegen.config.CodegenConfigurator;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Tests for the streamed schema.json: minified by default, indented with
+ * jsonSchemaPretty, and left untouched by minimal updates when unchanged.
+ */
+public class JsonSchemaStreamingTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static void generate(Path out, boolean pretty, boolean minimalUpdate) {
+        CodegenConfigurator configurator = new CodegenConfigurator()
+                .setGeneratorName("modsecurity3")
+                .setInputSpec("samples/petstore.yaml")
+                .setOutputDir(out.toString())
+                .setEnableMinimalUpdate(minimalUpdate);
+        if (pretty) {
+            configurator.addAdditionalProperty("jsonSchemaPretty", "true");
+        }
+        new DefaultGenerator().opts(configurator.toClientOptInput()).generate();
+    }
+
+    @Test
+    public void minifiedByDefaultAndPrettyOnRequest() throws IOException {
+        Path minified = tempDir.resolve("minified");
+        Path pretty = tempDir.resolve("pretty");
+        generate(minified, false, false);
+        generate(pretty, true, false);
+
+        String minifiedText = new String(Files.readAllBytes(minified.resolve("schema.json")), "UTF-8");
+        String prettyText = new String(Files.readAllBytes(pretty.resolve("schema.json")), "UTF-8");
+        assertFalse(minifiedText.contains("\n"), minifiedText);
+        assertTrue(prettyText.contains("\n  \"definitions\" : {"), prettyText);
+
+        ObjectMapper mapper = new ObjectMapper();
+        JsonNode document = mapper.readTree(minifiedText);
+        assertEquals(mapper.readTree(prettyText), document);
+        assertEquals("http://json-schema.org/draft-07/schema#", document.path("$schema").asText());
+        assertTrue(document.path("definitions").has("Pet"), minifiedText);
+        assertFalse(document.has("type"), minifiedText);
+    }
+
+    @Test
+    public void minimalUpdateReplacesOnlyChangedSchema() throws IOException {
+        Path out = tempDir.resolve("out");
+        generate(out, true, true);
+        Path schema = out.resolve("schema.json");
+
+        generate(out, false, true);
+        assertFalse(new String(Files.readAllBytes(schema), "UTF-8").contains("\n"));
+        FileTime written = FileTime.fromMillis(1000000000000L);
+        Files.setLastModifiedTime(schema, written);
+
+        generate(out, false, true);
+        assertEquals(written, Files.getLastModifiedTime(schema));
+        try (Stream<Path> files = Files.list(out)) {
+            assertFalse(files.anyMatch(p -> p.getFileName().toString().endsWith(".tmp")), "temporary file left");
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package com.oashield.openapi.generators.modsecurity3.tests;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.openapitools.codegen.DefaultGenerator;
+import org.openapitools.codegen.config.CodegenConfigurator;
+
+/**
+ * Tests for groupByMethod: operations are grouped by HTTP method behind one
+ * method gate per bucket, skipping to the bucket's last END_ marker.
+ */
+public class MethodBucketTest {
+
+    @TempDir
+    Path tempDir;
+
+    private String generate(Map<String, Object> additionalProperties) throws IOException {
+        final CodegenConfigurator configurator = new CodegenConfigurator()
+                .setGeneratorName("modsecurity3")
+                .setInputSpec("samples/petstore.yaml")
+                .setOutputDir(tempDir.toString());
+        for (Map.Entry<String, Object> entry : additionalProperties.entrySet()) {
+            configurator.addAdditionalProperty(entry.getKey(), entry.getValue());
+        }
+        new DefaultGenerator().opts(configurator.toClientOptInput()).generate();
+        return Files.readString(tempDir.resolve("PetApi.conf"));
+    }
+
+    private static List<String> operationMethods(String conf) {
+        List<String> methods = new ArrayList<>();
+        Matcher m = Pattern.compile("(?m)^# \\w+: (\\w+) ").matcher(conf);
+        while (m.find()) {
+            methods.add(m.group(1));
+        }
+        return methods;
+    }
+
+    @Test
+    public void noMethodGatesByDefault() throws IOException {
+        String conf = generate(new HashMap<>());
+        assertFalse(conf.contains("SecRule REQUEST_METHOD \"!@streq"), "no bucket gates by default:\n" + conf);
+    }
+
+    @Test
+    public void operationsAreContiguousPerMethod() throws IOException {
+        Map<String, Object> props = new HashMap<>();
+        props.put("groupByMethod", "true");
+        List<String> methods = operationMethods(generate(props));
+
+        List<String> seen = new ArrayList<>();
+        for (int i = 0; i < methods.size(); i++) {
+            if (i == 0 || !methods.get(i).equals(methods.get(i - 1))) {
+                assertFalse(seen.contains(methods.get(i)), "method " + methods.get(i) + " split: " + methods);
+                seen.add(methods.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void bucketGateSkipsToTheLastOperationOfTheBucket() throws IOException {
+        Map<String, Object> props = new HashMap<>();
+        props.put("groupByMethod", "true");
+        String conf = generate(props);
+
+        Matcher gate = Pattern.compile("SecRule REQUEST_METHOD \"!@streq GET\" "
+                + "\"id:\\d+,phase:2,pass,nolog,skipAfter:END_(\\w+)\"").matcher(conf);
+        assertTrue(gate.find(), "GET bucket gate expected:\n" + conf);
+        String target = gate.group(1);
+        int gateAt = gate.start();
+        int markerAt = conf.indexOf("SecMarker END_" + target + "\n");
+        assertTrue(markerAt > gateAt, "bucket gate must skip forward to an existing marker");
+        // every GET operation lies between the gate and its marker
+        Matcher op = Pattern.compile("(?m)^# \\w+: GET ").matcher(conf);
+        while (op.find()) {
+            assertTrue(op.start() > gateAt && op.start() < markerAt,
+                    "GET operation outside its bucket:\n" + conf);
+        }
+    }
+
+    @Test
+    public void bucketsComposeWithPrefixTreeDispatch() throws IOException {
+        Map<String, Object> props = new HashMap<>();
+        props.put("groupByMethod", "true");
+        props.put("routeDispatch", "prefixTree");
+        String conf = generate(props);
+
+        int getGate = conf.indexOf("SecRule REQUEST_METHOD \"!@streq GET\"");
+        assertTrue(getGate >= 0, "GET bucket gate expected:\n" + conf);
+        // inside the GET bucket the literal route still precedes the templated one
+        assertTrue(getGate < conf.indexOf("# findPetsByStatus")
+                && conf.indexOf("# findPetsByStatus") < conf.indexOf("# getPetById"),
+                "prefix-tree order must hold inside a method bucket:\n" + conf);
+        assertTrue(conf.indexOf("!@beginsWith /v2/pet", getGate) > getGate,
+                "the GET bucket should carry its own prefix gate:\n" + conf);
+    }
+}
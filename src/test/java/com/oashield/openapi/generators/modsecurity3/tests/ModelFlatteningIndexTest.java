@@ -0,0 +1,197 @@
+package com.oashield.openapi.generators.modsecurity3.tests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.openapitools.codegen.CodegenModel;
+import org.openapitools.codegen.CodegenProperty;
+import org.openapitools.codegen.DefaultGenerator;
+import org.openapitools.codegen.config.CodegenConfigurator;
+import org.openapitools.codegen.model.ModelMap;
+
+import com.oashield.openapi.generators.modsecurity3.ModelFlatteningIndex;
+import com.oashield.openapi.generators.modsecurity3.OperationCache;
+
+import io.swagger.v3.oas.models.media.ArraySchema;
+import io.swagger.v3.oas.models.media.IntegerSchema;
+import io.swagger.v3.oas.models.media.ObjectSchema;
+import io.swagger.v3.oas.models.media.Schema;
+import io.swagger.v3.oas.models.media.StringSchema;
+
+/**
+ * Tests for the model flattening index: a body model is flattened once per run,
+ * every operation taking it gets its own leaves, and raw schemas are looked up by
+ * path without walking from the root each time.
+ */
+public class ModelFlatteningIndexTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static final String SPEC = "openapi: 3.1.0\n"
+            + "info: {title: orders, version: '1'}\n"
+            + "paths:\n"
+            + "  /orders:\n"
+            + "    post:\n"
+            + "      tags: [orders]\n"
+            + "      operationId: createOrder\n"
+            + "      requestBody: {required: true, content: {application/json: {schema: {$ref: '#/components/schemas/Order'}}}}\n"
+            + "      responses: {'201': {description: created}}\n"
+            + "  /orders/{id}:\n"
+            + "    put:\n"
+            + "      tags: [orders]\n"
+            + "      operationId: replaceOrder\n"
+            + "      parameters: [{name: id, in: path, required: true, schema: {type: integer}}]\n"
+            + "      requestBody: {required: true, content: {application/json: {schema: {$ref: '#/components/schemas/Order'}}}}\n"
+            + "      responses: {'200': {description: ok}}\n"
+            + "  /orders/batch:\n"
+            + "    post:\n"
+            + "      tags: [orders]\n"
+            + "      operationId: createOrders\n"
+            + "      requestBody: {content: {application/json: {schema: {type: array, items: {$ref: '#/components/schemas/Order'}}}}}\n"
+            + "      responses: {'201': {description: created}}\n"
+            + "components:\n"
+            + "  schemas:\n"
+            + "    Order:\n"
+            + "      type: object\n"
+            + "      required: [note]\n"
+            + "      properties:\n"
+            + "        note: {type: string, maxLength: 10}\n"
+            + "        kind: {type: string, const: retail}\n"
+            + "        address: {$ref: '#/components/schemas/Address'}\n"
+            + "    Address:\n"
+            + "      type: object\n"
+            + "      properties:\n"
+            + "        zip: {type: string, pattern: '^[0-9]{5}$'}\n";
+
+    private static final Pattern RULE_ID = Pattern.compile("id:\\d+");
+
+    @Test
+    public void sharedBodyModelGetsTheSameRulesInEveryOperation() throws IOException {
+        Path spec = tempDir.resolve("orders.yaml");
+        Files.write(spec, SPEC.getBytes("UTF-8"));
+        Path out = tempDir.resolve("out");
+        new DefaultGenerator().opts(new CodegenConfigurator()
+                .setGeneratorName("modsecurity3")
+                .setInputSpec(spec.toString())
+                .setOutputDir(out.toString())
+                .toClientOptInput()).generate();
+        String conf = new String(Files.readAllBytes(out.resolve("OrdersApi.conf")), "UTF-8");
+
+        assertFalse(conf.contains("json.json."), conf);
+        List<String> bodyRules = new ArrayList<>();
+        for (String operationId : new String[] {"createOrder", "replaceOrder"}) {
+            String block = OperationCache.extractBlock(conf, operationId);
+            StringBuilder rules = new StringBuilder();
+            for (String line : block.split("\n")) {
+                if (line.contains("json.")) {
+                    rules.append(RULE_ID.matcher(line).replaceAll("id:N")).append('\n');
+                }
+            }
+            assertTrue(rules.indexOf("json.address.zip") >= 0, block);
+            assertTrue(rules.indexOf("retail") >= 0, block);
+            bodyRules.add(rules.toString());
+        }
+        assertEquals(bodyRules.get(0), bodyRules.get(1));
+        // the array body flattens the same model under the element prefix
+        String batch = OperationCache.extractBlock(conf, "createOrders");
+        assertTrue(batch.contains("property json.0.address.zip"), batch);
+    }
+
+    @Test
+    public void bodyIsFlattenedOnceAndCopiedPerOperation() {
+        ModelFlatteningIndex index = new ModelFlatteningIndex(s -> s);
+        AtomicInteger flattened = new AtomicInteger();
+        CodegenProperty leaf = new CodegenProperty();
+        leaf.baseName = "json.note";
+        leaf.vendorExtensions = new HashMap<>();
+
+        List<CodegenProperty> first = index.body("model:Order", () -> {
+            flattened.incrementAndGet();
+            return Collections.singletonList(leaf);
+        });
+        List<CodegenProperty> second = index.body("model:Order", () -> {
+            flattened.incrementAndGet();
+            return Collections.singletonList(leaf);
+        });
+        assertEquals(1, flattened.get());
+        assertEquals(1, index.flattenedBodies());
+        assertNotSame(first.get(0), second.get(0));
+        assertEquals("json.note", second.get(0).baseName);
+        first.get(0).vendorExtensions.put("x-oashield-pattern", "^a$");
+        assertFalse(second.get(0).vendorExtensions.containsKey("x-oashield-pattern"));
+        assertFalse(leaf.vendorExtensions.containsKey("x-oashield-pattern"));
+
+        index.body(null, () -> {
+            flattened.incrementAndGet();
+            return new ArrayList<>();
+        });
+        index.body(null, () -> {
+            flattened.incrementAndGet();
+            return new ArrayList<>();
+        });
+        assertEquals(3, flattened.get());
+    }
+
+    @Test
+    public void rawSchemasAreResolvedByPathOnce() {
+        Schema<?> zip = new StringSchema();
+        ObjectSchema address = new ObjectSchema();
+        address.addProperty("zip", zip);
+        Map<String, Schema<?>> components = new HashMap<>();
+        components.put("Address", address);
+        ObjectSchema order = new ObjectSchema();
+        order.addProperty("address", new Schema<Object>().$ref("#/components/schemas/Address"));
+        order.addProperty("lines", new ArraySchema().items(new Schema<Object>().$ref("#/components/schemas/Address")));
+        order.addProperty("count", new IntegerSchema());
+
+        AtomicInteger resolved = new AtomicInteger();
+        ModelFlatteningIndex index = new ModelFlatteningIndex(s -> {
+            resolved.incrementAndGet();
+            if (s != null && s.get$ref() != null) {
+                return components.get(s.get$ref().substring(s.get$ref().lastIndexOf('/') + 1));
+            }
+            return s;
+        });
+        assertSame(zip, index.rawSchema(order, "json.address.zip"));
+        assertSame(zip, index.rawSchema(order, "json.lines.0.zip"));
+        assertSame(order, index.rawSchema(order, "json"));
+        assertNull(index.rawSchema(order, "json.count.value"));
+        assertNull(index.rawSchema(order, "json.missing.zip"));
+        int walks = resolved.get();
+        assertSame(zip, index.rawSchema(order, "json.address.zip"));
+        assertNull(index.rawSchema(order, "json.missing.zip"));
+        assertEquals(walks, resolved.get());
+    }
+
+    @Test
+    public void modelLookupIsBuiltOnce() {
+        ModelFlatteningIndex index = new ModelFlatteningIndex(s -> s);
+        CodegenModel order = new CodegenModel();
+        order.name = "Order";
+        order.classname = "OrderModel";
+        ModelMap map = new ModelMap();
+        map.setModel(order);
+        Map<String, CodegenModel> models = index.models(Collections.singletonList(map));
+        assertSame(order, models.get("Order"));
+        assertSame(order, models.get("OrderModel"));
+        assertSame(models, index.models(new ArrayList<>()));
+    }
+}
@@ -0,0 +1,166 @@
+package com.oashield.openapi.generators.modsecurity3.tests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.openapitools.codegen.DefaultGenerator;
+import org.openapitools.codegen.config.CodegenConfigurator;
+
+import com.oashield.openapi.generators.modsecurity3.BodySizeBound;
+import com.oashield.openapi.generators.modsecurity3.Modsecurity3Generator;
+
+import io.swagger.v3.oas.models.media.ArraySchema;
+import io.swagger.v3.oas.models.media.IntegerSchema;
+import io.swagger.v3.oas.models.media.ObjectSchema;
+import io.swagger.v3.oas.models.media.Schema;
+import io.swagger.v3.oas.models.media.StringSchema;
+
+/**
+ * Tests for operationBodyControls: per-operation body processor and body-size
+ * limit, selected in phase 1 from the operation's consumes, body schema bound or
+ * x-oashield-maxBodyBytes.
+ */
+public class OperationBodyControlsTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static final BodySizeBound BOUND = new BodySizeBound(schema -> schema);
+
+    @Test
+    public void boundedJsonSchemaHasABound() {
+        Schema<?> note = new ObjectSchema()
+                .addProperty("title", new StringSchema().maxLength(10))
+                .addProperty("tags", new ArraySchema().items(new StringSchema()._enum(Arrays.asList("a", "bb"))).maxItems(2))
+                .addProperty("rank", new IntegerSchema());
+        // members: "name": value, with 12 bytes per character and 64 bytes of whitespace
+        long title = (2 + 5 * 12) + 1 + (2 + 10 * 12) + 1 + 64;
+        long tags = (2 + 4 * 12) + 1 + (2 + 2 * ((2 + 2 * 12) + 1 + 64)) + 1 + 64;
+        long rank = (2 + 4 * 12) + 1 + 20 + 1 + 64;
+        assertEquals(2 + title + tags + rank + 64, BOUND.json(note));
+    }
+
+    @Test
+    public void unboundedValuesLeaveTheBodyUnbounded() {
+        assertEquals(-1, BOUND.json(new ObjectSchema().addProperty("text", new StringSchema())));
+        assertEquals(-1, BOUND.json(new ArraySchema().items(new IntegerSchema())));
+        assertEquals(-1, BOUND.json(new ObjectSchema().additionalProperties(new StringSchema().maxLength(1))));
+
+        // free-form objects take any members
+        assertEquals(-1, BOUND.json(new ObjectSchema()));
+        assertEquals(-1, BOUND.json(new ObjectSchema().addProperty("meta", new ObjectSchema())));
+        assertEquals(-1, BOUND.json(new ObjectSchema().additionalProperties(true)));
+        assertEquals(2 + 64, BOUND.json(new ObjectSchema().additionalProperties(false)));
+
+        Schema<?> node = new ObjectSchema();
+        node.addProperty("next", node);
+        assertEquals(-1, BOUND.json(node), "recursive schemas are unbounded");
+    }
+
+    @Test
+    public void urlencodedBoundCountsPercentEncoding() {
+        Schema<?> form = new ObjectSchema().addProperty("title", new StringSchema().maxLength(10));
+        assertEquals(5 * 12 + 10 * 12 + 2, BOUND.urlencoded(form));
+    }
+
+    @Test
+    public void requiresEarlyRouting() {
+        Modsecurity3Generator generator = new Modsecurity3Generator();
+        generator.additionalProperties().put("operationBodyControls", "true");
+        assertThrows(IllegalArgumentException.class, generator::processOpts);
+    }
+
+    private String generate(String flavor) throws IOException {
+        Path spec = tempDir.resolve("spec.yaml");
+        Files.write(spec, Arrays.asList(
+                "openapi: 3.0.3",
+                "info: {title: t, version: '1'}",
+                "paths:",
+                "  /notes:",
+                "    post:",
+                "      operationId: addNote",
+                "      requestBody:",
+                "        content:",
+                "          application/json:",
+                "            schema:",
+                "              type: object",
+                "              properties:",
+                "                title: {type: string, maxLength: 10}",
+                "      responses:",
+                "        '200': {description: ok}",
+                "  /free:",
+                "    post:",
+                "      operationId: addFree",
+                "      requestBody:",
+                "        content:",
+                "          application/json:",
+                "            schema: {type: object, properties: {text: {type: string}}}",
+                "      responses:",
+                "        '200': {description: ok}",
+                "  /blobs:",
+                "    put:",
+                "      operationId: putBlob",
+                "      x-oashield-maxBodyBytes: 4096",
+                "      requestBody:",
+                "        content:",
+                "          application/octet-stream:",
+                "            schema: {type: string, format: binary}",
+                "      responses:",
+                "        '200': {description: ok}"));
+        Path out = tempDir.resolve(flavor);
+        CodegenConfigurator configurator = new CodegenConfigurator()
+                .setGeneratorName("modsecurity3")
+                .setInputSpec(spec.toString())
+                .setOutputDir(out.toString());
+        configurator.addAdditionalProperty("earlyRouting", "true");
+        configurator.addAdditionalProperty("operationBodyControls", "true");
+        configurator.addAdditionalProperty("engineFlavor", flavor);
+        new DefaultGenerator().opts(configurator.toClientOptInput()).generate();
+        String main = Files.readString(out.resolve("mainconfig.conf"));
+        assertFalse(main.contains("ctl:requestBodyProcessor"), "no global body processor:\n" + main);
+        return Files.readString(out.resolve("DefaultApi.conf"));
+    }
+
+    private static String block(String conf, String operationId) {
+        int start = conf.indexOf("# " + operationId + ":");
+        return conf.substring(start, conf.indexOf("SecMarker END_" + operationId, start));
+    }
+
+    @Test
+    public void modsecurity3RejectsOversizedBodiesByContentLength() throws IOException {
+        String conf = generate("modsecurity3");
+        String note = block(conf, "addNote");
+        assertTrue(note.matches("(?s).*SecRule REQUEST_HEADERS:Content-Type \"@rx \\^application/json\" \"id:\\d+,phase:1,"
+                + "block,msg:'Request body too large for addNote',[^\"]*,chain\"\nSecRule REQUEST_HEADERS:Content-Length "
+                + "\"@gt \\d+\" \"t:none\".*"), note);
+        assertTrue(note.matches("(?s).*\"id:\\d+,phase:1,pass,nolog,ctl:requestBodyProcessor=JSON\".*"), note);
+        // libmodsecurity3 has no ctl:requestBodyLimit
+        assertFalse(conf.contains("ctl:requestBodyLimit"), conf);
+
+        // the body controls run before the handoff ends phase 1
+        assertTrue(note.indexOf("ctl:requestBodyProcessor") < note.indexOf("setvar:tx.oas_op"), note);
+
+        String free = block(conf, "addFree");
+        assertFalse(free.contains("Request body too large"), "unbounded schema gets no limit:\n" + free);
+        assertTrue(free.contains("ctl:requestBodyProcessor=JSON"), free);
+
+        assertTrue(block(conf, "putBlob").contains("\"@gt 4096\""), conf);
+    }
+
+    @Test
+    public void corazaAlsoSetsTheBodyLimit() throws IOException {
+        String conf = generate("coraza");
+        long bound = (2 + 5 * 12) + 1 + (2 + 10 * 12) + 1 + 64 + 2 + 64;
+        assertTrue(block(conf, "addNote").contains(",ctl:requestBodyProcessor=JSON,ctl:requestBodyLimit=" + bound + "\""), conf);
+        assertTrue(block(conf, "putBlob").contains(",phase:1,pass,nolog,ctl:requestBodyLimit=4096\""), conf);
+    }
+}
@@ -49,15 +49,44 @@ public class OperationProcessingTest {
         // Verify vendor extensions are added to the operation
         assertTrue(operation.vendorExtensions.containsKey("x-codegen-pathRegex"));
         assertEquals("/test/path".replaceAll("\\{.*?\\}", "[^/]+"), operation.vendorExtensions.get("x-codegen-pathRegex"));
+        Map<?, ?> ruleIds = (Map<?, ?>) operation.vendorExtensions.get("x-codegen-ruleIds");
         for (int i = 1; i <= 20; i++) {
-            assertTrue(operation.vendorExtensions.containsKey("x-codegen-globalIndex_" + i));
-            assertEquals(initialGlobalIndex + i - 1, operation.vendorExtensions.get("x-codegen-globalIndex_" + i));
+            assertTrue(ruleIds.containsKey(String.valueOf(i)));
+            assertEquals(initialGlobalIndex + i - 1, ruleIds.get(String.valueOf(i)));
         }
 
         // Verify vendor extension is added to the results map
         verify(processedOperationsMap).put(eq("vendorExtensions"), any(Map.class));
     }
 
+    @Test
+    public void testPostProcessOperationsWithModels_literalPathUsesStreq() {
+        Modsecurity3Generator generator = new Modsecurity3Generator();
+        OperationsMap operationsMap = mock(OperationsMap.class);
+        OperationMap operationMap = mock(OperationMap.class);
+        List<CodegenOperation> operationList = new ArrayList<>();
+        for (String path : new String[] {"/health", "/items/{id}"}) {
+            CodegenOperation operation = new CodegenOperation();
+            operation.path = path;
+            operation.operationId = "op" + operationList.size();
+            operation.vendorExtensions = new HashMap<>();
+            operation.allParams = new ArrayList<>();
+            operationList.add(operation);
+        }
+
+        when(operationsMap.getOperations()).thenReturn(operationMap);
+        when(operationMap.getOperation()).thenReturn(operationList);
+
+        generator.postProcessOperationsWithModels(operationsMap, new ArrayList<>());
+
+        Map<String, Object> literal = operationList.get(0).vendorExtensions;
+        assertEquals("@streq", literal.get("x-codegen-pathOperator"));
+        assertEquals("/health", literal.get("x-codegen-pathMatch"));
+        Map<String, Object> templated = operationList.get(1).vendorExtensions;
+        assertEquals("@rx", templated.get("x-codegen-pathOperator"));
+        assertEquals("^/items/[^/]+$", templated.get("x-codegen-pathMatch"));
+    }
+
     @Test
     public void testPostProcessOperationsWithModels_consumes() {
         Modsecurity3Generator generator = new Modsecurity3Generator();
@@ -0,0 +1,90 @@
+package com.oashield.openapi.generators.modsecurity3.tests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.openapitools.codegen.DefaultGenerator;
+import org.openapitools.codegen.config.CodegenConfigurator;
+
+import com.oashield.openapi.generators.modsecurity3.OperatorStrengthReduction;
+
+/**
+ * Tests for operator strength reduction: value rules admitting exactly one string
+ * use @streq, everything else keeps its @rx unchanged.
+ */
+public class OperatorStrengthReductionTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void anchoredLiteralsBecomeStreq() {
+        for (String pattern : new String[] {"^reminder$", "^(reminder)$", "^(?:reminder)$"}) {
+            assertEquals("@streq", OperatorStrengthReduction.operator(pattern), pattern);
+            assertEquals("reminder", OperatorStrengthReduction.operand(pattern), pattern);
+        }
+        assertEquals("v1.2-beta", OperatorStrengthReduction.operand("^v1\\.2\\-beta$"));
+    }
+
+    @Test
+    public void patternsAdmittingSeveralValuesKeepRx() {
+        for (String pattern : new String[] {
+                "^(available|pending|sold)$", "^(true|false)$", "^[0-9]{1,19}$", "^a\\d$",
+                "^(a)(b)$", "^(?i)abc$", "^abc", "abc$", "^ab?c$", "^.+$"}) {
+            assertEquals("@rx", OperatorStrengthReduction.operator(pattern), pattern);
+            assertEquals(pattern, OperatorStrengthReduction.operand(pattern), pattern);
+        }
+    }
+
+    @Test
+    public void unsafeOperandsKeepRx() {
+        // macro syntax, quoting, and edge whitespace would be reinterpreted
+        for (String pattern : new String[] {"^%\\{tx\\.x\\}$", "^say \"hi\"$", "^ padded$", "^a&b$"}) {
+            assertEquals("@rx", OperatorStrengthReduction.operator(pattern), pattern);
+        }
+    }
+
+    @Test
+    public void generatorUsesStreqForSingleValueParameters() throws IOException {
+        Path spec = tempDir.resolve("spec.yaml");
+        Files.write(spec, Arrays.asList(
+                "openapi: 3.0.3",
+                "info: {title: t, version: '1'}",
+                "paths:",
+                "  /items:",
+                "    get:",
+                "      operationId: listItems",
+                "      parameters:",
+                "        - {name: version, in: query, required: true, schema: {type: string, enum: [v2]}}",
+                "        - {name: status, in: query, schema: {type: string, enum: [open, closed]}}",
+                "        - {name: X-Mode, in: header, schema: {type: string, pattern: '^strict$'}}",
+                "      responses:",
+                "        '200': {description: ok}"));
+        Path out = tempDir.resolve("out");
+        CodegenConfigurator configurator = new CodegenConfigurator()
+                .setGeneratorName("modsecurity3")
+                .setInputSpec(spec.toString())
+                .setOutputDir(out.toString());
+        configurator.addAdditionalProperty("regexCostReport", "cost.csv");
+        new DefaultGenerator().opts(configurator.toClientOptInput()).generate();
+
+        String conf = Files.readString(out.resolve("DefaultApi.conf"));
+        assertTrue(conf.contains("SecRule ARGS_GET:version \"!@streq v2\""), conf);
+        assertTrue(conf.contains("SecRule REQUEST_HEADERS:X-Mode \"!@streq strict\""), conf);
+        // several values (and the empty value an optional parameter admits) keep the regex
+        assertTrue(conf.contains("SecRule ARGS_GET:status \"!@rx ^(open|closed)?$\""), conf);
+
+        // rules that no longer compile a regex drop out of the cost report
+        String report = Files.readString(out.resolve("cost.csv"));
+        assertFalse(report.contains("parameter version"), report);
+        assertTrue(report.contains("parameter status"), report);
+    }
+}
@@ -0,0 +1,126 @@
+package com.oashield.openapi.generators.modsecurity3.tests;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.openapitools.codegen.DefaultGenerator;
+import org.openapitools.codegen.config.CodegenConfigurator;
+
+import com.oashield.openapi.generators.modsecurity3.Modsecurity3Generator;
+import com.oashield.openapi.generators.modsecurity3.RuleIdSequence;
+
+/**
+ * Tests for parallelism: operations processed on a fork-join pool get the same
+ * rule ids, and produce the same files, as a sequential run.
+ */
+public class ParallelProcessingTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static final String[] SPECS = {
+        "samples/petstore.yaml", "samples/composed.yaml", "samples/getparam.yaml", "samples/multipart.yaml",
+        "samples/oas31.yaml", "samples/paramfeatures.yaml", "samples/urlintparam.yaml", "samples/xmlbody.yaml"};
+
+    private Path generate(String spec, String name, Map<String, String> options) {
+        Path out = tempDir.resolve(name);
+        CodegenConfigurator configurator = new CodegenConfigurator()
+                .setGeneratorName("modsecurity3")
+                .setInputSpec(spec)
+                .setOutputDir(out.toString());
+        configurator.addAdditionalProperty("regexCostReport", "cost.csv");
+        for (Map.Entry<String, String> option : options.entrySet()) {
+            configurator.addAdditionalProperty(option.getKey(), option.getValue());
+        }
+        new DefaultGenerator().opts(configurator.toClientOptInput()).generate();
+        return out;
+    }
+
+    private static List<Path> files(Path root) throws IOException {
+        try (Stream<Path> walk = Files.walk(root)) {
+            return walk.filter(Files::isRegularFile).map(root::relativize).sorted().collect(Collectors.toList());
+        }
+    }
+
+    private void assertSameOutput(String spec, Map<String, String> options) throws IOException {
+        String name = spec.replaceAll("\\W", "_") + options.hashCode();
+        Path sequential = generate(spec, name + "-sequential", options);
+        Map<String, String> parallel = new HashMap<>(options);
+        parallel.put("parallelism", "4");
+        Path parallelOut = generate(spec, name + "-parallel", parallel);
+
+        List<Path> files = files(sequential);
+        assertEquals(files, files(parallelOut), spec);
+        for (Path file : files) {
+            assertArrayEquals(Files.readAllBytes(sequential.resolve(file)), Files.readAllBytes(parallelOut.resolve(file)),
+                    spec + ": " + file);
+        }
+    }
+
+    @Test
+    public void everySampleMatchesTheSequentialOutput() throws IOException {
+        for (String spec : SPECS) {
+            assertSameOutput(spec, new HashMap<>());
+        }
+    }
+
+    @Test
+    public void everyIdAllocatingFeatureMatchesTheSequentialOutput() throws IOException {
+        Map<String, String> options = new HashMap<>();
+        options.put("engineFlavor", "coraza");
+        options.put("routeDispatch", "prefixTree");
+        options.put("groupByMethod", "true");
+        options.put("earlyRouting", "true");
+        options.put("operationBodyControls", "true");
+        options.put("jsonSchemaPerOperation", "true");
+        // small enough to split the allowlists into region rules
+        options.put("regexProgramBudget", "40");
+        for (String spec : SPECS) {
+            assertSameOutput(spec, options);
+        }
+    }
+
+    @Test
+    public void unresolvedIdsTakeTheirValueFromTheSequence() {
+        RuleIdSequence ids = new RuleIdSequence();
+        Number first = ids.next();
+        Map<String, String> consume = new HashMap<>();
+        ids.next(consume, "oasGateId");
+        assertFalse(consume.containsKey("oasGateId"));
+        assertThrows(IllegalStateException.class, first::longValue);
+
+        ids.resolve(4210100L);
+        assertEquals(2, ids.size());
+        assertEquals(4210100L, first.longValue());
+        assertEquals("4210100", first.toString());
+        assertEquals("4210101", consume.get("oasGateId"));
+        assertThrows(IllegalStateException.class, () -> ids.resolve(1L));
+
+        RuleIdSequence known = new RuleIdSequence(7L);
+        assertEquals(Long.valueOf(7L), known.next());
+        known.next(consume, "oasPassId");
+        assertEquals("8", consume.get("oasPassId"));
+        assertTrue(known.isResolved());
+    }
+
+    @Test
+    public void rejectsNonPositiveParallelism() {
+        Modsecurity3Generator generator = new Modsecurity3Generator();
+        generator.additionalProperties().put("parallelism", "0");
+        assertThrows(IllegalArgumentException.class, generator::processOpts);
+    }
+}
@@ -87,7 +87,7 @@ public class Phase1FixesTest {
         // the array-body operation's ARGS_NAMES allowlist covers the bare json
         // container (Coraza lists it for root arrays), index keys, and fields
         assertTrue(conf.contains(
-                "^(?:json|json\\.(?:array_)?\\d{1,9}|json\\.(?:array_)?\\d{1,9}\\.username|json\\.(?:array_)?\\d{1,9}\\.level)$"),
+                "^(?:json(?:\\.(?:array_)?\\d{1,9}(?:\\.(?:username|level))?)?)$"),
                 "root-array body allowlist should cover index keys and element fields:\n" + conf);
     }
 
@@ -1,5 +1,6 @@
 package com.oashield.openapi.generators.modsecurity3.tests;
 
+import static com.oashield.openapi.generators.modsecurity3.tests.AllowlistAssertions.allowlisted;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -76,7 +77,7 @@ public class Phase3FixesTest {
 
     @Test
     void deepObjectKeysAreAllowlisted() {
-        assertTrue(conf.contains("filter\\[[^\\]]{1,64}\\]"),
+        assertTrue(allowlisted(conf, "filter[status]"),
                 "deepObject bracket keys should be allowlisted:\n" + conf);
     }
 
@@ -96,7 +97,7 @@ public class Phase3FixesTest {
 
     @Test
     void mapPropertyAllowsArbitraryKeysAndValidatesValues() {
-        assertTrue(conf.contains("json\\.attrs\\..{1,256}"),
+        assertTrue(allowlisted(conf, "json.attrs.color"),
                 "map property should allowlist arbitrary sub-keys:\n" + conf);
         assertTrue(conf.contains("ARGS:/(?i)^json\\.attrs\\.[^.]{1,64}$/ \"!@rx ^[a-z]{1,20}$\""),
                 "map values should be validated against the additionalProperties schema:\n" + conf);
@@ -104,7 +105,7 @@ public class Phase3FixesTest {
 
     @Test
     void freeFormObjectAllowsArbitraryKeysWithoutValueRule() {
-        assertTrue(conf.contains("json\\.misc\\..{1,256}"),
+        assertTrue(allowlisted(conf, "json.misc.any.depth"),
                 "free-form object should allowlist arbitrary sub-keys:\n" + conf);
         assertFalse(conf.contains("ARGS:json.misc \"!@rx"),
                 "free-form object must not get a scalar value rule:\n" + conf);
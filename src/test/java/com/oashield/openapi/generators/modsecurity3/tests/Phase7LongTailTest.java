@@ -58,7 +58,7 @@ public class Phase7LongTailTest {
 
     @Test
     void constBecomesExactMatchRule() {
-        assertTrue(conf.contains("ARGS:json.kind \"!@rx ^reminder$\""),
+        assertTrue(conf.contains("ARGS:json.kind \"!@streq reminder\""),
                 "const should produce an exact-match value rule:\n" + conf);
     }
 
@@ -0,0 +1,73 @@
+package com.oashield.openapi.generators.modsecurity3.tests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.openapitools.codegen.ClientOptInput;
+import org.openapitools.codegen.DefaultGenerator;
+import org.openapitools.codegen.config.CodegenConfigurator;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.oashield.openapi.generators.modsecurity3.RawSpecSnapshot;
+
+import io.swagger.v3.oas.models.OpenAPI;
+import io.swagger.v3.oas.models.media.Schema;
+import io.swagger.v3.parser.OpenAPIV3Parser;
+
+/**
+ * Tests for the raw spec snapshot: raw keyword lookups read a copy taken before
+ * normalization instead of parsing the spec a second time.
+ */
+public class RawSpecSnapshotTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    public void rawKeywordsSurviveWithoutSecondParse() throws IOException {
+        Path spec = tempDir.resolve("oas31.yaml");
+        Files.copy(Paths.get("samples/oas31.yaml"), spec);
+        Path out = tempDir.resolve("out");
+        ClientOptInput input = new CodegenConfigurator()
+                .setGeneratorName("modsecurity3")
+                .setInputSpec(spec.toString())
+                .setOutputDir(out.toString())
+                .toClientOptInput();
+        // the spec was parsed above; a second parse would find nothing now
+        Files.delete(spec);
+        new DefaultGenerator().opts(input).generate();
+
+        JsonNode event = new ObjectMapper().readTree(out.resolve("schema.json").toFile())
+                .path("definitions").path("Event");
+        assertTrue(event.path("properties").path("window").path("prefixItems").isArray(), event.toString());
+        assertEquals("reminder", event.path("properties").path("kind").path("const").asText(), event.toString());
+        assertTrue(event.path("dependentRequired").has("end"), event.toString());
+        String conf = new String(Files.readAllBytes(out.resolve("DefaultApi.conf")), "UTF-8");
+        assertTrue(conf.contains("ARGS:json.kind \"!@streq reminder\""), conf);
+        assertNull(input.getOpenAPI().getExtensions(), "snapshot must not stay on the spec");
+    }
+
+    @Test
+    public void copyIsIndependentOfTheSpec() {
+        OpenAPI openAPI = new OpenAPIV3Parser().read("samples/oas31.yaml");
+        OpenAPI copy = RawSpecSnapshot.copy(openAPI);
+        Schema<?> window = (Schema<?>) openAPI.getComponents().getSchemas().get("Event").getProperties().get("window");
+        Schema<?> copied = (Schema<?>) copy.getComponents().getSchemas().get("Event").getProperties().get("window");
+        assertEquals(2, copied.getPrefixItems().size());
+        window.setPrefixItems(null);
+        assertEquals(2, copied.getPrefixItems().size());
+        assertSame(openAPI.getSpecVersion(), copy.getSpecVersion());
+        assertEquals(openAPI.getPaths().keySet(), copy.getPaths().keySet());
+        assertNull(copy.getInfo());
+    }
+}
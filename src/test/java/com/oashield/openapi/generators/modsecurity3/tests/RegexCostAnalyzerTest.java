@@ -0,0 +1,182 @@
+package com.oashield.openapi.generators.modsecurity3.tests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.openapitools.codegen.DefaultGenerator;
+import org.openapitools.codegen.config.CodegenConfigurator;
+
+import com.oashield.openapi.generators.modsecurity3.Modsecurity3Generator;
+import com.oashield.openapi.generators.modsecurity3.RegexCostAnalyzer;
+
+/**
+ * Tests for the regex cost budget: backtracking and RE2 program-size analysis,
+ * language-preserving rewrites, regexBudgetAction=cap and the cost report.
+ */
+public class RegexCostAnalyzerTest {
+
+    private static final String USERNAME_PATTERN = "^[a-zA-Z0-9]+[a-zA-Z0-9\\.\\-_]*[a-zA-Z0-9]+$";
+
+    @TempDir
+    Path tempDir;
+
+    private final RegexCostAnalyzer pcre = new RegexCostAnalyzer(1_000_000L, 50_000L, false);
+    private final RegexCostAnalyzer re2 = new RegexCostAnalyzer(1_000_000L, 50_000L, true);
+
+    private Path generate(String... options) {
+        Path out = tempDir.resolve("out");
+        final CodegenConfigurator configurator = new CodegenConfigurator()
+                .setGeneratorName("modsecurity3")
+                .setInputSpec("samples/petstore.yaml")
+                .setOutputDir(out.toString());
+        for (int i = 0; i < options.length; i += 2) {
+            configurator.addAdditionalProperty(options[i], options[i + 1]);
+        }
+        new DefaultGenerator().opts(configurator.toClientOptInput()).generate();
+        return out;
+    }
+
+    @Test
+    public void nestedQuantifierIsExponential() {
+        RegexCostAnalyzer.Result result = pcre.analyze("^(a+)+$");
+        assertEquals(RegexCostAnalyzer.Complexity.EXPONENTIAL, result.complexity);
+        assertTrue(pcre.overBudget(result), result.toString());
+        // RE2 matches in linear time, so the same pattern is within its budget
+        assertFalse(re2.overBudget(re2.analyze("^(a+)+$")));
+    }
+
+    @Test
+    public void overlappingAdjacentRepetitionsArePolynomial() {
+        RegexCostAnalyzer.Result result = pcre.analyze(USERNAME_PATTERN);
+        assertEquals(RegexCostAnalyzer.Complexity.POLYNOMIAL, result.complexity);
+        assertEquals(3, result.degree);
+        assertTrue(pcre.overBudget(result), result.toString());
+    }
+
+    @Test
+    public void typeDerivedPatternsAreLinear() {
+        for (String pattern : new String[] {"^[0-9]{1,19}$", "^[a-z]+$", "^(?:available|pending|sold)$", "^.*$"}) {
+            RegexCostAnalyzer.Result result = pcre.analyze(pattern);
+            assertEquals(RegexCostAnalyzer.Complexity.LINEAR, result.complexity, pattern);
+            assertFalse(pcre.overBudget(result), pattern);
+        }
+    }
+
+    @Test
+    public void repetitionsStartingWithASeparatorAreLinear() {
+        // [a-z]+ never consumes the '-' each later repetition starts with
+        RegexCostAnalyzer.Result result = pcre.analyze("^[a-z]+(?:-[a-z]+)*$");
+        assertEquals(RegexCostAnalyzer.Complexity.LINEAR, result.complexity, result.toString());
+        assertFalse(pcre.overBudget(result), result.toString());
+    }
+
+    @Test
+    public void rewritesPreserveTheLanguage() {
+        assertEquals("^a+$", pcre.rewrite("^(a+)+$").pattern);
+        assertEquals("^(?:[\\w\\d])+$", pcre.rewrite("^(?:\\w|\\d)+$").pattern);
+        assertEquals(RegexCostAnalyzer.Complexity.LINEAR, pcre.rewrite("^(a+)+$").complexity);
+    }
+
+    @Test
+    public void rewritesKeepInlineFlagGroups() {
+        RegexCostAnalyzer.Result result = pcre.rewrite("^(?i:a+)+$");
+        assertEquals("^(?i:a)+$", result.pattern);
+        assertEquals(RegexCostAnalyzer.Complexity.LINEAR, result.complexity);
+        Pattern original = Pattern.compile("^(?i:a+)+$");
+        Pattern rewritten = Pattern.compile(result.pattern);
+        for (String input : new String[] {"a", "A", "aAa", "AAAA", "", "b", "aB"}) {
+            assertEquals(original.matcher(input).find(), rewritten.matcher(input).find(), input);
+        }
+        assertEquals("^(?s-i:(?i:.))*x$", pcre.rewrite("^(?s-i:(?i:.)+)*x$").pattern);
+    }
+
+    @Test
+    public void overlappingConcatenationUnderQuantifierIsExponential() {
+        for (String pattern : new String[] {"^(x+x+)+y$", "^(?:[a-z0-9]+(?:-[a-z0-9]+)*)+$"}) {
+            assertEquals(RegexCostAnalyzer.Complexity.EXPONENTIAL, pcre.analyze(pattern).complexity, pattern);
+        }
+        // disjoint repetitions split one way only
+        assertEquals(RegexCostAnalyzer.Complexity.LINEAR, pcre.analyze("^(?:[a-z]+[0-9]+)+$").complexity);
+    }
+
+    @Test
+    public void overlappingAlternativesUnderQuantifierAreExponential() {
+        assertEquals(RegexCostAnalyzer.Complexity.EXPONENTIAL, pcre.analyze("^(a|aa)+$").complexity);
+        // enum values behind a separator cannot re-split an iteration
+        assertEquals(RegexCostAnalyzer.Complexity.LINEAR,
+                pcre.analyze("^(?:(applied|approved))(?:,(?:(applied|approved))){0,999}$").complexity);
+    }
+
+    @Test
+    public void rewriteRemovesTheConcatenatedRepetitions() {
+        RegexCostAnalyzer.Result result = pcre.rewrite("^(?:x+x+)+y$");
+        assertEquals("^x{2,}y$", result.pattern);
+        assertEquals(RegexCostAnalyzer.Complexity.LINEAR, result.complexity);
+    }
+
+    @Test
+    public void rewriteKeepsCapturingGroupsOfABackreference() {
+        RegexCostAnalyzer.Result result = pcre.rewrite("^(a+)+\\1$");
+        assertEquals("^(a+)+\\1$", result.pattern);
+        assertEquals(RegexCostAnalyzer.Complexity.EXPONENTIAL, result.complexity);
+    }
+
+    @Test
+    public void re2RepeatLimitIsDetected() {
+        RegexCostAnalyzer.Result result = re2.analyze("^(?:[0-9]{1,19})(?:,(?:[0-9]{1,19})){0,999}$");
+        assertFalse(result.re2Compatible, result.toString());
+        assertTrue(re2.overBudget(result));
+        assertTrue(re2.analyze("^[0-9]{1,19}$").re2Compatible);
+    }
+
+    @Test
+    public void capFallsBackToTheTypeDerivedPattern() throws IOException {
+        Path out = generate("regexBudgetAction", "cap");
+        String user = Files.readString(out.resolve("UserApi.conf"));
+        assertFalse(user.contains(USERNAME_PATTERN), user);
+        assertTrue(user.contains("SecRule ARGS_GET:username \"!@rx ^.+$\""), user);
+    }
+
+    @Test
+    public void defaultKeepsSpecPatternsItCannotImprove() throws IOException {
+        Path out = generate();
+        String user = Files.readString(out.resolve("UserApi.conf"));
+        assertTrue(user.contains(USERNAME_PATTERN), user);
+    }
+
+    @Test
+    public void costReportListsEveryRulePattern() throws IOException {
+        Path out = generate("regexCostReport", "regex-cost.csv");
+        List<String> rows = Files.readAllLines(out.resolve("regex-cost.csv"));
+        assertEquals("ruleId,target,growth,worstCaseSteps,re2ProgramSize,re2Compatible,overBudget,hazards,pattern",
+                rows.get(0));
+        assertTrue(rows.size() > 10, "expected one row per rule pattern");
+        // most expensive first
+        assertTrue(rows.get(1).contains("\"exponential\"") || rows.get(1).contains("\"polynomial\""), rows.get(1));
+        assertTrue(rows.stream().anyMatch(r -> r.startsWith("\"4211438\",\"parameter username\"")), rows.toString());
+    }
+
+    @Test
+    public void unknownActionIsRejected() {
+        Modsecurity3Generator generator = new Modsecurity3Generator();
+        generator.additionalProperties().put("regexBudgetAction", "truncate");
+        assertThrows(IllegalArgumentException.class, generator::processOpts);
+    }
+
+    @Test
+    public void nonPositiveBudgetIsRejected() {
+        Modsecurity3Generator generator = new Modsecurity3Generator();
+        generator.additionalProperties().put("regexStepBudget", "0");
+        assertThrows(IllegalArgumentException.class, generator::processOpts);
+    }
+}
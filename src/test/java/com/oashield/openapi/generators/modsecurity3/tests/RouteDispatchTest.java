@@ -0,0 +1,118 @@
+package com.oashield.openapi.generators.modsecurity3.tests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.openapitools.codegen.DefaultGenerator;
+import org.openapitools.codegen.config.CodegenConfigurator;
+
+import com.oashield.openapi.generators.modsecurity3.Modsecurity3Generator;
+
+/**
+ * Tests for routeDispatch=prefixTree: operations sharing a literal path prefix are
+ * gated as a subtree so requests skip every block outside their own prefix.
+ */
+public class RouteDispatchTest {
+
+    @TempDir
+    Path tempDir;
+
+    private void generate(Map<String, Object> additionalProperties) {
+        final CodegenConfigurator configurator = new CodegenConfigurator()
+                .setGeneratorName("modsecurity3")
+                .setInputSpec("samples/petstore.yaml")
+                .setOutputDir(tempDir.toString());
+        for (Map.Entry<String, Object> entry : additionalProperties.entrySet()) {
+            configurator.addAdditionalProperty(entry.getKey(), entry.getValue());
+        }
+        new DefaultGenerator().opts(configurator.toClientOptInput()).generate();
+    }
+
+    private Map<String, Object> prefixTree() {
+        Map<String, Object> props = new HashMap<>();
+        props.put("routeDispatch", "prefixTree");
+        return props;
+    }
+
+    @Test
+    public void linearDispatchIsTheDefault() throws IOException {
+        generate(new HashMap<>());
+        String conf = Files.readString(tempDir.resolve("StoreApi.conf"));
+        assertFalse(conf.contains("@beginsWith"), "no dispatch gates by default:\n" + conf);
+        assertFalse(conf.contains("ROUTE_"), "no dispatch markers by default:\n" + conf);
+    }
+
+    @Test
+    public void nestedPrefixesGetNestedGates() throws IOException {
+        generate(prefixTree());
+        String conf = Files.readString(tempDir.resolve("StoreApi.conf"));
+
+        assertTrue(conf.matches("(?s).*SecRule REQUEST_FILENAME \"!@beginsWith /v2/store\" "
+                + "\"id:\\d+,phase:2,pass,nolog,skipAfter:ROUTE_\\d+\".*"), "outer subtree gate:\n" + conf);
+        assertTrue(conf.matches("(?s).*SecRule REQUEST_FILENAME \"!@beginsWith /v2/store/order\" "
+                + "\"id:\\d+,phase:2,pass,nolog,skipAfter:ROUTE_\\d+\".*"), "inner subtree gate:\n" + conf);
+        // the /store/order subtree is contiguous and closed before /store/inventory
+        assertTrue(conf.indexOf("# placeOrder") < conf.indexOf("# getInventory"),
+                "operations of one subtree must be emitted together:\n" + conf);
+    }
+
+    @Test
+    public void everyGateMarkerIsClosedInNestingOrder() throws IOException {
+        generate(prefixTree());
+        for (String file : new String[] {"PetApi.conf", "StoreApi.conf", "UserApi.conf"}) {
+            String conf = Files.readString(tempDir.resolve(file));
+            Deque<String> open = new ArrayDeque<>();
+            Matcher m = Pattern.compile("skipAfter:(ROUTE_\\d+)\"|SecMarker (ROUTE_\\d+)").matcher(conf);
+            while (m.find()) {
+                if (m.group(1) != null) {
+                    open.push(m.group(1));
+                } else {
+                    assertEquals(open.pop(), m.group(2), "markers must close innermost first in " + file);
+                }
+            }
+            assertTrue(open.isEmpty(), "unclosed dispatch gates in " + file + ": " + open);
+        }
+    }
+
+    @Test
+    public void literalRoutesPrecedeTemplatedSiblings() throws IOException {
+        generate(prefixTree());
+        String conf = Files.readString(tempDir.resolve("UserApi.conf"));
+        assertTrue(conf.indexOf("# loginUser") < conf.indexOf("# getUserByName"),
+                "/user/login must be tried before /user/{username}:\n" + conf);
+        conf = Files.readString(tempDir.resolve("PetApi.conf"));
+        assertTrue(conf.indexOf("# findPetsByStatus") < conf.indexOf("# getPetById"),
+                "/pet/findByStatus must be tried before /pet/{petId}:\n" + conf);
+    }
+
+    @Test
+    public void emptyBasePathSkipsTheRootGate() throws IOException {
+        Map<String, Object> props = prefixTree();
+        props.put("basePath", "");
+        generate(props);
+        String conf = Files.readString(tempDir.resolve("StoreApi.conf"));
+        assertTrue(conf.contains("\"!@beginsWith /store\""), "gate prefixes follow the base path:\n" + conf);
+        assertFalse(conf.contains("\"!@beginsWith \""), "no gate on an empty prefix:\n" + conf);
+    }
+
+    @Test
+    public void unknownDispatchModeIsRejected() {
+        Modsecurity3Generator generator = new Modsecurity3Generator();
+        generator.additionalProperties().put("routeDispatch", "hash");
+        assertThrows(IllegalArgumentException.class, generator::processOpts);
+    }
+}
@@ -0,0 +1,136 @@
+package com.oashield.openapi.generators.modsecurity3.tests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.openapitools.codegen.DefaultGenerator;
+import org.openapitools.codegen.config.CodegenConfigurator;
+
+import com.oashield.openapi.generators.modsecurity3.Modsecurity3Generator;
+
+/**
+ * Tests for routeMatch=structural: operations route on their path's shape, and
+ * the path parameter patterns are checked only once path and method matched.
+ */
+public class RouteMatchTest {
+
+    private static final String GET_PET_ROUTE =
+            "SecRule REQUEST_FILENAME \"!@rx ^/v2/pet/[^/]*$\" \"id:4200162,phase:2,pass,nolog,skipAfter:END_getPetById\"";
+    private static final String GET_PET_METHOD =
+            "SecRule REQUEST_METHOD \"!@within GET\" \"id:4200163,phase:2,pass,nolog,skipAfter:END_getPetById\"";
+    private static final String GET_PET_VALIDATION =
+            "SecRule REQUEST_FILENAME \"!@rx ^/v2/pet/(?:[0-9]{1,19})$\" \"id:4200166,phase:2,pass,nolog,skipAfter:END_getPetById\"";
+
+    @TempDir
+    Path tempDir;
+
+    private String generate(String spec, String file, String... properties) throws IOException {
+        final CodegenConfigurator configurator = new CodegenConfigurator()
+                .setGeneratorName("modsecurity3")
+                .setInputSpec(spec)
+                .setOutputDir(tempDir.toString());
+        for (int i = 0; i < properties.length; i += 2) {
+            configurator.addAdditionalProperty(properties[i], properties[i + 1]);
+        }
+        new DefaultGenerator().opts(configurator.toClientOptInput()).generate();
+        return Files.readString(tempDir.resolve(file));
+    }
+
+    @Test
+    public void strictIsTheDefault() throws IOException {
+        String conf = generate("samples/petstore.yaml", "PetApi.conf");
+        assertEquals(conf, generate("samples/petstore.yaml", "PetApi.conf", "routeMatch", "strict"));
+        assertTrue(conf.contains("SecRule REQUEST_FILENAME \"!@rx ^/v2/pet/(?:[0-9]{1,19})$\" \"id:4200162,"), conf);
+        assertFalse(conf.contains("[^/]*"), conf);
+    }
+
+    @Test
+    public void structuralRouteThenMethodThenParameters() throws IOException {
+        String conf = generate("samples/petstore.yaml", "PetApi.conf", "routeMatch", "structural");
+        int route = conf.indexOf(GET_PET_ROUTE);
+        int method = conf.indexOf(GET_PET_METHOD);
+        int validation = conf.indexOf(GET_PET_VALIDATION);
+        assertTrue(route >= 0 && method > route && validation > method, conf);
+        assertTrue(conf.contains("SecRule REQUEST_FILENAME \"!@rx ^/v2/pet/[^/]*/uploadImage$\""), conf);
+        // template-free routes still compare as strings
+        assertTrue(conf.contains("SecRule REQUEST_FILENAME \"!@streq /v2/pet/findByStatus\""), conf);
+    }
+
+    @Test
+    public void unconstrainedParametersKeepOneRule() throws IOException {
+        String conf = generate("samples/petstore.yaml", "UserApi.conf", "routeMatch", "structural");
+        assertTrue(conf.contains("SecRule REQUEST_FILENAME \"!@rx ^/v2/user/(?:[^/]+)$\" \"id:4200644,"), conf);
+        assertFalse(conf.contains("Path and method match"), conf);
+    }
+
+    @Test
+    public void structuralRoutesAcceptEveryStrictRoute() throws IOException {
+        String strict = generate("samples/petstore.yaml", "PetApi.conf");
+        String structural = generate("samples/petstore.yaml", "PetApi.conf", "routeMatch", "structural");
+        List<String> strictRoutes = routes(strict);
+        List<String> structuralRoutes = routes(structural);
+        assertEquals(strictRoutes.size(), structuralRoutes.size());
+        String[] paths = {"/v2/pet/1", "/v2/pet/abc", "/v2/pet/", "/v2/pet/12/uploadImage", "/v2/pet/x/uploadImage"};
+        for (int i = 0; i < strictRoutes.size(); i++) {
+            Pattern strictRoute = Pattern.compile(strictRoutes.get(i));
+            Pattern structuralRoute = Pattern.compile(structuralRoutes.get(i));
+            for (String path : paths) {
+                if (strictRoute.matcher(path).find()) {
+                    assertTrue(structuralRoute.matcher(path).find(), structuralRoutes.get(i) + " misses " + path);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void patternsThatSpanSegmentsStayInTheRoute() throws IOException {
+        Path spec = tempDir.resolve("spec.yaml");
+        Files.writeString(spec, "openapi: 3.0.0\n"
+                + "info: {title: t, version: '1'}\n"
+                + "paths:\n"
+                + "  /files/{path}:\n    get:\n      operationId: getFile\n      tags: [files]\n"
+                + "      parameters: [{name: path, in: path, required: true, schema: {type: string, pattern: '^[a-z/]+$'}}]\n"
+                + "      responses: {'200': {description: ok}}\n");
+        String conf = generate(spec.toString(), "FilesApi.conf", "routeMatch", "structural");
+        assertTrue(conf.contains("SecRule REQUEST_FILENAME \"!@rx ^/files/(?:[a-z\\/]+)$\""), conf);
+        assertFalse(conf.contains("Path and method match"), conf);
+    }
+
+    @Test
+    public void earlyRoutingValidatesInPhaseOne() throws IOException {
+        String conf = generate("samples/petstore.yaml", "PetApi.conf", "routeMatch", "structural",
+                "earlyRouting", "true");
+        assertTrue(conf.contains(GET_PET_VALIDATION.replace("phase:2", "phase:1")), conf);
+    }
+
+    @Test
+    public void unknownRouteMatchIsRejected() {
+        Modsecurity3Generator generator = new Modsecurity3Generator();
+        generator.additionalProperties().put("routeMatch", "shape");
+        IllegalArgumentException e = assertThrows(IllegalArgumentException.class, generator::processOpts);
+        assertTrue(e.getMessage().contains("routeMatch"), e.getMessage());
+    }
+
+    // The routing regex of every templated operation, in file order
+    private static List<String> routes(String conf) {
+        List<String> routes = new ArrayList<>();
+        Matcher m = Pattern.compile("SecRule REQUEST_FILENAME \"!@rx (\\S+)\" \"id:\\d+,phase:\\d,pass,nolog,skipAfter:END_\\w+\"\n"
+                + "SecRule REQUEST_METHOD").matcher(conf);
+        while (m.find()) {
+            routes.add(m.group(1));
+        }
+        return routes;
+    }
+}
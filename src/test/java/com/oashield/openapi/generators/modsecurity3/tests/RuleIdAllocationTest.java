@@ -0,0 +1,195 @@
+package com.oashield.openapi.generators.modsecurity3.tests;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.openapitools.codegen.DefaultGenerator;
+import org.openapitools.codegen.config.CodegenConfigurator;
+
+import com.oashield.openapi.generators.modsecurity3.Modsecurity3Generator;
+import com.oashield.openapi.generators.modsecurity3.RuleIdBlock;
+
+/**
+ * Tests for ruleIdAllocation=onDemand: rules take an id only when the template
+ * writes them, and the rules written are the same as with reserved blocks.
+ */
+public class RuleIdAllocationTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static final Pattern RULE_ID = Pattern.compile("(?<=[\",])id:(\\d+)");
+    private static final String[] API_FILES = {"PetApi.conf", "StoreApi.conf", "UserApi.conf"};
+
+    private Path generate(String outName, Map<String, String> options) {
+        return generate("samples/petstore.yaml", outName, options);
+    }
+
+    private Path generate(String spec, String outName, Map<String, String> options) {
+        Path out = tempDir.resolve(outName);
+        CodegenConfigurator configurator = new CodegenConfigurator()
+                .setGeneratorName("modsecurity3")
+                .setInputSpec(spec)
+                .setOutputDir(out.toString());
+        for (Map.Entry<String, String> option : options.entrySet()) {
+            configurator.addAdditionalProperty(option.getKey(), option.getValue());
+        }
+        new DefaultGenerator().opts(configurator.toClientOptInput()).generate();
+        return out;
+    }
+
+    private static String read(Path file) throws IOException {
+        return new String(Files.readAllBytes(file), "UTF-8");
+    }
+
+    private static List<Long> ruleIds(String text) {
+        List<Long> ids = new ArrayList<>();
+        Matcher id = RULE_ID.matcher(text);
+        while (id.find()) {
+            ids.add(Long.parseLong(id.group(1)));
+        }
+        return ids;
+    }
+
+    private static Map<String, String> onDemand() {
+        Map<String, String> options = new TreeMap<>();
+        options.put("ruleIdAllocation", "onDemand");
+        return options;
+    }
+
+    @Test
+    public void onDemandWritesTheSameRulesWithCompactIds() throws IOException {
+        Path reserved = generate("reserved", new TreeMap<>());
+        Path compact = generate("compact", onDemand());
+
+        Set<Long> seen = new HashSet<>();
+        for (String api : API_FILES) {
+            String reservedConf = read(reserved.resolve(api));
+            String compactConf = read(compact.resolve(api));
+            assertEquals(reservedConf.replaceAll("id:\\d+", "id:N"), compactConf.replaceAll("id:\\d+", "id:N"), api);
+
+            List<Long> ids = ruleIds(compactConf);
+            long lowest = ids.stream().min(Long::compare).get();
+            long highest = ids.stream().max(Long::compare).get();
+            for (long id : ids) {
+                assertTrue(seen.add(id), api + ": duplicate id " + id);
+            }
+            // a handful of single ids are drawn for rules the template leaves out
+            assertTrue(highest - lowest + 1 < ids.size() * 2, api + " spans " + lowest + ".." + highest);
+        }
+        List<Long> mainIds = ruleIds(read(compact.resolve("mainconfig.conf")));
+        assertTrue(mainIds.get(2) > seen.stream().max(Long::compare).get(), mainIds.toString());
+    }
+
+    @Test
+    public void onDemandIdsDoNotDependOnParallelism() throws IOException {
+        Path sequential = generate("sequential", onDemand());
+        Map<String, String> options = onDemand();
+        options.put("parallelism", "4");
+        Path parallel = generate("parallel", options);
+        for (String file : new String[] {"PetApi.conf", "StoreApi.conf", "UserApi.conf", "mainconfig.conf"}) {
+            assertArrayEquals(Files.readAllBytes(sequential.resolve(file)), Files.readAllBytes(parallel.resolve(file)),
+                    file);
+        }
+    }
+
+    @Test
+    public void costReportListsOnlyWrittenRules() throws IOException {
+        Map<String, String> options = onDemand();
+        options.put("regexCostReport", "cost.csv");
+        Path out = generate("out", options);
+        Set<Long> written = new HashSet<>();
+        for (String api : API_FILES) {
+            written.addAll(ruleIds(read(out.resolve(api))));
+        }
+        List<String> rows = Files.readAllLines(out.resolve("cost.csv"));
+        assertTrue(rows.size() > 1);
+        for (String row : rows.subList(1, rows.size())) {
+            long id = Long.parseLong(row.substring(1, row.indexOf('"', 1)));
+            assertTrue(written.contains(id), row);
+        }
+    }
+
+    @Test
+    public void onDemandWindowFitsTheWrittenIds() throws IOException {
+        // 300 operations with a parameter each reserve 24000 ids, past ruleIdEnd;
+        // the rules written take a few thousand
+        StringBuilder spec = new StringBuilder("openapi: 3.0.3\ninfo: {title: t, version: '1'}\npaths:\n");
+        for (int i = 0; i < 300; i++) {
+            spec.append("  /items").append(i).append(":\n    get:\n      operationId: getItem").append(i)
+                    .append("\n      parameters:\n        - {name: q, in: query, schema: {type: string, maxLength: 8}}")
+                    .append("\n      responses: {'200': {description: ok}}\n");
+        }
+        Path specFile = tempDir.resolve("spec.yaml");
+        Files.write(specFile, spec.toString().getBytes("UTF-8"));
+        Map<String, String> window = new TreeMap<>();
+        window.put("ruleIdEnd", "4220500");
+        assertThrows(RuntimeException.class, () -> generate(specFile.toString(), "reserved", window));
+
+        Map<String, String> options = onDemand();
+        options.putAll(window);
+        Path out = generate(specFile.toString(), "compact", options);
+        List<Long> ids = ruleIds(read(out.resolve("DefaultApi.conf")));
+        assertTrue(ids.stream().allMatch(id -> id < 4220001L), ids.toString());
+        assertEquals(Long.valueOf(4220001L), ruleIds(read(out.resolve("mainconfig.conf"))).get(2));
+    }
+
+    @Test
+    public void onDemandSlotsDrawOnceWhenRendered() {
+        AtomicLong next = new AtomicLong(100);
+        RuleIdBlock block = RuleIdBlock.onDemand(40, next::getAndIncrement);
+        Number valueRule = block.id(6);
+        assertEquals("pending", valueRule.toString());
+        assertThrows(IllegalStateException.class, valueRule::longValue);
+        assertTrue(block.isEmpty());
+
+        assertEquals(Long.valueOf(100), block.get("6"));
+        assertEquals(Long.valueOf(100), block.get("6"));
+        assertEquals(Long.valueOf(101), block.get("1"));
+        assertEquals(100L, valueRule.longValue());
+        assertEquals(block.id(6), valueRule);
+        assertEquals(2, block.size());
+        assertFalse(block.containsKey("41"));
+        assertEquals(null, block.get("x"));
+
+        RuleIdBlock reserved = RuleIdBlock.contiguous(4200001L, 40);
+        assertEquals(Long.valueOf(4200014L), reserved.get("14"));
+        assertEquals(Long.valueOf(4200014L), reserved.id(14));
+        assertEquals(40, reserved.size());
+    }
+
+    @Test
+    public void rejectsUnsupportedCombinations() {
+        Modsecurity3Generator unknown = new Modsecurity3Generator();
+        unknown.additionalProperties().put("ruleIdAllocation", "lazy");
+        assertThrows(IllegalArgumentException.class, unknown::processOpts);
+
+        Modsecurity3Generator stable = new Modsecurity3Generator();
+        stable.additionalProperties().put("ruleIdAllocation", "onDemand");
+        stable.additionalProperties().put("ruleIdStrategy", "stable");
+        assertThrows(IllegalArgumentException.class, stable::processOpts);
+
+        Modsecurity3Generator cached = new Modsecurity3Generator();
+        cached.additionalProperties().put("ruleIdAllocation", "onDemand");
+        cached.additionalProperties().put("incrementalCache", ".oashield-cache");
+        assertThrows(IllegalArgumentException.class, cached::processOpts);
+    }
+}
@@ -0,0 +1,191 @@
+package com.oashield.openapi.generators.modsecurity3.tests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.openapitools.codegen.DefaultGenerator;
+import org.openapitools.codegen.config.CodegenConfigurator;
+
+import com.oashield.openapi.generators.modsecurity3.Modsecurity3Generator;
+import com.oashield.openapi.generators.modsecurity3.RuleIdRangePlanner;
+
+/**
+ * Tests for the rule id range plan: ranges are sized from the whole spec, so
+ * large specs get no duplicate ids, and a spec that does not fit the window
+ * fails before any rule file is written.
+ */
+public class RuleIdRangePlannerTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static final Pattern RULE_ID = Pattern.compile("(?<=[\",])id:(\\d+)");
+
+    /** A spec with the given number of operations, split over two tags, with two query parameters each. */
+    private Path largeSpec(int operations) throws IOException {
+        StringBuilder spec = new StringBuilder("openapi: 3.0.3\ninfo: {title: large, version: '1'}\npaths:\n");
+        for (int i = 0; i < operations; i++) {
+            spec.append("  /items").append(i).append(":\n")
+                .append("    get:\n")
+                .append("      tags: [").append(i % 2 == 0 ? "even" : "odd").append("]\n")
+                .append("      operationId: getItem").append(i).append('\n')
+                .append("      parameters:\n")
+                .append("        - {name: q, in: query, schema: {type: string, maxLength: 16}}\n")
+                .append("        - {name: n, in: query, schema: {type: integer}}\n")
+                .append("      responses:\n")
+                .append("        '200': {description: ok}\n");
+        }
+        Path file = tempDir.resolve("large.yaml");
+        Files.write(file, spec.toString().getBytes("UTF-8"));
+        return file;
+    }
+
+    private Path generate(String spec, String outName, Map<String, String> options) {
+        Path out = tempDir.resolve(outName);
+        CodegenConfigurator configurator = new CodegenConfigurator()
+                .setGeneratorName("modsecurity3")
+                .setInputSpec(spec)
+                .setOutputDir(out.toString());
+        for (Map.Entry<String, String> option : options.entrySet()) {
+            configurator.addAdditionalProperty(option.getKey(), option.getValue());
+        }
+        new DefaultGenerator().opts(configurator.toClientOptInput()).generate();
+        return out;
+    }
+
+    private static List<Path> confFiles(Path out) throws IOException {
+        if (!Files.isDirectory(out)) {
+            return new ArrayList<>();
+        }
+        try (Stream<Path> walk = Files.walk(out)) {
+            return walk.filter(p -> p.toString().endsWith(".conf")).sorted().collect(Collectors.toList());
+        }
+    }
+
+    private static List<Long> ruleIds(Path file) throws IOException {
+        List<Long> ids = new ArrayList<>();
+        Matcher id = RULE_ID.matcher(new String(Files.readAllBytes(file), "UTF-8"));
+        while (id.find()) {
+            ids.add(Long.parseLong(id.group(1)));
+        }
+        return ids;
+    }
+
+    @Test
+    public void largeSpecGetsNoDuplicateIds() throws IOException {
+        Map<String, String> options = new TreeMap<>();
+        options.put("earlyRouting", "true");
+        options.put("routeDispatch", "prefixTree");
+        Path out = generate(largeSpec(400).toString(), "out", options);
+
+        Set<Long> seen = new HashSet<>();
+        long highestApiId = 0;
+        for (Path file : confFiles(out)) {
+            for (long id : ruleIds(file)) {
+                assertTrue(seen.add(id), file.getFileName() + ": duplicate id " + id);
+                if (!file.getFileName().toString().equals("mainconfig.conf")) {
+                    highestApiId = Math.max(highestApiId, id);
+                }
+            }
+        }
+        // 400 operations need 16,002 operation ids, so the parameter range starts past
+        // 4210001 and runs past the default closing rule ids, which move after it
+        assertTrue(highestApiId > 4220001L, "parameter range ends at " + highestApiId);
+        List<Long> mainIds = ruleIds(out.resolve("mainconfig.conf"));
+        // the unknown-endpoint rules; the body processor rules stay below the window
+        assertTrue(mainIds.get(2) > highestApiId && mainIds.get(3) > highestApiId, mainIds.toString());
+    }
+
+    @Test
+    public void tooSmallWindowFailsBeforeAnyRuleFileIsWritten() throws IOException {
+        Map<String, String> options = new TreeMap<>();
+        options.put("ruleIdEnd", "4230000");
+        String spec = largeSpec(400).toString();
+        RuntimeException error = assertThrows(RuntimeException.class, () -> generate(spec, "out", options));
+        StringBuilder messages = new StringBuilder();
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            messages.append(cause.getMessage()).append('\n');
+        }
+        assertTrue(messages.toString().contains("past ruleIdEnd 4230000"), messages.toString());
+        assertTrue(messages.toString().contains("operations"), messages.toString());
+        assertEquals(new ArrayList<Path>(), confFiles(tempDir.resolve("out")));
+    }
+
+    @Test
+    public void defaultLayoutKeepsTheFixedIds() throws IOException {
+        Map<String, String> options = new TreeMap<>();
+        options.put("earlyRouting", "true");
+        Path out = generate("samples/petstore.yaml", "out", options);
+        List<Long> mainIds = ruleIds(out.resolve("mainconfig.conf"));
+        assertEquals(java.util.Arrays.asList(4200000L, 4199999L, 4220001L, 4220002L), mainIds);
+        assertTrue(ruleIds(out.resolve("PetApi.conf")).stream().allMatch(id -> id >= 4200001L && id < 4220001L));
+
+        out = generate("samples/petstore.yaml", "plain", new TreeMap<>());
+        assertEquals(java.util.Arrays.asList(4200000L, 4199999L, 4220001L), ruleIds(out.resolve("mainconfig.conf")));
+    }
+
+    @Test
+    public void windowStartMovesEveryRange() throws IOException {
+        Map<String, String> options = new TreeMap<>();
+        options.put("ruleIdStart", "7000001");
+        options.put("ruleIdEnd", "7099999");
+        Path out = generate("samples/petstore.yaml", "out", options);
+        assertEquals(java.util.Arrays.asList(7000000L, 6999999L, 7020001L), ruleIds(out.resolve("mainconfig.conf")));
+        List<Long> ids = ruleIds(out.resolve("PetApi.conf"));
+        assertTrue(ids.stream().allMatch(id -> id >= 7000001L && id < 7020001L), ids.toString());
+    }
+
+    @Test
+    public void planReportsEveryCount() {
+        RuleIdRangePlanner.Plan plan = new RuleIdRangePlanner(4200001L, 4299999L)
+                .operationRange("operations", 300, 40)
+                .parameterRange("parameters", 100, 40)
+                .plan();
+        assertEquals(4212001L, plan.parameterBase);
+        assertEquals(4220001L, plan.closingBase(4216001L));
+        assertEquals(4230000L, plan.closingBase(4230000L));
+        assertTrue(plan.report().contains("operations"), plan.report());
+
+        RuleIdRangePlanner small = new RuleIdRangePlanner(4200001L, 4215000L).parameterRange("parameters", 200, 40);
+        IllegalArgumentException error = assertThrows(IllegalArgumentException.class, small::plan);
+        assertTrue(error.getMessage().contains("parameters"), error.getMessage());
+        assertThrows(IllegalStateException.class,
+                () -> new RuleIdRangePlanner(4200001L, 4299999L).plan().checkParameterEnd(4299999L, "PetApi"));
+    }
+
+    @Test
+    public void onDemandBlocksAreCheckedAsTheyAreDrawn() {
+        RuleIdRangePlanner.Plan plan = new RuleIdRangePlanner(4200001L, 4220500L)
+                .parameterRangeAtMost("operations", 700, 40)
+                .plan();
+        assertEquals(4210001L, plan.parameterBase);
+        assertTrue(plan.report().contains("up to 28000 more ids"), plan.report());
+        plan.checkParameterEnd(4220001L, "PetApi");
+        assertThrows(IllegalStateException.class, () -> plan.checkParameterEnd(4220500L, "PetApi"));
+    }
+
+    @Test
+    public void rejectsAnEmptyWindow() {
+        Modsecurity3Generator generator = new Modsecurity3Generator();
+        generator.additionalProperties().put("ruleIdStart", "5000000");
+        generator.additionalProperties().put("ruleIdEnd", "4999999");
+        assertThrows(IllegalArgumentException.class, generator::processOpts);
+    }
+}
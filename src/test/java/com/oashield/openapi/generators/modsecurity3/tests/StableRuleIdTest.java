@@ -0,0 +1,294 @@
+package com.oashield.openapi.generators.modsecurity3.tests;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.openapitools.codegen.DefaultGenerator;
+import org.openapitools.codegen.config.CodegenConfigurator;
+
+import com.oashield.openapi.generators.modsecurity3.Modsecurity3Generator;
+import com.oashield.openapi.generators.modsecurity3.OperationCache;
+import com.oashield.openapi.generators.modsecurity3.RuleIdBlock;
+import com.oashield.openapi.generators.modsecurity3.RuleIds;
+import com.oashield.openapi.generators.modsecurity3.StableRuleIds;
+
+/**
+ * Tests for ruleIdStrategy=stable: rule ids derive from the rule's operation,
+ * kind and path inside a range reserved per tag, so spec edits leave the ids of
+ * untouched rules alone.
+ */
+public class StableRuleIdTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static final Pattern RULE_ID = Pattern.compile("(?<=[\",])id:(\\d+)");
+    private static final Pattern OPERATION = Pattern.compile("(?m)^# (\\w+): [A-Z]+ /");
+
+    private static final String NEW_OPERATION = "paths:\n"
+            + "  /pet/ping:\n"
+            + "    get:\n"
+            + "      tags: [pet]\n"
+            + "      operationId: pingPet\n"
+            + "      parameters:\n"
+            + "        - {name: verbose, in: query, schema: {type: boolean}}\n"
+            + "      responses:\n"
+            + "        '200': {description: ok}\n";
+
+    private Path spec(String name, String from, String to) throws IOException {
+        String text = new String(Files.readAllBytes(Paths.get("samples/petstore.yaml")), "UTF-8");
+        if (from != null) {
+            assertTrue(text.contains(from), from);
+            text = text.replaceFirst(Pattern.quote(from), Matcher.quoteReplacement(to));
+        }
+        Path spec = tempDir.resolve(name + ".yaml");
+        Files.write(spec, text.getBytes("UTF-8"));
+        return spec;
+    }
+
+    private Path generate(Path spec, String outName, Map<String, String> options) {
+        Path out = tempDir.resolve(outName);
+        CodegenConfigurator configurator = new CodegenConfigurator()
+                .setGeneratorName("modsecurity3")
+                .setInputSpec(spec.toString())
+                .setOutputDir(out.toString());
+        configurator.addAdditionalProperty("ruleIdStrategy", "stable");
+        for (Map.Entry<String, String> option : options.entrySet()) {
+            configurator.addAdditionalProperty(option.getKey(), option.getValue());
+        }
+        new DefaultGenerator().opts(configurator.toClientOptInput()).generate();
+        return out;
+    }
+
+    private static String read(Path file) throws IOException {
+        return new String(Files.readAllBytes(file), "UTF-8");
+    }
+
+    private static Map<String, String> blocks(Path apiFile) throws IOException {
+        String conf = read(apiFile);
+        Map<String, String> blocks = new HashMap<>();
+        Matcher op = OPERATION.matcher(conf);
+        while (op.find()) {
+            blocks.put(op.group(1), OperationCache.extractBlock(conf, op.group(1)));
+        }
+        return blocks;
+    }
+
+    private static List<Long> ruleIds(String text) {
+        List<Long> ids = new java.util.ArrayList<>();
+        Matcher id = RULE_ID.matcher(text);
+        while (id.find()) {
+            ids.add(Long.parseLong(id.group(1)));
+        }
+        return ids;
+    }
+
+    @Test
+    public void insertedOperationLeavesEveryOtherRuleIdAlone() throws IOException {
+        Path before = generate(spec("before", null, null), "before", new HashMap<>());
+        Path after = generate(spec("after", "paths:\n", NEW_OPERATION), "after", new HashMap<>());
+
+        Map<String, String> oldBlocks = blocks(before.resolve("PetApi.conf"));
+        Map<String, String> newBlocks = blocks(after.resolve("PetApi.conf"));
+        assertEquals(oldBlocks.size() + 1, newBlocks.size());
+        assertNotNull(newBlocks.get("pingPet"));
+        for (Map.Entry<String, String> block : oldBlocks.entrySet()) {
+            assertEquals(block.getValue(), newBlocks.get(block.getKey()), block.getKey());
+        }
+        assertEquals(read(before.resolve("UserApi.conf")), read(after.resolve("UserApi.conf")));
+    }
+
+    @Test
+    public void editedParameterOnlyChangesItsOwnRules() throws IOException {
+        Path before = generate(spec("before", null, null), "before", new HashMap<>());
+        Path after = generate(spec("after", "        - name: api_key\n          in: header\n",
+                "        - name: trace\n          in: header\n          schema:\n            type: string\n"
+                        + "        - name: api_key\n          in: header\n"), "after", new HashMap<>());
+
+        Map<String, String> oldBlocks = blocks(before.resolve("PetApi.conf"));
+        Map<String, String> newBlocks = blocks(after.resolve("PetApi.conf"));
+        Set<Long> oldIds = new HashSet<>(ruleIds(oldBlocks.get("deletePet")));
+        List<Long> newIds = ruleIds(newBlocks.get("deletePet"));
+        assertNotEquals(oldBlocks.get("deletePet"), newBlocks.get("deletePet"));
+        // the new parameter's rules are added; every rule that was there keeps its id
+        assertTrue(newIds.containsAll(oldIds), newBlocks.get("deletePet"));
+        for (Map.Entry<String, String> block : oldBlocks.entrySet()) {
+            if (!block.getKey().equals("deletePet")) {
+                assertEquals(block.getValue(), newBlocks.get(block.getKey()), block.getKey());
+            }
+        }
+    }
+
+    @Test
+    public void everyTagHasItsOwnRangeWithoutDuplicates() throws IOException {
+        Map<String, String> options = new HashMap<>();
+        options.put("routeDispatch", "prefixTree");
+        options.put("groupByMethod", "true");
+        options.put("earlyRouting", "true");
+        options.put("operationBodyControls", "true");
+        options.put("regexProgramBudget", "40");
+        Path out = generate(spec("petstore", null, null), "out", options);
+
+        Set<Long> seen = new HashSet<>();
+        Set<Long> ranges = new TreeSet<>();
+        for (String api : new String[] {"PetApi.conf", "StoreApi.conf", "UserApi.conf"}) {
+            List<Long> ids = ruleIds(read(out.resolve(api)));
+            assertTrue(ids.size() > 10, api);
+            long range = (ids.get(0) - StableRuleIds.FIRST_ID) / StableRuleIds.TAG_RANGE_SIZE;
+            ranges.add(range);
+            for (long id : ids) {
+                assertTrue(id >= StableRuleIds.FIRST_ID && id < Integer.MAX_VALUE, api + ": " + id);
+                assertEquals(range, (id - StableRuleIds.FIRST_ID) / StableRuleIds.TAG_RANGE_SIZE, api + ": " + id);
+                assertTrue(seen.add(id), api + ": duplicate id " + id);
+            }
+        }
+        assertEquals(3, ranges.size());
+    }
+
+    @Test
+    public void parallelAndIncrementalRunsMatchTheFullRun() throws IOException {
+        Path after = spec("after", "paths:\n", NEW_OPERATION);
+        Map<String, String> cached = new HashMap<>();
+        cached.put("incrementalCache", ".oashield-cache");
+        cached.put("parallelism", "4");
+        generate(spec("before", null, null), "incremental", cached);
+        Path incremental = generate(after, "incremental", cached);
+        Path full = generate(after, "full", new HashMap<>());
+
+        try (Stream<Path> walk = Files.walk(full)) {
+            List<Path> files = walk.filter(Files::isRegularFile).map(full::relativize)
+                    .filter(p -> !p.startsWith(".openapi-generator")).collect(Collectors.toList());
+            for (Path file : files) {
+                assertArrayEquals(Files.readAllBytes(full.resolve(file)), Files.readAllBytes(incremental.resolve(file)),
+                        file.toString());
+            }
+        }
+    }
+
+    @Test
+    public void collidingKeysGetDistinctIdsUntilTheRangeIsFull() {
+        StableRuleIds full = new StableRuleIds("Full", new HashSet<>());
+        RuleIds ids = full.forOperation("op");
+        List<Number> drawn = new java.util.ArrayList<>();
+        for (int i = 0; i < StableRuleIds.TAG_RANGE_SIZE; i++) {
+            drawn.add(ids.next("rule:" + i));
+        }
+        full.resolve();
+        Set<Long> values = new HashSet<>();
+        for (Number id : drawn) {
+            assertTrue(values.add(id.longValue()), "duplicate " + id);
+            assertTrue(id.longValue() >= full.rangeStart() && id.longValue() < full.rangeStart()
+                    + StableRuleIds.TAG_RANGE_SIZE);
+        }
+
+        StableRuleIds overfull = new StableRuleIds("Overfull", new HashSet<>());
+        RuleIds more = overfull.forOperation("op");
+        for (int i = 0; i <= StableRuleIds.TAG_RANGE_SIZE; i++) {
+            more.next("rule:" + i);
+        }
+        assertThrows(IllegalStateException.class, overfull::resolve);
+    }
+
+    @Test
+    public void repeatedKeysAreNumberedAndTagRangesProbe() {
+        Set<Long> taken = new HashSet<>();
+        StableRuleIds first = new StableRuleIds("PetApi", taken);
+        StableRuleIds second = new StableRuleIds("PetApi", taken);
+        assertNotEquals(first.rangeStart(), second.rangeStart());
+
+        RuleIds ids = first.forOperation("addPet");
+        Number one = ids.next("prop:json.name:1");
+        Number two = ids.next("prop:json.name:1");
+        assertEquals("pending", one.toString());
+        assertThrows(IllegalStateException.class, one::longValue);
+        Map<String, String> consume = new HashMap<>();
+        ids.next(consume, "oasGateId", "consume:application/json:gate");
+        Number gate = first.next("route::/pet");
+        assertThrows(IllegalStateException.class, () -> first.next("route::/pet"));
+
+        first.resolve();
+        assertNotEquals(one.longValue(), two.longValue());
+        Map<String, Long> resolved = first.ids("addPet");
+        assertEquals(Long.valueOf(two.longValue()), resolved.get("prop:json.name:1#2"));
+        assertEquals(consume.get("oasGateId"), String.valueOf(resolved.get("consume:application/json:gate")));
+        assertEquals(3, resolved.size());
+        assertTrue(gate.longValue() >= first.rangeStart());
+    }
+
+    @Test
+    public void blocksOnlyTakeIdsForRenderedSlots() {
+        StableRuleIds tag = new StableRuleIds("PetApi", new HashSet<>());
+        RuleIds ids = tag.forOperation("addPet");
+        RuleIdBlock block = ids.block("param:json:", 40);
+        Number gate = ids.next("consume:application/json:gate");
+        assertThrows(IllegalStateException.class, () -> block.get("3"));
+
+        tag.resolve();
+        assertFalse(block.isAssigned(3));
+        long rendered = block.get("3").longValue();
+        assertEquals(rendered, block.get("3").longValue());
+        assertTrue(rendered >= tag.rangeStart() && rendered < tag.rangeStart() + StableRuleIds.TAG_RANGE_SIZE);
+        assertNotEquals(gate.longValue(), rendered);
+        assertEquals(java.util.Collections.singletonMap("param:json:3", rendered), tag.renderedIds("addPet"));
+        assertEquals(1, tag.ids("addPet").size());
+    }
+
+    @Test
+    public void rangeSizeIsConfigurable() throws IOException {
+        // 300 ids cannot hold 40 reserved per operation, but do hold the rules written
+        Map<String, String> options = new HashMap<>();
+        options.put("stableRangeSize", "300");
+        Path out = generate(spec("petstore", null, null), "out", options);
+        Set<Long> seen = new HashSet<>();
+        for (String api : new String[] {"PetApi.conf", "StoreApi.conf", "UserApi.conf"}) {
+            List<Long> ids = ruleIds(read(out.resolve(api)));
+            long range = (ids.get(0) - StableRuleIds.FIRST_ID) / 300;
+            for (long id : ids) {
+                assertEquals(range, (id - StableRuleIds.FIRST_ID) / 300, api + ": " + id);
+                assertTrue(seen.add(id), api + ": duplicate id " + id);
+            }
+        }
+
+        options.put("stableRangeSize", "50");
+        RuntimeException full = assertThrows(RuntimeException.class,
+                () -> generate(spec("petstore", null, null), "full", options));
+        Throwable cause = full;
+        while (cause.getCause() != null && !cause.getMessage().contains("stableRangeSize")) {
+            cause = cause.getCause();
+        }
+        assertTrue(cause.getMessage().contains("stableRangeSize"), String.valueOf(cause.getMessage()));
+
+        Modsecurity3Generator generator = new Modsecurity3Generator();
+        generator.additionalProperties().put("stableRangeSize", "0");
+        assertThrows(IllegalArgumentException.class, generator::processOpts);
+    }
+
+    @Test
+    public void rejectsUnknownStrategy() {
+        Modsecurity3Generator generator = new Modsecurity3Generator();
+        generator.additionalProperties().put("ruleIdStrategy", "random");
+        assertThrows(IllegalArgumentException.class, generator::processOpts);
+    }
+}
@@ -0,0 +1,141 @@
+package com.oashield.openapi.generators.modsecurity3.tests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.openapitools.codegen.CodegenOperation;
+import org.openapitools.codegen.DefaultGenerator;
+import org.openapitools.codegen.config.CodegenConfigurator;
+
+import com.oashield.openapi.generators.modsecurity3.Modsecurity3Generator;
+import com.oashield.openapi.generators.modsecurity3.TrafficProfile;
+
+/**
+ * Tests for trafficProfile: hot operations and API files are emitted first, but a
+ * more specific route is never moved behind a general route it overlaps.
+ */
+public class TrafficProfileTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static CodegenOperation op(String id, String method, String path) {
+        CodegenOperation co = new CodegenOperation();
+        co.operationId = id;
+        co.httpMethod = method;
+        co.path = path;
+        return co;
+    }
+
+    private static List<String> ids(List<CodegenOperation> ops) {
+        List<String> ids = new ArrayList<>();
+        for (CodegenOperation co : ops) {
+            ids.add(co.operationId);
+        }
+        return ids;
+    }
+
+    private Path writeProfile(String... lines) throws IOException {
+        Path profile = tempDir.resolve("traffic.csv");
+        Files.write(profile, Arrays.asList(lines));
+        return profile;
+    }
+
+    private Path generate(Path profile) {
+        Path out = tempDir.resolve("out");
+        final CodegenConfigurator configurator = new CodegenConfigurator()
+                .setGeneratorName("modsecurity3")
+                .setInputSpec("samples/petstore.yaml")
+                .setOutputDir(out.toString());
+        configurator.addAdditionalProperty("trafficProfile", profile.toString());
+        new DefaultGenerator().opts(configurator.toClientOptInput()).generate();
+        return out;
+    }
+
+    @Test
+    public void hotOperationsComeFirstAndEqualWeightsKeepSpecOrder() {
+        List<CodegenOperation> ops = Arrays.asList(
+                op("a", "GET", "/a"), op("b", "GET", "/b"), op("c", "GET", "/c"), op("d", "GET", "/d"));
+        Map<String, Long> counts = new HashMap<>();
+        counts.put("c", 7L);
+        List<CodegenOperation> ordered = TrafficProfile.order(ops,
+                co -> counts.getOrDefault(co.operationId, 0L), TrafficProfile::routePrecedence);
+        assertEquals(Arrays.asList("c", "a", "b", "d"), ids(ordered));
+    }
+
+    @Test
+    public void specificRoutesStayAheadOfTheRoutesTheyOverlap() {
+        List<CodegenOperation> ops = Arrays.asList(
+                op("getUser", "GET", "/users/{id}"),
+                op("deleteUser", "DELETE", "/users/{id}"),
+                op("getMe", "GET", "/users/me"),
+                op("other", "GET", "/other"));
+        Map<String, Long> counts = new HashMap<>();
+        counts.put("getUser", 100L);
+        counts.put("deleteUser", 50L);
+        List<CodegenOperation> ordered = TrafficProfile.order(ops,
+                co -> counts.getOrDefault(co.operationId, 0L), TrafficProfile::routePrecedence);
+        // getMe is pulled forward with getUser's weight; deleteUser does not overlap
+        // a GET route and is free to move
+        assertEquals(Arrays.asList("getMe", "getUser", "deleteUser", "other"), ids(ordered));
+    }
+
+    @Test
+    public void ambiguousOverlapsKeepSpecOrder() {
+        CodegenOperation first = op("first", "GET", "/a/{x}");
+        CodegenOperation second = op("second", "GET", "/{y}/b");
+        assertEquals(-1, TrafficProfile.routePrecedence(first, second));
+        assertEquals(0, TrafficProfile.routePrecedence(op("x", "GET", "/a/{x}"), op("y", "GET", "/b/{y}")));
+        assertEquals(0, TrafficProfile.routePrecedence(op("x", "GET", "/a/{x}"), op("y", "GET", "/a/{x}/c")));
+    }
+
+    @Test
+    public void profileReordersOperationsAndIncludes() throws IOException {
+        Path profile = writeProfile(
+                "operation,count",
+                "# hourly sample",
+                "getInventory,1000",
+                "getUserByName,50",
+                "GET /user/logout,10");
+        Path out = generate(profile);
+
+        String main = Files.readString(out.resolve("mainconfig.conf"));
+        assertTrue(main.indexOf("Include StoreApi.conf") < main.indexOf("Include UserApi.conf")
+                && main.indexOf("Include UserApi.conf") < main.indexOf("Include PetApi.conf"),
+                "API files must be included hottest first:\n" + main);
+
+        String user = Files.readString(out.resolve("UserApi.conf"));
+        assertTrue(user.indexOf("# loginUser") < user.indexOf("# getUserByName")
+                && user.indexOf("# logoutUser") < user.indexOf("# getUserByName"),
+                "/user/login and /user/logout must precede /user/{username}:\n" + user);
+        assertTrue(user.indexOf("# getUserByName") < user.indexOf("# createUser"),
+                "hot operations must precede cold ones:\n" + user);
+    }
+
+    @Test
+    public void malformedProfileIsRejected() throws IOException {
+        Path profile = writeProfile("getInventory,1000", "getUserByName,lots");
+        Modsecurity3Generator generator = new Modsecurity3Generator();
+        generator.additionalProperties().put("trafficProfile", profile.toString());
+        assertThrows(IllegalArgumentException.class, generator::processOpts);
+    }
+
+    @Test
+    public void missingProfileIsRejected() {
+        Modsecurity3Generator generator = new Modsecurity3Generator();
+        generator.additionalProperties().put("trafficProfile", tempDir.resolve("absent.csv").toString());
+        assertThrows(IllegalArgumentException.class, generator::processOpts);
+    }
+}
@@ -0,0 +1,106 @@
+package com.oashield.openapi.generators.modsecurity3.tests;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.openapitools.codegen.DefaultGenerator;
+import org.openapitools.codegen.config.CodegenConfigurator;
+
+/**
+ * Tests for unknownEndpointPrefilter: one rule ahead of the API files denies a
+ * path outside every operation's first path segment.
+ */
+public class UnknownEndpointPrefilterTest {
+
+    private static final Pattern PREFILTER = Pattern.compile(
+            "SecRule REQUEST_FILENAME \"!@rx ([^\"]+)\" \"id:(\\d+),phase:(\\d),pass,nolog,skipAfter:FAILED_API_CHECKS\"");
+
+    @TempDir
+    Path tempDir;
+
+    private String generate(String spec, String... properties) throws IOException {
+        final CodegenConfigurator configurator = new CodegenConfigurator()
+                .setGeneratorName("modsecurity3")
+                .setInputSpec(spec)
+                .setOutputDir(tempDir.toString());
+        for (int i = 0; i < properties.length; i += 2) {
+            configurator.addAdditionalProperty(properties[i], properties[i + 1]);
+        }
+        new DefaultGenerator().opts(configurator.toClientOptInput()).generate();
+        return Files.readString(tempDir.resolve("mainconfig.conf"));
+    }
+
+    private static Matcher prefilter(String main) {
+        Matcher m = PREFILTER.matcher(main);
+        return m.find() ? m : null;
+    }
+
+    private Path spec(String paths) throws IOException {
+        Path spec = tempDir.resolve("spec.yaml");
+        Files.writeString(spec, "openapi: 3.0.0\n"
+                + "info: {title: t, version: '1'}\n"
+                + "servers: [{url: 'http://example.com/api'}]\n"
+                + "paths:\n" + paths);
+        return spec;
+    }
+
+    @Test
+    public void offByDefault() throws IOException {
+        assertNull(prefilter(generate("samples/petstore.yaml")));
+    }
+
+    @Test
+    public void prefilterCoversEveryFirstSegment() throws IOException {
+        String main = generate("samples/petstore.yaml", "unknownEndpointPrefilter", "true");
+        Matcher m = prefilter(main);
+        assertNotNull(m, main);
+        assertEquals("^/v2/(?:pet|store|user)(?:/|$)", m.group(1));
+        assertEquals("4220003", m.group(2));
+        assertEquals("2", m.group(3));
+        assertTrue(main.indexOf(m.group()) < main.indexOf("Include PetApi.conf"), main);
+
+        Pattern regex = Pattern.compile(m.group(1));
+        for (String known : new String[] {"/v2/pet", "/v2/pet/123", "/v2/store/order/1", "/v2/user/login"}) {
+            assertTrue(regex.matcher(known).find(), known);
+        }
+        for (String unknown : new String[] {"/v2/admin", "/v2/petx", "/wp-login.php", "/v2", "/pet/1"}) {
+            assertFalse(regex.matcher(unknown).find(), unknown);
+        }
+    }
+
+    @Test
+    public void earlyRoutingFiltersInPhaseOne() throws IOException {
+        String main = generate("samples/petstore.yaml", "unknownEndpointPrefilter", "true", "earlyRouting", "true");
+        assertEquals("1", prefilter(main).group(3));
+    }
+
+    @Test
+    public void rootOperationAdmitsTheBarePath() throws IOException {
+        Path spec = spec("  /:\n    get: {operationId: root, responses: {'200': {description: ok}}}\n"
+                + "  /items/{id}:\n    get:\n      operationId: item\n"
+                + "      parameters: [{name: id, in: path, required: true, schema: {type: integer}}]\n"
+                + "      responses: {'200': {description: ok}}\n");
+        String main = generate(spec.toString(), "unknownEndpointPrefilter", "true");
+        assertEquals("^/api/(?:(?:items)(?:/|$)|$)", prefilter(main).group(1));
+    }
+
+    @Test
+    public void templatedFirstSegmentDisablesThePrefilter() throws IOException {
+        Path spec = spec("  /{tenant}/items:\n    get:\n      operationId: items\n"
+                + "      parameters: [{name: tenant, in: path, required: true, schema: {type: string}}]\n"
+                + "      responses: {'200': {description: ok}}\n");
+        String main = generate(spec.toString(), "unknownEndpointPrefilter", "true");
+        assertNull(prefilter(main), main);
+    }
+}
@@ -0,0 +1,112 @@
+package com.oashield.openapi.generators.modsecurity3.tests;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.transform.stream.StreamSource;
+import javax.xml.validation.SchemaFactory;
+
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.openapitools.codegen.DefaultGenerator;
+import org.openapitools.codegen.config.CodegenConfigurator;
+import org.openapitools.codegen.model.ModelsMap;
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+
+import com.oashield.openapi.generators.modsecurity3.Modsecurity3Generator;
+import com.oashield.openapi.generators.modsecurity3.XsdGenerator;
+
+/**
+ * The streamed XSD (XsdGenerator.writeXsd, what the generator writes) must
+ * describe the same schema as the DOM one (XsdGenerator.generateXsd) for every
+ * sample spec: the two documents are compared node for node, ignoring
+ * indentation only.
+ */
+public class XsdStreamingParityTest {
+
+    @TempDir
+    Path outputDir;
+
+    /**
+     * The generator as configured for a run, keeping hold of the models the XSD
+     * is built from.
+     */
+    public static class CapturingGenerator extends Modsecurity3Generator {
+
+        static Map<String, ModelsMap> models;
+
+        @Override
+        public Map<String, ModelsMap> postProcessAllModels(Map<String, ModelsMap> objs) {
+            models = super.postProcessAllModels(objs);
+            return models;
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"xmlbody.yaml", "petstore.yaml", "composed.yaml", "oas31.yaml", "multipart.yaml"})
+    public void streamedSchemaMatchesDomSchema(String sample) throws Exception {
+        CapturingGenerator.models = null;
+        new DefaultGenerator()
+                .opts(new CodegenConfigurator()
+                        .setGeneratorName(CapturingGenerator.class.getName())
+                        .setInputSpec("samples/" + sample)
+                        .setOutputDir(outputDir.toString())
+                        .addAdditionalProperty("validateXmlSchema", "true")
+                        .toClientOptInput())
+                .generate();
+        Map<String, ModelsMap> models = CapturingGenerator.models;
+        assertNotNull(models, "models were not captured");
+
+        XsdGenerator xsdGenerator = new XsdGenerator();
+        ByteArrayOutputStream streamed = new ByteArrayOutputStream();
+        xsdGenerator.writeXsd(models, streamed);
+        assertArrayEquals(streamed.toByteArray(), Files.readAllBytes(outputDir.resolve("schema.xsd")),
+                "schema.xsd is not the streamed schema");
+
+        String dom = xsdGenerator.generateXsd(models);
+        Document expected = parse(dom.getBytes(StandardCharsets.UTF_8));
+        Document actual = parse(streamed.toByteArray());
+        assertTrue(expected.isEqualNode(actual),
+                "streamed XSD differs from DOM XSD\n--- DOM\n" + dom + "\n--- streamed\n"
+                        + new String(streamed.toByteArray(), StandardCharsets.UTF_8));
+
+        // and it loads as an XML Schema
+        SchemaFactory.newInstance(XMLConstants.W3C_XML_SCHEMA_NS_URI)
+                .newSchema(new StreamSource(new StringReader(new String(streamed.toByteArray(), StandardCharsets.UTF_8))));
+    }
+
+    private static Document parse(byte[] xml) throws Exception {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        Document doc = factory.newDocumentBuilder().parse(new ByteArrayInputStream(xml));
+        stripWhitespace(doc.getDocumentElement());
+        doc.normalizeDocument();
+        return doc;
+    }
+
+    private static void stripWhitespace(Node node) {
+        NodeList children = node.getChildNodes();
+        for (int i = children.getLength() - 1; i >= 0; i--) {
+            Node child = children.item(i);
+            if (child.getNodeType() == Node.TEXT_NODE && child.getTextContent().trim().isEmpty()) {
+                node.removeChild(child);
+            } else {
+                stripWhitespace(child);
+            }
+        }
+    }
+}